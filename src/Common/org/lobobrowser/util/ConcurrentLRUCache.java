@@ -0,0 +1,264 @@
+package org.lobobrowser.util;
+
+import java.util.ArrayList;
+import java.util.EventListener;
+import java.util.EventObject;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.lobobrowser.util.LRUCache.EntryInfo;
+
+/**
+ * A thread safe, size weighted cache with least-recently-used policy. It has
+ * the same contract as {@link LRUCache}, but callers don't need to synchronize
+ * on it.
+ *
+ * <p>
+ * Keys are spread over a number of segments, each with its own lock, so
+ * lookups of different keys rarely contend. Each segment keeps its entries in
+ * access order, which makes gets, puts and removals O(1). The size budget is
+ * shared by all segments; when it is exceeded, the least recently used entry
+ * among the eldest entries of the segments is evicted.
+ * </p>
+ *
+ * <p>
+ * Removal events are fired holding no locks.
+ * </p>
+ */
+public class ConcurrentLRUCache {
+  private static final int DEFAULT_CONCURRENCY = 16;
+
+  private final Segment[] segments;
+  private final int segmentMask;
+  private final AtomicLong currentSize = new AtomicLong();
+  private final EventDispatch2 removalEvent = new RemovalDispatch();
+  private volatile int approxMaxSize;
+
+  public ConcurrentLRUCache(final int approxMaxSize) {
+    this(approxMaxSize, DEFAULT_CONCURRENCY);
+  }
+
+  /**
+   * @param concurrency
+   *          The expected number of threads using the cache at the same time.
+   *          It is rounded up to a power of two.
+   */
+  public ConcurrentLRUCache(final int approxMaxSize, final int concurrency) {
+    int numSegments = 1;
+    while (numSegments < concurrency) {
+      numSegments <<= 1;
+    }
+    this.segments = new Segment[numSegments];
+    for (int i = 0; i < numSegments; i++) {
+      this.segments[i] = new Segment();
+    }
+    this.segmentMask = numSegments - 1;
+    this.approxMaxSize = approxMaxSize;
+  }
+
+  public int getApproxMaxSize() {
+    return this.approxMaxSize;
+  }
+
+  public void setApproxMaxSize(final int approxMaxSize) {
+    this.approxMaxSize = approxMaxSize;
+    this.evictAsNeeded(null);
+  }
+
+  public void put(final Object key, final Object value, final int approxSize) {
+    if (approxSize > this.approxMaxSize) {
+      // Can't be inserted.
+      return;
+    }
+    final Segment segment = this.segmentFor(key);
+    final CacheEntry newEntry = new CacheEntry(value, approxSize);
+    final CacheEntry oldEntry;
+    synchronized (segment) {
+      oldEntry = segment.put(key, newEntry);
+      this.currentSize.addAndGet(oldEntry == null ? approxSize : approxSize - oldEntry.approximateSize);
+    }
+    if ((oldEntry != null) && (oldEntry.value != value)) {
+      this.removalEvent.fireEvent(new RemovalEvent(this, oldEntry.value));
+    }
+    this.evictAsNeeded(key);
+  }
+
+  public Object get(final Object key) {
+    final Segment segment = this.segmentFor(key);
+    final CacheEntry entry;
+    synchronized (segment) {
+      // Moves the entry to the end of the segment's access order.
+      entry = segment.get(key);
+    }
+    if (entry != null) {
+      entry.touch();
+      return entry.value;
+    } else {
+      return null;
+    }
+  }
+
+  public Object remove(final Object key) {
+    final Segment segment = this.segmentFor(key);
+    final CacheEntry entry;
+    synchronized (segment) {
+      entry = segment.remove(key);
+      if (entry != null) {
+        this.currentSize.addAndGet(-entry.approximateSize);
+      }
+    }
+    if (entry != null) {
+      this.removalEvent.fireEvent(new RemovalEvent(this, entry.value));
+      return entry.value;
+    } else {
+      return null;
+    }
+  }
+
+  public void addRemovalListener(final RemovalListener listener) {
+    this.removalEvent.addListener(listener);
+  }
+
+  public void removeRemovalListener(final RemovalListener listener) {
+    this.removalEvent.removeListener(listener);
+  }
+
+  public int getApproxSize() {
+    return (int) Math.min(Integer.MAX_VALUE, this.currentSize.get());
+  }
+
+  public int getNumEntries() {
+    int count = 0;
+    for (final Segment segment : this.segments) {
+      synchronized (segment) {
+        count += segment.size();
+      }
+    }
+    return count;
+  }
+
+  public List<EntryInfo> getEntryInfoList() {
+    final List<EntryInfo> list = new ArrayList<>();
+    for (final Segment segment : this.segments) {
+      synchronized (segment) {
+        for (final CacheEntry entry : segment.values()) {
+          final Object value = entry.value;
+          final Class<? extends Object> vc = value == null ? null : value.getClass();
+          list.add(new EntryInfo(vc, entry.approximateSize));
+        }
+      }
+    }
+    return list;
+  }
+
+  private Segment segmentFor(final Object key) {
+    int h = key.hashCode();
+    // Spread the high bits, as in HashMap.
+    h ^= (h >>> 16);
+    return this.segments[h & this.segmentMask];
+  }
+
+  /**
+   * Evicts least recently used entries until the cache is within its size
+   * budget.
+   *
+   * @param protectedKey
+   *          The key of an entry that was just put, which should not be
+   *          evicted. May be <code>null</code>.
+   */
+  private void evictAsNeeded(final Object protectedKey) {
+    while (this.currentSize.get() > this.approxMaxSize) {
+      final Object removedValue = this.evictOne(protectedKey);
+      if (removedValue == NOTHING_EVICTED) {
+        break;
+      }
+      this.removalEvent.fireEvent(new RemovalEvent(this, removedValue));
+    }
+  }
+
+  private static final Object NOTHING_EVICTED = new Object();
+
+  private Object evictOne(final Object protectedKey) {
+    // Segments are locked one at a time, so the choice of victim is
+    // approximate under concurrent access, which is fine for a cache.
+    for (;;) {
+      Segment victimSegment = null;
+      Object victimKey = null;
+      long victimTime = Long.MAX_VALUE;
+      for (final Segment segment : this.segments) {
+        synchronized (segment) {
+          final Map.Entry<Object, CacheEntry> eldest = segment.eldestExcept(protectedKey);
+          if ((eldest != null) && ((victimSegment == null) || (eldest.getValue().lastAccess < victimTime))) {
+            victimSegment = segment;
+            victimKey = eldest.getKey();
+            victimTime = eldest.getValue().lastAccess;
+          }
+        }
+      }
+      if (victimSegment == null) {
+        return NOTHING_EVICTED;
+      }
+      synchronized (victimSegment) {
+        // Looking the victim up with get() would make it the most recently
+        // used entry of its segment. It is still the victim if it is still
+        // the eldest entry and was not accessed since.
+        final Map.Entry<Object, CacheEntry> eldest = victimSegment.eldestExcept(protectedKey);
+        final CacheEntry entry = eldest == null ? null : eldest.getValue();
+        if ((entry != null) && victimKey.equals(eldest.getKey()) && (entry.lastAccess == victimTime)) {
+          victimSegment.remove(victimKey);
+          this.currentSize.addAndGet(-entry.approximateSize);
+          return entry.value;
+        }
+      }
+      // The victim was accessed or removed in the meantime. Try again.
+    }
+  }
+
+  private static final class CacheEntry {
+    private final Object value;
+    private final int approximateSize;
+    private volatile long lastAccess;
+
+    private CacheEntry(final Object value, final int approximateSize) {
+      this.value = value;
+      this.approximateSize = approximateSize;
+      this.touch();
+    }
+
+    private void touch() {
+      this.lastAccess = System.nanoTime();
+    }
+  }
+
+  /**
+   * A map in access order. It is guarded by its own monitor.
+   */
+  private static final class Segment extends LinkedHashMap<Object, CacheEntry> {
+    private static final long serialVersionUID = 3619032713948519512L;
+
+    private Segment() {
+      super(16, 0.75f, true);
+    }
+
+    private Map.Entry<Object, CacheEntry> eldestExcept(final Object protectedKey) {
+      final Iterator<Map.Entry<Object, CacheEntry>> i = this.entrySet().iterator();
+      while (i.hasNext()) {
+        final Map.Entry<Object, CacheEntry> entry = i.next();
+        if ((protectedKey == null) || !protectedKey.equals(entry.getKey())) {
+          return entry;
+        }
+      }
+      return null;
+    }
+  }
+
+  private class RemovalDispatch extends EventDispatch2 {
+    @Override
+    protected void dispatchEvent(final EventListener listener, final EventObject event) {
+      ((RemovalListener) listener).removed((RemovalEvent) event);
+    }
+  }
+}
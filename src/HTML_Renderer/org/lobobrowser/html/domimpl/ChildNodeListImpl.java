@@ -0,0 +1,29 @@
+package org.lobobrowser.html.domimpl;
+
+import org.lobobrowser.js.AbstractScriptableDelegate;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * The live list of the children of a node, as returned by
+ * {@link NodeImpl#getChildNodes()}.
+ */
+public class ChildNodeListImpl extends AbstractScriptableDelegate implements NodeList {
+  // Note: class must be public for reflection to work.
+  private final NodeImpl rootNode;
+
+  ChildNodeListImpl(final NodeImpl node) {
+    this.rootNode = node;
+  }
+
+  public int getLength() {
+    return this.rootNode.getChildCount();
+  }
+
+  public Node item(final int index) {
+    final NodeImpl node = this.rootNode;
+    synchronized (node.treeLock) {
+      return (index >= 0) && (index < node.getChildCount()) ? node.getChildAtIndex(index) : null;
+    }
+  }
+}
@@ -0,0 +1,43 @@
+package org.lobobrowser.html.domimpl;
+
+import java.util.Set;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Accepts the elements that have all the given class names, ignoring case,
+ * and optionally descend from a given node.
+ */
+final class ClassNameFilter implements NodeFilter {
+  private final Node root;
+  private final Set<String> classNamesTL;
+
+  /**
+   * @param root
+   *          The node accepted elements must descend from, or
+   *          <code>null</code> to accept elements anywhere.
+   * @param classNamesTL
+   *          Lowercase class names. No element is accepted if it is empty.
+   */
+  ClassNameFilter(final Node root, final Set<String> classNamesTL) {
+    this.root = root;
+    this.classNamesTL = classNamesTL;
+  }
+
+  public boolean accept(final Node node) {
+    if (!(node instanceof Element) || this.classNamesTL.isEmpty()) {
+      return false;
+    }
+    if (this.root != null) {
+      Node ancestor = node.getParentNode();
+      while ((ancestor != null) && (ancestor != this.root)) {
+        ancestor = ancestor.getParentNode();
+      }
+      if (ancestor == null) {
+        return false;
+      }
+    }
+    return ElementIndex.getClassNamesTL(((Element) node).getAttribute("class")).containsAll(this.classNamesTL);
+  }
+}
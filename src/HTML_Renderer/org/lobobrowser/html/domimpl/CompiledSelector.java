@@ -0,0 +1,273 @@
+package org.lobobrowser.html.domimpl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.w3c.dom.DOMException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import cz.vutbr.web.css.CSSException;
+import cz.vutbr.web.css.CSSFactory;
+import cz.vutbr.web.css.CombinedSelector;
+import cz.vutbr.web.css.RuleBlock;
+import cz.vutbr.web.css.RuleSet;
+import cz.vutbr.web.css.Selector;
+import cz.vutbr.web.css.StyleSheet;
+
+/**
+ * A group of selectors parsed once, for <code>querySelector</code> and
+ * <code>querySelectorAll</code>. Elements are matched right to left: the
+ * rightmost compound selector is tested first, and combinators are only
+ * followed towards the root for the elements that pass it.
+ *
+ * <p>
+ * Candidates are taken from the {@link ElementIndex} of the document when
+ * every selector of the group names a class or a tag in its rightmost compound.
+ * A lone selector ending in an id is looked up in the id map of the document by
+ * <code>querySelector</code>. Other selectors walk the subtree. Queries must be
+ * run holding the tree lock.
+ * </p>
+ */
+final class CompiledSelector {
+  private final CombinedSelector[] selectors;
+
+  /** Lowercase class of the rightmost compound of each selector, if any. */
+  private final String[] classKeys;
+
+  /** Tag name of the rightmost compound of each selector, if any. */
+  private final String[] tagKeys;
+
+  /** Id of the rightmost compound of the only selector, if any. */
+  private final String id;
+
+  private CompiledSelector(final List<CombinedSelector> selectors) {
+    final List<CombinedSelector> matchable = new ArrayList<>(selectors.size());
+    for (final CombinedSelector selector : selectors) {
+      // Selectors of pseudo-elements never match elements.
+      if (selector.getPseudoElement() == null) {
+        matchable.add(selector);
+      }
+    }
+    final int size = matchable.size();
+    this.selectors = matchable.toArray(new CombinedSelector[size]);
+    this.classKeys = new String[size];
+    this.tagKeys = new String[size];
+    for (int i = 0; i < size; i++) {
+      final Selector last = matchable.get(i).getLastSelector();
+      final String className = last.getClassName();
+      final String elementName = last.getElementName();
+      this.classKeys[i] = className == null ? null : className.toLowerCase();
+      this.tagKeys[i] = (elementName == null) || Selector.ElementName.WILDCARD.equals(elementName) ? null : elementName;
+    }
+    this.id = size == 1 ? matchable.get(0).getLastSelector().getIDName() : null;
+  }
+
+  /**
+   * Parses a group of selectors.
+   *
+   * @throws DOMException
+   *           A <code>SYNTAX_ERR</code> if the selectors are not valid, or use
+   *           features that are not supported.
+   */
+  static CompiledSelector compile(final String text) throws DOMException {
+    if ((text.indexOf('{') != -1) || (text.indexOf('}') != -1)) {
+      throw new DOMException(DOMException.SYNTAX_ERR, "Invalid selector: " + text);
+    }
+    final StyleSheet sheet;
+    try {
+      sheet = CSSFactory.parseString(text + "{}", null);
+    } catch (IOException | CSSException e) {
+      throw new DOMException(DOMException.SYNTAX_ERR, "Invalid selector: " + text);
+    }
+    // Invalid rules are dropped by the parser.
+    final RuleBlock<?> block = sheet.size() == 1 ? sheet.get(0) : null;
+    if (!(block instanceof RuleSet) || ((RuleSet) block).getSelectors().isEmpty()) {
+      throw new DOMException(DOMException.SYNTAX_ERR, "Invalid selector: " + text);
+    }
+    return new CompiledSelector(((RuleSet) block).getSelectors());
+  }
+
+  boolean matches(final Element element) {
+    for (final CombinedSelector selector : this.selectors) {
+      if (matches(selector, selector.size() - 1, element)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean matches(final CombinedSelector selector, final int position, final Element element) {
+    final Selector compound = selector.get(position);
+    if (!compound.matches(element, HTMLElementImpl.elementMatchCondition)) {
+      return false;
+    }
+    if (position == 0) {
+      return true;
+    }
+    // The combinator of a selector relates it to the selector on its left.
+    switch (compound.getCombinator()) {
+    case CHILD: {
+      final Element parent = getParentElement(element);
+      return (parent != null) && matches(selector, position - 1, parent);
+    }
+    case DESCENDANT:
+      for (Element ancestor = getParentElement(element); ancestor != null; ancestor = getParentElement(ancestor)) {
+        if (matches(selector, position - 1, ancestor)) {
+          return true;
+        }
+      }
+      return false;
+    case ADJACENT: {
+      final Element previous = getPreviousElement(element);
+      return (previous != null) && matches(selector, position - 1, previous);
+    }
+    case PRECEDING:
+      for (Element previous = getPreviousElement(element); previous != null; previous = getPreviousElement(previous)) {
+        if (matches(selector, position - 1, previous)) {
+          return true;
+        }
+      }
+      return false;
+    default:
+      return false;
+    }
+  }
+
+  private static Element getParentElement(final Element element) {
+    final Node parent = element.getParentNode();
+    return parent instanceof Element ? (Element) parent : null;
+  }
+
+  private static Element getPreviousElement(final Element element) {
+    for (NodeImpl node = ((NodeImpl) element).previousSibling; node != null; node = node.previousSibling) {
+      if (node instanceof Element) {
+        return (Element) node;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Gets the first descendent of the root that matches, in document order, or
+   * <code>null</code>.
+   */
+  ElementImpl queryFirst(final NodeImpl root) {
+    final List<ElementImpl> result = this.query(root, true);
+    return result.isEmpty() ? null : result.get(0);
+  }
+
+  /**
+   * Gets the descendents of the root that match, in document order.
+   */
+  List<ElementImpl> queryAll(final NodeImpl root) {
+    return this.query(root, false);
+  }
+
+  private List<ElementImpl> query(final NodeImpl root, final boolean firstOnly) {
+    if (this.selectors.length == 0) {
+      return Collections.emptyList();
+    }
+    final Document doc = root.document;
+    if (root.isAttachedToDocument() && (doc instanceof HTMLDocumentImpl)) {
+      final HTMLDocumentImpl document = (HTMLDocumentImpl) doc;
+      if (firstOnly && (this.id != null)) {
+        // Ids need not be unique, so a miss here does not mean that no element
+        // matches. Another element with the id may, or be under the root.
+        final Element element = document.getElementById(this.id);
+        if ((element instanceof ElementImpl) && isDescendent(root, element) && this.matches(element)) {
+          return Collections.singletonList((ElementImpl) element);
+        }
+      }
+      final ElementIndex.Entry[] entries = this.getEntries(document.getElementIndex());
+      if (entries != null) {
+        return this.queryEntries(root, entries, firstOnly);
+      }
+    }
+    final List<ElementImpl> result = new ArrayList<>();
+    this.queryDescendents(root, firstOnly, result);
+    return result;
+  }
+
+  /**
+   * Gets the index entries that hold all the candidates, or <code>null</code>
+   * if some selector could match any element.
+   */
+  private ElementIndex.Entry[] getEntries(final ElementIndex index) {
+    final int size = this.selectors.length;
+    final ElementIndex.Entry[] entries = new ElementIndex.Entry[size];
+    for (int i = 0; i < size; i++) {
+      if (this.classKeys[i] != null) {
+        entries[i] = index.getClassNameEntry(this.classKeys[i]);
+      } else if (this.tagKeys[i] != null) {
+        entries[i] = index.getTagNameEntry(this.tagKeys[i]);
+      } else {
+        return null;
+      }
+    }
+    return entries;
+  }
+
+  private List<ElementImpl> queryEntries(final NodeImpl root, final ElementIndex.Entry[] entries, final boolean firstOnly) {
+    final boolean anyDescendent = root instanceof Document;
+    if (entries.length == 1) {
+      final List<ElementImpl> result = new ArrayList<>();
+      for (final ElementImpl element : entries[0].getElements()) {
+        if ((anyDescendent || isDescendent(root, element)) && this.matches(element)) {
+          result.add(element);
+          if (firstOnly) {
+            break;
+          }
+        }
+      }
+      return result;
+    }
+    final Set<ElementImpl> matching = new LinkedHashSet<>();
+    for (final ElementIndex.Entry entry : entries) {
+      for (final ElementImpl element : entry.getElements()) {
+        if ((anyDescendent || isDescendent(root, element)) && this.matches(element)) {
+          matching.add(element);
+          if (firstOnly) {
+            // Later elements of the entry can't come first.
+            break;
+          }
+        }
+      }
+    }
+    final List<ElementImpl> result = new ArrayList<>(matching);
+    result.sort(ElementIndex::compareDocumentOrder);
+    return firstOnly && (result.size() > 1) ? result.subList(0, 1) : result;
+  }
+
+  private void queryDescendents(final NodeImpl node, final boolean firstOnly, final List<ElementImpl> result) {
+    for (NodeImpl child = node.firstChild; child != null; child = child.nextSibling) {
+      if (child instanceof ElementImpl) {
+        final ElementImpl element = (ElementImpl) child;
+        if (this.matches(element)) {
+          result.add(element);
+          if (firstOnly) {
+            return;
+          }
+        }
+        this.queryDescendents(element, firstOnly, result);
+        if (firstOnly && !result.isEmpty()) {
+          return;
+        }
+      }
+    }
+  }
+
+  private static boolean isDescendent(final Node root, final Node node) {
+    for (Node ancestor = node.getParentNode(); ancestor != null; ancestor = ancestor.getParentNode()) {
+      if (ancestor == root) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -23,7 +23,6 @@
  */
 package org.lobobrowser.html.domimpl;
 
-import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -31,7 +30,6 @@ import java.util.List;
 import java.util.Map;
 
 import org.lobobrowser.js.AbstractScriptableDelegate;
-import org.lobobrowser.util.Nodes;
 import org.w3c.dom.Node;
 import org.w3c.dom.html.HTMLCollection;
 
@@ -54,15 +52,19 @@ public class DescendentHTMLCollection extends AbstractScriptableDelegate impleme
     nodeFilter = filter;
     this.treeLock = treeLock;
     this.nestIntoMatchingNodes = nestMatchingNodes;
-    final HTMLDocumentImpl document = (HTMLDocumentImpl) node.getOwnerDocument();
-    document.addDocumentNotificationListener(new LocalNotificationListener(document, this));
   }
 
   private Map<String, ElementImpl> itemsByName = null;
   private List<NodeImpl> itemsByIndex = null;
+  private long populatedEpoch;
 
   private void ensurePopulatedImpl() {
-    if (this.itemsByName == null) {
+    // Checking the epoch of the subtree is cheaper than listening to every
+    // change below the root, and changes elsewhere in the document leave it
+    // alone.
+    final long epoch = this.rootNode.getSubtreeEpoch();
+    if ((this.itemsByName == null) || (this.populatedEpoch != epoch)) {
+      this.populatedEpoch = epoch;
       final ArrayList<NodeImpl> descendents = this.rootNode.getDescendents(this.nodeFilter, this.nestIntoMatchingNodes);
       this.itemsByIndex = descendents == null ? Collections.emptyList() : descendents;
       final int size = descendents == null ? 0 : descendents.size();
@@ -85,19 +87,6 @@ public class DescendentHTMLCollection extends AbstractScriptableDelegate impleme
     }
   }
 
-  private void invalidate() {
-    synchronized (this.treeLock) {
-      this.itemsByName = null;
-      this.itemsByIndex = null;
-    }
-  }
-
-  private boolean isValid() {
-    synchronized (this.treeLock) {
-      return (this.itemsByName != null) && (this.itemsByIndex != null);
-    }
-  }
-
   public int getLength() {
     synchronized (this.treeLock) {
       this.ensurePopulatedImpl();
@@ -195,37 +184,4 @@ public class DescendentHTMLCollection extends AbstractScriptableDelegate impleme
   // }
   // }
 
-  private static class LocalNotificationListener extends DocumentNotificationAdapter {
-    // Needs to be a static class with a weak reference to
-    // the collection object.
-    private final HTMLDocumentImpl document;
-    private final WeakReference<DescendentHTMLCollection> collectionRef;
-
-    public LocalNotificationListener(final HTMLDocumentImpl document, final DescendentHTMLCollection collection) {
-      super();
-      this.document = document;
-      this.collectionRef = new WeakReference<>(collection);
-    }
-
-    @Override
-    public void structureInvalidated(final NodeImpl node) {
-      final DescendentHTMLCollection collection = this.collectionRef.get();
-      if (collection == null) {
-        // Gone!
-        this.document.removeDocumentNotificationListener(this);
-        return;
-      }
-      if (collection.isValid()) {
-        if (Nodes.isSameOrAncestorOf(collection.rootNode, node)) {
-          collection.invalidate();
-        }
-      }
-    }
-
-    @Override
-    public void nodeLoaded(final NodeImpl node) {
-      this.structureInvalidated(node);
-    }
-  }
-
 }
@@ -34,6 +34,9 @@ public abstract class DocumentNotificationAdapter implements DocumentNotificatio
   public void invalidated(final NodeImpl node) {
   }
 
+  public void loadCheckpoint() {
+  }
+
   public void lookInvalidated(final NodeImpl node) {
   }
 
@@ -58,6 +58,13 @@ public interface DocumentNotificationListener {
    */
   public void externalScriptLoading(NodeImpl node);
 
+  /**
+   * Called by the parser thread at points where the partly loaded document is
+   * worth rendering, so that changes so far need not wait for the parser to
+   * finish or pause.
+   */
+  public void loadCheckpoint();
+
   /**
    * This is called when the whole document is potentially invalid, e.g. when a
    * new style sheet has been added.
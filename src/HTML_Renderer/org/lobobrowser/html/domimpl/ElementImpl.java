@@ -26,8 +26,6 @@ package org.lobobrowser.html.domimpl;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
@@ -173,28 +171,23 @@ public class ElementImpl extends NodeImpl implements Element {
 
   public NodeList getElementsByTagName(final String name) {
     final boolean matchesAll = "*".equals(name);
-    final List<Node> descendents = new LinkedList<>();
+    final List<Node> descendents = new ArrayList<>();
     synchronized (this.treeLock) {
-      final ArrayList<Node> nl = this.nodeList;
-      if (nl != null) {
-        final Iterator<Node> i = nl.iterator();
-        while (i.hasNext()) {
-          final Node child = i.next();
-          if (child instanceof Element) {
-            final Element childElement = (Element) child;
-            if (matchesAll || isTagName(childElement, name)) {
-              descendents.add(child);
-            }
-            final NodeList sublist = childElement.getElementsByTagName(name);
-            final int length = sublist.getLength();
-            for (int idx = 0; idx < length; idx++) {
-              descendents.add(sublist.item(idx));
-            }
-          }
+      this.appendElementsByTagNameImpl(name, matchesAll, descendents);
+    }
+    return new NodeListImpl(descendents);
+  }
+
+  private void appendElementsByTagNameImpl(final String name, final boolean matchesAll, final List<Node> descendents) {
+    for (NodeImpl child = this.firstChild; child != null; child = child.nextSibling) {
+      if (child instanceof ElementImpl) {
+        final ElementImpl childElement = (ElementImpl) child;
+        if (matchesAll || isTagName(childElement, name)) {
+          descendents.add(child);
         }
+        childElement.appendElementsByTagNameImpl(name, matchesAll, descendents);
       }
     }
-    return new NodeListImpl(descendents);
   }
 
   public NodeList getElementsByTagNameNS(final String namespaceURI, final String localName) throws DOMException {
@@ -357,12 +350,9 @@ public class ElementImpl extends NodeImpl implements Element {
    */
   protected String getRawInnerText(final boolean includeComment) {
     synchronized (this.treeLock) {
-      final ArrayList<Node> nl = this.nodeList;
-      if (nl != null) {
-        final Iterator<Node> i = nl.iterator();
+      if (this.firstChild != null) {
         StringBuffer sb = null;
-        while (i.hasNext()) {
-          final Object node = i.next();
+        for (NodeImpl node = this.firstChild; node != null; node = node.nextSibling) {
           if (node instanceof Text) {
             final Text tn = (Text) node;
             final String txt = tn.getNodeValue();
@@ -499,8 +489,16 @@ public class ElementImpl extends NodeImpl implements Element {
       }
     }
 
+    synchronized (this.treeLock) {
+      // Collections of the ancestors may be filtered by attributes.
+      this.bumpSubtreeEpoch();
+    }
+
     if ("id".equals(normalName)) {
       updateIdMap(oldValue, newValue);
+      updateElementIndex(normalName, oldValue, newValue);
+    } else if ("name".equals(normalName) || "class".equals(normalName)) {
+      updateElementIndex(normalName, oldValue, newValue);
     }
 
     if (isAttachedToDocument()) {
@@ -521,6 +519,30 @@ public class ElementImpl extends NodeImpl implements Element {
     }
   }
 
+  final void updateElementIndex(final boolean isAttached) {
+    final ElementIndex index = ((HTMLDocumentImpl) document).getElementIndex();
+    if (isAttached) {
+      index.add(this);
+    } else {
+      index.remove(this);
+    }
+  }
+
+  private void updateElementIndex(final String normalName, final String oldValue, final String newValue) {
+    if (isAttachedToDocument() && !Objects.equals(oldValue, newValue)) {
+      synchronized (this.treeLock) {
+        final ElementIndex index = ((HTMLDocumentImpl) document).getElementIndex();
+        if ("name".equals(normalName)) {
+          index.nameChanged(this, oldValue, newValue);
+        } else if ("class".equals(normalName)) {
+          index.classChanged(this, oldValue, newValue);
+        } else {
+          index.idChanged();
+        }
+      }
+    }
+  }
+
   private void updateIdMap(final String oldIdValue, final String newIdValue) {
     if (isAttachedToDocument() && !Objects.equals(oldIdValue, newIdValue)) {
       if (oldIdValue != null) {
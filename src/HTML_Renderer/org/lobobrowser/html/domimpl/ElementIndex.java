@@ -0,0 +1,297 @@
+package org.lobobrowser.html.domimpl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringTokenizer;
+
+/**
+ * Index of the elements attached to a document, by tag name, by the value of
+ * their <code>name</code> attribute and by class name. Each entry keeps its elements in
+ * document order, so that live collections backed by it can answer
+ * <code>length</code> and <code>item(i)</code> without walking the tree.
+ *
+ * <p>
+ * Elements are added and removed as they are attached to and detached from the
+ * document. All methods must be called holding the tree lock of the document.
+ * </p>
+ */
+final class ElementIndex {
+  /** Source of modification stamps. Stamps only ever increase. */
+  private long stamp;
+
+  /** Stamp of the last change to the id or name of an indexed element. */
+  private long namesStamp;
+
+  private final Map<String, Entry> byTagName = new HashMap<>();
+  private final Map<String, Entry> byName = new HashMap<>();
+  private final Map<String, Entry> byClassName = new HashMap<>();
+  private final Entry allElements = new Entry(this);
+
+  /**
+   * Gets the entry of elements with the given tag name, or of all elements if
+   * the name is an asterisk. Entries are created on demand, so that a
+   * collection can be live before any element with the name is added.
+   */
+  Entry getTagNameEntry(final String tagName) {
+    if ("*".equals(tagName)) {
+      return this.allElements;
+    }
+    return getEntry(this.byTagName, tagName.toUpperCase());
+  }
+
+  /**
+   * Gets the entry of elements whose <code>name</code> attribute has the given
+   * value.
+   */
+  Entry getNameEntry(final String name) {
+    return getEntry(this.byName, name);
+  }
+
+  /**
+   * Gets the entry of elements with the given class name. Class names are
+   * indexed in lowercase, so the entry may also hold elements whose class
+   * only matches ignoring case.
+   */
+  Entry getClassNameEntry(final String className) {
+    return getEntry(this.byClassName, className.toLowerCase());
+  }
+
+  long getNamesStamp() {
+    return this.namesStamp;
+  }
+
+  void add(final ElementImpl element) {
+    // Elements are nearly always added at the end of the document, while it
+    // is being parsed.
+    final boolean atEnd = isAtEnd(element);
+    getEntry(this.byTagName, element.getNodeName().toUpperCase()).add(element, atEnd);
+    this.allElements.add(element, atEnd);
+    final String name = element.getAttribute("name");
+    if (name != null) {
+      getEntry(this.byName, name).add(element, atEnd);
+    }
+    for (final String className : getClassNamesTL(element.getAttribute("class"))) {
+      getEntry(this.byClassName, className).add(element, atEnd);
+    }
+  }
+
+  void remove(final ElementImpl element) {
+    final Entry tagEntry = this.byTagName.get(element.getNodeName().toUpperCase());
+    if (tagEntry != null) {
+      tagEntry.remove(element);
+    }
+    this.allElements.remove(element);
+    final String name = element.getAttribute("name");
+    if (name != null) {
+      final Entry nameEntry = this.byName.get(name);
+      if (nameEntry != null) {
+        nameEntry.remove(element);
+      }
+    }
+    this.removeFromClassEntries(element, getClassNamesTL(element.getAttribute("class")));
+  }
+
+  /**
+   * Called when the <code>name</code> attribute of an indexed element changes.
+   */
+  void nameChanged(final ElementImpl element, final String oldName, final String newName) {
+    if (oldName != null) {
+      final Entry oldEntry = this.byName.get(oldName);
+      if (oldEntry != null) {
+        oldEntry.remove(element);
+      }
+    }
+    if (newName != null) {
+      getEntry(this.byName, newName).add(element, isAtEnd(element));
+    }
+    this.namesStamp = this.nextStamp();
+  }
+
+  /**
+   * Called when the <code>class</code> attribute of an indexed element
+   * changes.
+   */
+  void classChanged(final ElementImpl element, final String oldValue, final String newValue) {
+    final Set<String> oldClasses = getClassNamesTL(oldValue);
+    final Set<String> newClasses = getClassNamesTL(newValue);
+    final Set<String> removed = new LinkedHashSet<>(oldClasses);
+    removed.removeAll(newClasses);
+    this.removeFromClassEntries(element, removed);
+    newClasses.removeAll(oldClasses);
+    if (!newClasses.isEmpty()) {
+      final boolean atEnd = isAtEnd(element);
+      for (final String className : newClasses) {
+        getEntry(this.byClassName, className).add(element, atEnd);
+      }
+    }
+  }
+
+  private void removeFromClassEntries(final ElementImpl element, final Set<String> classNames) {
+    for (final String className : classNames) {
+      final Entry entry = this.byClassName.get(className);
+      if (entry != null) {
+        entry.remove(element);
+      }
+    }
+  }
+
+  /**
+   * Splits the value of a <code>class</code> attribute into distinct, lowercase
+   * class names.
+   */
+  static Set<String> getClassNamesTL(final String classNames) {
+    final Set<String> result = new LinkedHashSet<>();
+    if (classNames != null) {
+      final StringTokenizer tok = new StringTokenizer(classNames, " \t\r\n\f");
+      while (tok.hasMoreTokens()) {
+        result.add(tok.nextToken().toLowerCase());
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Called when the <code>id</code> attribute of an indexed element changes.
+   */
+  void idChanged() {
+    this.namesStamp = this.nextStamp();
+  }
+
+  private long nextStamp() {
+    return ++this.stamp;
+  }
+
+  private Entry getEntry(final Map<String, Entry> map, final String key) {
+    Entry entry = map.get(key);
+    if (entry == null) {
+      entry = new Entry(this);
+      map.put(key, entry);
+    }
+    return entry;
+  }
+
+  /**
+   * Checks whether no node of the document follows the given node, other than
+   * its own descendents.
+   */
+  private static boolean isAtEnd(final NodeImpl node) {
+    for (NodeImpl n = node; n != null; n = (NodeImpl) n.getParentNode()) {
+      if (n.nextSibling != null) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Compares the position of two attached nodes in document order.
+   */
+  static int compareDocumentOrder(final NodeImpl a, final NodeImpl b) {
+    if (a == b) {
+      return 0;
+    }
+    final List<NodeImpl> pathA = getPath(a);
+    final List<NodeImpl> pathB = getPath(b);
+    final int minLength = Math.min(pathA.size(), pathB.size());
+    int depth = 0;
+    while ((depth < minLength) && (pathA.get(depth) == pathB.get(depth))) {
+      depth++;
+    }
+    if (depth == 0) {
+      // Not in the same tree
+      return 0;
+    } else if (depth == pathA.size()) {
+      // a is an ancestor of b
+      return -1;
+    } else if (depth == pathB.size()) {
+      return 1;
+    }
+    final NodeImpl parent = pathA.get(depth - 1);
+    return Integer.compare(parent.getChildIndex(pathA.get(depth)), parent.getChildIndex(pathB.get(depth)));
+  }
+
+  /**
+   * Gets the ancestors of a node, starting with the root, and ending with the
+   * node itself.
+   */
+  private static List<NodeImpl> getPath(final NodeImpl node) {
+    final ArrayList<NodeImpl> path = new ArrayList<>();
+    for (NodeImpl n = node; n != null; n = (NodeImpl) n.getParentNode()) {
+      path.add(n);
+    }
+    Collections.reverse(path);
+    return path;
+  }
+
+  /**
+   * Elements of the document that share a tag name or a name, in document
+   * order.
+   */
+  static final class Entry {
+    private final ElementIndex index;
+    private final ArrayList<ElementImpl> elements = new ArrayList<>();
+    private long stamp;
+
+    private Entry(final ElementIndex index) {
+      this.index = index;
+      this.stamp = index.nextStamp();
+    }
+
+    /**
+     * Gets the elements of the entry. The list must not be modified.
+     */
+    List<ElementImpl> getElements() {
+      return this.elements;
+    }
+
+    /**
+     * Gets a stamp that is greater than any stamp previously returned by any
+     * entry of the index, if the entry has changed since.
+     */
+    long getStamp() {
+      return this.stamp;
+    }
+
+    ElementIndex getIndex() {
+      return this.index;
+    }
+
+    private void add(final ElementImpl element, final boolean atEnd) {
+      final ArrayList<ElementImpl> elements = this.elements;
+      if (atEnd || elements.isEmpty()) {
+        elements.add(element);
+      } else {
+        int low = 0;
+        int high = elements.size();
+        while (low < high) {
+          final int mid = (low + high) >>> 1;
+          if (compareDocumentOrder(elements.get(mid), element) < 0) {
+            low = mid + 1;
+          } else {
+            high = mid;
+          }
+        }
+        elements.add(low, element);
+      }
+      this.stamp = this.index.nextStamp();
+    }
+
+    private void remove(final ElementImpl element) {
+      final ArrayList<ElementImpl> elements = this.elements;
+      // Scripts tend to remove elements they have recently added, so search
+      // from the end.
+      for (int i = elements.size(); --i >= 0;) {
+        if (elements.get(i) == element) {
+          elements.remove(i);
+          this.stamp = this.index.nextStamp();
+          return;
+        }
+      }
+    }
+  }
+}
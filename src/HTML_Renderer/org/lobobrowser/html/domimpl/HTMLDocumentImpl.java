@@ -22,6 +22,7 @@
  */
 package org.lobobrowser.html.domimpl;
 
+import java.awt.EventQueue;
 import java.io.IOException;
 import java.io.LineNumberReader;
 import java.io.Reader;
@@ -31,31 +32,27 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.lobobrowser.html.HtmlRendererContext;
-import org.lobobrowser.html.domimpl.NodeFilter.AnchorFilter;
-import org.lobobrowser.html.domimpl.NodeFilter.AppletFilter;
-import org.lobobrowser.html.domimpl.NodeFilter.ElementFilter;
-import org.lobobrowser.html.domimpl.NodeFilter.ElementNameFilter;
-import org.lobobrowser.html.domimpl.NodeFilter.FormFilter;
-import org.lobobrowser.html.domimpl.NodeFilter.FrameFilter;
-import org.lobobrowser.html.domimpl.NodeFilter.ImageFilter;
-import org.lobobrowser.html.domimpl.NodeFilter.LinkFilter;
-import org.lobobrowser.html.domimpl.NodeFilter.TagNameFilter;
 import org.lobobrowser.html.io.WritableLineReader;
 import org.lobobrowser.html.js.Event;
 import org.lobobrowser.html.js.Executor;
 import org.lobobrowser.html.js.Location;
 import org.lobobrowser.html.js.Window;
 import org.lobobrowser.html.parser.HtmlParser;
+import org.lobobrowser.html.style.CascadeAnalyzer;
 import org.lobobrowser.html.style.RenderState;
 import org.lobobrowser.html.style.StyleElements;
 import org.lobobrowser.html.style.StyleSheetRenderState;
@@ -64,6 +61,7 @@ import org.lobobrowser.ua.NetworkRequest;
 import org.lobobrowser.ua.UserAgentContext;
 import org.lobobrowser.ua.UserAgentContext.Request;
 import org.lobobrowser.ua.UserAgentContext.RequestKind;
+import org.lobobrowser.util.ConcurrentLRUCache;
 import org.lobobrowser.util.SecurityUtil;
 import org.lobobrowser.util.Urls;
 import org.lobobrowser.util.WeakValueHashMap;
@@ -109,9 +107,18 @@ public class HTMLDocumentImpl extends NodeImpl implements HTMLDocument, Document
   private final UserAgentContext ucontext;
   private final Window window;
   private final Map<String, Element> elementsById = new WeakValueHashMap<>();
+  private final ElementIndex elementIndex = new ElementIndex();
   private String documentURI;
   private java.net.URL documentURL;
   protected final StyleSheetManager styleSheetManager = new StyleSheetManager();
+  private final AtomicInteger styleGeneration = new AtomicInteger();
+  private final AtomicLong computedStyleHits = new AtomicLong();
+  private final AtomicLong computedStyleMisses = new AtomicLong();
+  private final StampedLock linkLock = new StampedLock();
+
+  /** Compiled selectors of scripts, weighed by the length of their text. */
+  private static final int MAX_COMPILED_SELECTORS_WEIGHT = 64 * 1024;
+  private final ConcurrentLRUCache compiledSelectors = new ConcurrentLRUCache(MAX_COMPILED_SELECTORS_WEIGHT);
 
   private WritableLineReader reader;
 
@@ -210,6 +217,24 @@ public class HTMLDocumentImpl extends NodeImpl implements HTMLDocument, Document
     }
   }
 
+  /**
+   * Gets the index of the elements attached to the document. Caller should
+   * hold the tree lock.
+   */
+  ElementIndex getElementIndex() {
+    return this.elementIndex;
+  }
+
+  private IndexedHTMLCollection getTagNameCollection(final String... tagNames) {
+    synchronized (this.treeLock) {
+      final ElementIndex.Entry[] entries = new ElementIndex.Entry[tagNames.length];
+      for (int i = 0; i < tagNames.length; i++) {
+        entries[i] = this.elementIndex.getTagNameEntry(tagNames[i]);
+      }
+      return new IndexedHTMLCollection(this.treeLock, entries);
+    }
+  }
+
   private volatile String baseURI;
 
   /*
@@ -302,7 +327,7 @@ public class HTMLDocumentImpl extends NodeImpl implements HTMLDocument, Document
   public HTMLCollection getImages() {
     synchronized (this) {
       if (this.images == null) {
-        this.images = new DescendentHTMLCollection(this, new ImageFilter(), this.treeLock);
+        this.images = this.getTagNameCollection("IMG");
       }
       return this.images;
     }
@@ -312,7 +337,7 @@ public class HTMLDocumentImpl extends NodeImpl implements HTMLDocument, Document
     synchronized (this) {
       if (this.applets == null) {
         // TODO: Should include OBJECTs that are applets?
-        this.applets = new DescendentHTMLCollection(this, new AppletFilter(), this.treeLock);
+        this.applets = this.getTagNameCollection("APPLET");
       }
       return this.applets;
     }
@@ -321,7 +346,7 @@ public class HTMLDocumentImpl extends NodeImpl implements HTMLDocument, Document
   public HTMLCollection getLinks() {
     synchronized (this) {
       if (this.links == null) {
-        this.links = new DescendentHTMLCollection(this, new LinkFilter(), this.treeLock);
+        this.links = this.getTagNameCollection("LINK", "A", "ANCHOR");
       }
       return this.links;
     }
@@ -330,7 +355,7 @@ public class HTMLDocumentImpl extends NodeImpl implements HTMLDocument, Document
   public HTMLCollection getForms() {
     synchronized (this) {
       if (this.forms == null) {
-        this.forms = new DescendentHTMLCollection(this, new FormFilter(), this.treeLock);
+        this.forms = this.getTagNameCollection("FORM");
       }
       return this.forms;
     }
@@ -339,7 +364,7 @@ public class HTMLDocumentImpl extends NodeImpl implements HTMLDocument, Document
   public HTMLCollection getFrames() {
     synchronized (this) {
       if (this.frames == null) {
-        this.frames = new DescendentHTMLCollection(this, new FrameFilter(), this.treeLock);
+        this.frames = this.getTagNameCollection("FRAME", "IFRAME");
       }
       return this.frames;
     }
@@ -348,7 +373,7 @@ public class HTMLDocumentImpl extends NodeImpl implements HTMLDocument, Document
   public HTMLCollection getAnchors() {
     synchronized (this) {
       if (this.anchors == null) {
-        this.anchors = new DescendentHTMLCollection(this, new AnchorFilter(), this.treeLock);
+        this.anchors = this.getTagNameCollection("A", "ANCHOR");
       }
       return this.anchors;
     }
@@ -424,6 +449,7 @@ public class HTMLDocumentImpl extends NodeImpl implements HTMLDocument, Document
       reader = this.reader;
     }
     if (reader != null) {
+      this.startCheckpoints();
       try {
         final ErrorHandler errorHandler = new LocalErrorHandler();
         final String systemId = this.documentURI;
@@ -431,6 +457,7 @@ public class HTMLDocumentImpl extends NodeImpl implements HTMLDocument, Document
         final HtmlParser parser = new HtmlParser(this.ucontext, this, errorHandler, publicId, systemId);
         parser.parse(reader);
       } finally {
+        this.loadingThread = null;
         if (closeReader) {
           try {
             reader.close();
@@ -442,6 +469,8 @@ public class HTMLDocumentImpl extends NodeImpl implements HTMLDocument, Document
           }
         }
       }
+      // Render the rest without waiting for the notification timer.
+      this.loadCheckpoint();
     }
   }
 
@@ -504,11 +533,13 @@ public class HTMLDocumentImpl extends NodeImpl implements HTMLDocument, Document
   }
 
   /**
-   * Gets the collection of elements whose <code>name</code> attribute is
+   * Gets the live collection of elements whose <code>name</code> attribute is
    * <code>elementName</code>.
    */
   public NodeList getElementsByName(final String elementName) {
-    return this.getNodeList(new ElementNameFilter(elementName));
+    synchronized (this.treeLock) {
+      return new IndexedHTMLCollection(this.treeLock, this.elementIndex.getNameEntry(elementName));
+    }
   }
 
   private DocumentType doctype;
@@ -523,14 +554,9 @@ public class HTMLDocumentImpl extends NodeImpl implements HTMLDocument, Document
 
   public Element getDocumentElement() {
     synchronized (this.treeLock) {
-      final ArrayList<Node> nl = this.nodeList;
-      if (nl != null) {
-        final Iterator<Node> i = nl.iterator();
-        while (i.hasNext()) {
-          final Object node = i.next();
-          if (node instanceof Element) {
-            return (Element) node;
-          }
+      for (NodeImpl node = this.firstChild; node != null; node = node.nextSibling) {
+        if (node instanceof Element) {
+          return (Element) node;
         }
       }
       return null;
@@ -588,18 +614,14 @@ public class HTMLDocumentImpl extends NodeImpl implements HTMLDocument, Document
   }
 
   /**
-   * Gets all elements that match the given tag name.
+   * Gets a live list of the elements that match the given tag name.
    *
    * @param tagname
    *          The element tag name or an asterisk character (*) to match all
    *          elements.
    */
   public NodeList getElementsByTagName(final String tagname) {
-    if ("*".equals(tagname)) {
-      return this.getNodeList(new ElementFilter());
-    } else {
-      return this.getNodeList(new TagNameFilter(tagname));
-    }
+    return this.getTagNameCollection(tagname);
   }
 
   public Node importNode(final Node importedNode, final boolean deep) throws DOMException {
@@ -862,14 +884,9 @@ public class HTMLDocumentImpl extends NodeImpl implements HTMLDocument, Document
         // this point.
         this.forgetRenderState();
         // TODO: this might be ineffcient.
-        final ArrayList<Node> nl = this.nodeList;
-        if (nl != null) {
-          final Iterator<Node> i = nl.iterator();
-          while (i.hasNext()) {
-            final Object node = i.next();
-            if (node instanceof HTMLElementImpl) {
-              ((HTMLElementImpl) node).forgetStyle(true);
-            }
+        for (NodeImpl node = this.firstChild; node != null; node = node.nextSibling) {
+          if (node instanceof HTMLElementImpl) {
+            ((HTMLElementImpl) node).forgetStyle(true);
           }
         }
       }
@@ -881,8 +898,115 @@ public class HTMLDocumentImpl extends NodeImpl implements HTMLDocument, Document
     return styleSheetManager.constructStyleSheetList();
   }
 
+  /**
+   * Checks whether the style sheets of the document can position elements
+   * absolutely. If not, only the style attributes of elements can.
+   */
+  public boolean declaresAbsolutePosition() {
+    return this.styleSheetManager.getAnalyzer().declaresAbsolutePosition();
+  }
+
+  /**
+   * Gets the current style generation. Computed styles cached by elements are
+   * only valid while the generation they were stamped with is current.
+   */
+  int getStyleGeneration() {
+    return this.styleGeneration.get();
+  }
+
+  /**
+   * Invalidates all the computed styles cached by elements of this document.
+   * Called when style sheets change and when the structure of the document
+   * changes. Attribute and hover changes forget the styles of the affected
+   * elements instead.
+   */
+  void bumpStyleGeneration() {
+    this.styleGeneration.incrementAndGet();
+  }
+
+  StampedLock getLinkLock() {
+    return this.linkLock;
+  }
+
+  /**
+   * Gets the compiled form of a group of selectors, compiling it if it is not
+   * cached.
+   *
+   * @throws DOMException
+   *           If the selectors are not valid.
+   */
+  CompiledSelector getCompiledSelector(final String selectors) throws DOMException {
+    final CompiledSelector cached = (CompiledSelector) this.compiledSelectors.get(selectors);
+    if (cached != null) {
+      return cached;
+    }
+    final CompiledSelector selector = CompiledSelector.compile(selectors);
+    this.compiledSelectors.put(selectors, selector, selectors.length() + 1);
+    return selector;
+  }
+
+  void computedStyleCacheHit() {
+    this.computedStyleHits.incrementAndGet();
+  }
+
+  void computedStyleCacheMiss() {
+    this.computedStyleMisses.incrementAndGet();
+  }
+
+  /**
+   * Gets the number of computed style lookups served from the cache.
+   */
+  public long getComputedStyleCacheHits() {
+    return this.computedStyleHits.get();
+  }
+
+  /**
+   * Gets the number of computed style lookups that had to be resolved.
+   */
+  public long getComputedStyleCacheMisses() {
+    return this.computedStyleMisses.get();
+  }
+
   private final ArrayList<DocumentNotificationListener> documentNotificationListeners = new ArrayList<>(1);
 
+  /**
+   * Interval between the first two load checkpoints. The interval doubles
+   * after each checkpoint, up to the maximum, so that the first content is
+   * shown early, but a long document is not laid out over and over.
+   */
+  private static final long FIRST_CHECKPOINT_INTERVAL = TimeUnit.MILLISECONDS.toNanos(50);
+  private static final long MAX_CHECKPOINT_INTERVAL = TimeUnit.MILLISECONDS.toNanos(1000);
+
+  /** The thread running the parser. Checkpoints are only kept in this thread. */
+  private volatile Thread loadingThread;
+  private long checkpointInterval;
+  private long nextCheckpoint;
+
+  private void startCheckpoints() {
+    this.checkpointInterval = FIRST_CHECKPOINT_INTERVAL;
+    this.nextCheckpoint = System.nanoTime() + FIRST_CHECKPOINT_INTERVAL;
+    this.loadingThread = Thread.currentThread();
+  }
+
+  /**
+   * Informs listeners of a load checkpoint if one is due. Only has an effect
+   * in the parser thread.
+   *
+   * @param force
+   *          Whether to take a checkpoint even if the interval is not over.
+   */
+  private void checkpointIfDue(final boolean force) {
+    if (Thread.currentThread() == this.loadingThread) {
+      final long time = System.nanoTime();
+      if (force || (time - this.nextCheckpoint >= 0)) {
+        final long interval = Math.min(this.checkpointInterval * 2, MAX_CHECKPOINT_INTERVAL);
+        this.checkpointInterval = interval;
+        this.nextCheckpoint = time + interval;
+        this.loadCheckpoint();
+      }
+    }
+  }
+
   /**
    * Adds a document notification listener, which is informed about changes to
    * the document.
@@ -1046,6 +1170,7 @@ public class HTMLDocumentImpl extends NodeImpl implements HTMLDocument, Document
         // ignore
       }
     }
+    this.checkpointIfDue(false);
   }
 
   public void externalScriptLoading(final NodeImpl node) {
@@ -1066,6 +1191,31 @@ public class HTMLDocumentImpl extends NodeImpl implements HTMLDocument, Document
         // ignore
       }
     }
+    // Show what's there before the script's effects, as if it blocked.
+    this.checkpointIfDue(true);
+  }
+
+  /**
+   * Informs listeners that the partly loaded document is worth rendering.
+   */
+  public void loadCheckpoint() {
+    final ArrayList<DocumentNotificationListener> listenersList = this.documentNotificationListeners;
+    int size;
+    synchronized (listenersList) {
+      size = listenersList.size();
+    }
+    // Traverse list outside synchronized block.
+    // (Shouldn't call listener methods in synchronized block.
+    // Deadlock is possible). But assume list could have
+    // been changed.
+    for (int i = 0; i < size; i++) {
+      try {
+        final DocumentNotificationListener dnl = listenersList.get(i);
+        dnl.loadCheckpoint();
+      } catch (final IndexOutOfBoundsException iob) {
+        // ignore
+      }
+    }
   }
 
   /**
@@ -1123,6 +1273,7 @@ public class HTMLDocumentImpl extends NodeImpl implements HTMLDocument, Document
     final String urlText = url.toExternalForm();
     final Map<String, ImageInfo> map = this.imageInfos;
     ImageEvent event = null;
+    ImageInfo newInfo = null;
     synchronized (map) {
       final ImageInfo info = map.get(urlText);
       if (info != null) {
@@ -1134,52 +1285,165 @@ public class HTMLDocumentImpl extends NodeImpl implements HTMLDocument, Document
           info.addListener(imageListener);
         }
       } else {
-        final UserAgentContext uac = rcontext.getUserAgentContext();
-        final NetworkRequest httpRequest = uac.createHttpRequest();
-        final ImageInfo newInfo = new ImageInfo();
+        newInfo = new ImageInfo();
         map.put(urlText, newInfo);
         newInfo.addListener(imageListener);
-        httpRequest.addNetworkRequestListener(netEvent -> {
-          if (httpRequest.getReadyState() == NetworkRequest.STATE_COMPLETE) {
-            final java.awt.Image newImage = httpRequest.getResponseImage();
-            final ImageEvent newEvent = newImage == null ? null : new ImageEvent(HTMLDocumentImpl.this, newImage);
-            ImageListener[] listeners;
-            synchronized (map) {
-              newInfo.imageEvent = newEvent;
-              newInfo.loaded = true;
-              listeners = newEvent == null ? null : newInfo.getListeners();
-              // Must remove from map in the locked block
-              // that got the listeners. Otherwise a new
-              // listener might miss the event??
-              map.remove(urlText);
-            }
-            if (listeners != null) {
-              final int llength = listeners.length;
-              for (int i = 0; i < llength; i++) {
-                // Call holding no locks
-                listeners[i].imageLoaded(newEvent);
-              }
-            }
-          }
-        });
-
-        SecurityUtil.doPrivileged(() -> {
-          try {
-            httpRequest.open("GET", url, true);
-            httpRequest.send(null, new Request(url, RequestKind.Image));
-          } catch (final java.io.IOException thrown) {
-            logger.log(Level.WARNING, "loadImage()", thrown);
-          }
-          return null;
-        });
       }
     }
+    if (newInfo != null) {
+      final ImageInfo requestedInfo = newInfo;
+      // Call holding no locks, since the request may already be complete.
+      this.requestAsync(url, RequestKind.Image, httpRequest -> this.imageRequestCompleted(httpRequest, urlText, requestedInfo));
+    }
     if (event != null) {
       // Call holding no locks.
       imageListener.imageLoaded(event);
     }
   }
 
+  private void imageRequestCompleted(final NetworkRequest httpRequest, final String urlText, final ImageInfo info) {
+    final java.awt.Image newImage = httpRequest.getResponseImage();
+    final ImageEvent newEvent = newImage == null ? null : new ImageEvent(this, newImage);
+    final Map<String, ImageInfo> map = this.imageInfos;
+    ImageListener[] listeners;
+    synchronized (map) {
+      info.imageEvent = newEvent;
+      info.loaded = true;
+      listeners = newEvent == null ? null : info.getListeners();
+      // Must remove from map in the locked block
+      // that got the listeners. Otherwise a new
+      // listener might miss the event??
+      map.remove(urlText);
+    }
+    if (listeners != null) {
+      final int llength = listeners.length;
+      for (int i = 0; i < llength; i++) {
+        // Call holding no locks
+        listeners[i].imageLoaded(newEvent);
+      }
+    }
+  }
+
+  private final Map<String, PreloadedRequest> preloads = new HashMap<>();
+
+  /**
+   * Starts an asynchronous request for a resource that the document is
+   * expected to need, so that it's ready, or at least on its way, by the time
+   * its element is processed. This is called by the preload scanner while the
+   * document is being parsed.
+   */
+  public void preload(final URL url, final RequestKind kind) {
+    final String protocol = url.getProtocol();
+    if (!"http".equalsIgnoreCase(protocol) && !"https".equalsIgnoreCase(protocol)) {
+      return;
+    }
+    final UserAgentContext uac = this.ucontext;
+    switch (kind) {
+    case JavaScript:
+      if (!uac.isScriptingEnabled()) {
+        return;
+      }
+      break;
+    case CSS:
+      if (!uac.isExternalCSSEnabled()) {
+        return;
+      }
+      break;
+    case Image: {
+      final HtmlRendererContext rcontext = this.rcontext;
+      if ((rcontext == null) || !rcontext.isImageLoadingEnabled()) {
+        return;
+      }
+      break;
+    }
+    default:
+      break;
+    }
+    final Request request = new Request(url, kind);
+    if (!uac.isRequestPermitted(request)) {
+      return;
+    }
+    final String urlText = url.toExternalForm();
+    final NetworkRequest httpRequest;
+    synchronized (this.preloads) {
+      if (this.preloads.containsKey(urlText)) {
+        return;
+      }
+      httpRequest = uac.createHttpRequest();
+      // Consumers wait for the preload to complete, even if it fails.
+      httpRequest.setCompleteOnFailure(true);
+      this.preloads.put(urlText, new PreloadedRequest(httpRequest));
+    }
+    SecurityUtil.doPrivileged(() -> {
+      try {
+        httpRequest.open("GET", url, true);
+        httpRequest.send(null, request);
+      } catch (final java.io.IOException thrown) {
+        logger.log(Level.WARNING, "preload()", thrown);
+      }
+      return null;
+    });
+  }
+
+  /**
+   * Makes an asynchronous GET request, or takes over the preload of the URL if
+   * there is one. The callback is invoked once the request is complete, which
+   * may be right away.
+   */
+  private void requestAsync(final URL url, final RequestKind kind, final Consumer<NetworkRequest> callback) {
+    final PreloadedRequest preload = this.takePreload(url.toExternalForm());
+    if (preload != null) {
+      preload.whenComplete(() -> callback.accept(preload.request));
+      return;
+    }
+    final NetworkRequest httpRequest = this.ucontext.createHttpRequest();
+    final Request request = new Request(url, kind);
+    if (!this.ucontext.isRequestPermitted(request)) {
+      // Complete with an empty response.
+      callback.accept(httpRequest);
+      return;
+    }
+    httpRequest.addNetworkRequestListener(netEvent -> {
+      if (httpRequest.getReadyState() == NetworkRequest.STATE_COMPLETE) {
+        callback.accept(httpRequest);
+      }
+    });
+    SecurityUtil.doPrivileged(() -> {
+      try {
+        httpRequest.open("GET", url, true);
+        httpRequest.send(null, request);
+      } catch (final java.io.IOException thrown) {
+        logger.log(Level.WARNING, "requestAsync()", thrown);
+      }
+      return null;
+    });
+  }
+
+  private PreloadedRequest takePreload(final String urlText) {
+    synchronized (this.preloads) {
+      return this.preloads.remove(urlText);
+    }
+  }
+
+  /**
+   * Gets the completed request that preloaded the given URL, waiting for it if
+   * it is still in progress. Returns <code>null</code> if the URL was not
+   * preloaded, or if the preload did not complete in time. The caller should
+   * then make the request itself.
+   */
+  public NetworkRequest takePreloadedRequest(final URL url) {
+    final PreloadedRequest preload = this.takePreload(url.toExternalForm());
+    if (preload == null) {
+      return null;
+    }
+    if (preload.awaitCompletion(PRELOAD_TIMEOUT_MILLIS)) {
+      return preload.request;
+    } else {
+      preload.request.abort();
+      return null;
+    }
+  }
+
   private Function onloadHandler;
   private final List<Function> onloadHandlers = new ArrayList<>();
 
@@ -1218,6 +1482,73 @@ public class HTMLDocumentImpl extends NodeImpl implements HTMLDocument, Document
     return new HTMLDocumentImpl(this.ucontext, this.rcontext, this.reader, this.documentURI);
   }
 
+  private static final long PRELOAD_TIMEOUT_MILLIS = 60000;
+
+  private static final class PreloadedRequest {
+    private final NetworkRequest request;
+    private boolean complete = false;
+    private List<Runnable> completionJobs = null;
+
+    PreloadedRequest(final NetworkRequest request) {
+      this.request = request;
+      request.addNetworkRequestListener(netEvent -> {
+        if (request.getReadyState() == NetworkRequest.STATE_COMPLETE) {
+          this.completed();
+        }
+      });
+    }
+
+    private void completed() {
+      final List<Runnable> jobs;
+      synchronized (this) {
+        if (this.complete) {
+          return;
+        }
+        this.complete = true;
+        jobs = this.completionJobs;
+        this.completionJobs = null;
+        this.notifyAll();
+      }
+      if (jobs != null) {
+        jobs.forEach(j -> j.run());
+      }
+    }
+
+    /**
+     * Runs the job when the request completes, or right away if it already
+     * has.
+     */
+    void whenComplete(final Runnable job) {
+      synchronized (this) {
+        if (!this.complete) {
+          if (this.completionJobs == null) {
+            this.completionJobs = new ArrayList<>(1);
+          }
+          this.completionJobs.add(job);
+          return;
+        }
+      }
+      job.run();
+    }
+
+    synchronized boolean awaitCompletion(final long timeoutMillis) {
+      final long deadline = System.currentTimeMillis() + timeoutMillis;
+      try {
+        while (!this.complete) {
+          final long remaining = deadline - System.currentTimeMillis();
+          if (remaining <= 0) {
+            return false;
+          }
+          this.wait(remaining);
+        }
+        return true;
+      } catch (final InterruptedException ie) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+    }
+  }
+
   private static class ImageInfo {
     // Access to this class is synchronized on imageInfos.
     public ImageEvent imageEvent;
@@ -1273,32 +1604,106 @@ public class HTMLDocumentImpl extends NodeImpl implements HTMLDocument, Document
     onloadHandlers.remove(handler);
   }
 
+  private final Object jobsLock = new Object();
   private List<Runnable> jobs = new LinkedList<>();
+  private List<Runnable> deferredJobs = new LinkedList<>();
+  private boolean jobsFinished = false;
+  private int pendingAsyncScripts = 0;
+  private boolean loadEventWaiting = false;
 
   public void addJob(final Runnable job) {
-    synchronized (jobs) {
-      jobs.add(job);
+    synchronized (this.jobsLock) {
+      this.jobs.add(job);
+    }
+  }
+
+  /**
+   * Adds a job that runs after the other pending jobs, once the document has
+   * been parsed. Deferred jobs run in the order they were added.
+   */
+  public void addDeferredJob(final Runnable job) {
+    synchronized (this.jobsLock) {
+      this.deferredJobs.add(job);
     }
   }
 
   private void runAllPending() {
-    boolean done = false;
-    while (!done) {
+    for (;;) {
       List<Runnable> jobsCopy;
-      synchronized (jobs) {
-        jobsCopy = jobs;
-        jobs = new LinkedList<>();
+      synchronized (this.jobsLock) {
+        if (!this.jobs.isEmpty()) {
+          jobsCopy = this.jobs;
+          this.jobs = new LinkedList<>();
+        } else if (!this.deferredJobs.isEmpty()) {
+          jobsCopy = this.deferredJobs;
+          this.deferredJobs = new LinkedList<>();
+        } else {
+          this.jobsFinished = true;
+          return;
+        }
       }
       jobsCopy.forEach(j -> j.run());
-      synchronized (jobs) {
-        done = jobs.size() == 0;
+    }
+  }
+
+  /**
+   * Fetches a script without blocking, and runs the given job once it has
+   * arrived: with the pending jobs if the document is still loading, or on the
+   * GUI thread otherwise. The load event is held back until it has run.
+   */
+  void loadAsyncScript(final URL url, final Consumer<NetworkRequest> script) {
+    synchronized (this.jobsLock) {
+      this.pendingAsyncScripts++;
+    }
+    this.requestAsync(url, RequestKind.JavaScript, request -> {
+      final Runnable job = () -> {
+        try {
+          script.accept(request);
+        } finally {
+          this.asyncScriptDone();
+        }
+      };
+      synchronized (this.jobsLock) {
+        if (!this.jobsFinished) {
+          this.jobs.add(job);
+          return;
+        }
+      }
+      EventQueue.invokeLater(job);
+    });
+  }
+
+  private void asyncScriptDone() {
+    final boolean dispatch;
+    synchronized (this.jobsLock) {
+      this.pendingAsyncScripts--;
+      dispatch = this.loadEventWaiting && (this.pendingAsyncScripts == 0);
+      if (dispatch) {
+        this.loadEventWaiting = false;
       }
     }
+    if (dispatch) {
+      this.dispatchLoadEvent();
+    }
   }
 
   public void finishModifications() {
     StyleElements.normalizeHTMLTree(this);
     runAllPending();
+    final List<PreloadedRequest> unclaimed;
+    synchronized (this.preloads) {
+      // Anything not claimed by now was a false hit of the preload scanner.
+      unclaimed = new ArrayList<>(this.preloads.values());
+      this.preloads.clear();
+    }
+    unclaimed.forEach(preload -> preload.request.abort());
+    synchronized (this.jobsLock) {
+      if (this.pendingAsyncScripts > 0) {
+        // The last async script to run will dispatch it.
+        this.loadEventWaiting = true;
+        return;
+      }
+    }
     dispatchLoadEvent();
 
     /* Nodes.forEachNode(document, node -> {
@@ -1315,6 +1720,7 @@ public class HTMLDocumentImpl extends NodeImpl implements HTMLDocument, Document
   final class StyleSheetManager {
 
     private volatile List<JStyleSheetWrapper> styleSheets = null;
+    private volatile CascadeAnalyzer analyzer = null;
 
     final StyleSheetBridge bridge = new StyleSheetBridge() {
 
@@ -1334,7 +1740,7 @@ public class HTMLDocumentImpl extends NodeImpl implements HTMLDocument, Document
             }
           }
         }
-        allInvalidated();
+        rulesChanged();
       }
 
       public List<JStyleSheetWrapper> getDocStyleSheets() {
@@ -1384,11 +1790,55 @@ public class HTMLDocumentImpl extends NodeImpl implements HTMLDocument, Document
       return jStyleSheets;
     }
 
+    /**
+     * Gets an analyzer for the recommended, user agent and enabled document
+     * style sheets. It is built once and reused by all elements until the style
+     * sheets change.
+     */
+    CascadeAnalyzer getAnalyzer() {
+      CascadeAnalyzer a = this.analyzer;
+      if (a == null) {
+        synchronized (treeLock) {
+          a = this.analyzer;
+          if (a == null) {
+            final List<cz.vutbr.web.css.StyleSheet> jSheets = new ArrayList<>();
+            jSheets.add(HTMLElementImpl.recommendedStyle);
+            jSheets.add(HTMLElementImpl.userAgentStyle);
+            jSheets.addAll(this.getEnabledJStyleSheets());
+            a = new CascadeAnalyzer(jSheets, HTMLElementImpl.elementMatchCondition);
+            this.analyzer = a;
+          }
+        }
+      }
+      return a;
+    }
+
+    /**
+     * Makes a style sheet of the document report the changes CSSOM makes to its
+     * rules in place. The style sheet must not be shared with other documents.
+     */
+    cz.vutbr.web.css.StyleSheet observe(final cz.vutbr.web.css.StyleSheet jSheet) {
+      if (jSheet != null) {
+        ObservedRuleList.observe(jSheet, this::rulesChanged);
+      }
+      return jSheet;
+    }
+
+    private void rulesChanged() {
+      synchronized (treeLock) {
+        this.analyzer = null;
+      }
+      bumpStyleGeneration();
+      allInvalidated(true);
+    }
+
     void invalidateStyles() {
       synchronized (treeLock) {
         this.styleSheets = null;
+        this.analyzer = null;
       }
-      allInvalidated();
+      bumpStyleGeneration();
+      allInvalidated(true);
     }
 
     StyleSheetList constructStyleSheetList() {
@@ -26,8 +26,8 @@ import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -38,7 +38,9 @@ import org.lobobrowser.html.FormInput;
 import org.lobobrowser.html.parser.HtmlParser;
 import org.lobobrowser.html.style.CSS2PropertiesContext;
 import org.lobobrowser.html.style.CSSNorm;
+import org.lobobrowser.html.style.AncestorFilter;
 import org.lobobrowser.html.style.CSSUtilities;
+import org.lobobrowser.html.style.CascadeAnalyzer;
 import org.lobobrowser.html.style.ComputedJStyleProperties;
 import org.lobobrowser.html.style.JStyleProperties;
 import org.lobobrowser.html.style.LocalJStyleProperties;
@@ -60,13 +62,26 @@ import cz.vutbr.web.css.Selector;
 import cz.vutbr.web.css.Selector.PseudoDeclaration;
 import cz.vutbr.web.css.StyleSheet;
 import cz.vutbr.web.csskit.MatchConditionOnElements;
-import cz.vutbr.web.domassign.DirectAnalyzer;
 
 public class HTMLElementImpl extends ElementImpl implements HTMLElement, CSS2PropertiesContext {
   private final boolean noStyleSheet;
-  private static final MatchConditionOnElements elementMatchCondition = new MatchConditionOnElements();
-  private static final StyleSheet recommendedStyle = parseStyle(CSSNorm.stdStyleSheet(), StyleSheet.Origin.AGENT);
-  private static final StyleSheet userAgentStyle = parseStyle(CSSNorm.userStyleSheet(), StyleSheet.Origin.AGENT);
+  static final MatchConditionOnElements elementMatchCondition = new MatchConditionOnElements();
+  static final StyleSheet recommendedStyle = parseStyle(CSSNorm.stdStyleSheet(), StyleSheet.Origin.AGENT);
+  static final StyleSheet userAgentStyle = parseStyle(CSSNorm.userStyleSheet(), StyleSheet.Origin.AGENT);
+
+  /** Resolved style of the element itself. Cleared by {@link #forgetStyle(boolean)}. */
+  private volatile NodeData cachedNodeData;
+  /** Bloom filter of this element and its ancestors, used by its children. */
+  private volatile AncestorFilter childrenAncestorFilter;
+  private int styleStamp;
+
+  /** Memo of the analyzer for the attribute and inline style sheets. */
+  private CascadeAnalyzer localAnalyzer;
+  private boolean localAnalyzerValid;
+
+  /** Computed style objects, valid while their generation is current. */
+  private volatile CachedStyle currentStyle;
+  private Map<Selector.PseudoDeclaration, CachedStyle> computedStyles;
 
   public HTMLElementImpl(final String name, final boolean noStyleSheet) {
     super(name);
@@ -86,6 +101,8 @@ public class HTMLElementImpl extends ElementImpl implements HTMLElement, CSS2Pro
       this.localStyleDeclarationState = null;
       this.computedStyles = null;
        */
+      this.localAnalyzer = null;
+      this.localAnalyzerValid = false;
     }
   }
 
@@ -100,15 +117,15 @@ public class HTMLElementImpl extends ElementImpl implements HTMLElement, CSS2Pro
       this.isHoverStyle = null;
       this.hasHoverStyleByElement = null;
        */
+      this.cachedNodeData = null;
+      this.childrenAncestorFilter = null;
+      this.styleStamp++;
+      this.currentStyle = null;
+      this.computedStyles = null;
       if (deep) {
-        final java.util.ArrayList<Node> nl = this.nodeList;
-        if (nl != null) {
-          final Iterator<Node> i = nl.iterator();
-          while (i.hasNext()) {
-            final Object node = i.next();
-            if (node instanceof HTMLElementImpl) {
-              ((HTMLElementImpl) node).forgetStyle(deep);
-            }
+        for (NodeImpl node = this.firstChild; node != null; node = node.nextSibling) {
+          if (node instanceof HTMLElementImpl) {
+            ((HTMLElementImpl) node).forgetStyle(deep);
           }
         }
       }
@@ -119,11 +136,37 @@ public class HTMLElementImpl extends ElementImpl implements HTMLElement, CSS2Pro
    * Gets the style object associated with the element. It may return null only
    * if the type of element does not handle stylesheets.
    */
-  // TODO Cache this method
   // TODO hide from JS
   public JStyleProperties getCurrentStyle() {
+    final HTMLDocumentImpl doc = (HTMLDocumentImpl) this.document;
+    final int generation = doc.getStyleGeneration();
+    final CachedStyle cached = this.currentStyle;
+    if ((cached != null) && (cached.generation == generation)) {
+      doc.computedStyleCacheHit();
+      return cached.style;
+    }
+    doc.computedStyleCacheMiss();
+    final int stamp;
+    synchronized (this) {
+      stamp = this.styleStamp;
+    }
+    final JStyleProperties style = new ComputedJStyleProperties(this, getNodeData(null), true);
     synchronized (this) {
-      return new ComputedJStyleProperties(this, getNodeData(null), true);
+      // The style is not kept if it was forgotten while being computed.
+      if ((stamp == this.styleStamp) && (generation == doc.getStyleGeneration())) {
+        this.currentStyle = new CachedStyle(style, generation);
+      }
+    }
+    return style;
+  }
+
+  private static final class CachedStyle {
+    final JStyleProperties style;
+    final int generation;
+
+    CachedStyle(final JStyleProperties style, final int generation) {
+      this.style = style;
+      this.generation = generation;
     }
   }
 
@@ -137,37 +180,104 @@ public class HTMLElementImpl extends ElementImpl implements HTMLElement, CSS2Pro
     }
   }
 
-  // TODO Cache this method
   private NodeData getNodeData(final Selector.PseudoDeclaration psuedoElement) {
-    final HTMLDocumentImpl doc = (HTMLDocumentImpl) this.document;
-    final List<StyleSheet> jSheets = new ArrayList<>();
-    jSheets.add(recommendedStyle);
-    jSheets.add(userAgentStyle);
-    jSheets.addAll(doc.styleSheetManager.getEnabledJStyleSheets());
-
-    final StyleSheet attributeStyle = StyleElements.convertAttributesToStyles(this);
-    if (attributeStyle != null) {
-      jSheets.add(attributeStyle);
+    if (psuedoElement == null) {
+      final NodeData cached = this.cachedNodeData;
+      if (cached != null) {
+        return cached;
+      }
     }
 
-    final StyleSheet inlineStyle = this.getInlineJStyle();
-    if (inlineStyle != null) {
-      jSheets.add(inlineStyle);
+    int stamp;
+    synchronized (this) {
+      stamp = this.styleStamp;
     }
 
-    final DirectAnalyzer domAnalyser = new cz.vutbr.web.domassign.DirectAnalyzer(jSheets);
-    domAnalyser.registerMatchCondition(elementMatchCondition);
-
-    final NodeData nodeData = domAnalyser.getElementStyle(this, psuedoElement, "screen");
+    // The parent is resolved (and cached) first, outside of this element's
+    // lock, so that locks are never taken from child to parent.
     final Node parent = this.parentNode;
-    if ((parent != null) && (parent instanceof HTMLElementImpl)) {
+    final NodeData parentData;
+    final AncestorFilter ancestorFilter;
+    if (parent instanceof HTMLElementImpl) {
       final HTMLElementImpl parentElement = (HTMLElementImpl) parent;
-      nodeData.inheritFrom(parentElement.getNodeData(psuedoElement));
+      parentData = parentElement.getNodeData(psuedoElement);
+      ancestorFilter = parentElement.getChildrenAncestorFilter();
+    } else {
+      parentData = null;
+      ancestorFilter = AncestorFilter.EMPTY;
+    }
+
+    final HTMLDocumentImpl doc = (HTMLDocumentImpl) this.document;
+    final NodeData nodeData = CascadeAnalyzer.cascade(this, psuedoElement, doc.styleSheetManager.getAnalyzer(), this.getLocalAnalyzer(),
+        ancestorFilter);
+    if (parentData != null) {
+      nodeData.inheritFrom(parentData);
       nodeData.concretize();
     }
+
+    if (psuedoElement == null) {
+      synchronized (this) {
+        if (stamp == this.styleStamp) {
+          this.cachedNodeData = nodeData;
+        }
+      }
+    }
     return nodeData;
   }
 
+  private AncestorFilter getChildrenAncestorFilter() {
+    final AncestorFilter cached = this.childrenAncestorFilter;
+    if (cached != null) {
+      return cached;
+    }
+    int stamp;
+    synchronized (this) {
+      stamp = this.styleStamp;
+    }
+    final Node parent = this.parentNode;
+    final AncestorFilter ownFilter = parent instanceof HTMLElementImpl ? ((HTMLElementImpl) parent).getChildrenAncestorFilter()
+        : AncestorFilter.EMPTY;
+    final AncestorFilter filter = CascadeAnalyzer.extendFilter(ownFilter, this);
+    synchronized (this) {
+      if (stamp == this.styleStamp) {
+        this.childrenAncestorFilter = filter;
+      }
+    }
+    return filter;
+  }
+
+  /**
+   * Gets an analyzer for the style sheets that belong to this element alone,
+   * that is, those derived from presentational attributes and from the style
+   * attribute. Returns <code>null</code> if there are no such style sheets.
+   * The analyzer is kept until an attribute changes.
+   */
+  private CascadeAnalyzer getLocalAnalyzer() {
+    synchronized (this) {
+      if (!this.localAnalyzerValid) {
+        this.localAnalyzer = this.createLocalAnalyzer();
+        this.localAnalyzerValid = true;
+      }
+      return this.localAnalyzer;
+    }
+  }
+
+  private CascadeAnalyzer createLocalAnalyzer() {
+    final StyleSheet attributeStyle = StyleElements.convertAttributesToStyles(this);
+    final StyleSheet inlineStyle = this.getInlineJStyle();
+    if ((attributeStyle == null) && (inlineStyle == null)) {
+      return null;
+    }
+    final List<StyleSheet> jSheets = new ArrayList<>(2);
+    if (attributeStyle != null) {
+      jSheets.add(attributeStyle);
+    }
+    if (inlineStyle != null) {
+      jSheets.add(inlineStyle);
+    }
+    return new CascadeAnalyzer(jSheets, elementMatchCondition);
+  }
+
   /**
    * Gets the local style object associated with the element. The properties
    * object returned only includes properties from the local style attribute. It
@@ -212,7 +322,34 @@ public class HTMLElementImpl extends ElementImpl implements HTMLElement, CSS2Pro
   // Chromium(v37) and firefox(v32) do not expose this function
   // couldn't find anything in the standards.
   public JStyleProperties getComputedStyle(final String pseudoElement) {
-    return new ComputedJStyleProperties(this, getNodeData(getPseudoDeclaration(pseudoElement)), false);
+    final HTMLDocumentImpl doc = (HTMLDocumentImpl) this.document;
+    final int generation = doc.getStyleGeneration();
+    final Selector.PseudoDeclaration pseudoDeclaration = getPseudoDeclaration(pseudoElement);
+    synchronized (this) {
+      final Map<Selector.PseudoDeclaration, CachedStyle> cs = this.computedStyles;
+      final CachedStyle cached = cs == null ? null : cs.get(pseudoDeclaration);
+      if ((cached != null) && (cached.generation == generation)) {
+        doc.computedStyleCacheHit();
+        return cached.style;
+      }
+    }
+    doc.computedStyleCacheMiss();
+    final int stamp;
+    synchronized (this) {
+      stamp = this.styleStamp;
+    }
+    final JStyleProperties style = new ComputedJStyleProperties(this, getNodeData(pseudoDeclaration), false);
+    synchronized (this) {
+      if ((stamp == this.styleStamp) && (generation == doc.getStyleGeneration())) {
+        Map<Selector.PseudoDeclaration, CachedStyle> cs = this.computedStyles;
+        if (cs == null) {
+          cs = new HashMap<>(2);
+          this.computedStyles = cs;
+        }
+        cs.put(pseudoDeclaration, new CachedStyle(style, generation));
+      }
+    }
+    return style;
   }
 
   public void setStyle(final Object value) {
@@ -267,12 +404,16 @@ public class HTMLElementImpl extends ElementImpl implements HTMLElement, CSS2Pro
 
   @Override
   protected void assignAttributeField(final String normalName, final String value) {
+    // Presentational attributes as well as the style attribute feed the
+    // local style sheets, and descendants inherit the resulting style. This is
+    // needed even while notifications are suspended.
+    this.forgetLocalStyle();
+    this.forgetStyle(true);
+    final boolean siblingsAffected = this.isSiblingSelectorAttribute(normalName);
     if (!this.notificationsSuspended) {
-      this.informInvalidAttibute(normalName);
-    } else {
-      if ("style".equals(normalName)) {
-        this.forgetLocalStyle();
-      }
+      this.informInvalidAttibute(siblingsAffected);
+    } else if (siblingsAffected) {
+      this.forgetFollowingSiblingStyles(false);
     }
     super.assignAttributeField(normalName, value);
   }
@@ -300,6 +441,10 @@ public class HTMLElementImpl extends ElementImpl implements HTMLElement, CSS2Pro
         // TODO: OPTIMIZATION: In some cases it should be much
         // better to simply invalidate the "look" of the node.
         this.informInvalid();
+        // Following siblings as well (e.g. h1:hover + p { ... } )
+        if (this.hasSiblingSelectors()) {
+          this.forgetFollowingSiblingStyles(true);
+        }
       }
     }
   }
@@ -311,22 +456,26 @@ public class HTMLElementImpl extends ElementImpl implements HTMLElement, CSS2Pro
   }
 
   private void invalidateDescendentsForHoverImpl(final HTMLElementImpl ancestor) {
-    final ArrayList<Node> nodeList = this.nodeList;
-    if (nodeList != null) {
-      final int size = nodeList.size();
-      for (int i = 0; i < size; i++) {
-        final Object node = nodeList.get(i);
-        if (node instanceof HTMLElementImpl) {
-          final HTMLElementImpl descendent = (HTMLElementImpl) node;
-          if (descendent.hasHoverStyle(ancestor)) {
-            descendent.informInvalid();
-          }
-          descendent.invalidateDescendentsForHoverImpl(ancestor);
+    for (NodeImpl node = this.firstChild; node != null; node = node.nextSibling) {
+      if (node instanceof HTMLElementImpl) {
+        final HTMLElementImpl descendent = (HTMLElementImpl) node;
+        if (descendent.hasHoverStyle(ancestor)) {
+          descendent.informInvalid();
         }
+        descendent.invalidateDescendentsForHoverImpl(ancestor);
       }
     }
   }
 
+  /**
+   * Checks whether the style sheets of the document can make the style of an
+   * element depend on its preceding siblings.
+   */
+  private boolean hasSiblingSelectors() {
+    final HTMLDocumentImpl doc = (HTMLDocumentImpl) this.document;
+    return (doc != null) && doc.styleSheetManager.getAnalyzer().usesSiblingCombinators();
+  }
+
   //TODO: need to optimize it by checking if there is hover style for the given element
   private boolean hasHoverStyle() {
     return true;
@@ -362,16 +511,51 @@ public class HTMLElementImpl extends ElementImpl implements HTMLElement, CSS2Pro
   }
 
   // TODO: Use the handleAttributeChanged() system and remove informInvalidAttribute
-  private void informInvalidAttibute(final String normalName) {
+  private void informInvalidAttibute(final boolean siblingsAffected) {
     if (isAttachedToDocument()) {
       // This is called when an attribute changes while
       // the element is allowing notifications.
-      if ("style".equals(normalName)) {
-        this.forgetLocalStyle();
+      informInvalidRecursive();
+      if (siblingsAffected) {
+        forgetFollowingSiblingStyles(true);
       }
+    }
+  }
 
-      forgetStyle(true);
-      informInvalidRecursive();
+  /**
+   * Checks whether following siblings can match against the given attribute
+   * of this element, e.g. through <code>h1.a + p</code> or
+   * <code>h1[title] ~ p</code>. Other attributes only affect the element itself
+   * and its descendants.
+   */
+  private boolean isSiblingSelectorAttribute(final String normalName) {
+    if (!this.isAttachedToDocument()) {
+      return false;
+    }
+    final CascadeAnalyzer analyzer = ((HTMLDocumentImpl) this.document).styleSheetManager.getAnalyzer();
+    return analyzer.usesSiblingCombinators()
+        && ("id".equals(normalName) || "class".equals(normalName) || analyzer.referencesAttribute(normalName));
+  }
+
+  /**
+   * Forgets the styles of the siblings that follow this element and of their
+   * descendants, which sibling combinators (e.g. <code>h1.a + p</code>) match
+   * against this element.
+   */
+  private void forgetFollowingSiblingStyles(final boolean inform) {
+    final ArrayList<HTMLElementImpl> siblings = new ArrayList<>();
+    synchronized (this.treeLock) {
+      for (NodeImpl node = this.nextSibling; node != null; node = node.nextSibling) {
+        if (node instanceof HTMLElementImpl) {
+          siblings.add((HTMLElementImpl) node);
+        }
+      }
+    }
+    for (final HTMLElementImpl sibling : siblings) {
+      sibling.forgetStyle(true);
+      if (inform) {
+        sibling.informInvalidRecursive();
+      }
     }
   }
 
@@ -448,26 +632,17 @@ public class HTMLElementImpl extends ElementImpl implements HTMLElement, CSS2Pro
   }
 
   public HTMLElementImpl getPreceedingSiblingElement() {
-    final Node parentNode = this.getParentNode();
-    if (parentNode == null) {
-      return null;
-    }
-    final NodeList childNodes = parentNode.getChildNodes();
-    if (childNodes == null) {
-      return null;
-    }
-    final int length = childNodes.getLength();
-    HTMLElementImpl priorElement = null;
-    for (int i = 0; i < length; i++) {
-      final Node child = childNodes.item(i);
-      if (child == this) {
-        return priorElement;
+    synchronized (this.treeLock) {
+      if (this.getParentNode() == null) {
+        return null;
       }
-      if (child instanceof HTMLElementImpl) {
-        priorElement = (HTMLElementImpl) child;
+      for (NodeImpl sibling = this.previousSibling; sibling != null; sibling = sibling.previousSibling) {
+        if (sibling instanceof HTMLElementImpl) {
+          return (HTMLElementImpl) sibling;
+        }
       }
+      return null;
     }
-    return null;
   }
 
   public HTMLElementImpl getPreceedingSiblingWithClass(final String elementTL, final String classTL) {
@@ -628,8 +803,7 @@ public class HTMLElementImpl extends ElementImpl implements HTMLElement, CSS2Pro
         }
       });
     }
-    final ArrayList<Node> nl = this.nodeList;
-    if ((nl == null) || (nl.size() == 0)) {
+    if (this.firstChild == null) {
       buffer.append("/>");
       return;
     }
@@ -678,6 +852,23 @@ public class HTMLElementImpl extends ElementImpl implements HTMLElement, CSS2Pro
     }
   }
 
+  @Override
+  protected void handleChildListChanged() {
+    if (!this.notificationsSuspended) {
+      // Sibling combinators and structural pseudo-classes of the children
+      // may match differently now.
+      final NodeImpl[] children = this.getChildrenArray();
+      if (children != null) {
+        for (final NodeImpl child : children) {
+          if (child instanceof HTMLElementImpl) {
+            ((HTMLElementImpl) child).forgetStyle(true);
+          }
+        }
+      }
+    }
+    super.handleChildListChanged();
+  }
+
   @Override
   protected void handleDocumentAttachmentChanged() {
     if (isAttachedToDocument()) {
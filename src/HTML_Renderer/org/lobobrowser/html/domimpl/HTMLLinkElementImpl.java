@@ -299,7 +299,7 @@ public class HTMLLinkElementImpl extends HTMLAbstractUIElement implements HTMLLi
         final long time1 = liflag ? System.currentTimeMillis() : 0;
         try {
           final String href = this.getHref();
-          final StyleSheet jSheet = CSSUtilities.jParse(this, href, doc, doc.getBaseURI(), false);
+          final StyleSheet jSheet = doc.styleSheetManager.observe(CSSUtilities.jParse(this, href, doc, doc.getBaseURI(), false));
           if (this.styleSheet != null) {
             this.styleSheet.setJStyleSheet(jSheet);
           } else {
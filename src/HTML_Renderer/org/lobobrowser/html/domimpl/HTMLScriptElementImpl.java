@@ -81,14 +81,20 @@ public class HTMLScriptElementImpl extends HTMLElementImpl implements HTMLScript
     this.setAttribute("event", event);
   }
 
-  private boolean defer;
-
   public boolean getDefer() {
-    return this.defer;
+    return this.getAttributeAsBoolean("defer");
   }
 
   public void setDefer(final boolean defer) {
-    this.defer = defer;
+    this.setAttribute("defer", defer ? "defer" : null);
+  }
+
+  public boolean getAsync() {
+    return this.getAttributeAsBoolean("async");
+  }
+
+  public void setAsync(final boolean async) {
+    this.setAttribute("async", async ? "async" : null);
   }
 
   public String getSrc() {
@@ -139,25 +145,27 @@ public class HTMLScriptElementImpl extends HTMLElementImpl implements HTMLScript
         scriptURI = scriptURL == null ? src : scriptURL.toExternalForm();
         final long time1 = liflag ? System.currentTimeMillis() : 0;
         try {
-          // Perform a synchronous request
-          final NetworkRequest request = bcontext.createHttpRequest();
-          SecurityUtil.doPrivileged(() -> {
-            // Code might have restrictions on accessing
-            // items from elsewhere.
-            try {
-              request.open("GET", scriptURI, false);
-              request.send(null, new Request(scriptURL, RequestKind.JavaScript));
-            } catch (final java.io.IOException thrown) {
-              logger.log(Level.WARNING, "processScript()", thrown);
-            }
-            return null;
-          });
-          final int status = request.getStatus();
-          if ((status != 200) && (status != 0)) {
-            this.warn("Script at [" + scriptURI + "] failed to load; HTTP status: " + status + ".");
+          NetworkRequest request = scriptURL == null ? null : ((HTMLDocumentImpl) doc).takePreloadedRequest(scriptURL);
+          if (request == null) {
+            // Perform a synchronous request
+            final NetworkRequest newRequest = bcontext.createHttpRequest();
+            SecurityUtil.doPrivileged(() -> {
+              // Code might have restrictions on accessing
+              // items from elsewhere.
+              try {
+                newRequest.open("GET", scriptURI, false);
+                newRequest.send(null, new Request(scriptURL, RequestKind.JavaScript));
+              } catch (final java.io.IOException thrown) {
+                logger.log(Level.WARNING, "processScript()", thrown);
+              }
+              return null;
+            });
+            request = newRequest;
+          }
+          text = this.getResponseText(request, scriptURI);
+          if (text == null) {
             return;
           }
-          text = request.getResponseText();
         } finally {
           if (liflag) {
             final long time2 = System.currentTimeMillis();
@@ -166,33 +174,76 @@ public class HTMLScriptElementImpl extends HTMLElementImpl implements HTMLScript
         }
         baseLineNumber = 1;
       }
-      final Context ctx = Executor.createContext(this.getDocumentURL(), bcontext);
-      try {
-        final Scriptable scope = (Scriptable) doc.getUserData(Executor.SCOPE_KEY);
-        if (scope == null) {
-          throw new IllegalStateException("Scriptable (scope) instance was expected to be keyed as UserData to document using "
-              + Executor.SCOPE_KEY);
+      this.executeScript(text, scriptURI, baseLineNumber);
+    }
+  }
+
+  /**
+   * Starts loading an external script without blocking the document, and
+   * runs it as soon as it has arrived.
+   */
+  private void processAsyncScript() {
+    final UserAgentContext bcontext = this.getUserAgentContext();
+    if (bcontext == null) {
+      throw new IllegalStateException("No user agent context.");
+    }
+    if (bcontext.isScriptingEnabled()) {
+      final HTMLDocumentImpl doc = (HTMLDocumentImpl) this.document;
+      final java.net.URL scriptURL = doc.getFullURL(this.getSrc());
+      if (scriptURL == null) {
+        this.warn("Script at [" + this.getSrc() + "] not loaded; invalid URL.");
+        return;
+      }
+      this.informExternalScriptLoading();
+      final String scriptURI = scriptURL.toExternalForm();
+      doc.loadAsyncScript(scriptURL, request -> {
+        final String text = this.getResponseText(request, scriptURI);
+        if (text != null) {
+          this.executeScript(text, scriptURI, 1);
         }
-        try {
-          final long time1 = liflag ? System.currentTimeMillis() : 0;
-          if (text != null) {
-            ctx.evaluateString(scope, text, scriptURI, baseLineNumber, null);
-
-            if (liflag) {
-              final long time2 = System.currentTimeMillis();
-              logger.info("addNotify(): Evaluated (or attempted to evaluate) Javascript in " + (time2 - time1) + " ms.");
-            }
+      });
+    }
+  }
+
+  private String getResponseText(final NetworkRequest request, final String scriptURI) {
+    final int status = request.getStatus();
+    if ((status != 200) && (status != 0)) {
+      this.warn("Script at [" + scriptURI + "] failed to load; HTTP status: " + status + ".");
+      return null;
+    }
+    return request.getResponseText();
+  }
+
+  private void executeScript(final String text, final String scriptURI, final int baseLineNumber) {
+    final UserAgentContext bcontext = this.getUserAgentContext();
+    final Document doc = this.document;
+    final boolean liflag = loggableInfo;
+    final Context ctx = Executor.createContext(this.getDocumentURL(), bcontext);
+    try {
+      final Scriptable scope = (Scriptable) doc.getUserData(Executor.SCOPE_KEY);
+      if (scope == null) {
+        throw new IllegalStateException("Scriptable (scope) instance was expected to be keyed as UserData to document using "
+            + Executor.SCOPE_KEY);
+      }
+      try {
+        final long time1 = liflag ? System.currentTimeMillis() : 0;
+        if (text != null) {
+          Executor.executeScript(ctx, scope, text, scriptURI, baseLineNumber);
+
+          if (liflag) {
+            final long time2 = System.currentTimeMillis();
+            logger.info("addNotify(): Evaluated (or attempted to evaluate) Javascript in " + (time2 - time1) + " ms.");
           }
-        } catch (final EcmaError ecmaError) {
-          logger.log(Level.WARNING,
-              "Javascript error at " + ecmaError.sourceName() + ":" + ecmaError.lineNumber() + ": " + ecmaError.getMessage(),
-              ecmaError);
-        } catch (final Throwable err) {
-          logger.log(Level.WARNING, "Unable to evaluate Javascript code", err);
         }
-      } finally {
-        Context.exit();
+      } catch (final EcmaError ecmaError) {
+        logger.log(Level.WARNING,
+            "Javascript error at " + ecmaError.sourceName() + ":" + ecmaError.lineNumber() + ": " + ecmaError.getMessage(),
+            ecmaError);
+      } catch (final Throwable err) {
+        logger.log(Level.WARNING, "Unable to evaluate Javascript code", err);
       }
+    } finally {
+      Context.exit();
     }
   }
 
@@ -201,10 +252,31 @@ public class HTMLScriptElementImpl extends HTMLElementImpl implements HTMLScript
     // nop
   }
 
+  /**
+   * The "already started" flag of HTML. A script is scheduled the first time it
+   * is attached, and never again, even if it is moved.
+   */
+  private boolean alreadyStarted = false;
+
   @Override
   protected void handleDocumentAttachmentChanged() {
     if (isAttachedToDocument()) {
-      ((HTMLDocumentImpl) document).addJob(() -> processScript());
+      // Moving a script, e.g. out of a table when the tree is normalized,
+      // does not run it again.
+      if (!this.alreadyStarted) {
+        this.alreadyStarted = true;
+        final HTMLDocumentImpl doc = (HTMLDocumentImpl) document;
+        // The async and defer attributes only apply to external scripts.
+        if (this.getSrc() == null) {
+          doc.addJob(() -> processScript());
+        } else if (this.getAsync()) {
+          this.processAsyncScript();
+        } else if (this.getDefer()) {
+          doc.addDeferredJob(() -> processScript());
+        } else {
+          doc.addJob(() -> processScript());
+        }
+      }
     } else {
       // TODO What does script element do when detached?
     }
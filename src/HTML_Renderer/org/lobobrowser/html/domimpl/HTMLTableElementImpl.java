@@ -23,7 +23,6 @@
  */
 package org.lobobrowser.html.domimpl;
 
-import java.util.ArrayList;
 
 import org.lobobrowser.html.style.HtmlLength;
 import org.lobobrowser.html.style.HtmlValues;
@@ -238,15 +237,12 @@ public class HTMLTableElementImpl extends HTMLAbstractUIElement implements HTMLT
         this.appendChild(rowElement);
         return rowElement;
       }
-      final ArrayList<Node> nl = this.nodeList;
-      if (nl != null) {
-        final int size = nl.size();
+      if (this.firstChild != null) {
         int trcount = 0;
-        for (int i = 0; i < size; i++) {
-          final Node node = nl.get(i);
+        for (NodeImpl node = this.firstChild; node != null; node = node.nextSibling) {
           if ("TR".equalsIgnoreCase(node.getNodeName())) {
             if (trcount == index) {
-              this.insertAt(rowElement, i);
+              this.insertBefore(rowElement, node);
               return rowElement;
             }
             trcount++;
@@ -262,19 +258,14 @@ public class HTMLTableElementImpl extends HTMLAbstractUIElement implements HTMLT
 
   public void deleteRow(final int index) throws DOMException {
     synchronized (this.treeLock) {
-      final ArrayList<Node> nl = this.nodeList;
-      if (nl != null) {
-        final int size = nl.size();
-        int trcount = 0;
-        for (int i = 0; i < size; i++) {
-          final Node node = nl.get(i);
-          if ("TR".equalsIgnoreCase(node.getNodeName())) {
-            if (trcount == index) {
-              this.removeChildAt(i);
-              return;
-            }
-            trcount++;
+      int trcount = 0;
+      for (NodeImpl node = this.firstChild; node != null; node = node.nextSibling) {
+        if ("TR".equalsIgnoreCase(node.getNodeName())) {
+          if (trcount == index) {
+            this.removeChild(node);
+            return;
           }
+          trcount++;
         }
       }
     }
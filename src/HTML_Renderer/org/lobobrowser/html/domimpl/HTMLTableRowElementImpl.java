@@ -23,7 +23,6 @@
  */
 package org.lobobrowser.html.domimpl;
 
-import java.util.ArrayList;
 
 import org.w3c.dom.DOMException;
 import org.w3c.dom.Node;
@@ -149,15 +148,12 @@ public class HTMLTableRowElementImpl extends HTMLElementImpl implements HTMLTabl
         this.appendChild(cellElement);
         return cellElement;
       }
-      final ArrayList<Node> nl = this.nodeList;
-      if (nl != null) {
-        final int size = nl.size();
+      if (this.firstChild != null) {
         int trcount = 0;
-        for (int i = 0; i < size; i++) {
-          final Node node = nl.get(i);
+        for (NodeImpl node = this.firstChild; node != null; node = node.nextSibling) {
           if (node instanceof HTMLTableCellElement) {
             if (trcount == index) {
-              this.insertAt(cellElement, i);
+              this.insertBefore(cellElement, node);
               return cellElement;
             }
             trcount++;
@@ -173,18 +169,14 @@ public class HTMLTableRowElementImpl extends HTMLElementImpl implements HTMLTabl
 
   public void deleteCell(final int index) throws DOMException {
     synchronized (this.treeLock) {
-      final ArrayList<Node> nl = this.nodeList;
-      if (nl != null) {
-        final int size = nl.size();
-        int trcount = 0;
-        for (int i = 0; i < size; i++) {
-          final Node node = nl.get(i);
-          if (node instanceof HTMLTableCellElement) {
-            if (trcount == index) {
-              this.removeChildAt(index);
-            }
-            trcount++;
+      int trcount = 0;
+      for (NodeImpl node = this.firstChild; node != null; node = node.nextSibling) {
+        if (node instanceof HTMLTableCellElement) {
+          if (trcount == index) {
+            this.removeChild(node);
+            return;
           }
+          trcount++;
         }
       }
     }
@@ -0,0 +1,196 @@
+package org.lobobrowser.html.domimpl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.lobobrowser.js.AbstractScriptableDelegate;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.w3c.dom.html.HTMLCollection;
+
+/**
+ * A live collection of document elements, backed by one or more entries of the
+ * {@link ElementIndex} of the document. Unlike {@link DescendentHTMLCollection}
+ * it never walks the tree: with a single entry, items are read straight from
+ * the index, and with several, the merged list is only rebuilt after one of
+ * the entries has changed. A collection rooted at an element walks the
+ * subtree of the element instead while the element is detached from the
+ * document, since detached elements are not indexed.
+ */
+public class IndexedHTMLCollection extends AbstractScriptableDelegate implements HTMLCollection, NodeList {
+  // Note: class must be public for reflection to work.
+  private final ElementIndex.Entry[] entries;
+  private final NodeFilter filter;
+  private final Object treeLock;
+  private final NodeImpl root;
+
+  private List<ElementImpl> mergedItems = null;
+  private long mergedStamp;
+  private Map<String, ElementImpl> itemsByName = null;
+  private long namesStamp;
+  private List<ElementImpl> detachedItems = null;
+  private long detachedEpoch;
+
+  IndexedHTMLCollection(final Object treeLock, final ElementIndex.Entry... entries) {
+    this(treeLock, null, null, entries);
+  }
+
+  /**
+   * @param root
+   *          The element the collection is rooted at, or <code>null</code> if
+   *          it is rooted at the document. The filter must only accept
+   *          descendents of the root.
+   * @param filter
+   *          If not <code>null</code>, the collection holds the elements of
+   *          the first entry that the filter accepts, and the other entries
+   *          only tell when the result of the filter may have changed. Must
+   *          not be <code>null</code> if there is a root.
+   */
+  IndexedHTMLCollection(final Object treeLock, final NodeImpl root, final NodeFilter filter, final ElementIndex.Entry... entries) {
+    this.treeLock = treeLock;
+    this.root = root;
+    this.filter = filter;
+    this.entries = entries;
+  }
+
+  private long getStampImpl() {
+    long stamp = 0;
+    for (final ElementIndex.Entry entry : this.entries) {
+      stamp = Math.max(stamp, entry.getStamp());
+    }
+    return stamp;
+  }
+
+  private List<ElementImpl> getItemsImpl() {
+    final NodeImpl root = this.root;
+    if ((root != null) && !root.isAttachedToDocument()) {
+      return this.getDetachedItemsImpl(root);
+    }
+    this.detachedItems = null;
+    final ElementIndex.Entry[] entries = this.entries;
+    final NodeFilter filter = this.filter;
+    if ((entries.length == 1) && (filter == null)) {
+      return entries[0].getElements();
+    }
+    final long stamp = this.getStampImpl();
+    if ((this.mergedItems == null) || (this.mergedStamp != stamp)) {
+      final List<ElementImpl> merged = new ArrayList<>();
+      if (filter != null) {
+        for (final ElementImpl element : entries[0].getElements()) {
+          if (filter.accept(element)) {
+            merged.add(element);
+          }
+        }
+      } else {
+        mergeInDocumentOrder(entries, merged);
+      }
+      this.mergedItems = merged;
+      this.mergedStamp = stamp;
+    }
+    return this.mergedItems;
+  }
+
+  private List<ElementImpl> getDetachedItemsImpl(final NodeImpl root) {
+    final long epoch = root.getSubtreeEpoch();
+    if ((this.detachedItems == null) || (this.detachedEpoch != epoch)) {
+      final ArrayList<NodeImpl> descendents = root.getDescendents(this.filter, true);
+      final List<ElementImpl> items = new ArrayList<>(descendents == null ? 0 : descendents.size());
+      if (descendents != null) {
+        for (final NodeImpl node : descendents) {
+          items.add((ElementImpl) node);
+        }
+      }
+      this.detachedItems = items;
+      this.detachedEpoch = epoch;
+    }
+    return this.detachedItems;
+  }
+
+  /**
+   * Merges the elements of entries, each already in document order, into one
+   * list in document order. Only the heads of the entries are compared, and
+   * once a single entry is left the rest of it is copied as is.
+   */
+  private static void mergeInDocumentOrder(final ElementIndex.Entry[] entries, final List<ElementImpl> merged) {
+    final int count = entries.length;
+    final List<List<ElementImpl>> lists = new ArrayList<>(count);
+    final int[] positions = new int[count];
+    for (final ElementIndex.Entry entry : entries) {
+      lists.add(entry.getElements());
+    }
+    for (;;) {
+      int first = -1;
+      int remaining = 0;
+      for (int i = 0; i < count; i++) {
+        final List<ElementImpl> list = lists.get(i);
+        if (positions[i] < list.size()) {
+          remaining++;
+          if ((first == -1) || (ElementIndex.compareDocumentOrder(list.get(positions[i]), lists.get(first).get(positions[first])) < 0)) {
+            first = i;
+          }
+        }
+      }
+      if (first == -1) {
+        return;
+      }
+      final List<ElementImpl> list = lists.get(first);
+      if (remaining == 1) {
+        merged.addAll(list.subList(positions[first], list.size()));
+        return;
+      }
+      merged.add(list.get(positions[first]++));
+    }
+  }
+
+  private Map<String, ElementImpl> getItemsByNameImpl() {
+    final NodeImpl root = this.root;
+    final boolean detached = (root != null) && !root.isAttachedToDocument();
+    // Stamps and epochs are drawn from different counters, so the sign tells
+    // them apart.
+    final long stamp = detached ? -1 - root.getSubtreeEpoch() : Math.max(this.getStampImpl(), this.entries[0].getIndex().getNamesStamp());
+    if ((this.itemsByName == null) || (this.namesStamp != stamp)) {
+      final List<ElementImpl> items = this.getItemsImpl();
+      final Map<String, ElementImpl> itemsByName = new HashMap<>((items.size() * 3) / 2);
+      for (final ElementImpl element : items) {
+        final String id = element.getId();
+        if ((id != null) && (id.length() != 0)) {
+          itemsByName.put(id, element);
+        }
+        final String name = element.getAttribute("name");
+        if ((name != null) && (name.length() != 0) && !name.equals(id)) {
+          itemsByName.put(name, element);
+        }
+      }
+      this.itemsByName = itemsByName;
+      this.namesStamp = stamp;
+    }
+    return this.itemsByName;
+  }
+
+  public int getLength() {
+    synchronized (this.treeLock) {
+      return this.getItemsImpl().size();
+    }
+  }
+
+  public Node item(final int index) {
+    synchronized (this.treeLock) {
+      final List<ElementImpl> items = this.getItemsImpl();
+      return (index >= 0) && (index < items.size()) ? items.get(index) : null;
+    }
+  }
+
+  public Node namedItem(final String name) {
+    synchronized (this.treeLock) {
+      return this.getItemsByNameImpl().get(name);
+    }
+  }
+
+  public int indexOf(final Node node) {
+    synchronized (this.treeLock) {
+      return this.getItemsImpl().indexOf(node);
+    }
+  }
+}
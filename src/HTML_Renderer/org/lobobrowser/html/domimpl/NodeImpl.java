@@ -27,12 +27,13 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.StampedLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -58,6 +59,7 @@ import org.w3c.dom.NodeList;
 import org.w3c.dom.ProcessingInstruction;
 import org.w3c.dom.Text;
 import org.w3c.dom.UserDataHandler;
+import org.w3c.dom.html.HTMLCollection;
 import org.w3c.dom.html.HTMLDocument;
 
 // TODO: Implement org.w3c.dom.events.EventTarget ?
@@ -66,7 +68,36 @@ public abstract class NodeImpl extends AbstractScriptableDelegate implements Nod
   private static final RenderState INVALID_RENDER_STATE = new StyleSheetRenderState(null);
   protected static final Logger logger = Logger.getLogger(NodeImpl.class.getName());
   protected UINode uiNode;
-  protected ArrayList<Node> nodeList;
+
+  /** Guards the links of nodes that do not belong to a document. */
+  private static final StampedLock DETACHED_LINK_LOCK = new StampedLock();
+
+  /**
+   * The first and last children. Children are linked to each other through
+   * their sibling fields. All of these are changed holding the tree lock, and
+   * in write mode the link lock of the document, so that readers can follow
+   * them optimistically. See {@link #getLinkLock()}.
+   */
+  NodeImpl firstChild;
+  NodeImpl lastChild;
+  NodeImpl previousSibling;
+  NodeImpl nextSibling;
+  private int childCount;
+
+  /**
+   * The children by index, built on demand after the children have changed. An
+   * array is never modified once built, so it can be handed out.
+   */
+  private volatile NodeImpl[] childArray;
+
+  /** Index in the parent, valid while the child array of the parent is. */
+  private int indexInParent;
+
+  /**
+   * Changes whenever a node is inserted or removed in the subtree of this
+   * node, or an attribute of an element of the subtree changes.
+   */
+  private volatile long subtreeEpoch;
   protected volatile Document document;
 
   /**
@@ -106,24 +137,13 @@ public abstract class NodeImpl extends AbstractScriptableDelegate implements Nod
 
   public Node appendChild(final Node newChild) throws DOMException {
     synchronized (this.treeLock) {
-      if (isInclusiveAncestorOf(newChild)) {
-        final Node prevParent = newChild.getParentNode();
-        if (prevParent instanceof NodeImpl) {
-          ((NodeImpl) prevParent).removeChild(newChild);
-        }
-      } else if ((newChild instanceof NodeImpl) && ((NodeImpl) newChild).isInclusiveAncestorOf(this)) {
+      final NodeImpl child = checkNewChild(newChild);
+      if (child.isInclusiveAncestorOf(this)) {
         throw new DOMException(DOMException.HIERARCHY_REQUEST_ERR, "Trying to append an ancestor element.");
       }
-
-      ArrayList<Node> nl = this.nodeList;
-      if (nl == null) {
-        nl = new ArrayList<>(3);
-        this.nodeList = nl;
-      }
-      nl.add(newChild);
-      if (newChild instanceof NodeImpl) {
-        ((NodeImpl) newChild).handleAddedToParent(this);
-      }
+      child.removeFromParent();
+      this.linkChild(child, null);
+      child.handleAddedToParent(this);
     }
 
     this.postChildListChanged();
@@ -131,6 +151,147 @@ public abstract class NodeImpl extends AbstractScriptableDelegate implements Nod
     return newChild;
   }
 
+  private static NodeImpl checkNewChild(final Node newChild) {
+    if (!(newChild instanceof NodeImpl)) {
+      throw new DOMException(DOMException.NOT_SUPPORTED_ERR, "Unknwon node implementation");
+    }
+    return (NodeImpl) newChild;
+  }
+
+  /**
+   * Removes the node from its current parent, if any, before it is inserted
+   * elsewhere. Call holding treeLock.
+   */
+  private void removeFromParent() {
+    final NodeImpl prevParent = (NodeImpl) this.parentNode;
+    if (prevParent != null) {
+      prevParent.removeChild(this);
+    }
+  }
+
+  /**
+   * Gets the lock that lets readers follow child and sibling links without
+   * taking the tree lock: they read optimistically, and only fall back to the
+   * tree lock if a writer got in the way. Writers lock it in write mode while
+   * they already hold the tree lock. Since it is not reentrant, nothing may be
+   * called out to while it is held.
+   */
+  private StampedLock getLinkLock() {
+    final Document doc = this.document;
+    return doc instanceof HTMLDocumentImpl ? ((HTMLDocumentImpl) doc).getLinkLock() : DETACHED_LINK_LOCK;
+  }
+
+  /**
+   * Starts changing links. Call holding treeLock.
+   */
+  private long beginLinkChange() {
+    return this.getLinkLock().writeLock();
+  }
+
+  private void endLinkChange(final long stamp) {
+    this.getLinkLock().unlockWrite(stamp);
+    this.bumpSubtreeEpoch();
+  }
+
+  /**
+   * Gets the epoch of the subtree of this node. Anything derived from the
+   * subtree, such as a collection of descendants, is current as long as the
+   * epoch does not change.
+   */
+  long getSubtreeEpoch() {
+    return this.subtreeEpoch;
+  }
+
+  /**
+   * Changes the subtree epoch of this node and of its ancestors. Call holding
+   * treeLock.
+   */
+  final void bumpSubtreeEpoch() {
+    for (NodeImpl node = this; node != null; node = (NodeImpl) node.parentNode) {
+      node.subtreeEpoch++;
+    }
+  }
+
+  /**
+   * Links a child before the given reference child, or at the end if the
+   * reference child is <code>null</code>. Call holding treeLock.
+   */
+  private void linkChild(final NodeImpl child, final NodeImpl refChild) {
+    final long stamp = this.beginLinkChange();
+    try {
+      this.linkChildImpl(child, refChild);
+    } finally {
+      this.endLinkChange(stamp);
+    }
+  }
+
+  private void linkChildImpl(final NodeImpl child, final NodeImpl refChild) {
+    final NodeImpl prev = refChild == null ? this.lastChild : refChild.previousSibling;
+    child.previousSibling = prev;
+    child.nextSibling = refChild;
+    if (prev == null) {
+      this.firstChild = child;
+    } else {
+      prev.nextSibling = child;
+    }
+    if (refChild == null) {
+      this.lastChild = child;
+    } else {
+      refChild.previousSibling = child;
+    }
+    this.childCount++;
+    this.childArray = null;
+  }
+
+  /**
+   * Unlinks a child. Call holding treeLock.
+   */
+  private void unlinkChild(final NodeImpl child) {
+    final long stamp = this.beginLinkChange();
+    try {
+      this.unlinkChildImpl(child);
+    } finally {
+      this.endLinkChange(stamp);
+    }
+  }
+
+  private void unlinkChildImpl(final NodeImpl child) {
+    final NodeImpl prev = child.previousSibling;
+    final NodeImpl next = child.nextSibling;
+    if (prev == null) {
+      this.firstChild = next;
+    } else {
+      prev.nextSibling = next;
+    }
+    if (next == null) {
+      this.lastChild = prev;
+    } else {
+      next.previousSibling = prev;
+    }
+    child.previousSibling = null;
+    child.nextSibling = null;
+    this.childCount--;
+    this.childArray = null;
+  }
+
+  /**
+   * Gets the children by index, rebuilding the array if the children have
+   * changed. Call holding treeLock.
+   */
+  private NodeImpl[] getChildArrayImpl() {
+    NodeImpl[] array = this.childArray;
+    if (array == null) {
+      array = new NodeImpl[this.childCount];
+      int i = 0;
+      for (NodeImpl child = this.firstChild; child != null; child = child.nextSibling) {
+        child.indexInParent = i;
+        array[i++] = child;
+      }
+      this.childArray = array;
+    }
+    return array;
+  }
+
   // TODO not used by anyone
   protected void removeAllChildren() {
     synchronized (this.treeLock) {
@@ -140,15 +301,22 @@ public abstract class NodeImpl extends AbstractScriptableDelegate implements Nod
 
   protected void removeAllChildrenImpl() {
     synchronized (this.treeLock) {
-      final ArrayList<Node> nl = this.nodeList;
-      if (nl != null) {
-        for (final Node node : nl) {
-          if (node instanceof NodeImpl) {
-            ((NodeImpl) node).handleDeletedFromParent();
-            ;
-          }
+      final NodeImpl[] children = this.getChildArrayImpl();
+      final long stamp = this.beginLinkChange();
+      try {
+        this.firstChild = null;
+        this.lastChild = null;
+        this.childCount = 0;
+        this.childArray = null;
+        for (final NodeImpl child : children) {
+          child.previousSibling = null;
+          child.nextSibling = null;
         }
-        this.nodeList = null;
+      } finally {
+        this.endLinkChange(stamp);
+      }
+      for (final NodeImpl child : children) {
+        child.handleDeletedFromParent();
       }
     }
 
@@ -164,23 +332,31 @@ public abstract class NodeImpl extends AbstractScriptableDelegate implements Nod
     return new NodeListImpl(collection);
   }
 
-  /*
-   * TODO: If this is not a w3c DOM method, we can return an Iterator instead of
-   * creating a new array But, it changes the semantics slightly (when
-   * modifications are needed during iteration). For those cases, we can retain
-   * this method.
+  /**
+   * Gets the children of the node, or <code>null</code> if it has none. The
+   * returned array must not be modified.
    */
   public NodeImpl[] getChildrenArray() {
-    final ArrayList<Node> nl = this.nodeList;
+    final StampedLock lock = this.getLinkLock();
+    final long stamp = lock.tryOptimisticRead();
+    final NodeImpl[] array = this.childArray;
+    if ((array != null) && lock.validate(stamp)) {
+      return array.length == 0 ? null : array;
+    }
     synchronized (this.treeLock) {
-      return nl == null ? null : nl.toArray(NodeImpl.EMPTY_ARRAY);
+      return this.childCount == 0 ? null : this.getChildArrayImpl();
     }
   }
 
   int getChildCount() {
+    final StampedLock lock = this.getLinkLock();
+    final long stamp = lock.tryOptimisticRead();
+    final int count = this.childCount;
+    if (lock.validate(stamp)) {
+      return count;
+    }
     synchronized (this.treeLock) {
-      final ArrayList<Node> nl = this.nodeList;
-      return nl == null ? 0 : nl.size();
+      return this.childCount;
     }
   }
 
@@ -218,34 +394,24 @@ public abstract class NodeImpl extends AbstractScriptableDelegate implements Nod
    * @param al
    */
   private void extractDescendentsArrayImpl(final NodeFilter filter, final ArrayList<NodeImpl> al, final boolean nestIntoMatchingNodes) {
-    final ArrayList<Node> nl = this.nodeList;
-    if (nl != null) {
-      final Iterator<Node> i = nl.iterator();
-      while (i.hasNext()) {
-        final NodeImpl n = (NodeImpl) i.next();
-        if (filter.accept(n)) {
-          al.add(n);
-          if (nestIntoMatchingNodes) {
-            n.extractDescendentsArrayImpl(filter, al, nestIntoMatchingNodes);
-          }
-        } else if (n.getNodeType() == Node.ELEMENT_NODE) {
+    for (NodeImpl n = this.firstChild; n != null; n = n.nextSibling) {
+      if (filter.accept(n)) {
+        al.add(n);
+        if (nestIntoMatchingNodes) {
           n.extractDescendentsArrayImpl(filter, al, nestIntoMatchingNodes);
         }
+      } else if (n.getNodeType() == Node.ELEMENT_NODE) {
+        n.extractDescendentsArrayImpl(filter, al, nestIntoMatchingNodes);
       }
     }
   }
 
   private void appendChildrenToCollectionImpl(final NodeFilter filter, final Collection<Node> collection) {
-    final ArrayList<Node> nl = this.nodeList;
-    if (nl != null) {
-      final Iterator<Node> i = nl.iterator();
-      while (i.hasNext()) {
-        final NodeImpl node = (NodeImpl) i.next();
-        if (filter.accept(node)) {
-          collection.add(node);
-        }
-        node.appendChildrenToCollectionImpl(filter, collection);
+    for (NodeImpl node = this.firstChild; node != null; node = node.nextSibling) {
+      if (filter.accept(node)) {
+        collection.add(node);
       }
+      node.appendChildrenToCollectionImpl(filter, collection);
     }
   }
 
@@ -296,20 +462,21 @@ public abstract class NodeImpl extends AbstractScriptableDelegate implements Nod
 
   int getChildIndex(final Node child) {
     synchronized (this.treeLock) {
-      final ArrayList<Node> nl = this.nodeList;
-      return nl == null ? -1 : nl.indexOf(child);
+      if ((child instanceof NodeImpl) && (((NodeImpl) child).parentNode == this)) {
+        this.getChildArrayImpl();
+        return ((NodeImpl) child).indexInParent;
+      }
+      return -1;
     }
   }
 
   Node getChildAtIndex(final int index) {
     synchronized (this.treeLock) {
-      final ArrayList<Node> nl = this.nodeList;
-      try {
-        return nl == null ? null : nl.get(index);
-      } catch (final IndexOutOfBoundsException iob) {
+      if ((index < 0) || (index >= this.childCount)) {
         this.warn("getChildAtIndex(): Bad index=" + index + " for node=" + this + ".");
         return null;
       }
+      return this.getChildArrayImpl()[index];
     }
   }
 
@@ -377,13 +544,8 @@ public abstract class NodeImpl extends AbstractScriptableDelegate implements Nod
     this.treeLock = value == null ? this : (Object) value;
     if (deep) {
       synchronized (this.treeLock) {
-        final ArrayList<Node> nl = this.nodeList;
-        if (nl != null) {
-          final Iterator<Node> i = nl.iterator();
-          while (i.hasNext()) {
-            final NodeImpl child = (NodeImpl) i.next();
-            child.setOwnerDocument(value, deep);
-          }
+        for (NodeImpl child = this.firstChild; child != null; child = child.nextSibling) {
+          child.setOwnerDocument(value, deep);
         }
       }
     }
@@ -397,17 +559,12 @@ public abstract class NodeImpl extends AbstractScriptableDelegate implements Nod
     } catch (final StopVisitorException sve) {
       throw sve;
     }
-    final ArrayList<Node> nl = this.nodeList;
-    if (nl != null) {
-      final Iterator<Node> i = nl.iterator();
-      while (i.hasNext()) {
-        final NodeImpl child = (NodeImpl) i.next();
-        try {
-          // Call with child's synchronization
-          child.visit(visitor);
-        } catch (final StopVisitorException sve) {
-          throw sve;
-        }
+    for (NodeImpl child = this.firstChild; child != null; child = child.nextSibling) {
+      try {
+        // Call with child's synchronization
+        child.visit(visitor);
+      } catch (final StopVisitorException sve) {
+        throw sve;
       }
     }
   }
@@ -420,33 +577,17 @@ public abstract class NodeImpl extends AbstractScriptableDelegate implements Nod
 
   public Node insertBefore(final Node newChild, final Node refChild) throws DOMException {
     synchronized (this.treeLock) {
-      final ArrayList<Node> nl = this.nodeList;
-      final int idx = nl == null ? -1 : nl.indexOf(refChild);
-      if (idx == -1) {
+      final NodeImpl child = checkNewChild(newChild);
+      if ((refChild != null) && (!(refChild instanceof NodeImpl) || (refChild.getParentNode() != this))) {
         throw new DOMException(DOMException.NOT_FOUND_ERR, "refChild not found");
       }
-      nl.add(idx, newChild);
-      if (newChild instanceof NodeImpl) {
-        ((NodeImpl) newChild).handleAddedToParent(this);
-      }
-    }
-
-    this.postChildListChanged();
-
-    return newChild;
-  }
-
-  protected Node insertAt(final Node newChild, final int idx) throws DOMException {
-    synchronized (this.treeLock) {
-      ArrayList<Node> nl = this.nodeList;
-      if (nl == null) {
-        nl = new ArrayList<>();
-        this.nodeList = nl;
-      }
-      nl.add(idx, newChild);
-      if (newChild instanceof NodeImpl) {
-        ((NodeImpl) newChild).handleAddedToParent(this);
+      if (child.isInclusiveAncestorOf(this)) {
+        throw new DOMException(DOMException.HIERARCHY_REQUEST_ERR, "Trying to insert an ancestor element.");
       }
+      final NodeImpl ref = refChild == child ? child.nextSibling : (NodeImpl) refChild;
+      child.removeFromParent();
+      this.linkChild(child, ref);
+      child.handleAddedToParent(this);
     }
 
     this.postChildListChanged();
@@ -459,25 +600,20 @@ public abstract class NodeImpl extends AbstractScriptableDelegate implements Nod
       if (this.isInclusiveAncestorOf(newChild)) {
         throw new DOMException(DOMException.HIERARCHY_REQUEST_ERR, "newChild is already a child of the node");
       }
-      if ((newChild instanceof NodeImpl) && ((NodeImpl) newChild).isInclusiveAncestorOf(this)) {
+      final NodeImpl child = checkNewChild(newChild);
+      if (child.isInclusiveAncestorOf(this)) {
         throw new DOMException(DOMException.HIERARCHY_REQUEST_ERR, "Trying to set an ancestor element as a child.");
       }
-
-      final ArrayList<Node> nl = this.nodeList;
-      final int idx = nl == null ? -1 : nl.indexOf(oldChild);
-      if (idx == -1) {
+      if (!(oldChild instanceof NodeImpl) || (oldChild.getParentNode() != this)) {
         throw new DOMException(DOMException.NOT_FOUND_ERR, "oldChild not found");
       }
-      nl.set(idx, newChild);
+      final NodeImpl old = (NodeImpl) oldChild;
+      child.removeFromParent();
+      this.linkChild(child, old);
+      this.unlinkChild(old);
 
-      if (newChild instanceof NodeImpl) {
-        ((NodeImpl) newChild).handleAddedToParent(this);
-      }
-
-      if (oldChild instanceof NodeImpl) {
-        ((NodeImpl) oldChild).handleDeletedFromParent();
-        ;
-      }
+      child.handleAddedToParent(this);
+      old.handleDeletedFromParent();
     }
 
     this.postChildListChanged();
@@ -487,14 +623,12 @@ public abstract class NodeImpl extends AbstractScriptableDelegate implements Nod
 
   public Node removeChild(final Node oldChild) throws DOMException {
     synchronized (this.treeLock) {
-      final ArrayList<Node> nl = this.nodeList;
-      if ((nl == null) || !nl.remove(oldChild)) {
+      if (!(oldChild instanceof NodeImpl) || (oldChild.getParentNode() != this)) {
         throw new DOMException(DOMException.NOT_FOUND_ERR, "oldChild not found");
       }
-      if (oldChild instanceof NodeImpl) {
-        ((NodeImpl) oldChild).handleDeletedFromParent();
-        ;
-      }
+      final NodeImpl child = (NodeImpl) oldChild;
+      this.unlinkChild(child);
+      child.handleDeletedFromParent();
     }
 
     this.postChildListChanged();
@@ -506,17 +640,15 @@ public abstract class NodeImpl extends AbstractScriptableDelegate implements Nod
   public Node removeChildAt(final int index) throws DOMException {
     try {
       synchronized (this.treeLock) {
-        final ArrayList<Node> nl = this.nodeList;
-        if (nl == null) {
+        if (this.childCount == 0) {
           throw new DOMException(DOMException.INDEX_SIZE_ERR, "Empty list of children");
         }
-        final Node n = nl.remove(index);
-        if (n == null) {
+        if ((index < 0) || (index >= this.childCount)) {
           throw new DOMException(DOMException.INDEX_SIZE_ERR, "No node with that index");
         }
-        if (n instanceof NodeImpl) {
-          ((NodeImpl) n).handleDeletedFromParent();
-        }
+        final NodeImpl n = this.getChildArrayImpl()[index];
+        this.unlinkChild(n);
+        n.handleDeletedFromParent();
         return n;
       }
     } finally {
@@ -525,9 +657,14 @@ public abstract class NodeImpl extends AbstractScriptableDelegate implements Nod
   }
 
   public boolean hasChildNodes() {
+    final StampedLock lock = this.getLinkLock();
+    final long stamp = lock.tryOptimisticRead();
+    final NodeImpl child = this.firstChild;
+    if (lock.validate(stamp)) {
+      return child != null;
+    }
     synchronized (this.treeLock) {
-      final ArrayList<Node> nl = this.nodeList;
-      return (nl != null) && !nl.isEmpty();
+      return this.firstChild != null;
     }
   }
 
@@ -536,73 +673,128 @@ public abstract class NodeImpl extends AbstractScriptableDelegate implements Nod
     return document == null ? null : document.getBaseURI();
   }
 
+  private ChildNodeListImpl childNodes;
+
   public NodeList getChildNodes() {
+    synchronized (this) {
+      ChildNodeListImpl childNodes = this.childNodes;
+      if (childNodes == null) {
+        childNodes = new ChildNodeListImpl(this);
+        this.childNodes = childNodes;
+      }
+      return childNodes;
+    }
+  }
+
+  /**
+   * Gets the first descendent element that matches the selectors, in document
+   * order, or <code>null</code>.
+   *
+   * @throws DOMException
+   *           If the selectors are not valid.
+   */
+  public Element querySelector(final String selectors) throws DOMException {
+    final CompiledSelector selector = this.getCompiledSelector(selectors);
     synchronized (this.treeLock) {
-      final ArrayList<Node> nl = this.nodeList;
-      return new NodeListImpl(nl == null ? Collections.emptyList() : nl);
+      return selector.queryFirst(this);
     }
   }
 
-  public Node getFirstChild() {
+  /**
+   * Gets a static list of the descendent elements that match the selectors,
+   * in document order.
+   *
+   * @throws DOMException
+   *           If the selectors are not valid.
+   */
+  public NodeList querySelectorAll(final String selectors) throws DOMException {
+    final CompiledSelector selector = this.getCompiledSelector(selectors);
+    final List<Node> elements;
     synchronized (this.treeLock) {
-      final ArrayList<Node> nl = this.nodeList;
-      try {
-        return nl == null ? null : nl.get(0);
-      } catch (final IndexOutOfBoundsException iob) {
-        return null;
-      }
+      elements = new ArrayList<>(selector.queryAll(this));
     }
+    return new NodeListImpl(elements);
   }
 
-  public Node getLastChild() {
+  private CompiledSelector getCompiledSelector(final String selectors) throws DOMException {
+    final Document doc = this.document;
+    if (doc instanceof HTMLDocumentImpl) {
+      return ((HTMLDocumentImpl) doc).getCompiledSelector(selectors);
+    }
+    return CompiledSelector.compile(selectors);
+  }
+
+  /**
+   * Gets the live collection of descendent elements that have all the given
+   * space-separated class names. Like style sheets, it ignores the case of
+   * class names.
+   */
+  public HTMLCollection getElementsByClassName(final String classNames) {
+    final Set<String> classNamesTL = ElementIndex.getClassNamesTL(classNames);
+    final Document doc = this.document;
     synchronized (this.treeLock) {
-      final ArrayList<Node> nl = this.nodeList;
-      try {
-        return nl == null ? null : nl.get(nl.size() - 1);
-      } catch (final IndexOutOfBoundsException iob) {
-        return null;
+      if (this.isAttachedToDocument() && (doc instanceof HTMLDocumentImpl) && !classNamesTL.isEmpty()) {
+        final ElementIndex index = ((HTMLDocumentImpl) doc).getElementIndex();
+        final ElementIndex.Entry[] entries = new ElementIndex.Entry[classNamesTL.size()];
+        int i = 0;
+        for (final String className : classNamesTL) {
+          entries[i++] = index.getClassNameEntry(className);
+        }
+        final boolean anywhere = this instanceof Document;
+        final NodeFilter filter = anywhere && (entries.length == 1) ? null : new ClassNameFilter(anywhere ? null : this, classNamesTL);
+        return new IndexedHTMLCollection(this.treeLock, anywhere ? null : this, filter, entries);
       }
     }
+    // Nodes that are not attached are not indexed.
+    return new DescendentHTMLCollection(this, new ClassNameFilter(null, classNamesTL), this.treeLock);
   }
 
-  private Node getPreviousTo(final Node node) {
+  public Node getFirstChild() {
+    final StampedLock lock = this.getLinkLock();
+    final long stamp = lock.tryOptimisticRead();
+    final NodeImpl node = this.firstChild;
+    if (lock.validate(stamp)) {
+      return node;
+    }
     synchronized (this.treeLock) {
-      final ArrayList<Node> nl = this.nodeList;
-      final int idx = nl == null ? -1 : nl.indexOf(node);
-      if (idx == -1) {
-        throw new DOMException(DOMException.NOT_FOUND_ERR, "node not found");
-      }
-      try {
-        return nl.get(idx - 1);
-      } catch (final IndexOutOfBoundsException iob) {
-        return null;
-      }
+      return this.firstChild;
     }
   }
 
-  private Node getNextTo(final Node node) {
+  public Node getLastChild() {
+    final StampedLock lock = this.getLinkLock();
+    final long stamp = lock.tryOptimisticRead();
+    final NodeImpl node = this.lastChild;
+    if (lock.validate(stamp)) {
+      return node;
+    }
     synchronized (this.treeLock) {
-      final ArrayList<Node> nl = this.nodeList;
-      final int idx = nl == null ? -1 : nl.indexOf(node);
-      if (idx == -1) {
-        throw new DOMException(DOMException.NOT_FOUND_ERR, "node not found");
-      }
-      try {
-        return nl.get(idx + 1);
-      } catch (final IndexOutOfBoundsException iob) {
-        return null;
-      }
+      return this.lastChild;
     }
   }
 
   public Node getPreviousSibling() {
-    final NodeImpl parent = (NodeImpl) this.getParentNode();
-    return parent == null ? null : parent.getPreviousTo(this);
+    final StampedLock lock = this.getLinkLock();
+    final long stamp = lock.tryOptimisticRead();
+    final NodeImpl node = this.previousSibling;
+    if (lock.validate(stamp)) {
+      return node;
+    }
+    synchronized (this.treeLock) {
+      return this.previousSibling;
+    }
   }
 
   public Node getNextSibling() {
-    final NodeImpl parent = (NodeImpl) this.getParentNode();
-    return parent == null ? null : parent.getNextTo(this);
+    final StampedLock lock = this.getLinkLock();
+    final long stamp = lock.tryOptimisticRead();
+    final NodeImpl node = this.nextSibling;
+    if (lock.validate(stamp)) {
+      return node;
+    }
+    synchronized (this.treeLock) {
+      return this.nextSibling;
+    }
   }
 
   public Object getFeature(final String feature, final String version) {
@@ -692,24 +884,19 @@ public abstract class NodeImpl extends AbstractScriptableDelegate implements Nod
   public String getTextContent() throws DOMException {
     final StringBuffer sb = new StringBuffer();
     synchronized (this.treeLock) {
-      final ArrayList<Node> nl = this.nodeList;
-      if (nl != null) {
-        final Iterator<Node> i = nl.iterator();
-        while (i.hasNext()) {
-          final Node node = i.next();
-          final short type = node.getNodeType();
-          switch (type) {
-          case Node.CDATA_SECTION_NODE:
-          case Node.TEXT_NODE:
-          case Node.ELEMENT_NODE:
-            final String textContent = node.getTextContent();
-            if (textContent != null) {
-              sb.append(textContent);
-            }
-            break;
-          default:
-            break;
+      for (NodeImpl node = this.firstChild; node != null; node = node.nextSibling) {
+        final short type = node.getNodeType();
+        switch (type) {
+        case Node.CDATA_SECTION_NODE:
+        case Node.TEXT_NODE:
+        case Node.ELEMENT_NODE:
+          final String textContent = node.getTextContent();
+          if (textContent != null) {
+            sb.append(textContent);
           }
+          break;
+        default:
+          break;
         }
       }
     }
@@ -723,12 +910,7 @@ public abstract class NodeImpl extends AbstractScriptableDelegate implements Nod
         final TextImpl t = new TextImpl(textContent);
         t.setOwnerDocument(this.document);
         t.setParentImpl(this);
-        ArrayList<Node> nl = this.nodeList;
-        if (nl == null) {
-          nl = new ArrayList<>();
-          this.nodeList = nl;
-        }
-        nl.add(t);
+        this.linkChild(t, null);
       }
     }
 
@@ -746,32 +928,32 @@ public abstract class NodeImpl extends AbstractScriptableDelegate implements Nod
   }
 
   protected void removeChildrenImpl(final NodeFilter filter) {
-    final ArrayList<Node> nl = this.nodeList;
-    if (nl != null) {
-      final int len = nl.size();
-      for (int i = len; --i >= 0;) {
-        final Node node = nl.get(i);
-        if (filter.accept(node)) {
-          final Node n = nl.remove(i);
-          if (n instanceof NodeImpl) {
-            ((NodeImpl) n).handleDeletedFromParent();
-          }
-        }
+    NodeImpl node = this.lastChild;
+    while (node != null) {
+      final NodeImpl prev = node.previousSibling;
+      if (filter.accept(node)) {
+        this.unlinkChild(node);
+        node.handleDeletedFromParent();
       }
+      node = prev;
     }
   }
 
   // TODO used internally, hide from JS
   public Node insertAfter(final Node newChild, final Node refChild) {
     synchronized (this.treeLock) {
-      final ArrayList<Node> nl = this.nodeList;
-      final int idx = nl == null ? -1 : nl.indexOf(refChild);
-      if (idx == -1) {
+      final NodeImpl child = checkNewChild(newChild);
+      if (!(refChild instanceof NodeImpl) || (refChild.getParentNode() != this)) {
         throw new DOMException(DOMException.NOT_FOUND_ERR, "refChild not found");
       }
-      nl.add(idx + 1, newChild);
-      if (newChild instanceof NodeImpl) {
-        ((NodeImpl) newChild).handleAddedToParent(this);
+      if (child.isInclusiveAncestorOf(this)) {
+        throw new DOMException(DOMException.HIERARCHY_REQUEST_ERR, "Trying to insert an ancestor element.");
+      }
+      if (child != refChild) {
+        final NodeImpl ref = ((NodeImpl) refChild).nextSibling;
+        child.removeFromParent();
+        this.linkChild(child, ref == child ? child.nextSibling : ref);
+        child.handleAddedToParent(this);
       }
     }
 
@@ -784,35 +966,16 @@ public abstract class NodeImpl extends AbstractScriptableDelegate implements Nod
   public Text replaceAdjacentTextNodes(final Text node, final String textContent) {
     try {
       synchronized (this.treeLock) {
-        final ArrayList<Node> nl = this.nodeList;
-        if (nl == null) {
-          throw new DOMException(DOMException.NOT_FOUND_ERR, "Node not a child");
+        final List<NodeImpl> toDelete = this.getOtherTextNodes(node, null);
+        final NodeImpl refChild = getTextReplacementRef(node);
+        for (final NodeImpl child : toDelete) {
+          this.unlinkChild(child);
+          child.handleDeletedFromParent();
         }
-        final int idx = nl.indexOf(node);
-        if (idx == -1) {
-          throw new DOMException(DOMException.NOT_FOUND_ERR, "Node not a child");
-        }
-        int firstIdx = idx;
-        final List<Object> toDelete = new LinkedList<>();
-        for (int adjIdx = idx; --adjIdx >= 0;) {
-          final Object child = this.nodeList.get(adjIdx);
-          if (child instanceof Text) {
-            firstIdx = adjIdx;
-            toDelete.add(child);
-          }
-        }
-        final int length = this.nodeList.size();
-        for (int adjIdx = idx; ++adjIdx < length;) {
-          final Object child = this.nodeList.get(adjIdx);
-          if (child instanceof Text) {
-            toDelete.add(child);
-          }
-        }
-        this.nodeList.removeAll(toDelete);
         final TextImpl textNode = new TextImpl(textContent);
         textNode.setOwnerDocument(this.document);
         textNode.setParentImpl(this);
-        this.nodeList.add(firstIdx, textNode);
+        this.linkChild(textNode, refChild);
         return textNode;
       }
     } finally {
@@ -824,38 +987,17 @@ public abstract class NodeImpl extends AbstractScriptableDelegate implements Nod
   public Text replaceAdjacentTextNodes(final Text node) {
     try {
       synchronized (this.treeLock) {
-        final ArrayList<Node> nl = this.nodeList;
-        if (nl == null) {
-          throw new DOMException(DOMException.NOT_FOUND_ERR, "Node not a child");
-        }
-        final int idx = nl.indexOf(node);
-        if (idx == -1) {
-          throw new DOMException(DOMException.NOT_FOUND_ERR, "Node not a child");
-        }
         final StringBuffer textBuffer = new StringBuffer();
-        int firstIdx = idx;
-        final List<Object> toDelete = new LinkedList<>();
-        for (int adjIdx = idx; --adjIdx >= 0;) {
-          final Object child = this.nodeList.get(adjIdx);
-          if (child instanceof Text) {
-            firstIdx = adjIdx;
-            toDelete.add(child);
-            textBuffer.append(((Text) child).getNodeValue());
-          }
-        }
-        final int length = this.nodeList.size();
-        for (int adjIdx = idx; ++adjIdx < length;) {
-          final Object child = this.nodeList.get(adjIdx);
-          if (child instanceof Text) {
-            toDelete.add(child);
-            textBuffer.append(((Text) child).getNodeValue());
-          }
+        final List<NodeImpl> toDelete = this.getOtherTextNodes(node, textBuffer);
+        final NodeImpl refChild = getTextReplacementRef(node);
+        for (final NodeImpl child : toDelete) {
+          this.unlinkChild(child);
+          child.handleDeletedFromParent();
         }
-        this.nodeList.removeAll(toDelete);
         final TextImpl textNode = new TextImpl(textBuffer.toString());
         textNode.setOwnerDocument(this.document);
         textNode.setParentImpl(this);
-        this.nodeList.add(firstIdx, textNode);
+        this.linkChild(textNode, refChild);
         return textNode;
       }
     } finally {
@@ -863,6 +1005,52 @@ public abstract class NodeImpl extends AbstractScriptableDelegate implements Nod
     }
   }
 
+  /**
+   * Gets the text children other than the given one, those before it first,
+   * nearest first. Their text is appended to the buffer, if there is one.
+   */
+  private List<NodeImpl> getOtherTextNodes(final Text node, final StringBuffer textBuffer) {
+    if (!(node instanceof NodeImpl) || (node.getParentNode() != this)) {
+      throw new DOMException(DOMException.NOT_FOUND_ERR, "Node not a child");
+    }
+    final NodeImpl nodeImpl = (NodeImpl) node;
+    final List<NodeImpl> textNodes = new ArrayList<>();
+    for (NodeImpl child = nodeImpl.previousSibling; child != null; child = child.previousSibling) {
+      if (child instanceof Text) {
+        textNodes.add(child);
+      }
+    }
+    for (NodeImpl child = nodeImpl.nextSibling; child != null; child = child.nextSibling) {
+      if (child instanceof Text) {
+        textNodes.add(child);
+      }
+    }
+    if (textBuffer != null) {
+      for (final NodeImpl child : textNodes) {
+        textBuffer.append(child.getNodeValue());
+      }
+    }
+    return textNodes;
+  }
+
+  /**
+   * Gets the child that a replacement text node is inserted before: the first
+   * child left after the first of the text nodes that are removed.
+   */
+  private static NodeImpl getTextReplacementRef(final Text node) {
+    final NodeImpl nodeImpl = (NodeImpl) node;
+    NodeImpl ref = nodeImpl;
+    for (NodeImpl child = nodeImpl.previousSibling; child != null; child = child.previousSibling) {
+      if (child instanceof Text) {
+        ref = child;
+      }
+    }
+    while ((ref != nodeImpl) && (ref instanceof Text)) {
+      ref = ref.nextSibling;
+    }
+    return ref;
+  }
+
   protected volatile Node parentNode;
 
   public Node getParentNode() {
@@ -889,7 +1077,23 @@ public abstract class NodeImpl extends AbstractScriptableDelegate implements Nod
   public boolean isEqualNode(final Node arg) {
     return (arg instanceof NodeImpl) && (this.getNodeType() == arg.getNodeType()) && Objects.equals(this.getNodeName(), arg.getNodeName())
         && Objects.equals(this.getNodeValue(), arg.getNodeValue()) && Objects.equals(this.getLocalName(), arg.getLocalName())
-        && Objects.equals(this.nodeList, ((NodeImpl) arg).nodeList) && this.equalAttributes(arg);
+        && this.equalChildren((NodeImpl) arg) && this.equalAttributes(arg);
+  }
+
+  private boolean equalChildren(final NodeImpl other) {
+    synchronized (this.treeLock) {
+      if (this.childCount != other.childCount) {
+        return false;
+      }
+      NodeImpl otherChild = other.firstChild;
+      for (NodeImpl child = this.firstChild; child != null; child = child.nextSibling) {
+        if (!child.isEqualNode(otherChild)) {
+          return false;
+        }
+        otherChild = otherChild.nextSibling;
+      }
+      return true;
+    }
   }
 
   public boolean isDefaultNamespace(final String namespaceURI) {
@@ -902,28 +1106,23 @@ public abstract class NodeImpl extends AbstractScriptableDelegate implements Nod
 
   public void normalize() {
     synchronized (this.treeLock) {
-      final ArrayList<Node> nl = this.nodeList;
-      if (nl != null) {
-        Iterator<Node> i = nl.iterator();
-        final List<Node> textNodes = new LinkedList<>();
-        boolean prevText = false;
-        while (i.hasNext()) {
-          final Node child = i.next();
-          if (child.getNodeType() == Node.TEXT_NODE) {
-            if (!prevText) {
-              prevText = true;
-              textNodes.add(child);
-            }
-          } else {
-            prevText = false;
+      final List<Node> textNodes = new LinkedList<>();
+      boolean prevText = false;
+      for (NodeImpl child = this.firstChild; child != null; child = child.nextSibling) {
+        if (child.getNodeType() == Node.TEXT_NODE) {
+          if (!prevText) {
+            prevText = true;
+            textNodes.add(child);
           }
-        }
-        i = textNodes.iterator();
-        while (i.hasNext()) {
-          final Text text = (Text) i.next();
-          this.replaceAdjacentTextNodes(text);
+        } else {
+          prevText = false;
         }
       }
+      final Iterator<Node> i = textNodes.iterator();
+      while (i.hasNext()) {
+        final Text text = (Text) i.next();
+        this.replaceAdjacentTextNodes(text);
+      }
     }
     this.postChildListChanged();
   }
@@ -1135,11 +1334,16 @@ public abstract class NodeImpl extends AbstractScriptableDelegate implements Nod
     }
   }
 
-  private RenderState renderState = INVALID_RENDER_STATE;
+  private volatile RenderState renderState = INVALID_RENDER_STATE;
 
   public RenderState getRenderState() {
     // Generally called from the GUI thread, except for
-    // offset properties.
+    // offset properties. A valid state is returned without locking, so that
+    // layout does not wait on the parser or on invalidations.
+    final RenderState validState = this.renderState;
+    if (validState != INVALID_RENDER_STATE) {
+      return validState;
+    }
     synchronized (this.treeLock) {
       RenderState rs = this.renderState;
       if (rs != INVALID_RENDER_STATE) {
@@ -1172,17 +1376,17 @@ public abstract class NodeImpl extends AbstractScriptableDelegate implements Nod
   }
 
   protected void forgetRenderState() {
+    if (this.renderState == INVALID_RENDER_STATE) {
+      // Descendents are only ever valid if this is.
+      return;
+    }
     synchronized (this.treeLock) {
       if (this.renderState != INVALID_RENDER_STATE) {
         this.renderState = INVALID_RENDER_STATE;
         // Note that getRenderState() "validates"
         // ancestor states as well.
-        final java.util.ArrayList<Node> nl = this.nodeList;
-        if (nl != null) {
-          final Iterator<Node> i = nl.iterator();
-          while (i.hasNext()) {
-            ((NodeImpl) i.next()).forgetRenderState();
-          }
+        for (NodeImpl child = this.firstChild; child != null; child = child.nextSibling) {
+          child.forgetRenderState();
         }
       }
     }
@@ -1197,22 +1401,17 @@ public abstract class NodeImpl extends AbstractScriptableDelegate implements Nod
   }
 
   protected void appendInnerHTMLImpl(final StringBuffer buffer) {
-    final ArrayList<Node> nl = this.nodeList;
-    int size;
-    if ((nl != null) && ((size = nl.size()) > 0)) {
-      for (int i = 0; i < size; i++) {
-        final Node child = nl.get(i);
-        if (child instanceof HTMLElementImpl) {
-          ((HTMLElementImpl) child).appendOuterHTMLImpl(buffer);
-        } else if (child instanceof Comment) {
-          buffer.append("<!--" + ((Comment) child).getTextContent() + "-->");
-        } else if (child instanceof Text) {
-          final String text = ((Text) child).getTextContent();
-          final String encText = this.htmlEncodeChildText(text);
-          buffer.append(encText);
-        } else if (child instanceof ProcessingInstruction) {
-          buffer.append(child.toString());
-        }
+    for (NodeImpl child = this.firstChild; child != null; child = child.nextSibling) {
+      if (child instanceof HTMLElementImpl) {
+        ((HTMLElementImpl) child).appendOuterHTMLImpl(buffer);
+      } else if (child instanceof Comment) {
+        buffer.append("<!--" + ((Comment) child).getTextContent() + "-->");
+      } else if (child instanceof Text) {
+        final String text = ((Text) child).getTextContent();
+        final String encText = this.htmlEncodeChildText(text);
+        buffer.append(encText);
+      } else if (child instanceof ProcessingInstruction) {
+        buffer.append(child.toString());
       }
     }
   }
@@ -1234,16 +1433,7 @@ public abstract class NodeImpl extends AbstractScriptableDelegate implements Nod
   }
 
   protected void appendInnerTextImpl(final StringBuffer buffer) {
-    final ArrayList<Node> nl = this.nodeList;
-    if (nl == null) {
-      return;
-    }
-    final int size = nl.size();
-    if (size == 0) {
-      return;
-    }
-    for (int i = 0; i < size; i++) {
-      final Node child = nl.get(i);
+    for (NodeImpl child = this.firstChild; child != null; child = child.nextSibling) {
       if (child instanceof ElementImpl) {
         ((ElementImpl) child).appendInnerTextImpl(buffer);
       }
@@ -1366,14 +1556,11 @@ public abstract class NodeImpl extends AbstractScriptableDelegate implements Nod
       if (this instanceof ElementImpl) {
         final ElementImpl elementImpl = (ElementImpl) this;
         elementImpl.updateIdMap(attached);
+        elementImpl.updateElementIndex(attached);
       }
     }
-    if (nodeList != null) {
-      for (final Node node : this.nodeList) {
-        if (node instanceof NodeImpl) {
-          ((NodeImpl) node).changeDocumentAttachment(attached);
-        }
-      }
+    for (NodeImpl child = this.firstChild; child != null; child = child.nextSibling) {
+      child.changeDocumentAttachment(attached);
     }
   }
 
@@ -1381,6 +1568,10 @@ public abstract class NodeImpl extends AbstractScriptableDelegate implements Nod
    * Common tasks to be performed when the NodeList of an element is changed.
    */
   private void postChildListChanged() {
+    final Document doc = this.document;
+    if (doc instanceof HTMLDocumentImpl) {
+      ((HTMLDocumentImpl) doc).bumpStyleGeneration();
+    }
     this.handleChildListChanged();
 
     if (!this.notificationsSuspended) {
@@ -0,0 +1,109 @@
+package org.lobobrowser.html.domimpl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import cz.vutbr.web.css.Declaration;
+import cz.vutbr.web.css.Rule;
+import cz.vutbr.web.css.RuleBlock;
+
+/**
+ * Backing list of a rule of a document style sheet, which reports every change
+ * made to it. CSSOM methods like <code>CSSStyleDeclaration.setProperty()</code>
+ * change rule sets and declarations in place without telling the style sheet
+ * bridge, so the document would otherwise keep using styles computed before the
+ * change.
+ *
+ * <p>
+ * Rules added to an observed list, for instance by <code>insertRule()</code>,
+ * are observed as well.
+ * </p>
+ */
+final class ObservedRuleList<T> extends ArrayList<T> {
+  private static final long serialVersionUID = 1L;
+
+  private final Runnable onChange;
+
+  private ObservedRuleList(final Collection<? extends T> elements, final Runnable onChange) {
+    super(elements.size());
+    this.onChange = onChange;
+    for (final T element : elements) {
+      super.add(adopt(element));
+    }
+  }
+
+  /**
+   * Makes a rule, and the rules nested in it, report changes to the given
+   * listener. The rule must not be shared with other documents.
+   */
+  static <T> void observe(final Rule<T> rule, final Runnable onChange) {
+    final List<T> elements = rule.asList();
+    if (!(elements instanceof ObservedRuleList)) {
+      rule.replaceAll(new ObservedRuleList<>(elements, onChange));
+    }
+  }
+
+  private T adopt(final T element) {
+    // Terms are not observed. CSSOM replaces them but never changes them.
+    if ((element instanceof RuleBlock) || (element instanceof Declaration)) {
+      observe((Rule<?>) element, this.onChange);
+    }
+    return element;
+  }
+
+  @Override
+  public boolean add(final T element) {
+    final boolean result = super.add(this.adopt(element));
+    this.onChange.run();
+    return result;
+  }
+
+  @Override
+  public void add(final int index, final T element) {
+    super.add(index, this.adopt(element));
+    this.onChange.run();
+  }
+
+  @Override
+  public boolean addAll(final Collection<? extends T> elements) {
+    return this.addAll(this.size(), elements);
+  }
+
+  @Override
+  public boolean addAll(final int index, final Collection<? extends T> elements) {
+    int i = index;
+    for (final T element : elements) {
+      super.add(i++, this.adopt(element));
+    }
+    this.onChange.run();
+    return !elements.isEmpty();
+  }
+
+  @Override
+  public T set(final int index, final T element) {
+    final T result = super.set(index, this.adopt(element));
+    this.onChange.run();
+    return result;
+  }
+
+  @Override
+  public T remove(final int index) {
+    final T result = super.remove(index);
+    this.onChange.run();
+    return result;
+  }
+
+  @Override
+  public boolean remove(final Object element) {
+    final boolean result = super.remove(element);
+    this.onChange.run();
+    return result;
+  }
+
+  @Override
+  public void clear() {
+    super.clear();
+    this.onChange.run();
+  }
+}
@@ -31,6 +31,7 @@ import java.awt.Dimension;
 import java.awt.EventQueue;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
 import java.awt.GraphicsEnvironment;
 import java.awt.Insets;
 import java.awt.Point;
@@ -49,6 +50,7 @@ import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
 import java.awt.event.MouseWheelEvent;
 import java.awt.event.MouseWheelListener;
+import java.awt.image.VolatileImage;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
@@ -70,6 +72,7 @@ import org.lobobrowser.html.renderer.DelayedPair;
 import org.lobobrowser.html.renderer.FrameContext;
 import org.lobobrowser.html.renderer.NodeRenderer;
 import org.lobobrowser.html.renderer.RBlock;
+import org.lobobrowser.html.renderer.RBlockViewport;
 import org.lobobrowser.html.renderer.RCollection;
 import org.lobobrowser.html.renderer.RElement;
 import org.lobobrowser.html.renderer.Renderable;
@@ -96,6 +99,16 @@ import org.w3c.dom.Node;
 public class HtmlBlockPanel extends JComponent implements NodeRenderer, RenderableContainer, ClipboardOwner {
   private static final Logger logger = Logger.getLogger(HtmlBlockPanel.class.getName());
   private static final boolean loggableInfo = logger.isLoggable(Level.INFO);
+
+  /**
+   * In lazy layout, the document is laid out down to this many panel heights
+   * below the scroll position.
+   */
+  private static final int LAZY_LAYOUT_SCREENS = 3;
+
+  /** Out of date areas beyond this many are merged into one. */
+  private static final int MAX_DIRTY_REGIONS = 8;
+
   protected final FrameContext frameContext;
   protected final UserAgentContext ucontext;
   protected final HtmlRendererContext rcontext;
@@ -108,6 +121,21 @@ public class HtmlBlockPanel extends JComponent implements NodeRenderer, Renderab
   // protected Insets defaultPaddingInsets = null;
   protected int defaultOverflowX = RenderState.OVERFLOW_AUTO;
   protected int defaultOverflowY = RenderState.OVERFLOW_SCROLL;
+  protected boolean lazyLayout = true;
+
+  protected boolean retainedPainting = true;
+
+  /** Layout limit that a pending layout must reach, or -1. */
+  private int forcedLayoutLimit = -1;
+
+  /**
+   * What was last painted, when painting is retained. Paints for which nothing
+   * changed are copied from it, and scrolls of the document move it.
+   */
+  private VolatileImage paintBuffer;
+
+  /** The areas of the paint buffer that are out of date. */
+  private final ArrayList<Rectangle> dirtyRegions = new ArrayList<>();
 
   public HtmlBlockPanel(final UserAgentContext pcontext, final HtmlRendererContext rcontext, final FrameContext frameContext) {
     this(ColorFactory.TRANSPARENT, false, pcontext, rcontext, frameContext);
@@ -254,6 +282,27 @@ public class HtmlBlockPanel extends JComponent implements NodeRenderer, Renderab
     if (block == null) {
       return null;
     }
+    // In lazy layout, the node may be below what has been laid out, so layout
+    // is extended until it is reached.
+    final RBlockViewport viewport = block.getRBlockViewport();
+    int layoutLimit = Math.max(1, this.getHeight()) * LAZY_LAYOUT_SCREENS;
+    while (block.isLayoutPartial()) {
+      final Rectangle bounds = this.findNodeBounds(block, node, viewport);
+      if ((bounds != null) && ((bounds.y + bounds.height) <= viewport.getLayoutLimit())) {
+        break;
+      }
+      layoutLimit = layoutLimit > (Integer.MAX_VALUE / 2) ? Integer.MAX_VALUE : layoutLimit * 2;
+      this.forcedLayoutLimit = layoutLimit;
+      try {
+        this.doLayout();
+      } finally {
+        this.forcedLayoutLimit = -1;
+      }
+    }
+    return this.findNodeBounds(block, node, relativeToScrollable ? (RCollection) viewport : (RCollection) block);
+  }
+
+  private Rectangle findNodeBounds(final RBlock block, final Node node, final RCollection relativeTo) {
     // Find UINode first
     Node currentNode = node;
     UINode uiNode = null;
@@ -270,7 +319,6 @@ public class HtmlBlockPanel extends JComponent implements NodeRenderer, Renderab
     if (uiNode == null) {
       return null;
     }
-    final RCollection relativeTo = relativeToScrollable ? (RCollection) block.getRBlockViewport() : (RCollection) block;
     if (node == currentNode) {
       final BoundableRenderable br = (BoundableRenderable) uiNode;
       final Point guiPoint = br.getOriginRelativeTo(relativeTo);
@@ -593,6 +641,73 @@ public class HtmlBlockPanel extends JComponent implements NodeRenderer, Renderab
     // paint() instead of paintComponent(). Scrollbars
     // do not repaint correctly if we use
     // paintComponent.
+    final GraphicsConfiguration gc = this.getGraphicsConfiguration();
+    if (this.retainedPainting && this.isOpaque() && (gc != null) && !this.isPaintingForPrint()) {
+      this.paintRetained(g, gc);
+    } else {
+      final VolatileImage buffer = this.paintBuffer;
+      if (buffer != null) {
+        // It would not be kept up to date.
+        this.paintBuffer = null;
+        buffer.flush();
+      }
+      this.paintBlock(g);
+    }
+  }
+
+  /**
+   * Paints the out of date areas of the paint buffer, and copies the buffer.
+   */
+  private void paintRetained(final Graphics g, final GraphicsConfiguration gc) {
+    final int width = this.getWidth();
+    final int height = this.getHeight();
+    if ((width <= 0) || (height <= 0)) {
+      return;
+    }
+    VolatileImage buffer = this.paintBuffer;
+    final int status = (buffer == null) || (buffer.getWidth() != width) || (buffer.getHeight() != height) ? VolatileImage.IMAGE_INCOMPATIBLE
+        : buffer.validate(gc);
+    if (status == VolatileImage.IMAGE_INCOMPATIBLE) {
+      if (buffer != null) {
+        buffer.flush();
+      }
+      buffer = gc.createCompatibleVolatileImage(width, height);
+      this.paintBuffer = buffer;
+    }
+    final ArrayList<Rectangle> dirty = this.takeDirtyRegions();
+    if (status != VolatileImage.IMAGE_OK) {
+      dirty.clear();
+      dirty.add(new Rectangle(0, 0, width, height));
+    }
+    // Child components also paint themselves, so what is under them is
+    // always painted again.
+    final Rectangle clipBounds = g.getClipBounds();
+    final int count = this.getComponentCount();
+    for (int i = 0; i < count; i++) {
+      final Component component = this.getComponent(i);
+      if (component.isVisible()) {
+        final Rectangle area = clipBounds == null ? component.getBounds() : component.getBounds().intersection(clipBounds);
+        if (!area.isEmpty()) {
+          dirty.add(area);
+        }
+      }
+    }
+    for (final Rectangle area : dirty) {
+      final Graphics2D bg = buffer.createGraphics();
+      try {
+        bg.clipRect(area.x, area.y, area.width, area.height);
+        this.paintBlock(bg);
+      } finally {
+        bg.dispose();
+      }
+    }
+    g.drawImage(buffer, 0, 0, this);
+    if (buffer.contentsLost()) {
+      this.repaint();
+    }
+  }
+
+  private void paintBlock(final Graphics g) {
     if (this.isOpaque()) {
       // Background not painted by default in JComponent.
       final Rectangle clipBounds = g.getClipBounds();
@@ -643,11 +758,15 @@ public class HtmlBlockPanel extends JComponent implements NodeRenderer, Renderab
       final RBlock block = this.rblock;
       if (block != null) {
         final ModelNode rootNode = block.getModelNode();
+        if (this.lazyLayout) {
+          block.setLayoutLimit(Math.max(size.height * LAZY_LAYOUT_SCREENS, this.forcedLayoutLimit));
+        }
         block.layout(size.width, size.height, true, true, null, false);
         // Only set origin
         block.setOrigin(0, 0);
         block.updateWidgetBounds(0, 0);
         this.updateGUIComponents();
+        this.addDirtyRegion(new Rectangle(0, 0, size.width, size.height));
         if (liflag) {
           final long time2 = System.currentTimeMillis();
           final String uri = rootNode instanceof Document ? ((Document) rootNode).getDocumentURI() : "";
@@ -664,6 +783,78 @@ public class HtmlBlockPanel extends JComponent implements NodeRenderer, Renderab
     }
   }
 
+  @Override
+  public void repaint(final long tm, final int x, final int y, final int width, final int height) {
+    // All repaint methods of the component come here.
+    this.addDirtyRegion(new Rectangle(x, y, width, height));
+    super.repaint(tm, x, y, width, height);
+  }
+
+  /**
+   * Moves what was painted in the given area, when painting is retained, so
+   * that only the part of the area that comes into view is painted again.
+   */
+  @Override
+  public void scroll(final int x, final int y, final int width, final int height, final int dx, final int dy) {
+    final VolatileImage buffer = this.paintBuffer;
+    if ((buffer == null) || (Math.abs(dx) >= width) || (Math.abs(dy) >= height) || buffer.contentsLost()) {
+      this.repaint(x, y, width, height);
+      return;
+    }
+    final Graphics bg = buffer.createGraphics();
+    try {
+      bg.copyArea(x + Math.max(0, -dx), y + Math.max(0, -dy), width - Math.abs(dx), height - Math.abs(dy), dx, dy);
+    } finally {
+      bg.dispose();
+    }
+    synchronized (this) {
+      // What was out of date has moved too.
+      for (final Rectangle region : this.dirtyRegions) {
+        final Rectangle moved = new Rectangle(region);
+        moved.translate(dx, dy);
+        region.add(moved);
+      }
+    }
+    if (dx != 0) {
+      this.addDirtyRegion(new Rectangle(dx > 0 ? x : x + width + dx, y, Math.abs(dx), height));
+    }
+    if (dy != 0) {
+      this.addDirtyRegion(new Rectangle(x, dy > 0 ? y : y + height + dy, width, Math.abs(dy)));
+    }
+    // The rest of the area is copied from the buffer.
+    super.repaint(0, x, y, width, height);
+  }
+
+  private synchronized void addDirtyRegion(final Rectangle area) {
+    if (area.isEmpty()) {
+      return;
+    }
+    final ArrayList<Rectangle> regions = this.dirtyRegions;
+    for (final Rectangle region : regions) {
+      if (region.intersects(area)) {
+        region.add(area);
+        return;
+      }
+    }
+    if (regions.size() < MAX_DIRTY_REGIONS) {
+      regions.add(area);
+    } else {
+      final Rectangle union = regions.get(0);
+      for (final Rectangle region : regions) {
+        union.add(region);
+      }
+      union.add(area);
+      regions.clear();
+      regions.add(union);
+    }
+  }
+
+  private synchronized ArrayList<Rectangle> takeDirtyRegions() {
+    final ArrayList<Rectangle> regions = new ArrayList<>(this.dirtyRegions);
+    this.dirtyRegions.clear();
+    return regions;
+  }
+
   /**
    * Implementation of UINode.repaint().
    */
@@ -936,6 +1127,34 @@ public class HtmlBlockPanel extends JComponent implements NodeRenderer, Renderab
   // return defaultPaddingInsets;
   // }
   //
+  public boolean isLazyLayout() {
+    return this.lazyLayout;
+  }
+
+  /**
+   * Sets whether the document is laid out only down to a few panel heights
+   * below the scroll position, and extended as it is scrolled, so that the
+   * time taken by layout does not grow with the size of the document.
+   * Enabled by default.
+   */
+  public void setLazyLayout(final boolean lazyLayout) {
+    this.lazyLayout = lazyLayout;
+  }
+
+  public boolean isRetainedPainting() {
+    return this.retainedPainting;
+  }
+
+  /**
+   * Sets whether what was painted is kept in an image, so that only the areas
+   * that changed are painted again, and scrolling the document moves the image
+   * instead of painting all of it. Enabled by default.
+   */
+  public void setRetainedPainting(final boolean retainedPainting) {
+    this.retainedPainting = retainedPainting;
+    this.repaint();
+  }
+
   public int getDefaultOverflowX() {
     return defaultOverflowX;
   }
@@ -33,6 +33,7 @@ import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.EventListener;
 import java.util.EventObject;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.swing.JComponent;
 
@@ -69,6 +70,8 @@ public class HtmlPanel extends JComponent implements FrameContext {
   private final javax.swing.Timer notificationTimer;
   private final DocumentNotificationListener notificationListener;
   private final Runnable notificationImmediateAction;
+  private final Runnable checkpointAction;
+  private final AtomicBoolean checkpointPending = new AtomicBoolean();
   private static final int NOTIF_TIMER_DELAY = 300;
 
   private volatile boolean isFrameSet = false;
@@ -97,6 +100,10 @@ public class HtmlPanel extends JComponent implements FrameContext {
         processNotifications();
       }
     };
+    this.checkpointAction = () -> {
+      this.checkpointPending.set(false);
+      this.processNotifications();
+    };
   }
 
   /**
@@ -701,6 +708,18 @@ public class HtmlPanel extends JComponent implements FrameContext {
     }
   }
 
+  /**
+   * Has the notifications received so far processed at once, instead of when
+   * the parser pauses for long enough for the timer to expire. While the
+   * event queue is busy with an earlier checkpoint, later ones are merged
+   * into it.
+   */
+  private void addCheckpoint() {
+    if (this.checkpointPending.compareAndSet(false, true)) {
+      EventQueue.invokeLater(this.checkpointAction);
+    }
+  }
+
   /**
    * Invalidates the layout of the given node and schedules it to be layed out
    * later. Multiple invalidations may be processed in a single document layout.
@@ -785,6 +804,10 @@ public class HtmlPanel extends JComponent implements FrameContext {
       // Ignorable here.
     }
 
+    public void loadCheckpoint() {
+      HtmlPanel.this.addCheckpoint();
+    }
+
     public void nodeLoaded(final NodeImpl node) {
       HtmlPanel.this.addNotification(new DocumentNotification(DocumentNotification.GENERIC, node));
     }
@@ -0,0 +1,122 @@
+package org.lobobrowser.html.js;
+
+import java.net.URL;
+import java.util.Objects;
+
+import org.lobobrowser.util.ConcurrentLRUCache;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Script;
+
+/**
+ * Process-wide cache of compiled scripts, keyed by source name, the source
+ * text and the settings of the context that compiled it. This saves
+ * parsing and compiling the same library over and over, as pages of a site
+ * are visited.
+ *
+ * <p>
+ * A compiled <code>Script</code> keeps no reference to the scope it was first
+ * run in, so it can be run again against another document's scope. It does
+ * keep the security domain of the document that compiled it, though, so the
+ * code source is part of the key. The security policy grants network
+ * documents their permissions by host, so for http and https documents the
+ * origin stands in for the code source, and a library can be shared by all
+ * the pages of a site.
+ * </p>
+ */
+final class CompiledScriptCache {
+  private static final int MAX_WEIGHT = 32 * 1024 * 1024;
+
+  /**
+   * Rough size of a compiled script in memory, plus its source kept in the
+   * key, per character of its source.
+   */
+  private static final int BYTES_PER_CHAR = 10;
+
+  private static final ConcurrentLRUCache cache = new ConcurrentLRUCache(MAX_WEIGHT);
+
+  private CompiledScriptCache() {
+  }
+
+  /**
+   * Gets the compiled form of the source, compiling it with the given context
+   * if it is not cached.
+   */
+  static Script getScript(final Context ctx, final String source, final String sourceName, final int lineno) {
+    // The security domain is that of the context's controller. In a nested
+    // context it was set up for the outer script, and so is the code source,
+    // which keeps the key in line with the domain the script is compiled in.
+    final URL codeSource = (URL) ctx.getThreadLocal(Executor.CODE_SOURCE_KEY);
+    if (codeSource == null) {
+      return ctx.compileString(source, sourceName, lineno, null);
+    }
+    final int optimizationLevel = ctx.getOptimizationLevel();
+    final Key key = new Key(source, sourceName, lineno, optimizationLevel, ctx.getLanguageVersion(), getDomainKey(codeSource));
+    final Script cached = (Script) cache.get(key);
+    if (cached != null) {
+      return cached;
+    }
+    final Script script = ctx.compileString(source, sourceName, lineno, null);
+    final long weight = (long) source.length() * BYTES_PER_CHAR;
+    if (weight <= MAX_WEIGHT) {
+      cache.put(key, script, (int) weight);
+    }
+    return script;
+  }
+
+  private static String getDomainKey(final URL codeSource) {
+    final String protocol = codeSource.getProtocol();
+    if ("http".equalsIgnoreCase(protocol) || "https".equalsIgnoreCase(protocol)) {
+      return protocol.toLowerCase() + "://" + codeSource.getHost().toLowerCase() + ":" + codeSource.getPort();
+    }
+    return codeSource.toExternalForm();
+  }
+
+  private static final class Key {
+    private final String sourceName;
+    private final int lineno;
+    private final int optimizationLevel;
+    private final int languageVersion;
+    private final String codeSource;
+    private final String source;
+    private final long sourceHash;
+
+    Key(final String source, final String sourceName, final int lineno, final int optimizationLevel, final int languageVersion,
+        final String codeSource) {
+      this.sourceName = sourceName;
+      this.lineno = lineno;
+      this.optimizationLevel = optimizationLevel;
+      this.languageVersion = languageVersion;
+      this.codeSource = codeSource;
+      this.source = source;
+      this.sourceHash = hash64(source);
+    }
+
+    /** FNV-1a over the characters of the source. */
+    private static long hash64(final String text) {
+      long h = 0xcbf29ce484222325L;
+      final int length = text.length();
+      for (int i = 0; i < length; i++) {
+        h ^= text.charAt(i);
+        h *= 0x100000001b3L;
+      }
+      return h;
+    }
+
+    @Override
+    public int hashCode() {
+      return (int) (this.sourceHash ^ (this.sourceHash >>> 32)) ^ (this.sourceName == null ? 0 : this.sourceName.hashCode());
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+      if (!(other instanceof Key)) {
+        return false;
+      }
+      final Key o = (Key) other;
+      // The hash rules out most mismatches before the sources are compared.
+      return (this.sourceHash == o.sourceHash) && (this.lineno == o.lineno) && (this.optimizationLevel == o.optimizationLevel)
+          && (this.languageVersion == o.languageVersion) && Objects.equals(this.sourceName, o.sourceName)
+          && Objects.equals(this.codeSource, o.codeSource) && this.source.equals(o.source);
+    }
+  }
+}
@@ -30,6 +30,7 @@ import org.lobobrowser.ua.UserAgentContext.Request;
 import org.lobobrowser.ua.UserAgentContext.RequestKind;
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.Function;
+import org.mozilla.javascript.Script;
 import org.mozilla.javascript.Scriptable;
 import org.w3c.dom.Document;
 
@@ -51,10 +52,24 @@ public class Executor {
       // We still need to create a context because of exit() but
       // we cannot set a new security controller.
       ctx.setSecurityController(new SecurityControllerImpl(codeSource, ucontext.getSecurityPolicy()));
+      ctx.putThreadLocal(CODE_SOURCE_KEY, codeSource);
     }
     return ctx;
   }
 
+  /**
+   * Runs a script in the given scope. The compiled script is taken from a
+   * process-wide cache when the same source was compiled before.
+   *
+   * @param ctx
+   *          A context obtained from {@link #createContext(java.net.URL, UserAgentContext)}.
+   */
+  public static Object executeScript(final Context ctx, final Scriptable scope, final String source, final String sourceName,
+      final int lineno) {
+    final Script script = CompiledScriptCache.getScript(ctx, source, sourceName, lineno);
+    return script.exec(ctx, scope);
+  }
+
   public static boolean executeFunction(final NodeImpl element, final Function f, final Event event) {
     return Executor.executeFunction(element, element, f, event);
   }
@@ -125,4 +140,10 @@ public class Executor {
    * HTML document.
    */
   public static final String SCOPE_KEY = "cobra.js.scope";
+
+  /**
+   * A context thread local holding the code source of the context's security
+   * controller.
+   */
+  static final String CODE_SOURCE_KEY = "cobra.js.codeSource";
 }
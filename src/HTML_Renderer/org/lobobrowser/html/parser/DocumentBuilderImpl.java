@@ -138,14 +138,17 @@ public class DocumentBuilderImpl extends DocumentBuilder {
     if (uri == null) {
       logger.warning("parse(): InputSource has no SystemId (URI); document item URLs will not be resolvable.");
     }
-    WritableLineReader wis;
+    final WritableLineReader wis;
+    final PreloadScanner scanner;
     final Reader reader = is.getCharacterStream();
     if (reader != null) {
-      wis = new WritableLineReader(reader);
+      scanner = new PreloadScanner(reader);
+      wis = new WritableLineReader(scanner);
     } else {
       final InputStream in = is.getByteStream();
       if (in != null) {
-        wis = new WritableLineReader(new InputStreamReader(in, charset));
+        scanner = new PreloadScanner(new InputStreamReader(in, charset));
+        wis = new WritableLineReader(scanner);
       } else if (uri != null) {
         throw new IllegalArgumentException("The input source didn't have a character stream, nor an inputstream!");
         /*
@@ -163,6 +166,7 @@ public class DocumentBuilderImpl extends DocumentBuilder {
       }
     }
     final HTMLDocumentImpl document = new HTMLDocumentImpl(this.bcontext, this.rcontext, wis, uri);
+    scanner.setDocument(document);
     return document;
   }
 
@@ -29,6 +29,7 @@ import java.io.InputStreamReader;
 import java.io.LineNumberReader;
 import java.io.Reader;
 import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -64,6 +65,7 @@ public class HtmlParser {
   private final String systemId;
 
   private static final Map<String, Character> ENTITIES = new HashMap<>(256);
+  private static final EntityTrie ENTITY_TRIE = new EntityTrie();
   private static final Map<String, ElementInfo> ELEMENT_INFOS = new HashMap<>(35);
 
   /**
@@ -354,6 +356,10 @@ public class HtmlParser {
     entities.put("circ", new Character((char) 710));
     entities.put("tilde", new Character((char) 732));
 
+    for (final Map.Entry<String, Character> entry : entities.entrySet()) {
+      ENTITY_TRIE.put(entry.getKey(), entry.getValue());
+    }
+
     final Map<String, ElementInfo> elementInfos = ELEMENT_INFOS;
 
     elementInfos.put("NOSCRIPT", new ElementInfo(true, ElementInfo.END_ELEMENT_REQUIRED, null, true));
@@ -538,7 +544,7 @@ public class HtmlParser {
    *           Thrown if there are parse errors.
    */
   public void parse(final Reader reader) throws IOException, SAXException {
-    this.parse(new LineNumberReader(reader));
+    this.parse(reader, this.document);
   }
 
   public void parse(final LineNumberReader reader) throws IOException, SAXException {
@@ -558,7 +564,7 @@ public class HtmlParser {
    * @throws SAXException
    */
   public void parse(final Reader reader, final Node parent) throws IOException, SAXException {
-    this.parse(new LineNumberReader(reader), parent);
+    this.parse(new ParserInput(reader), parent);
   }
 
   /**
@@ -573,6 +579,10 @@ public class HtmlParser {
    * @throws SAXException
    */
   public void parse(final LineNumberReader reader, final Node parent) throws IOException, SAXException {
+    this.parse(new ParserInput(reader), parent);
+  }
+
+  private void parse(final ParserInput reader, final Node parent) throws IOException, SAXException {
     // Note: Parser does not clear document. It could be used incrementally.
     try {
       parent.setUserData(MODIFYING_KEY, Boolean.TRUE, null);
@@ -596,6 +606,10 @@ public class HtmlParser {
   private static final int TOKEN_FULL_ELEMENT = 5;
   private static final int TOKEN_BAD = 6;
 
+  private final StringBuilder textBuffer = new StringBuilder();
+  private final StringBuilder nameBuffer = new StringBuilder();
+  private final NameTable names = new NameTable();
+
   private String normalLastTag = null;
   private boolean justReadTagBegin = false;
   private boolean justReadTagEnd = false;
@@ -620,17 +634,17 @@ public class HtmlParser {
    * @throws StopException
    * @throws SAXException
    */
-  private final int parseToken(final Node parent, final LineNumberReader reader, final Set<String> stopTags,
+  private final int parseToken(final Node parent, final ParserInput reader, final Set<String> stopTags,
       final LinkedList<String> ancestors)
       throws IOException, StopException, SAXException {
     final Document doc = this.document;
-    final StringBuffer textSb = this.readUpToTagBegin(reader);
+    final StringBuilder textSb = this.readUpToTagBegin(reader);
     if (textSb == null) {
       return TOKEN_EOD;
     }
     if (textSb.length() != 0) {
       // int textLine = reader.getLineNumber();
-      final StringBuffer decText = entityDecode(textSb);
+      final StringBuilder decText = entityDecode(textSb);
       final Node textNode = doc.createTextNode(decText.toString());
       try {
         parent.appendChild(textNode);
@@ -645,13 +659,13 @@ public class HtmlParser {
       if (tag == null) {
         return TOKEN_EOD;
       }
-      String normalTag = tag.toUpperCase();
+      String normalTag = this.names.toUpperCase(tag);
       try {
         if (tag.startsWith("!")) {
           if ("!--".equals(tag)) {
             // int commentLine = reader.getLineNumber();
-            final StringBuffer comment = this.passEndOfComment(reader);
-            final StringBuffer decText = entityDecode(comment);
+            final StringBuilder comment = this.passEndOfComment(reader);
+            final StringBuilder decText = entityDecode(comment);
             parent.appendChild(doc.createComment(decText.toString()));
             return TOKEN_COMMENT;
           } else {
@@ -666,7 +680,7 @@ public class HtmlParser {
           return TOKEN_END_ELEMENT;
         } else if (tag.startsWith("?")) {
           tag = tag.substring(1);
-          final StringBuffer data = readProcessingInstruction(reader);
+          final StringBuilder data = readProcessingInstruction(reader);
           parent.appendChild(doc.createProcessingInstruction(tag, data.toString()));
           return TOKEN_FULL_ELEMENT;
         } else {
@@ -754,7 +768,7 @@ public class HtmlParser {
                       // newElement does not have a parent.
                       final Element newElement = se.getElement();
                       tag = newElement.getTagName();
-                      normalTag = tag.toUpperCase();
+                      normalTag = this.names.toUpperCase(tag);
                       // If a subelement throws StopException with
                       // a tag matching the current stop tag, the exception
                       // is rethrown (e.g. <TR><TD>blah<TR><TD>blah)
@@ -815,29 +829,21 @@ public class HtmlParser {
    * Reads text until the beginning of the next tag. Leaves the reader offset
    * past the opening angle bracket. Returns null only on EOF.
    */
-  private final StringBuffer readUpToTagBegin(final LineNumberReader reader) throws IOException, SAXException {
-    StringBuffer sb = null;
-    int intCh;
-    while ((intCh = reader.read()) != -1) {
-      final char ch = (char) intCh;
-      if (ch == '<') {
-        this.justReadTagBegin = true;
-        this.justReadTagEnd = false;
-        this.justReadEmptyElement = false;
-        if (sb == null) {
-          sb = new StringBuffer(0);
-        }
-        return sb;
-      }
-      if (sb == null) {
-        sb = new StringBuffer();
-      }
-      sb.append(ch);
+  private final StringBuilder readUpToTagBegin(final ParserInput reader) throws IOException, SAXException {
+    // The text is turned into a string before the next read, so the buffer
+    // can be reused.
+    final StringBuilder sb = this.textBuffer;
+    sb.setLength(0);
+    if (reader.readUntil('<', sb)) {
+      this.justReadTagBegin = true;
+      this.justReadTagEnd = false;
+      this.justReadEmptyElement = false;
+      return sb;
     }
     this.justReadTagBegin = false;
     this.justReadTagEnd = false;
     this.justReadEmptyElement = false;
-    return sb;
+    return sb.length() == 0 ? null : sb;
   }
 
   /**
@@ -850,52 +856,50 @@ public class HtmlParser {
    * @return
    * @throws IOException
    */
-  private final int parseForEndTag(final Node parent, final LineNumberReader reader, final String tagName, final boolean addTextNode,
+  private final int parseForEndTag(final Node parent, final ParserInput reader, final String tagName, final boolean addTextNode,
       final boolean decodeEntities)
       throws IOException, SAXException {
     final Document doc = this.document;
     int intCh;
-    StringBuffer sb = new StringBuffer();
-    while ((intCh = reader.read()) != -1) {
-      char ch = (char) intCh;
-      if (ch == '<') {
-        intCh = reader.read();
-        if (intCh != -1) {
-          ch = (char) intCh;
-          if (ch == '/') {
-            final StringBuffer tempBuffer = new StringBuffer();
-            INNER: while ((intCh = reader.read()) != -1) {
-              ch = (char) intCh;
-              if (ch == '>') {
-                final String thisTag = tempBuffer.toString().trim();
-                if (thisTag.equalsIgnoreCase(tagName)) {
-                  this.justReadTagBegin = false;
-                  this.justReadTagEnd = true;
-                  this.justReadEmptyElement = false;
-                  this.normalLastTag = thisTag.toUpperCase();
-                  if (addTextNode) {
-                    if (decodeEntities) {
-                      sb = entityDecode(sb);
-                    }
-                    final String text = sb.toString();
-                    if (text.length() != 0) {
-                      final Node textNode = doc.createTextNode(text);
-                      parent.appendChild(textNode);
-                    }
+    StringBuilder sb = new StringBuilder();
+    while (reader.readUntil('<', sb)) {
+      char ch = '<';
+      intCh = reader.read();
+      if (intCh != -1) {
+        ch = (char) intCh;
+        if (ch == '/') {
+          final StringBuilder tempBuffer = new StringBuilder();
+          INNER: while ((intCh = reader.read()) != -1) {
+            ch = (char) intCh;
+            if (ch == '>') {
+              final String thisTag = tempBuffer.toString().trim();
+              if (thisTag.equalsIgnoreCase(tagName)) {
+                this.justReadTagBegin = false;
+                this.justReadTagEnd = true;
+                this.justReadEmptyElement = false;
+                this.normalLastTag = thisTag.toUpperCase();
+                if (addTextNode) {
+                  if (decodeEntities) {
+                    sb = entityDecode(sb);
+                  }
+                  final String text = sb.toString();
+                  if (text.length() != 0) {
+                    final Node textNode = doc.createTextNode(text);
+                    parent.appendChild(textNode);
                   }
-                  return HtmlParser.TOKEN_END_ELEMENT;
-                } else {
-                  break INNER;
                 }
+                return HtmlParser.TOKEN_END_ELEMENT;
               } else {
-                tempBuffer.append(ch);
+                break INNER;
               }
+            } else {
+              tempBuffer.append(ch);
             }
-            sb.append("</");
-            sb.append(tempBuffer);
-          } else {
-            sb.append('<');
           }
+          sb.append("</");
+          sb.append(tempBuffer);
+        } else {
+          sb.append('<');
         }
       }
       sb.append(ch);
@@ -922,8 +926,9 @@ public class HtmlParser {
    * @param reader
    * @return
    */
-  private final String readTag(final Node parent, final LineNumberReader reader) throws IOException {
-    final StringBuffer sb = new StringBuffer();
+  private final String readTag(final Node parent, final ParserInput reader) throws IOException {
+    final StringBuilder sb = this.nameBuffer;
+    sb.setLength(0);
     int chInt;
     chInt = reader.read();
     if (chInt != -1) {
@@ -964,7 +969,7 @@ public class HtmlParser {
             cont = false;
           }
         } else if (ch == '<') {
-          final StringBuffer ltText = new StringBuffer(3);
+          final StringBuilder ltText = new StringBuilder(3);
           ltText.append('<');
           while ((chInt = reader.read()) == '<') {
             ltText.append('<');
@@ -984,7 +989,7 @@ public class HtmlParser {
             continue LOOP;
           }
         } else if (Character.isWhitespace(ch)) {
-          final StringBuffer ltText = new StringBuffer();
+          final StringBuilder ltText = new StringBuilder();
           ltText.append('<');
           ltText.append(ch);
           while ((chInt = reader.read()) != -1) {
@@ -1021,7 +1026,7 @@ public class HtmlParser {
             this.justReadTagEnd = true;
             this.justReadTagBegin = false;
             this.justReadEmptyElement = lastCharSlash;
-            final String tag = sb.toString();
+            final String tag = this.names.get(sb);
             return tag;
           } else if (ch == '/') {
             lastCharSlash = true;
@@ -1045,15 +1050,15 @@ public class HtmlParser {
       this.justReadTagBegin = false;
       this.justReadEmptyElement = false;
     }
-    final String tag = sb.toString();
+    final String tag = this.names.get(sb);
     return tag;
   }
 
-  private final StringBuffer passEndOfComment(final LineNumberReader reader) throws IOException {
+  private final StringBuilder passEndOfComment(final ParserInput reader) throws IOException {
     if (this.justReadTagEnd) {
-      return new StringBuffer(0);
+      return new StringBuilder(0);
     }
-    final StringBuffer sb = new StringBuffer();
+    final StringBuilder sb = new StringBuilder();
     OUTER: for (;;) {
       int chInt = reader.read();
       if (chInt == -1) {
@@ -1068,7 +1073,7 @@ public class HtmlParser {
         }
         ch = (char) chInt;
         if (ch == '-') {
-          StringBuffer extra = null;
+          StringBuilder extra = null;
           INNER: for (;;) {
             chInt = reader.read();
             if (chInt == -1) {
@@ -1085,13 +1090,13 @@ public class HtmlParser {
             } else if (ch == '-') {
               // Allow any number of dashes at the end
               if (extra == null) {
-                extra = new StringBuffer();
+                extra = new StringBuilder();
                 extra.append("--");
               }
               extra.append("-");
             } else if (Character.isWhitespace(ch)) {
               if (extra == null) {
-                extra = new StringBuffer();
+                extra = new StringBuilder();
                 extra.append("--");
               }
               extra.append(ch);
@@ -1118,7 +1123,7 @@ public class HtmlParser {
     return sb;
   }
 
-  private final void passEndOfTag(final Reader reader) throws IOException {
+  private final void passEndOfTag(final ParserInput reader) throws IOException {
     if (this.justReadTagEnd) {
       return;
     }
@@ -1142,8 +1147,8 @@ public class HtmlParser {
     }
   }
 
-  private final StringBuffer readProcessingInstruction(final LineNumberReader reader) throws IOException {
-    final StringBuffer pidata = new StringBuffer();
+  private final StringBuilder readProcessingInstruction(final ParserInput reader) throws IOException {
+    final StringBuilder pidata = new StringBuilder();
     if (this.justReadTagEnd) {
       return pidata;
     }
@@ -1156,7 +1161,7 @@ public class HtmlParser {
     return pidata;
   }
 
-  private final boolean readAttribute(final LineNumberReader reader, final Element element) throws IOException, SAXException {
+  private final boolean readAttribute(final ParserInput reader, final Element element) throws IOException, SAXException {
     if (this.justReadTagEnd) {
       return false;
     }
@@ -1164,14 +1169,14 @@ public class HtmlParser {
     // Read attribute name up to '=' character.
     // May read several attribute names without explicit values.
 
-    StringBuffer attributeName = null;
+    StringBuilder attributeName = null;
     boolean blankFound = false;
     boolean lastCharSlash = false;
     for (;;) {
       final int chInt = reader.read();
       if (chInt == -1) {
         if ((attributeName != null) && (attributeName.length() != 0)) {
-          final String attributeNameStr = attributeName.toString();
+          final String attributeNameStr = this.names.get(attributeName);
           element.setAttribute(attributeNameStr, attributeNameStr);
           attributeName.setLength(0);
         }
@@ -1187,7 +1192,7 @@ public class HtmlParser {
         break;
       } else if (ch == '>') {
         if ((attributeName != null) && (attributeName.length() != 0)) {
-          final String attributeNameStr = attributeName.toString();
+          final String attributeNameStr = this.names.get(attributeName);
           element.setAttribute(attributeNameStr, attributeNameStr);
         }
         this.justReadTagBegin = false;
@@ -1205,19 +1210,20 @@ public class HtmlParser {
         if (blankFound) {
           blankFound = false;
           if ((attributeName != null) && (attributeName.length() != 0)) {
-            final String attributeNameStr = attributeName.toString();
+            final String attributeNameStr = this.names.get(attributeName);
             element.setAttribute(attributeNameStr, attributeNameStr);
             attributeName.setLength(0);
           }
         }
         if (attributeName == null) {
-          attributeName = new StringBuffer(6);
+          attributeName = this.nameBuffer;
+          attributeName.setLength(0);
         }
         attributeName.append(ch);
       }
     }
     // Read blanks up to open quote or first non-blank.
-    StringBuffer attributeValue = null;
+    StringBuilder attributeValue = null;
     int openQuote = -1;
     for (;;) {
       final int chInt = reader.read();
@@ -1227,7 +1233,7 @@ public class HtmlParser {
       final char ch = (char) chInt;
       if (ch == '>') {
         if ((attributeName != null) && (attributeName.length() != 0)) {
-          final String attributeNameStr = attributeName.toString();
+          final String attributeNameStr = this.names.get(attributeName);
           element.setAttribute(attributeNameStr, attributeNameStr);
         }
         this.justReadTagBegin = false;
@@ -1246,7 +1252,7 @@ public class HtmlParser {
         } else {
           openQuote = -1;
           if (attributeValue == null) {
-            attributeValue = new StringBuffer(6);
+            attributeValue = new StringBuilder(6);
           }
           if (lastCharSlash) {
             attributeValue.append('/');
@@ -1269,14 +1275,14 @@ public class HtmlParser {
       if ((openQuote != -1) && (ch == openQuote)) {
         lastCharSlash = false;
         if (attributeName != null) {
-          final String attributeNameStr = attributeName.toString();
+          final String attributeNameStr = this.names.get(attributeName);
           if (attributeValue == null) {
             // Quotes are closed. There's a distinction
             // between blank values and null in HTML, as
             // processed by major browsers.
             element.setAttribute(attributeNameStr, "");
           } else {
-            final StringBuffer actualAttributeValue = entityDecode(attributeValue);
+            final StringBuilder actualAttributeValue = entityDecode(attributeValue);
             element.setAttribute(attributeNameStr, actualAttributeValue.toString());
           }
         }
@@ -1285,11 +1291,11 @@ public class HtmlParser {
         return true;
       } else if ((openQuote == -1) && (ch == '>')) {
         if (attributeName != null) {
-          final String attributeNameStr = attributeName.toString();
+          final String attributeNameStr = this.names.get(attributeName);
           if (attributeValue == null) {
             element.setAttribute(attributeNameStr, null);
           } else {
-            final StringBuffer actualAttributeValue = entityDecode(attributeValue);
+            final StringBuilder actualAttributeValue = entityDecode(attributeValue);
             element.setAttribute(attributeNameStr, actualAttributeValue.toString());
           }
         }
@@ -1300,11 +1306,11 @@ public class HtmlParser {
       } else if ((openQuote == -1) && Character.isWhitespace(ch)) {
         lastCharSlash = false;
         if (attributeName != null) {
-          final String attributeNameStr = attributeName.toString();
+          final String attributeNameStr = this.names.get(attributeName);
           if (attributeValue == null) {
             element.setAttribute(attributeNameStr, null);
           } else {
-            final StringBuffer actualAttributeValue = entityDecode(attributeValue);
+            final StringBuilder actualAttributeValue = entityDecode(attributeValue);
             element.setAttribute(attributeNameStr, actualAttributeValue.toString());
           }
         }
@@ -1313,7 +1319,7 @@ public class HtmlParser {
         return true;
       } else {
         if (attributeValue == null) {
-          attributeValue = new StringBuffer(6);
+          attributeValue = new StringBuilder(6);
         }
         if (lastCharSlash) {
           attributeValue.append('/');
@@ -1325,83 +1331,195 @@ public class HtmlParser {
     this.justReadTagBegin = false;
     this.justReadTagEnd = false;
     if (attributeName != null) {
-      final String attributeNameStr = attributeName.toString();
+      final String attributeNameStr = this.names.get(attributeName);
       if (attributeValue == null) {
         element.setAttribute(attributeNameStr, null);
       } else {
-        final StringBuffer actualAttributeValue = entityDecode(attributeValue);
+        final StringBuilder actualAttributeValue = entityDecode(attributeValue);
         element.setAttribute(attributeNameStr, actualAttributeValue.toString());
       }
     }
     return false;
   }
 
-  private final static StringBuffer entityDecode(final StringBuffer rawText) throws org.xml.sax.SAXException {
+  private final static StringBuilder entityDecode(final StringBuilder rawText) throws org.xml.sax.SAXException {
+    int ampIdx = rawText.indexOf("&");
+    if (ampIdx == -1) {
+      return rawText;
+    }
+    final int length = rawText.length();
+    final StringBuilder sb = new StringBuilder(length);
     int startIdx = 0;
-    StringBuffer sb = null;
-    for (;;) {
-      final int ampIdx = rawText.indexOf("&", startIdx);
-      if (ampIdx == -1) {
-        if (sb == null) {
-          return rawText;
-        } else {
-          sb.append(rawText.substring(startIdx));
-          return sb;
-        }
-      }
-      if (sb == null) {
-        sb = new StringBuffer();
-      }
-      sb.append(rawText.substring(startIdx, ampIdx));
+    while (ampIdx != -1) {
+      sb.append(rawText, startIdx, ampIdx);
       final int colonIdx = rawText.indexOf(";", ampIdx);
       if (colonIdx == -1) {
         sb.append('&');
         startIdx = ampIdx + 1;
-        continue;
-      }
-      final String spec = rawText.substring(ampIdx + 1, colonIdx);
-      if (spec.startsWith("#")) {
-        final String number = spec.substring(1).toLowerCase();
-        int decimal;
-        try {
-          if (number.startsWith("x")) {
-            decimal = Integer.parseInt(number.substring(1), 16);
-          } else {
-            decimal = Integer.parseInt(number);
-          }
-        } catch (final NumberFormatException nfe) {
-          logger.log(Level.WARNING, "entityDecode()", nfe);
-          decimal = 0;
-        }
-        sb.append((char) decimal);
       } else {
-        final int chInt = getEntityChar(spec);
-        if (chInt == -1) {
-          sb.append('&');
-          sb.append(spec);
-          sb.append(';');
+        if ((ampIdx + 1 < colonIdx) && (rawText.charAt(ampIdx + 1) == '#')) {
+          final String number = rawText.substring(ampIdx + 2, colonIdx).toLowerCase();
+          int decimal;
+          try {
+            if (number.startsWith("x")) {
+              decimal = Integer.parseInt(number.substring(1), 16);
+            } else {
+              decimal = Integer.parseInt(number);
+            }
+          } catch (final NumberFormatException nfe) {
+            logger.log(Level.WARNING, "entityDecode()", nfe);
+            decimal = 0;
+          }
+          sb.append((char) decimal);
         } else {
-          sb.append((char) chInt);
+          final int chInt = ENTITY_TRIE.find(rawText, ampIdx + 1, colonIdx);
+          if (chInt == -1) {
+            sb.append(rawText, ampIdx, colonIdx + 1);
+          } else {
+            sb.append((char) chInt);
+          }
         }
+        startIdx = colonIdx + 1;
       }
-      startIdx = colonIdx + 1;
+      ampIdx = rawText.indexOf("&", startIdx);
     }
+    sb.append(rawText, startIdx, length);
+    return sb;
   }
 
   private final Locator getLocator(final int lineNumber, final int columnNumber) {
     return new LocatorImpl(this.publicId, this.systemId, lineNumber, columnNumber);
   }
 
-  private final static int getEntityChar(final String spec) {
-    // TODO: Declared entities
-    Character c = ENTITIES.get(spec);
-    if (c == null) {
-      final String specTL = spec.toLowerCase();
-      c = ENTITIES.get(specTL);
-      if (c == null) {
-        return -1;
+  /**
+   * A trie of entity names, to look names up without making strings of them.
+   */
+  private static final class EntityTrie {
+    private char[] keys = new char[0];
+    private EntityTrie[] children = new EntityTrie[0];
+    private int value = -1;
+
+    private void put(final String name, final char value) {
+      EntityTrie node = this;
+      for (int i = 0; i < name.length(); i++) {
+        final char ch = name.charAt(i);
+        EntityTrie child = node.getChild(ch);
+        if (child == null) {
+          final int size = node.keys.length;
+          node.keys = Arrays.copyOf(node.keys, size + 1);
+          node.children = Arrays.copyOf(node.children, size + 1);
+          child = new EntityTrie();
+          node.keys[size] = ch;
+          node.children[size] = child;
+        }
+        node = child;
+      }
+      node.value = value;
+    }
+
+    private EntityTrie getChild(final char ch) {
+      final char[] keys = this.keys;
+      for (int i = 0; i < keys.length; i++) {
+        if (keys[i] == ch) {
+          return this.children[i];
+        }
+      }
+      return null;
+    }
+
+    /**
+     * Gets the character of the entity named by the given range of the text,
+     * or -1 if there is no such entity. If the name is not found as is, it is
+     * looked up again in lower case.
+     */
+    private int find(final CharSequence text, final int start, final int end) {
+      final int value = this.find(text, start, end, false);
+      return value == -1 ? this.find(text, start, end, true) : value;
+    }
+
+    private int find(final CharSequence text, final int start, final int end, final boolean toLowerCase) {
+      EntityTrie node = this;
+      for (int i = start; (i < end) && (node != null); i++) {
+        final char ch = text.charAt(i);
+        node = node.getChild(toLowerCase ? Character.toLowerCase(ch) : ch);
       }
+      return node == null ? -1 : node.value;
+    }
+  }
+
+  /**
+   * Gives out one string for each distinct tag or attribute name that is
+   * read, so that names are not copied out of the parser's buffer, or kept in
+   * memory, once per element.
+   */
+  private static final class NameTable {
+    /** Past this many names, new names are no longer kept. */
+    private static final int MAX_SIZE = 2048;
+
+    private String[] table = new String[128];
+    private int size = 0;
+    private final Map<String, String> upperCaseNames = new HashMap<>();
+
+    private String get(final CharSequence chars) {
+      final int length = chars.length();
+      int hash = 0;
+      for (int i = 0; i < length; i++) {
+        hash = (31 * hash) + chars.charAt(i);
+      }
+      String[] table = this.table;
+      int mask = table.length - 1;
+      int idx = spread(hash) & mask;
+      for (String name; (name = table[idx]) != null; idx = (idx + 1) & mask) {
+        if ((name.hashCode() == hash) && name.contentEquals(chars)) {
+          return name;
+        }
+      }
+      final String name = chars.toString();
+      if (this.size < MAX_SIZE) {
+        if ((this.size + 1) * 2 > table.length) {
+          table = this.rehash(table.length * 2);
+          mask = table.length - 1;
+          idx = spread(hash) & mask;
+          while (table[idx] != null) {
+            idx = (idx + 1) & mask;
+          }
+        }
+        table[idx] = name;
+        this.size++;
+      }
+      return name;
+    }
+
+    private String toUpperCase(final String name) {
+      final String upperCaseName = this.upperCaseNames.get(name);
+      if (upperCaseName != null) {
+        return upperCaseName;
+      }
+      final String newName = name.toUpperCase();
+      if (this.upperCaseNames.size() < MAX_SIZE) {
+        this.upperCaseNames.put(name, newName);
+      }
+      return newName;
+    }
+
+    private String[] rehash(final int capacity) {
+      final String[] newTable = new String[capacity];
+      final int mask = capacity - 1;
+      for (final String name : this.table) {
+        if (name != null) {
+          int idx = spread(name.hashCode()) & mask;
+          while (newTable[idx] != null) {
+            idx = (idx + 1) & mask;
+          }
+          newTable[idx] = name;
+        }
+      }
+      this.table = newTable;
+      return newTable;
+    }
+
+    private static int spread(final int hash) {
+      return hash ^ (hash >>> 16);
     }
-    return c.charValue();
   }
 }
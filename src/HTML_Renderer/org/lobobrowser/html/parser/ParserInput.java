@@ -0,0 +1,77 @@
+package org.lobobrowser.html.parser;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Input of the {@link HtmlParser}, read from the underlying reader into a
+ * window of characters, a block at a time. The parser looks at one character
+ * at a time, and going through a synchronized reader for each one took up
+ * most of its time. Runs of text can also be copied out of the window in one
+ * call.
+ *
+ * <p>
+ * A block is only read once the window is used up, so text that a
+ * {@link org.lobobrowser.html.io.WritableLineReader} is given while the
+ * window still holds input is only seen after it.
+ * </p>
+ */
+final class ParserInput {
+  private static final int BUFFER_SIZE = 8192;
+
+  private final Reader reader;
+  private final char[] buffer = new char[BUFFER_SIZE];
+  private int position = 0;
+  private int limit = 0;
+
+  ParserInput(final Reader reader) {
+    this.reader = reader;
+  }
+
+  /**
+   * Reads a single character, or returns -1 at the end of the input.
+   */
+  int read() throws IOException {
+    if ((this.position == this.limit) && !this.fill()) {
+      return -1;
+    }
+    return this.buffer[this.position++];
+  }
+
+  /**
+   * Appends characters to the builder up to the given stop character, which is
+   * consumed but not appended.
+   *
+   * @return <code>false</code> if the end of the input was reached before the
+   *         stop character.
+   */
+  boolean readUntil(final char stop, final StringBuilder sb) throws IOException {
+    for (;;) {
+      if ((this.position == this.limit) && !this.fill()) {
+        return false;
+      }
+      final char[] buffer = this.buffer;
+      final int start = this.position;
+      final int limit = this.limit;
+      for (int i = start; i < limit; i++) {
+        if (buffer[i] == stop) {
+          sb.append(buffer, start, i - start);
+          this.position = i + 1;
+          return true;
+        }
+      }
+      sb.append(buffer, start, limit - start);
+      this.position = limit;
+    }
+  }
+
+  private boolean fill() throws IOException {
+    int numRead;
+    do {
+      numRead = this.reader.read(this.buffer, 0, BUFFER_SIZE);
+    } while (numRead == 0);
+    this.position = 0;
+    this.limit = Math.max(numRead, 0);
+    return numRead > 0;
+  }
+}
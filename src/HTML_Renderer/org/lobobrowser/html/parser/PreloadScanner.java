@@ -0,0 +1,287 @@
+package org.lobobrowser.html.parser;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.lobobrowser.html.domimpl.HTMLDocumentImpl;
+import org.lobobrowser.ua.UserAgentContext.RequestKind;
+import org.lobobrowser.util.Urls;
+
+/**
+ * Looks for external resources in the raw input of a document, and asks the
+ * document to preload them.
+ *
+ * <p>
+ * The scanner sits below the buffer of the reader that the {@link HtmlParser}
+ * consumes, so it sees each chunk of input as soon as the buffer is filled,
+ * ahead of the parser. It only recognizes the start tags of
+ * <code>script</code>, <code>link</code>, <code>img</code> and
+ * <code>base</code> elements, and skips comments and the contents of raw text
+ * elements. Mistakes are harmless: a missed resource is simply fetched when
+ * its element is processed, and an extra one is only a wasted request.
+ * </p>
+ */
+final class PreloadScanner extends FilterReader {
+  private static final int MAX_TAG_LENGTH = 4096;
+
+  private static final int STATE_TEXT = 0;
+  private static final int STATE_TAG = 1;
+  private static final int STATE_COMMENT = 2;
+  private static final int STATE_RAW_TEXT = 3;
+
+  private HTMLDocumentImpl document;
+  private URL baseURL;
+  private boolean baseFound = false;
+
+  private int state = STATE_TEXT;
+  private final StringBuilder tagBuffer = new StringBuilder();
+  private char quote = 0;
+  private boolean afterEquals = false;
+  private String rawTextEnd;
+  private int matched;
+
+  PreloadScanner(final Reader in) {
+    super(in);
+  }
+
+  /**
+   * Sets the document that the input belongs to. Must be called before the
+   * document is loaded. Nothing is preloaded without a document.
+   */
+  void setDocument(final HTMLDocumentImpl document) {
+    this.document = document;
+    this.baseURL = document.getDocumentURL();
+  }
+
+  @Override
+  public int read() throws IOException {
+    final int c = super.read();
+    if (c != -1) {
+      this.scan((char) c);
+    }
+    return c;
+  }
+
+  @Override
+  public int read(final char[] cbuf, final int off, final int len) throws IOException {
+    final int numRead = super.read(cbuf, off, len);
+    for (int i = 0; i < numRead; i++) {
+      this.scan(cbuf[off + i]);
+    }
+    return numRead;
+  }
+
+  private void scan(final char ch) {
+    switch (this.state) {
+    case STATE_TEXT:
+      if (ch == '<') {
+        this.state = STATE_TAG;
+        this.tagBuffer.setLength(0);
+        this.quote = 0;
+        this.afterEquals = false;
+      }
+      break;
+    case STATE_TAG:
+      this.scanTag(ch);
+      break;
+    case STATE_COMMENT:
+      // Looking for "-->"
+      if (ch == '-') {
+        this.matched = Math.min(this.matched + 1, 2);
+      } else if ((ch == '>') && (this.matched == 2)) {
+        this.state = STATE_TEXT;
+      } else {
+        this.matched = 0;
+      }
+      break;
+    case STATE_RAW_TEXT:
+      final String end = this.rawTextEnd;
+      if (Character.toLowerCase(ch) == end.charAt(this.matched)) {
+        if (++this.matched == end.length()) {
+          this.state = STATE_TEXT;
+        }
+      } else {
+        this.matched = ch == '<' ? 1 : 0;
+      }
+      break;
+    }
+  }
+
+  private void scanTag(final char ch) {
+    final StringBuilder buffer = this.tagBuffer;
+    if (this.quote != 0) {
+      if (ch == this.quote) {
+        this.quote = 0;
+      }
+    } else if (ch == '>') {
+      this.state = STATE_TEXT;
+      this.processTag(buffer);
+      return;
+    } else if ((ch == '<') && (buffer.length() == 0)) {
+      // "<<" is text followed by a new tag.
+      return;
+    } else if (ch == '=') {
+      this.afterEquals = true;
+    } else if (!Character.isWhitespace(ch)) {
+      if (this.afterEquals && ((ch == '"') || (ch == '\''))) {
+        this.quote = ch;
+      }
+      this.afterEquals = false;
+    }
+    buffer.append(ch);
+    if ((buffer.length() == 3) && "!--".contentEquals(buffer)) {
+      this.state = STATE_COMMENT;
+      this.matched = 0;
+    } else if (buffer.length() > MAX_TAG_LENGTH) {
+      this.state = STATE_TEXT;
+    }
+  }
+
+  private void processTag(final CharSequence tag) {
+    final int length = tag.length();
+    int idx = 0;
+    while ((idx < length) && isTagNameChar(tag.charAt(idx))) {
+      idx++;
+    }
+    if (idx == 0) {
+      // End tags, declarations and the like.
+      return;
+    }
+    final String name = tag.subSequence(0, idx).toString().toLowerCase();
+    switch (name) {
+    case "script":
+      this.preload(parseAttributes(tag, idx).get("src"), RequestKind.JavaScript);
+      this.startRawText(name, tag);
+      break;
+    case "style":
+    case "textarea":
+    case "title":
+    case "xmp":
+      this.startRawText(name, tag);
+      break;
+    case "link": {
+      final Map<String, String> attributes = parseAttributes(tag, idx);
+      final String rel = attributes.get("rel");
+      final String type = attributes.get("type");
+      if ((rel != null) && isStyleSheetRel(rel.trim().toLowerCase())
+          && ((type == null) || (type.trim().length() == 0) || type.trim().equalsIgnoreCase("text/css"))) {
+        this.preload(attributes.get("href"), RequestKind.CSS);
+      }
+      break;
+    }
+    case "img":
+      this.preload(parseAttributes(tag, idx).get("src"), RequestKind.Image);
+      break;
+    case "base": {
+      final String href = parseAttributes(tag, idx).get("href");
+      if ((href != null) && !this.baseFound) {
+        // Only the first base element counts.
+        this.baseFound = true;
+        final URL newBase = this.resolve(href);
+        if (newBase != null) {
+          this.baseURL = newBase;
+        }
+      }
+      break;
+    }
+    }
+  }
+
+  private void startRawText(final String name, final CharSequence tag) {
+    if (tag.charAt(tag.length() - 1) != '/') {
+      this.state = STATE_RAW_TEXT;
+      this.rawTextEnd = "</" + name;
+      this.matched = 0;
+    }
+  }
+
+  private void preload(final String spec, final RequestKind kind) {
+    final HTMLDocumentImpl document = this.document;
+    if ((spec != null) && (document != null)) {
+      final URL url = this.resolve(spec);
+      if (url != null) {
+        document.preload(url, kind);
+      }
+    }
+  }
+
+  private URL resolve(final String spec) {
+    final String trimmed = spec.trim();
+    if (trimmed.length() == 0) {
+      return null;
+    }
+    try {
+      return Urls.createURL(this.baseURL, trimmed);
+    } catch (final MalformedURLException mfu) {
+      return null;
+    }
+  }
+
+  private static boolean isStyleSheetRel(final String rel) {
+    return rel.equals("stylesheet") || rel.equals("alternate stylesheet");
+  }
+
+  private static boolean isTagNameChar(final char ch) {
+    return Character.isLetterOrDigit(ch) || (ch == '-') || (ch == ':');
+  }
+
+  /**
+   * Parses attributes starting at the given index. Names are converted to
+   * lower case, and the first occurrence of a name wins.
+   */
+  private static Map<String, String> parseAttributes(final CharSequence tag, final int start) {
+    final Map<String, String> attributes = new HashMap<>(4);
+    final int length = tag.length();
+    int idx = start;
+    for (;;) {
+      while ((idx < length) && (Character.isWhitespace(tag.charAt(idx)) || (tag.charAt(idx) == '/'))) {
+        idx++;
+      }
+      if (idx >= length) {
+        break;
+      }
+      final int nameStart = idx;
+      while ((idx < length) && !Character.isWhitespace(tag.charAt(idx)) && (tag.charAt(idx) != '=') && (tag.charAt(idx) != '/')) {
+        idx++;
+      }
+      final String name = tag.subSequence(nameStart, idx).toString().toLowerCase();
+      while ((idx < length) && Character.isWhitespace(tag.charAt(idx))) {
+        idx++;
+      }
+      String value = "";
+      if ((idx < length) && (tag.charAt(idx) == '=')) {
+        idx++;
+        while ((idx < length) && Character.isWhitespace(tag.charAt(idx))) {
+          idx++;
+        }
+        if (idx < length) {
+          final char ch = tag.charAt(idx);
+          final int valueStart;
+          if ((ch == '"') || (ch == '\'')) {
+            valueStart = ++idx;
+            while ((idx < length) && (tag.charAt(idx) != ch)) {
+              idx++;
+            }
+            value = tag.subSequence(valueStart, idx).toString();
+            idx++;
+          } else {
+            valueStart = idx;
+            while ((idx < length) && !Character.isWhitespace(tag.charAt(idx))) {
+              idx++;
+            }
+            value = tag.subSequence(valueStart, idx).toString();
+          }
+        }
+      }
+      if (!attributes.containsKey(name)) {
+        attributes.put(name, value.replace("&amp;", "&"));
+      }
+    }
+    return attributes;
+  }
+}
@@ -0,0 +1,139 @@
+package org.lobobrowser.html.renderer;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A spatial index of the positioned renderables of a viewport. The vertical
+ * extent of the renderables is divided in cells of equal height, and each cell
+ * lists the renderables that overlap it, so that painting a clip area or
+ * finding the renderables at a point only looks at the renderables near it
+ * instead of all of them.
+ *
+ * <p>
+ * Results keep the z-index order of the collection the index was built from.
+ * The index is built from the bounds the renderables have at that time, and
+ * must be built again when they move. Bounds are tested again when queried, so
+ * renderables that only changed horizontally are still found.
+ * </p>
+ */
+final class PositionedIndex {
+  private static final int CELL_HEIGHT = 256;
+  private static final int MAX_CELLS = 4096;
+  private static final int[] EMPTY_CELL = new int[0];
+
+  private final PositionedRenderable[] renderables;
+  private final int top;
+  private final int bottom;
+  private final int cellHeight;
+
+  /** Indexes of the renderables that overlap each cell, in z-index order. */
+  private final int[][] cells;
+
+  PositionedIndex(final Collection<PositionedRenderable> others) {
+    final PositionedRenderable[] renderables = others.toArray(PositionedRenderable.EMPTY_ARRAY);
+    final int size = renderables.length;
+    this.renderables = renderables;
+    int top = Integer.MAX_VALUE;
+    int bottom = Integer.MIN_VALUE;
+    final int[] tops = new int[size];
+    final int[] bottoms = new int[size];
+    for (int i = 0; i < size; i++) {
+      final BoundableRenderable r = renderables[i].renderable;
+      tops[i] = r.getY();
+      // Empty renderables are kept in the cell of their position.
+      bottoms[i] = tops[i] + Math.max(r.getHeight(), 1);
+      top = Math.min(top, tops[i]);
+      bottom = Math.max(bottom, bottoms[i]);
+    }
+    if (size == 0) {
+      top = bottom = 0;
+    }
+    this.top = top;
+    this.bottom = bottom;
+    final long span = (long) bottom - top;
+    final int cellHeight = (int) Math.max(CELL_HEIGHT, (span + MAX_CELLS - 1) / MAX_CELLS);
+    this.cellHeight = cellHeight;
+    final int numCells = (int) ((span + cellHeight - 1) / cellHeight);
+
+    final int[] counts = new int[numCells];
+    for (int i = 0; i < size; i++) {
+      final int last = this.getCell(bottoms[i] - 1);
+      for (int c = this.getCell(tops[i]); c <= last; c++) {
+        counts[c]++;
+      }
+    }
+    final int[][] cells = new int[numCells][];
+    for (int c = 0; c < numCells; c++) {
+      cells[c] = counts[c] == 0 ? EMPTY_CELL : new int[counts[c]];
+      counts[c] = 0;
+    }
+    for (int i = 0; i < size; i++) {
+      final int last = this.getCell(bottoms[i] - 1);
+      for (int c = this.getCell(tops[i]); c <= last; c++) {
+        cells[c][counts[c]++] = i;
+      }
+    }
+    this.cells = cells;
+  }
+
+  private int getCell(final int y) {
+    return (int) (((long) y - this.top) / this.cellHeight);
+  }
+
+  /**
+   * Gets the renderables that intersect the given area, in z-index order.
+   */
+  List<PositionedRenderable> find(final Rectangle area) {
+    final long areaBottom = (long) area.y + area.height;
+    if ((area.height <= 0) || (areaBottom <= this.top) || (area.y >= this.bottom)) {
+      return Collections.emptyList();
+    }
+    final int firstCell = area.y <= this.top ? 0 : this.getCell(area.y);
+    final int lastCell = areaBottom >= this.bottom ? this.cells.length - 1 : this.getCell((int) (areaBottom - 1));
+    final PositionedRenderable[] renderables = this.renderables;
+    final ArrayList<PositionedRenderable> result = new ArrayList<>();
+    if (firstCell == lastCell) {
+      for (final int i : this.cells[firstCell]) {
+        if (area.intersects(renderables[i].renderable.getBounds())) {
+          result.add(renderables[i]);
+        }
+      }
+    } else {
+      // A renderable can overlap several cells, and must be listed once.
+      final BitSet candidates = new BitSet(renderables.length);
+      for (int c = firstCell; c <= lastCell; c++) {
+        for (final int i : this.cells[c]) {
+          candidates.set(i);
+        }
+      }
+      for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+        if (area.intersects(renderables[i].renderable.getBounds())) {
+          result.add(renderables[i]);
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Gets the renderables that contain the given point, in z-index order.
+   */
+  List<PositionedRenderable> find(final int x, final int y) {
+    if ((y < this.top) || (y >= this.bottom)) {
+      return Collections.emptyList();
+    }
+    final PositionedRenderable[] renderables = this.renderables;
+    final ArrayList<PositionedRenderable> result = new ArrayList<>(1);
+    for (final int i : this.cells[this.getCell(y)]) {
+      if (renderables[i].renderable.getBounds().contains(x, y)) {
+        result.add(renderables[i]);
+      }
+    }
+    return result;
+  }
+}
@@ -33,17 +33,18 @@ import org.lobobrowser.html.style.RenderState;
 
 final class RBlank extends BaseBoundableRenderable {
   // TODO: Is there a need for RBlank's at all?
-  public final int ascentPlusLeading;
-  private final FontMetrics fontMetrics;
+  private final TextRun run;
 
-  public RBlank(final ModelNode me, final FontMetrics fm, final RenderableContainer container, final int ascentPlusLeading,
-      final int width, final int height) {
+  public RBlank(final ModelNode me, final RenderableContainer container, final TextRun run) {
     super(container, me);
-    this.fontMetrics = fm;
-    this.ascentPlusLeading = ascentPlusLeading;
+    this.run = run;
     // Dimensions set when constructed.
-    this.width = width;
-    this.height = height;
+    this.width = run.blankWidth;
+    this.height = run.height;
+  }
+
+  int getAscentPlusLeading() {
+    return this.run.ascentPlusLeading;
   }
 
   @Override
@@ -122,16 +123,16 @@ final class RBlank extends BaseBoundableRenderable {
     final int td = rs.getTextDecorationMask();
     if (td != 0) {
       if ((td & RenderState.MASK_TEXTDECORATION_UNDERLINE) != 0) {
-        final int lineOffset = this.ascentPlusLeading + 2;
+        final int lineOffset = this.run.ascentPlusLeading + 2;
         g.drawLine(0, lineOffset, this.width, lineOffset);
       }
       if ((td & RenderState.MASK_TEXTDECORATION_LINE_THROUGH) != 0) {
-        final FontMetrics fm = this.fontMetrics;
+        final FontMetrics fm = this.run.fontMetrics;
         final int lineOffset = fm.getLeading() + ((fm.getAscent() + fm.getDescent()) / 2);
         g.drawLine(0, lineOffset, this.width, lineOffset);
       }
       if ((td & RenderState.MASK_TEXTDECORATION_OVERLINE) != 0) {
-        final int lineOffset = this.fontMetrics.getLeading();
+        final int lineOffset = this.run.fontMetrics.getLeading();
         g.drawLine(0, lineOffset, this.width, lineOffset);
       }
       if ((td & RenderState.MASK_TEXTDECORATION_BLINK) != 0) {
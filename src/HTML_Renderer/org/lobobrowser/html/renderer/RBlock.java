@@ -87,6 +87,9 @@ public class RBlock extends BaseElementRenderable {
 
   private LayoutValue lastLayoutValue = null;
   private LayoutKey lastLayoutKey = null;
+  private int layoutLimit = -1;
+  private boolean layoutPartial = false;
+  private boolean extendingLayout = false;
 
   public RBlock(final NodeImpl modelNode, final int listNesting, final UserAgentContext pcontext, final HtmlRendererContext rcontext,
       final FrameContext frameContext,
@@ -334,6 +337,24 @@ public class RBlock extends BaseElementRenderable {
     }
   }
 
+  /**
+   * Lets the next layout of the block stop once its content goes below the
+   * given y-coordinate, relative to the block. The height of the rest of the
+   * content is then estimated, and the block is laid out again when it is
+   * scrolled close to the end of what was laid out. Size-only layouts ignore
+   * the limit.
+   */
+  public void setLayoutLimit(final int layoutLimit) {
+    this.layoutLimit = layoutLimit;
+  }
+
+  /**
+   * Checks whether the last layout of the block stopped at its layout limit.
+   */
+  public boolean isLayoutPartial() {
+    return this.layoutPartial;
+  }
+
   @Override
   public final void doLayout(final int availWidth, final int availHeight, final boolean sizeOnly) {
     // This is an override of an abstract method.
@@ -360,6 +381,8 @@ public class RBlock extends BaseElementRenderable {
       final FloatingBoundsSource floatBoundsSource,
       final int defaultOverflowX, final int defaultOverflowY, final boolean sizeOnly, final boolean useCache) {
     // Expected to be invoked in the GUI thread.
+    final int layoutLimit = this.layoutLimit;
+    this.layoutLimit = -1;
     final RenderState renderState = this.modelNode.getRenderState();
     final Font font = renderState == null ? null : renderState.getFont();
     final int whiteSpace = renderState == null ? RenderState.WS_NORMAL : renderState.getWhiteSpace();
@@ -373,7 +396,8 @@ public class RBlock extends BaseElementRenderable {
     if (sizeOnly) {
       value = useCache ? cachedLayout.get(key) : null;
     } else {
-      if (Objects.equals(key, this.lastLayoutKey)) {
+      // A partial layout is redone, since the limit may have changed.
+      if (!this.layoutPartial && Objects.equals(key, this.lastLayoutKey)) {
         value = this.lastLayoutValue;
       } else {
         value = null;
@@ -381,7 +405,7 @@ public class RBlock extends BaseElementRenderable {
     }
     if (value == null) {
       value = this.forceLayout(renderState, availWidth, availHeight, expandWidth, expandHeight, floatBoundsSource, defaultOverflowX,
-          defaultOverflowY, sizeOnly);
+          defaultOverflowY, sizeOnly, layoutLimit);
       if (sizeOnly) {
         this.lastLayoutKey = null;
         this.lastLayoutValue = null;
@@ -411,6 +435,41 @@ public class RBlock extends BaseElementRenderable {
     this.sendDelayedPairsToParent();
   }
 
+  /**
+   * Converts a layout limit relative to the block into one relative to the
+   * viewport.
+   */
+  private int getViewportLayoutLimit(final int layoutLimit, final Insets insets, final boolean vscroll) {
+    if (layoutLimit == -1) {
+      return -1;
+    }
+    // Scrollable content is laid out down from where it is scrolled to.
+    final int viewportY = vscroll ? Math.min(this.bodyLayout.y, insets.top) : insets.top;
+    return (int) Math.max(0, Math.min(Integer.MAX_VALUE, (long) layoutLimit - viewportY));
+  }
+
+  /**
+   * Lays out the block again if it is partially laid out, and has been
+   * scrolled close to the end of what was laid out.
+   */
+  private void extendPartialLayout() {
+    if (this.layoutPartial) {
+      final RBlockViewport bodyLayout = this.bodyLayout;
+      final Insets insets = this.getInsets(this.hasHScrollBar, this.hasVScrollBar);
+      final int visibleHeight = this.height - insets.top - insets.bottom;
+      final int visibleBottom = (this.height - insets.bottom) - bodyLayout.y;
+      if ((visibleBottom + visibleHeight) > bodyLayout.getLayoutLimit()) {
+        // The viewport continues from where it stopped.
+        this.extendingLayout = true;
+        try {
+          this.relayout();
+        } finally {
+          this.extendingLayout = false;
+        }
+      }
+    }
+  }
+
   private final boolean correctViewportOrigin(final Insets insets, final int blockWidth, final int blockHeight) {
     final RBlockViewport bodyLayout = this.bodyLayout;
     final int viewPortX = bodyLayout.x;
@@ -448,8 +507,9 @@ public class RBlock extends BaseElementRenderable {
   private final LayoutValue forceLayout(final RenderState renderState, final int availWidth, final int availHeight,
       final boolean expandWidth,
       final boolean expandHeight, final FloatingBoundsSource blockFloatBoundsSource, final int defaultOverflowX,
-      final int defaultOverflowY, final boolean sizeOnly) {
+      final int defaultOverflowY, final boolean sizeOnly, final int layoutLimit) {
     // Expected to be invoked in the GUI thread.
+    this.layoutPartial = false;
     // TODO: Not necessary to do full layout if only expandWidth or
     // expandHeight change (specifically in tables).
     RenderState rs = renderState;
@@ -515,10 +575,8 @@ public class RBlock extends BaseElementRenderable {
       declaredHeight = dh.intValue();
     }
 
-    // Remove all GUI components previously added by descendents
-    // The RBlockViewport.layout() method is expected to add all of them
-    // back.
-    this.clearGUIComponents();
+    // GUI components previously added by descendents are removed by
+    // RBlockViewport.layout(), unless it continues a partial layout.
 
     int tentativeWidth;
     int tentativeHeight;
@@ -563,7 +621,8 @@ public class RBlock extends BaseElementRenderable {
     final int desiredViewportHeight = tentativeHeight - insets.top - insets.bottom;
     final int maxY = vauto ? (declaredHeight == -1 ? availHeight : declaredHeight + paddingInsets.top) : -1;
     try {
-      bodyLayout.layout(desiredViewportWidth, desiredViewportHeight, paddingInsets, maxY, viewportFloatBounds, sizeOnly);
+      bodyLayout.layout(desiredViewportWidth, desiredViewportHeight, paddingInsets, maxY, viewportFloatBounds, sizeOnly,
+          this.getViewportLayoutLimit(layoutLimit, insets, vscroll));
     } catch (final SizeExceededException see) {
       // TODO: Nobody throws this exception!
 
@@ -579,8 +638,10 @@ public class RBlock extends BaseElementRenderable {
       if (blockFloatBounds != null) {
         viewportFloatBounds = new ShiftedFloatingBounds(blockFloatBounds, -insets.left, -insets.right, -insets.top);
       }
-      bodyLayout.layout(desiredViewportWidth, desiredViewportHeight, paddingInsets, -1, viewportFloatBounds, sizeOnly);
+      bodyLayout.layout(desiredViewportWidth, desiredViewportHeight, paddingInsets, -1, viewportFloatBounds, sizeOnly,
+          this.getViewportLayoutLimit(layoutLimit, insets, vscroll));
     }
+    this.layoutPartial = bodyLayout.isLayoutPartial();
 
     final int bodyWidth = bodyLayout.width;
     final int bodyHeight = bodyLayout.height;
@@ -1098,6 +1159,10 @@ public class RBlock extends BaseElementRenderable {
     this.cachedLayout.clear();
     this.lastLayoutKey = null;
     this.lastLayoutValue = null;
+    if (!this.extendingLayout) {
+      // The content may have changed, so a partial layout is not continued.
+      this.bodyLayout.invalidateLayoutLocal();
+    }
     final JScrollBar hScrollBar = this.hScrollBar;
     if (hScrollBar != null) {
       // Necessary
@@ -1333,6 +1398,7 @@ public class RBlock extends BaseElementRenderable {
   public void scrollHorizontalTo(final int newX) {
     final RBlockViewport bodyLayout = this.bodyLayout;
     if (bodyLayout != null) {
+      final int oldX = bodyLayout.x;
       final Insets insets = this.getInsets(this.hasHScrollBar, this.hasVScrollBar);
       final int viewPortX = newX;
       if (viewPortX > insets.left) {
@@ -1344,13 +1410,14 @@ public class RBlock extends BaseElementRenderable {
       }
       this.resetScrollBars(null);
       this.updateWidgetBounds();
-      this.repaint();
+      this.repaintScrolled(bodyLayout.x - oldX, 0);
     }
   }
 
   public void scrollVerticalTo(final int newY) {
     final RBlockViewport bodyLayout = this.bodyLayout;
     if (bodyLayout != null) {
+      final int oldY = bodyLayout.y;
       final Insets insets = this.getInsets(this.hasHScrollBar, this.hasVScrollBar);
       final int viewPortY = newY;
       if (viewPortY > insets.top) {
@@ -1362,10 +1429,57 @@ public class RBlock extends BaseElementRenderable {
       }
       this.resetScrollBars(null);
       this.updateWidgetBounds();
+      this.repaintScrolled(0, bodyLayout.y - oldY);
+      this.extendPartialLayout();
+    }
+  }
+
+  /**
+   * Repaints the block after its content was scrolled by the given offset. The
+   * top block lets its container move what was painted, where only the content
+   * moves.
+   */
+  private void repaintScrolled(final int dx, final int dy) {
+    if (((dx != 0) || (dy != 0)) && (this.parent == null) && (this.backgroundImage == null)) {
+      final RenderableContainer container = this.container;
+      final int width = this.width;
+      final int height = this.height;
+      final Insets insets = this.getInsets(this.hasHScrollBar, this.hasVScrollBar);
+      final int innerWidth = width - insets.left - insets.right;
+      final int innerHeight = height - insets.top - insets.bottom;
+      if (!(this.isOverflowVisibleX() && this.isOverflowVisibleY())) {
+        // Content is clipped to the insets.
+        container.scroll(insets.left, insets.top, innerWidth, innerHeight, dx, dy);
+      } else if (!this.paintsBox()) {
+        // Content is not clipped, and is all there is besides scroll bars.
+        final int right = this.hasVScrollBar ? insets.right : 0;
+        final int bottom = this.hasHScrollBar ? insets.bottom : 0;
+        container.scroll(0, 0, width - right, height - bottom, dx, dy);
+        this.repaint(width - right, 0, right, height);
+        this.repaint(0, height - bottom, width - right, bottom);
+      } else {
+        container.scroll(insets.left, insets.top, innerWidth, innerHeight, dx, dy);
+        // Content is not clipped, and can reach into the insets.
+        this.repaint(0, 0, width, insets.top);
+        this.repaint(0, height - insets.bottom, width, insets.bottom);
+        this.repaint(0, insets.top, insets.left, innerHeight);
+        this.repaint(width - insets.right, insets.top, insets.right, innerHeight);
+      }
+    } else {
       this.repaint();
     }
   }
 
+  /**
+   * Checks whether the block paints a border or background.
+   */
+  private boolean paintsBox() {
+    final Insets borderInsets = this.borderInsets;
+    final Color backgroundColor = this.backgroundColor;
+    return ((borderInsets != null) && !borderInsets.equals(RBlockViewport.ZERO_INSETS))
+        || ((backgroundColor != null) && (backgroundColor.getAlpha() > 0)) || (this.backgroundImage != null);
+  }
+
   public void scrollByUnits(final int orientation, final int units) {
     final int offset = orientation == Adjustable.VERTICAL ? getVUnitIncrement(null) * units : units;
     this.scrollBy(orientation, offset);
@@ -1421,6 +1535,7 @@ public class RBlock extends BaseElementRenderable {
       }
       if (needCorrection) {
         this.correctViewportOrigin(insets, this.width, this.height);
+        this.extendPartialLayout();
       }
     }
   }
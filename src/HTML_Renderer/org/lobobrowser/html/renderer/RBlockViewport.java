@@ -23,18 +23,20 @@
 package org.lobobrowser.html.renderer;
 
 import java.awt.EventQueue;
-import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.Insets;
 import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.event.MouseEvent;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
@@ -46,6 +48,7 @@ import org.lobobrowser.html.HtmlObject;
 import org.lobobrowser.html.HtmlRendererContext;
 import org.lobobrowser.html.domimpl.DocumentFragmentImpl;
 import org.lobobrowser.html.domimpl.HTMLBaseInputElement;
+import org.lobobrowser.html.domimpl.HTMLDocumentImpl;
 import org.lobobrowser.html.domimpl.HTMLElementImpl;
 import org.lobobrowser.html.domimpl.HTMLIFrameElementImpl;
 import org.lobobrowser.html.domimpl.HTMLImageElementImpl;
@@ -57,6 +60,7 @@ import org.lobobrowser.html.style.HtmlInsets;
 import org.lobobrowser.html.style.HtmlValues;
 import org.lobobrowser.html.style.JStyleProperties;
 import org.lobobrowser.html.style.RenderState;
+import org.lobobrowser.html.style.TextMetrics;
 import org.lobobrowser.ua.UserAgentContext;
 import org.lobobrowser.util.ArrayUtilities;
 import org.w3c.dom.Node;
@@ -105,6 +109,10 @@ public class RBlockViewport extends BaseRCollection {
 
   private SortedSet<PositionedRenderable> positionedRenderables;
   private ArrayList<BoundableRenderable> seqRenderables = null;
+  // Built when first needed after seqRenderables or positionedRenderables
+  // change, for paint and hit testing.
+  private Renderable[] seqRenderablesArray;
+  private PositionedIndex positionedIndex;
   private ArrayList<ExportableFloat> exportableFloats = null;
   // private Collection exportedRenderables;
   private RLine currentLine;
@@ -123,6 +131,25 @@ public class RBlockViewport extends BaseRCollection {
   private FloatingBounds floatBounds = null;
   private boolean sizeOnly;
   private BoundableRenderable lastSeqBlock;
+  private Map<NodeImpl, TextRun> textRuns;
+  private Map<NodeImpl, TextRun> previousTextRuns;
+  private int layoutLimit = -1;
+  private boolean layoutPartial;
+  private boolean stoppedInBlock;
+  private float limitProgress;
+  private ArrayList<NodeImpl> nodesAfterLimit;
+  // Where the last layout can be continued from, if it stopped at its limit.
+  private ResumePoint resumePoint;
+  // The latest point saved by the current layout pass.
+  private ResumePoint savedResumePoint;
+  // Child indexes of the resumable elements being laid out.
+  private int[] childPath = new int[8];
+  private int childPathDepth;
+  private boolean resumableChildren;
+  // While continuing a layout, the number of child indexes of the resume
+  // point not yet gone back into.
+  private int replayDepth;
+  private int resumeWord;
 
   private static final Map<String, MarkupLayout> elementLayout = new HashMap<>(70);
   private static final MarkupLayout miscLayout = new MiscLayout();
@@ -223,6 +250,8 @@ public class RBlockViewport extends BaseRCollection {
     // Workaround for fact that RBlockViewport does not
     // get validated or invalidated.
     this.layoutUpTreeCanBeInvalidated = true;
+    // Content that was laid out may have changed.
+    this.resumePoint = null;
   }
 
   public int getAvailContentWidth() {
@@ -250,12 +279,41 @@ public class RBlockViewport extends BaseRCollection {
    */
   public void layout(final int desiredWidth, final int desiredHeight, final Insets paddingInsets, final int yLimit,
       final FloatingBounds floatBounds, final boolean sizeOnly) {
+    this.layout(desiredWidth, desiredHeight, paddingInsets, yLimit, floatBounds, sizeOnly, -1);
+  }
+
+  /**
+   * Builds the layout/renderer tree from scratch, possibly stopping early.
+   *
+   * @param yLimit
+   *          If other than -1, <code>layout</code> will throw
+   *          <code>SizeExceededException</code> in the event that the layout
+   *          goes beyond this y-coordinate point.
+   * @param layoutLimit
+   *          If other than -1, layout stops once content goes beyond this
+   *          y-coordinate point, and the height of the rest of the content is
+   *          estimated. See {@link #isLayoutPartial()}. Ignored in size-only
+   *          layouts.
+   */
+  public void layout(final int desiredWidth, final int desiredHeight, final Insets paddingInsets, final int yLimit,
+      final FloatingBounds floatBounds, final boolean sizeOnly, final int layoutLimit) {
     // Expected in GUI thread. It's possible it may be invoked during pack()
     // outside of the GUI thread.
     if (!EventQueue.isDispatchThread() && logger.isLoggable(Level.INFO)) {
       logger.warning("layout(): Invoked outside GUI dispatch thread.");
     }
     final RenderableContainer container = this.container;
+    // A partial layout is continued from where it stopped, unless anything
+    // it depends on has changed since. See invalidateLayoutLocal().
+    final ResumePoint resumePoint = this.resumePoint;
+    this.resumePoint = null;
+    final boolean resume = (resumePoint != null) && !sizeOnly && (layoutLimit != -1)
+        && resumePoint.isFor(desiredWidth, desiredHeight, paddingInsets, yLimit, floatBounds);
+    if (!resume && (container instanceof BaseElementRenderable)) {
+      // Remove all GUI components previously added by descendents. They are
+      // added back by the layout pass.
+      ((BaseElementRenderable) container).clearGUIComponents();
+    }
     this.paddingInsets = paddingInsets;
     this.yLimit = yLimit;
     this.desiredHeight = desiredHeight;
@@ -282,8 +340,38 @@ public class RBlockViewport extends BaseRCollection {
     this.availContentHeight = availh;
     this.availContentWidth = availw;
 
+    if (!resume) {
+      // Runs of text nodes that are no longer laid out are dropped.
+      this.previousTextRuns = this.textRuns;
+      this.textRuns = null;
+    }
+
+    // Limits below the available height would hide a needed scroll bar.
+    this.layoutLimit = sizeOnly || (layoutLimit == -1) ? -1 : Math.max(layoutLimit, yLimit);
+    this.layoutPartial = false;
+    this.stoppedInBlock = false;
+    this.nodesAfterLimit = null;
+    this.savedResumePoint = resume ? resumePoint : null;
+
     // New floating algorithm.
-    this.layoutPass((NodeImpl) this.modelNode);
+    try {
+      if (resume) {
+        this.resumePass(resumePoint);
+      } else {
+        this.layoutPass((NodeImpl) this.modelNode);
+      }
+    } catch (final LayoutLimitException lle) {
+      this.layoutPartial = true;
+      this.lineDone(this.currentLine);
+      this.layoutAbsoluteAfterLimit();
+      final ResumePoint savedResumePoint = this.savedResumePoint;
+      if (savedResumePoint != null) {
+        savedResumePoint.setInputs(desiredWidth, desiredHeight, paddingInsets, yLimit, floatBounds);
+        this.resumePoint = savedResumePoint;
+      }
+    }
+    this.savedResumePoint = null;
+    this.previousTextRuns = null;
 
     // Compute maxY according to last block.
     int maxY = this.maxY;
@@ -332,10 +420,37 @@ public class RBlockViewport extends BaseRCollection {
       }
     }
 
+    if (this.layoutPartial && !this.stoppedInBlock) {
+      // The height of the content that was not laid out is taken to be in
+      // proportion to the content that was. When layout stopped in a block,
+      // the block has made the estimate.
+      final float progress = this.limitProgress;
+      if ((progress > 0) && (progress < 1)) {
+        final long estimate = (long) ((maxY - paddingInsets.top) * ((1 - progress) / progress));
+        this.maxY = maxY = (int) Math.min(maxY + estimate, MAX_ESTIMATED_HEIGHT);
+      }
+    }
+
     this.width = paddingInsets.right + this.maxX;
     this.height = paddingInsets.bottom + maxY;
   }
 
+  /**
+   * Checks whether the last layout stopped at its layout limit, in which case
+   * only part of the content has renderables, and the height of the rest is an
+   * estimate.
+   */
+  public boolean isLayoutPartial() {
+    return this.layoutPartial;
+  }
+
+  /**
+   * Gets the layout limit of the last layout, or -1 if there was none.
+   */
+  public int getLayoutLimit() {
+    return this.layoutLimit;
+  }
+
   private void layoutPass(final NodeImpl rootNode) {
     final RenderableContainer container = this.container;
     container.clearDelayedPairs();
@@ -343,9 +458,11 @@ public class RBlockViewport extends BaseRCollection {
 
     // Remove sequential renderables...
     this.seqRenderables = null;
+    this.seqRenderablesArray = null;
 
     // Remove other renderables...
     this.positionedRenderables = null;
+    this.positionedIndex = null;
 
     // Remove exporatable floats...
     this.exportableFloats = null;
@@ -355,12 +472,103 @@ public class RBlockViewport extends BaseRCollection {
 
     // Start laying out...
     // The parent is expected to have set the RenderState already.
+    this.childPathDepth = 0;
+    this.replayDepth = 0;
+    this.resumableChildren = true;
     this.layoutChildren(rootNode);
 
     // This adds last-line floats.
     this.lineDone(this.currentLine);
   }
 
+  /**
+   * Continues a layout pass that stopped at its layout limit. Renderables added
+   * after the resume point are dropped, and layout goes back into the
+   * elements of the resume point to carry on from there.
+   */
+  private void resumePass(final ResumePoint resumePoint) {
+    final ArrayList<BoundableRenderable> seqRenderables = this.seqRenderables;
+    seqRenderables.subList(resumePoint.numSeqRenderables, seqRenderables.size()).clear();
+    final RLine line = resumePoint.line.copyEmpty();
+    line.setParent(this);
+    seqRenderables.add(line);
+    this.currentLine = line;
+    this.seqRenderablesArray = null;
+
+    final SortedSet<PositionedRenderable> positionedRenderables = this.positionedRenderables;
+    if (positionedRenderables != null) {
+      positionedRenderables.removeIf(pr -> pr.ordinal >= resumePoint.positionedOrdinal);
+    }
+    this.positionedIndex = null;
+    this.positionedOrdinal = resumePoint.positionedOrdinal;
+
+    final ArrayList<ExportableFloat> exportableFloats = this.exportableFloats;
+    if (exportableFloats != null) {
+      exportableFloats.subList(resumePoint.numExportableFloats, exportableFloats.size()).clear();
+    }
+    final Collection<DelayedPair> delayedPairs = this.container.getDelayedPairs();
+    if (delayedPairs != null) {
+      final Iterator<DelayedPair> i = delayedPairs.iterator();
+      for (int j = 0; i.hasNext(); j++) {
+        i.next();
+        if (j >= resumePoint.numDelayedPairs) {
+          i.remove();
+        }
+      }
+    }
+
+    this.floatBounds = resumePoint.floatBounds;
+    this.maxX = resumePoint.maxX;
+    this.maxY = resumePoint.maxY;
+    this.currentCollapsibleMargin = resumePoint.collapsibleMargin;
+    this.lastSeqBlock = resumePoint.lastSeqBlock;
+
+    this.childPathDepth = 0;
+    this.replayDepth = resumePoint.depth;
+    this.resumableChildren = true;
+    this.layoutChildren((NodeImpl) this.modelNode);
+
+    this.lineDone(this.currentLine);
+  }
+
+  /**
+   * Records the state of the layout pass before the child at the given index
+   * of the resumable element at the given depth, or before a word of it if
+   * it is text. Nothing is recorded unless the current line is still empty.
+   */
+  private void saveResumePoint(final int depth, final int index, final int wordIndex) {
+    final RLine line = this.currentLine;
+    final ArrayList<BoundableRenderable> seqRenderables = this.seqRenderables;
+    if ((this.layoutLimit == -1) || (this.pendingFloats != null) || !line.isEmpty() || (line.height != 0)
+        || (seqRenderables.get(seqRenderables.size() - 1) != line)) {
+      return;
+    }
+    ResumePoint resumePoint = this.savedResumePoint;
+    if (resumePoint == null) {
+      resumePoint = new ResumePoint();
+      this.savedResumePoint = resumePoint;
+    }
+    if (resumePoint.path.length <= depth) {
+      resumePoint.path = new int[(depth + 1) * 2];
+    }
+    System.arraycopy(this.childPath, 0, resumePoint.path, 0, depth);
+    resumePoint.path[depth] = index;
+    resumePoint.depth = depth + 1;
+    resumePoint.wordIndex = wordIndex;
+    resumePoint.line = line.copyEmpty();
+    resumePoint.numSeqRenderables = seqRenderables.size() - 1;
+    resumePoint.positionedOrdinal = this.positionedOrdinal;
+    final ArrayList<ExportableFloat> exportableFloats = this.exportableFloats;
+    resumePoint.numExportableFloats = exportableFloats == null ? 0 : exportableFloats.size();
+    final Collection<DelayedPair> delayedPairs = this.container.getDelayedPairs();
+    resumePoint.numDelayedPairs = delayedPairs == null ? 0 : delayedPairs.size();
+    resumePoint.floatBounds = this.floatBounds;
+    resumePoint.maxX = this.maxX;
+    resumePoint.maxY = this.maxY;
+    resumePoint.collapsibleMargin = this.currentCollapsibleMargin;
+    resumePoint.lastSeqBlock = this.lastSeqBlock;
+  }
+
   /**
    * Applies any horizonal aLignment. It may adjust height if necessary.
    *
@@ -477,6 +685,7 @@ public class RBlockViewport extends BaseRCollection {
               }
             }
           }
+          this.positionedIndex = null;
         }
       }
     }
@@ -587,36 +796,165 @@ public class RBlockViewport extends BaseRCollection {
   }
 
   private void layoutChildren(final NodeImpl node) {
+    // Layout can be continued from the children of the root, and of elements
+    // that add nothing around their children.
+    final boolean resumable = this.resumableChildren;
+    this.resumableChildren = false;
     final NodeImpl[] childrenArray = node.getChildrenArray();
     if (childrenArray != null) {
       final int length = childrenArray.length;
-      for (int i = 0; i < length; i++) {
-        final NodeImpl child = childrenArray[i];
-        final short nodeType = child.getNodeType();
-        if (nodeType == Node.TEXT_NODE) {
-          this.layoutText(child);
-        } else if (nodeType == Node.ELEMENT_NODE) {
-          // Note that scanning for node bounds (anchor location)
-          // depends on there being a style changer for inline elements.
-          this.currentLine.addStyleChanger(new RStyleChanger(child));
-          final String nodeName = child.getNodeName().toUpperCase();
-          MarkupLayout ml = elementLayout.get(nodeName);
+      final int depth = this.childPathDepth;
+      int i = 0;
+      int replayIndex = -1;
+      boolean replayInto = false;
+      if (resumable && (depth < this.replayDepth)) {
+        final ResumePoint resumePoint = this.savedResumePoint;
+        i = replayIndex = resumePoint.path[depth];
+        if ((depth + 1) == this.replayDepth) {
+          this.replayDepth = 0;
+          this.resumeWord = resumePoint.wordIndex;
+        } else {
+          replayInto = true;
+        }
+      }
+      if (resumable && (this.childPath.length <= depth)) {
+        this.childPath = Arrays.copyOf(this.childPath, (depth + 1) * 2);
+      }
+      try {
+        for (; i < length; i++) {
+          if (resumable) {
+            if (i != replayIndex) {
+              this.saveResumePoint(depth, i, 0);
+            }
+            this.childPath[depth] = i;
+            this.childPathDepth = depth + 1;
+          }
+          this.layoutChild(node, childrenArray[i], resumable, replayInto && (i == replayIndex));
+        }
+      } catch (final LayoutLimitException lle) {
+        this.limitProgress = (i + this.limitProgress) / length;
+        // Inner levels add theirs first, so the list is in document order.
+        ArrayList<NodeImpl> nodesAfterLimit = this.nodesAfterLimit;
+        if (nodesAfterLimit == null) {
+          nodesAfterLimit = new ArrayList<>();
+          this.nodesAfterLimit = nodesAfterLimit;
+        }
+        for (int j = i + 1; j < length; j++) {
+          nodesAfterLimit.add(childrenArray[j]);
+        }
+        throw lle;
+      }
+    }
+  }
+
+  /**
+   * Lays out the absolutely positioned elements in the content that follows
+   * the layout limit. They are out of flow, so they may well be placed above
+   * the limit, and are shown even though the content around them is not laid
+   * out.
+   */
+  private void layoutAbsoluteAfterLimit() {
+    final ArrayList<NodeImpl> nodes = this.nodesAfterLimit;
+    this.nodesAfterLimit = null;
+    if (nodes != null) {
+      // Finding out the position of an element computes its style, which
+      // is only worth it for elements that can be positioned absolutely.
+      final Object document = ((NodeImpl) this.modelNode).getOwnerDocument();
+      final boolean inStyleSheets = !(document instanceof HTMLDocumentImpl) || ((HTMLDocumentImpl) document).declaresAbsolutePosition();
+      final int layoutLimit = this.layoutLimit;
+      this.layoutLimit = -1;
+      try {
+        for (final NodeImpl node : nodes) {
+          this.layoutAbsoluteDescendants(node, inStyleSheets);
+        }
+      } finally {
+        this.layoutLimit = layoutLimit;
+      }
+    }
+  }
+
+  private void layoutAbsoluteDescendants(final NodeImpl node, final boolean inStyleSheets) {
+    if (node instanceof HTMLElementImpl) {
+      final HTMLElementImpl element = (HTMLElementImpl) node;
+      if ((inStyleSheets || hasAbsoluteInlineStyle(element)) && (getPosition(element) == RenderState.POSITION_ABSOLUTE)) {
+        if (this.isPositionedAgainstThis(element)) {
+          MarkupLayout ml = elementLayout.get(element.getNodeName().toUpperCase());
           if (ml == null) {
             ml = miscLayout;
           }
-          ml.layoutMarkup(this, (HTMLElementImpl) child);
-          this.currentLine.addStyleChanger(new RStyleChanger(node));
-        } else if ((nodeType == Node.COMMENT_NODE) || (nodeType == Node.PROCESSING_INSTRUCTION_NODE)) {
-          // ignore
-        } else if (nodeType == Node.DOCUMENT_FRAGMENT_NODE) {
-          final DocumentFragmentImpl fragment = (DocumentFragmentImpl) child;
-          for (final NodeImpl fragChild : fragment.getChildrenArray()) {
-            layoutChildren(fragChild);
-          }
-        } else {
-          throw new IllegalStateException("Unknown node: " + child);
+          ml.layoutMarkup(this, element);
         }
+        return;
+      }
+    } else if (!(node instanceof DocumentFragmentImpl)) {
+      return;
+    }
+    final NodeImpl[] childrenArray = node.getChildrenArray();
+    if (childrenArray != null) {
+      for (final NodeImpl child : childrenArray) {
+        this.layoutAbsoluteDescendants(child, inStyleSheets);
+      }
+    }
+  }
+
+  private static boolean hasAbsoluteInlineStyle(final HTMLElementImpl element) {
+    final String style = element.getAttribute("style");
+    return (style != null) && (style.toLowerCase().indexOf("absolute") != -1);
+  }
+
+  /**
+   * Checks whether an element found after the layout limit is shown and has
+   * no positioned ancestor below this viewport. Such ancestors have not been
+   * laid out, and the element shows up when layout reaches them.
+   */
+  private boolean isPositionedAgainstThis(final HTMLElementImpl element) {
+    final Object modelNode = this.modelNode;
+    for (Node node = element; (node != modelNode) && (node instanceof HTMLElementImpl); node = node.getParentNode()) {
+      final RenderState rs = ((HTMLElementImpl) node).getRenderState();
+      if ((rs == null) || (rs.getDisplay() == RenderState.DISPLAY_NONE)) {
+        return false;
+      }
+      if ((node != element) && (rs.getPosition() != RenderState.POSITION_STATIC)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @param resumable
+   *          Whether layout can be continued from within the child.
+   * @param replayInto
+   *          Whether the child contains the resume point of the layout being
+   *          continued, in which case it has already been started.
+   */
+  private void layoutChild(final NodeImpl node, final NodeImpl child, final boolean resumable, final boolean replayInto) {
+    final short nodeType = child.getNodeType();
+    if (nodeType == Node.TEXT_NODE) {
+      this.layoutText(child, resumable);
+    } else if (nodeType == Node.ELEMENT_NODE) {
+      // Note that scanning for node bounds (anchor location)
+      // depends on there being a style changer for inline elements.
+      if (!replayInto) {
+        this.currentLine.addStyleChanger(new RStyleChanger(child));
+      }
+      final String nodeName = child.getNodeName().toUpperCase();
+      MarkupLayout ml = elementLayout.get(nodeName);
+      if (ml == null) {
+        ml = miscLayout;
+      }
+      this.resumableChildren = resumable && (ml instanceof ChildrenLayout);
+      ml.layoutMarkup(this, (HTMLElementImpl) child);
+      this.currentLine.addStyleChanger(new RStyleChanger(node));
+    } else if ((nodeType == Node.COMMENT_NODE) || (nodeType == Node.PROCESSING_INSTRUCTION_NODE)) {
+      // ignore
+    } else if (nodeType == Node.DOCUMENT_FRAGMENT_NODE) {
+      final DocumentFragmentImpl fragment = (DocumentFragmentImpl) child;
+      for (final NodeImpl fragChild : fragment.getChildrenArray()) {
+        layoutChildren(fragChild);
       }
+    } else {
+      throw new IllegalStateException("Unknown node: " + child);
     }
   }
 
@@ -647,6 +985,9 @@ public class RBlockViewport extends BaseRCollection {
       final FloatingBoundsSource floatBoundsSource = floatBounds == null ? null : new ParentFloatingBoundsSource(blockShiftRight,
           expectedWidth,
           newX, newY, floatBounds);
+      if (this.layoutLimit != -1) {
+        renderable.setLayoutLimit(this.layoutLimit - newY);
+      }
       renderable.layout(availContentWidth, availContentHeight, true, false, floatBoundsSource, this.sizeOnly);
       this.addAsSeqBlock(renderable, false, false, false, false);
       // Calculate new floating bounds after block has been put in place.
@@ -654,6 +995,13 @@ public class RBlockViewport extends BaseRCollection {
       if (floatingInfo != null) {
         this.importFloatingInfo(floatingInfo, renderable);
       }
+      if (renderable.isLayoutPartial() && !renderable.hasVScrollBar) {
+        // The block has estimated its own remaining height, and whatever
+        // follows it is below the limit too. Blocks that scroll lay out more
+        // of themselves when scrolled.
+        this.stoppedInBlock = true;
+        throw LLE;
+      }
       // Now add line, after float is set.
       this.addLineAfterBlock(renderable, false);
     }
@@ -674,12 +1022,24 @@ public class RBlockViewport extends BaseRCollection {
         final int rightOffset = this.fetchRightOffset(newLineY);
         availContentWidth = this.desiredWidth - leftOffset - rightOffset;
       }
+      final RTable table = renderable instanceof RTable ? (RTable) renderable : null;
+      if ((table != null) && (this.layoutLimit != -1)) {
+        final int newLineY = line == null ? this.paddingInsets.top : line.y + line.height;
+        table.setLayoutLimit(this.layoutLimit - newLineY);
+      }
       renderable.layout(availContentWidth, availContentHeight, this.sizeOnly);
       boolean centerBlock = false;
       if (alignCenterAttribute) {
         final String align = markupElement.getAttribute("align");
         centerBlock = (align != null) && align.equalsIgnoreCase("center");
       }
+      if ((table != null) && table.isLayoutPartial()) {
+        // Like a block, the table has estimated the height of its rows that
+        // were not laid out.
+        this.addAsSeqBlock(renderable, obeysFloats, false, false, centerBlock);
+        this.stoppedInBlock = true;
+        throw LLE;
+      }
       this.addAsSeqBlock(renderable, obeysFloats, false, true, centerBlock);
     }
   }
@@ -1156,7 +1516,7 @@ public class RBlockViewport extends BaseRCollection {
     this.currentCollapsibleMargin = block instanceof RElement ? ((RElement) block).getMarginBottom() : 0;
     if (addLine) {
       newLineY = blockY + block.getHeight();
-      this.checkY(newLineY);
+      this.checkY(newLineY, 1);
       final int leftOffset = this.fetchLeftOffset(newLineY);
       final int newX = leftOffset;
       final int newMaxWidth = this.desiredWidth - this.fetchRightOffset(newLineY) - leftOffset;
@@ -1193,7 +1553,7 @@ public class RBlockViewport extends BaseRCollection {
     }
     final ModelNode lineNode = block.getModelNode().getParentModelNode();
     final int newLineY = block.getY() + block.getHeight();
-    this.checkY(newLineY);
+    this.checkY(newLineY, 1);
     final int leftOffset = this.fetchLeftOffset(newLineY);
     final int newX = leftOffset;
     final int newMaxWidth = this.desiredWidth - this.fetchRightOffset(newLineY) - leftOffset;
@@ -1203,95 +1563,90 @@ public class RBlockViewport extends BaseRCollection {
     this.currentLine = newLine;
   }
 
-  private void layoutText(final NodeImpl textNode) {
+  private void layoutText(final NodeImpl textNode, final boolean resumable) {
     final RenderState renderState = textNode.getRenderState();
     if (renderState == null) {
       throw new IllegalStateException("RenderState is null for node " + textNode + " with parent " + textNode.getParentNode());
     }
-    final FontMetrics fm = renderState.getFontMetrics();
-    final int descent = fm.getDescent();
-    final int ascentPlusLeading = fm.getAscent() + fm.getLeading();
-    final int wordHeight = fm.getHeight();
-    final int blankWidth = fm.charWidth(' ');
     final int whiteSpace = this.overrideNoWrap ? RenderState.WS_NOWRAP : renderState.getWhiteSpace();
-    final int textTransform = renderState.getTextTransform();
-    final String text = textNode.getNodeValue();
-    if (whiteSpace != RenderState.WS_PRE) {
-      final boolean prevAllowOverflow = this.currentLine.isAllowOverflow();
-      final boolean allowOverflow = whiteSpace == RenderState.WS_NOWRAP;
-      this.currentLine.setAllowOverflow(allowOverflow);
-      try {
-        final int length = text.length();
-        final StringBuffer word = new StringBuffer(12);
-        for (int i = 0; i < length; i++) {
-          char ch = text.charAt(i);
-          if (Character.isWhitespace(ch)) {
-            final int wlen = word.length();
-            if (wlen > 0) {
-              final RWord rword = new RWord(textNode, word.toString(), container, fm, descent, ascentPlusLeading, wordHeight, textTransform);
-              this.addWordToLine(rword);
-              word.delete(0, wlen);
-            }
-            final RLine line = this.currentLine;
-            if (line.width > 0) {
-              final RBlank rblank = new RBlank(textNode, fm, container, ascentPlusLeading, blankWidth, wordHeight);
-              line.addBlank(rblank);
-            }
-            for (i++; i < length; i++) {
-              ch = text.charAt(i);
-              if (!Character.isWhitespace(ch)) {
-                word.append(ch);
-                break;
-              }
+    final boolean preformatted = whiteSpace == RenderState.WS_PRE;
+    final TextRun run = this.getTextRun(textNode, renderState, preformatted);
+    final RenderableContainer container = this.container;
+    final int wordCount = run.getWordCount();
+    int i = this.resumeWord;
+    this.resumeWord = 0;
+    try {
+      if (!preformatted) {
+        final boolean prevAllowOverflow = this.currentLine.isAllowOverflow();
+        final boolean allowOverflow = whiteSpace == RenderState.WS_NOWRAP;
+        this.currentLine.setAllowOverflow(allowOverflow);
+        try {
+          for (; i < wordCount; i++) {
+            if (run.hasBlankBefore(i)) {
+              this.addBlankToLine(textNode, run);
             }
-          } else {
-            word.append(ch);
+            this.addWordToLine(new RWord(textNode, container, run, i));
           }
+          if (run.hasTrailingBlank()) {
+            this.addBlankToLine(textNode, run);
+          }
+        } finally {
+          this.currentLine.setAllowOverflow(prevAllowOverflow);
         }
-        if (word.length() > 0) {
-          final RWord rword = new RWord(textNode, word.toString(), container, fm, descent, ascentPlusLeading, wordHeight, textTransform);
-          this.addWordToLine(rword);
-        }
-      } finally {
-        this.currentLine.setAllowOverflow(prevAllowOverflow);
-      }
-    } else {
-      final int length = text.length();
-      boolean lastCharSlashR = false;
-      final StringBuffer line = new StringBuffer();
-      for (int i = 0; i < length; i++) {
-        final char ch = text.charAt(i);
-        switch (ch) {
-        case '\r':
-          lastCharSlashR = true;
-          break;
-        case '\n':
-          final int llen = line.length();
-          if (llen > 0) {
-            final RWord rword = new RWord(textNode, line.toString(), container, fm, descent, ascentPlusLeading, wordHeight, textTransform);
-            this.addWordToLine(rword);
-            line.delete(0, line.length());
+      } else {
+        for (; i < wordCount; i++) {
+          if (run.getWordLength(i) > 0) {
+            this.addWordToLine(new RWord(textNode, container, run, i));
           }
-          final RLine prevLine = this.currentLine;
-          prevLine.setLineBreak(new LineBreak(LineBreak.NONE));
-          this.addLine(textNode, prevLine, prevLine.y + prevLine.height);
-          break;
-        default:
-          if (lastCharSlashR) {
-            line.append('\r');
-            lastCharSlashR = false;
+          if (run.hasBreakAfter(i)) {
+            final RLine prevLine = this.currentLine;
+            prevLine.setLineBreak(new LineBreak(LineBreak.NONE));
+            this.addLine(textNode, prevLine, prevLine.y + prevLine.height);
+            if (resumable) {
+              final int depth = this.childPathDepth - 1;
+              this.saveResumePoint(depth, this.childPath[depth], i + 1);
+            }
           }
-          line.append(ch);
-          break;
         }
       }
-      if (line.length() > 0) {
-        final RWord rword = new RWord(textNode, line.toString(), container, fm, descent, ascentPlusLeading, wordHeight, textTransform);
-        this.addWordToLine(rword);
-      }
+    } catch (final LayoutLimitException lle) {
+      this.limitProgress = (float) i / wordCount;
+      throw lle;
+    }
+  }
+
+  private void addBlankToLine(final NodeImpl textNode, final TextRun run) {
+    final RLine line = this.currentLine;
+    if (line.width > 0) {
+      line.addBlank(new RBlank(textNode, this.container, run));
     }
   }
 
+  /**
+   * Gets the text run of a text node, reusing the one built by the previous
+   * layout if the text and its style have not changed.
+   */
+  private TextRun getTextRun(final NodeImpl textNode, final RenderState renderState, final boolean preformatted) {
+    final TextMetrics tm = renderState.getTextMetrics();
+    final int blankWidth = renderState.getBlankWidth();
+    final int textTransform = renderState.getTextTransform();
+    final String text = textNode.getNodeValue();
+    Map<NodeImpl, TextRun> textRuns = this.textRuns;
+    if (textRuns == null) {
+      textRuns = new HashMap<>();
+      this.textRuns = textRuns;
+    }
+    TextRun run = textRuns.get(textNode);
+    if ((run == null) && (this.previousTextRuns != null)) {
+      run = this.previousTextRuns.get(textNode);
+    }
+    if ((run == null) || !run.isValidFor(text, tm, blankWidth, preformatted, textTransform)) {
+      run = new TextRun(text, tm, blankWidth, preformatted, textTransform);
+    }
+    textRuns.put(textNode, run);
+    return run;
+  }
+
   /**
    *
    * @param others
@@ -1376,31 +1731,18 @@ public class RBlockViewport extends BaseRCollection {
     if (!EventQueue.isDispatchThread() && logger.isLoggable(Level.INFO)) {
       logger.warning("getRenderables(): Invoked outside GUI dispatch thread.");
     }
-    final ArrayList<BoundableRenderable> sr = this.seqRenderables;
+    final Renderable[] array = this.getSeqRenderablesArray();
     Iterator<Renderable> baseIterator = null;
-    if (sr != null) {
-      final Renderable[] array = sr.toArray(Renderable.EMPTY_ARRAY);
+    if (array != null) {
       final Range range = MarkupUtilities.findRenderables(array, clipBounds, true);
       baseIterator = ArrayUtilities.iterator(array, range.offset, range.length);
     }
-    final SortedSet<PositionedRenderable> others = this.positionedRenderables;
-    if ((others == null) || (others.size() == 0)) {
+    final PositionedIndex index = this.getPositionedIndex();
+    if (index == null) {
       return baseIterator;
     } else {
-      final ArrayList<PositionedRenderable> matches = new ArrayList<>();
-      // ArrayList "matches" keeps the order from "others".
-      final Iterator<PositionedRenderable> i = others.iterator();
-      while (i.hasNext()) {
-        final PositionedRenderable pr = i.next();
-        final Object r = pr.renderable;
-        if (r instanceof BoundableRenderable) {
-          final BoundableRenderable br = (BoundableRenderable) r;
-          final Rectangle rbounds = br.getBounds();
-          if (clipBounds.intersects(rbounds)) {
-            matches.add(pr);
-          }
-        }
-      }
+      // The matches keep the z-index order.
+      final List<PositionedRenderable> matches = index.find(clipBounds);
       if (matches.size() == 0) {
         return baseIterator;
       } else {
@@ -1411,6 +1753,37 @@ public class RBlockViewport extends BaseRCollection {
     }
   }
 
+  /**
+   * Gets the sequential renderables as an array, which is kept until they
+   * change.
+   */
+  private Renderable[] getSeqRenderablesArray() {
+    final ArrayList<BoundableRenderable> sr = this.seqRenderables;
+    if (sr == null) {
+      return null;
+    }
+    Renderable[] array = this.seqRenderablesArray;
+    // Sequential renderables are only ever appended.
+    if ((array == null) || (array.length != sr.size())) {
+      array = sr.toArray(Renderable.EMPTY_ARRAY);
+      this.seqRenderablesArray = array;
+    }
+    return array;
+  }
+
+  private PositionedIndex getPositionedIndex() {
+    final SortedSet<PositionedRenderable> others = this.positionedRenderables;
+    if ((others == null) || (others.size() == 0)) {
+      return null;
+    }
+    PositionedIndex index = this.positionedIndex;
+    if (index == null) {
+      index = new PositionedIndex(others);
+      this.positionedIndex = index;
+    }
+    return index;
+  }
+
   @Override
   public BoundableRenderable getRenderable(final int x, final int y) {
     final Iterator<? extends Renderable> i = this.getRenderables(x, y);
@@ -1430,38 +1803,28 @@ public class RBlockViewport extends BaseRCollection {
       logger.warning("getRenderable(): Invoked outside GUI dispatch thread.");
     }
     Collection<BoundableRenderable> result = null;
-    final SortedSet<PositionedRenderable> others = this.positionedRenderables;
+    final PositionedIndex positionedIndex = this.getPositionedIndex();
+    final List<PositionedRenderable> others = positionedIndex == null ? null : positionedIndex.find(pointx, pointy);
     final int size = others == null ? 0 : others.size();
-    final PositionedRenderable[] otherArray = size == 0 ? null : others.toArray(PositionedRenderable.EMPTY_ARRAY);
     // Try to find in other renderables with z-index >= 0 first.
     int index = 0;
     if (size != 0) {
-      final int px = pointx;
-      final int py = pointy;
       // Must go in reverse order
       for (index = size; --index >= 0;) {
-        final PositionedRenderable pr = otherArray[index];
-        final BoundableRenderable r = pr.renderable;
+        final BoundableRenderable r = others.get(index).renderable;
         if (r.getZIndex() < 0) {
           break;
         }
-        if (r instanceof BoundableRenderable) {
-          final BoundableRenderable br = r;
-          final Rectangle rbounds = br.getBounds();
-          if (rbounds.contains(px, py)) {
-            if (result == null) {
-              result = new LinkedList<>();
-            }
-            result.add(br);
-          }
+        if (result == null) {
+          result = new LinkedList<>();
         }
+        result.add(r);
       }
     }
 
     // Now do a "binary" search on sequential renderables.
-    final ArrayList<BoundableRenderable> sr = this.seqRenderables;
-    if (sr != null) {
-      final Renderable[] array = sr.toArray(Renderable.EMPTY_ARRAY);
+    final Renderable[] array = this.getSeqRenderablesArray();
+    if (array != null) {
       final BoundableRenderable found = MarkupUtilities.findRenderable(array, pointx, pointy, true);
       if (found != null) {
         if (result == null) {
@@ -1473,22 +1836,12 @@ public class RBlockViewport extends BaseRCollection {
 
     // Finally, try to find it in renderables with z-index < 0.
     if (size != 0) {
-      final int px = pointx;
-      final int py = pointy;
       // Must go in reverse order
       for (; index >= 0; index--) {
-        final PositionedRenderable pr = otherArray[index];
-        final Renderable r = pr.renderable;
-        if (r instanceof BoundableRenderable) {
-          final BoundableRenderable br = (BoundableRenderable) r;
-          final Rectangle rbounds = br.getBounds();
-          if (rbounds.contains(px, py)) {
-            if (result == null) {
-              result = new LinkedList<>();
-            }
-            result.add(br);
-          }
+        if (result == null) {
+          result = new LinkedList<>();
         }
+        result.add(others.get(index).renderable);
       }
     }
     return result == null ? null : result.iterator();
@@ -1594,11 +1947,80 @@ public class RBlockViewport extends BaseRCollection {
   }
 
   private static final SizeExceededException SEE = new SizeExceededException();
+  private static final LayoutLimitException LLE = new LayoutLimitException();
+
+  /** Bound on estimated heights, so that scroll bars remain usable. */
+  private static final int MAX_ESTIMATED_HEIGHT = 1 << 24;
 
   private final void checkY(final int y) {
+    this.checkY(y, 0);
+  }
+
+  /**
+   * @param progress
+   *          How much of the node being laid out is done if layout stops
+   *          here, from 0 to 1.
+   */
+  private final void checkY(final int y, final float progress) {
     if ((this.yLimit != -1) && (y > this.yLimit)) {
       throw SEE;
     }
+    if ((this.layoutLimit != -1) && (y > this.layoutLimit)) {
+      this.limitProgress = progress;
+      throw LLE;
+    }
+  }
+
+  /**
+   * Thrown to stop a layout pass at the layout limit. Caught by the viewport
+   * that threw it.
+   */
+  private static final class LayoutLimitException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+  }
+
+  /**
+   * The state of a layout pass at a point where its current line is empty, from
+   * which the pass can be continued if it stops at its layout limit.
+   */
+  private static final class ResumePoint {
+    // Child indexes of the resumable elements, starting at the root.
+    int[] path = new int[8];
+    int depth;
+    // The word to continue from, if the point is in preformatted text.
+    int wordIndex;
+    RLine line;
+    int numSeqRenderables;
+    int positionedOrdinal;
+    int numExportableFloats;
+    int numDelayedPairs;
+    FloatingBounds floatBounds;
+    int maxX;
+    int maxY;
+    int collapsibleMargin;
+    BoundableRenderable lastSeqBlock;
+
+    // Parameters of the layout pass.
+    private int desiredWidth;
+    private int desiredHeight;
+    private Insets paddingInsets;
+    private int yLimit;
+    private FloatingBounds initialFloatBounds;
+
+    void setInputs(final int desiredWidth, final int desiredHeight, final Insets paddingInsets, final int yLimit,
+        final FloatingBounds floatBounds) {
+      this.desiredWidth = desiredWidth;
+      this.desiredHeight = desiredHeight;
+      this.paddingInsets = paddingInsets;
+      this.yLimit = yLimit;
+      this.initialFloatBounds = floatBounds;
+    }
+
+    boolean isFor(final int desiredWidth, final int desiredHeight, final Insets paddingInsets, final int yLimit,
+        final FloatingBounds floatBounds) {
+      return (this.desiredWidth == desiredWidth) && (this.desiredHeight == desiredHeight) && (this.yLimit == yLimit)
+          && Objects.equals(this.paddingInsets, paddingInsets) && Objects.equals(this.initialFloatBounds, floatBounds);
+    }
   }
 
   private final void layoutFloat(final BoundableRenderable renderable, final boolean layout, final boolean leftFloat) {
@@ -1666,6 +2088,7 @@ public class RBlockViewport extends BaseRCollection {
       this.positionedRenderables = others;
     }
     others.add(new PositionedRenderable(renderable, verticalAlignable, this.positionedOrdinal++, isFloat));
+    this.positionedIndex = null;
     renderable.setParent(this);
     if (renderable instanceof RUIControl) {
       this.container.addComponent(((RUIControl) renderable).widget.getComponent());
@@ -125,11 +125,32 @@ class RLine extends BaseRCollection {
       g.setFont(font);
     }
     // Note that partial paints of the line can only be done
-    // if all RStyleChanger's are applied first.
+    // if all RStyleChanger's are applied first. Only the last one
+    // before a renderable that is painted matters. Renderables
+    // out of the clip are skipped, but glyphs can reach a little
+    // beyond the bounds of their word.
+    final Rectangle clipBounds = g.getClipBounds();
+    final int clipLeft = clipBounds == null ? Integer.MIN_VALUE : clipBounds.x - this.height;
+    final int clipRight = clipBounds == null ? Integer.MAX_VALUE : clipBounds.x + clipBounds.width + this.height;
+    RStyleChanger pendingStyle = null;
     final Iterator<Renderable> i = this.renderables.iterator();
     if (i != null) {
       while (i.hasNext()) {
         final Object r = i.next();
+        if (r instanceof RStyleChanger) {
+          pendingStyle = (RStyleChanger) r;
+          continue;
+        }
+        if (r instanceof BoundableRenderable) {
+          final BoundableRenderable br = (BoundableRenderable) r;
+          if ((br.getX() >= clipRight) || ((br.getX() + br.getWidth()) <= clipLeft)) {
+            continue;
+          }
+        }
+        if (pendingStyle != null) {
+          pendingStyle.paint(g);
+          pendingStyle = null;
+        }
         if (r instanceof RElement) {
           // RElement's should be clipped.
           final RElement relement = (RElement) r;
@@ -146,6 +167,9 @@ class RLine extends BaseRCollection {
           ((Renderable) r).paint(g);
         }
       }
+      if (pendingStyle != null) {
+        pendingStyle.paint(g);
+      }
     }
   }
 
@@ -273,12 +297,14 @@ class RLine extends BaseRCollection {
 
     int extraHeight = 0;
     final int maxDescent = this.height - this.baseLineOffset;
-    if (rword.descent > maxDescent) {
-      extraHeight += (rword.descent - maxDescent);
+    final int descent = rword.getDescent();
+    if (descent > maxDescent) {
+      extraHeight += (descent - maxDescent);
     }
     final int maxAscentPlusLeading = this.baseLineOffset;
-    if (rword.ascentPlusLeading > maxAscentPlusLeading) {
-      extraHeight += (rword.ascentPlusLeading - maxAscentPlusLeading);
+    final int ascentPlusLeading = rword.getAscentPlusLeading();
+    if (ascentPlusLeading > maxAscentPlusLeading) {
+      extraHeight += (ascentPlusLeading - maxAscentPlusLeading);
     }
     if (extraHeight > 0) {
       final int newHeight = this.height + extraHeight;
@@ -289,14 +315,14 @@ class RLine extends BaseRCollection {
     final int x = offset;
     offset += wiwidth;
     this.width = this.xoffset = offset;
-    rword.setOrigin(x, this.baseLineOffset - rword.ascentPlusLeading);
+    rword.setOrigin(x, this.baseLineOffset - ascentPlusLeading);
   }
 
   public final void addBlank(final RBlank rblank) {
     // NOTE: Blanks may be added without concern for wrapping (?)
     final int x = this.xoffset;
     final int width = rblank.width;
-    rblank.setOrigin(x, this.baseLineOffset - rblank.ascentPlusLeading);
+    rblank.setOrigin(x, this.baseLineOffset - rblank.getAscentPlusLeading());
     this.renderables.add(rblank);
     rblank.setParent(this);
     // Only move xoffset, but not width
@@ -518,10 +544,10 @@ class RLine extends BaseRCollection {
       final Object r = renderable;
       if (r instanceof RWord) {
         final RWord rword = (RWord) r;
-        rword.setY(baseline - rword.ascentPlusLeading);
+        rword.setY(baseline - rword.getAscentPlusLeading());
       } else if (r instanceof RBlank) {
         final RBlank rblank = (RBlank) r;
-        rblank.setY(baseline - rblank.ascentPlusLeading);
+        rblank.setY(baseline - rblank.getAscentPlusLeading());
       } else if (r instanceof RElement) {
         final RElement relement = (RElement) r;
         // int w = relement.getWidth();
@@ -682,4 +708,14 @@ class RLine extends BaseRCollection {
   public boolean isEmpty() {
     return this.xoffset == 0;
   }
+
+  /**
+   * Copies a line that is empty and has no height. The copy has no parent.
+   */
+  RLine copyEmpty() {
+    final RLine line = new RLine(this.modelNode, this.container, this.x, this.y, this.desiredMaxWidth, 0, this.allowOverflow);
+    line.firstAllowOverflowWord = this.firstAllowOverflowWord;
+    line.renderables.addAll(this.renderables);
+    return line;
+  }
 }
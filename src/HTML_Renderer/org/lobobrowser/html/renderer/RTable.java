@@ -53,6 +53,8 @@ class RTable extends BaseElementRenderable {
   private int otherOrdinal;
   private LayoutKey lastLayoutKey = null;
   private LayoutValue lastLayoutValue = null;
+  private int layoutLimit = -1;
+  private boolean layoutPartial = false;
 
   public RTable(final HTMLElementImpl modelNode, final UserAgentContext pcontext, final HtmlRendererContext rcontext,
       final FrameContext frameContext,
@@ -94,8 +96,27 @@ class RTable extends BaseElementRenderable {
     }
   }
 
+  /**
+   * Lets the next layout of the table skip rows that start below the given
+   * y-coordinate, relative to the table. Their heights are estimated, and they
+   * are laid out when the table is laid out again with a larger limit.
+   * Size-only layouts ignore the limit.
+   */
+  public void setLayoutLimit(final int layoutLimit) {
+    this.layoutLimit = layoutLimit;
+  }
+
+  /**
+   * Checks whether the last layout of the table stopped at its layout limit.
+   */
+  public boolean isLayoutPartial() {
+    return this.layoutPartial;
+  }
+
   @Override
   public void doLayout(final int availWidth, final int availHeight, final boolean sizeOnly) {
+    final int layoutLimit = this.layoutLimit;
+    this.layoutLimit = -1;
     final Map<LayoutKey, LayoutValue> cachedLayout = this.cachedLayout;
     final RenderState rs = this.modelNode.getRenderState();
     final int whitespace = rs == null ? RenderState.WS_NORMAL : rs.getWhiteSpace();
@@ -105,39 +126,53 @@ class RTable extends BaseElementRenderable {
     final boolean overrideNoWrap = RenderThreadState.getState().overrideNoWrap;
     final LayoutKey layoutKey = new LayoutKey(availWidth, availHeight, whitespace, font, overrideNoWrap);
     LayoutValue layoutValue;
+    boolean extend = false;
     if (sizeOnly) {
       layoutValue = cachedLayout.get(layoutKey);
     } else {
       if (Objects.equals(layoutKey, this.lastLayoutKey)) {
-        layoutValue = this.lastLayoutValue;
+        // A partial layout is continued, since the limit may have changed.
+        extend = this.layoutPartial;
+        layoutValue = extend ? null : this.lastLayoutValue;
       } else {
         layoutValue = null;
       }
     }
     if (layoutValue == null) {
-      final Collection<PositionedRenderable> prs = this.positionedRenderables;
-      if (prs != null) {
-        prs.clear();
-      }
-      this.otherOrdinal = 0;
-      this.clearGUIComponents();
-      this.clearDelayedPairs();
-      this.applyStyle(availWidth, availHeight);
       final TableMatrix tm = this.tableMatrix;
-      final Insets insets = this.getInsets(false, false);
-      tm.reset(insets, availWidth, availHeight);
-      // TODO: No scrollbars
-      tm.build(availWidth, availHeight, sizeOnly);
+      final Insets insets;
+      // Delayed pairs already imported are kept when layout is continued.
+      int numImportedPairs = 0;
+      if (extend) {
+        final Collection<DelayedPair> pairs = this.delayedPairs;
+        numImportedPairs = pairs == null ? 0 : pairs.size();
+        insets = this.getInsets(false, false);
+        tm.extend(getRenderLimit(layoutLimit, insets));
+      } else {
+        final Collection<PositionedRenderable> prs = this.positionedRenderables;
+        if (prs != null) {
+          prs.clear();
+        }
+        this.otherOrdinal = 0;
+        this.clearGUIComponents();
+        this.clearDelayedPairs();
+        this.applyStyle(availWidth, availHeight);
+        insets = this.getInsets(false, false);
+        tm.reset(insets, availWidth, availHeight);
+        // TODO: No scrollbars
+        tm.build(availWidth, availHeight, sizeOnly, getRenderLimit(layoutLimit, insets));
+      }
       tm.doLayout(insets);
+      this.layoutPartial = tm.isPartial();
 
       // Import applicable delayed pairs.
       // Only needs to be done if layout was forced. Otherwise, they should've been imported already.
       final Collection<DelayedPair> pairs = this.delayedPairs;
       if (pairs != null) {
         final Iterator<DelayedPair> i = pairs.iterator();
-        while (i.hasNext()) {
+        for (int j = 0; i.hasNext(); j++) {
           final DelayedPair pair = i.next();
-          if (pair.containingBlock == this) {
+          if ((j >= numImportedPairs) && (pair.containingBlock == this)) {
             this.importDelayedPair(pair);
           }
         }
@@ -162,6 +197,14 @@ class RTable extends BaseElementRenderable {
     this.sendDelayedPairsToParent();
   }
 
+  /**
+   * Converts a layout limit relative to the table into one relative to its
+   * content.
+   */
+  private static int getRenderLimit(final int layoutLimit, final Insets insets) {
+    return layoutLimit == -1 ? -1 : Math.max(0, layoutLimit - insets.top);
+  }
+
   @Override
   public void invalidateLayoutLocal() {
     super.invalidateLayoutLocal();
@@ -30,44 +30,31 @@ import java.awt.event.MouseEvent;
 
 import org.lobobrowser.html.domimpl.ModelNode;
 import org.lobobrowser.html.style.RenderState;
+import org.lobobrowser.html.style.TextMetrics;
 
 final class RWord extends BaseBoundableRenderable {
-  final String shownWord;
-  public final FontMetrics fontMetrics;
-  public final int descent;
-  public final int ascentPlusLeading;
+  /** The run of the text node, shared by all its words. */
+  private final TextRun run;
+  private final int offset;
+  private final int length;
 
-  public RWord(final ModelNode me, final String word, final RenderableContainer container, final FontMetrics fontMetrics,
-      final int descent, final int ascentPlusLeading,
-      final int height, final int textTransform) {
+  public RWord(final ModelNode me, final RenderableContainer container, final TextRun run, final int index) {
     super(container, me);
-    final String renderedWord = textTransform == RenderState.TEXTTRANSFORM_NONE ? word : transformText(word, textTransform);
-    this.shownWord = renderedWord;
-    this.fontMetrics = fontMetrics;
-    this.descent = descent;
-    this.ascentPlusLeading = ascentPlusLeading;
-    this.height = height;
+    this.run = run;
+    this.offset = run.getWordOffset(index);
+    this.length = run.getWordLength(index);
+    this.height = run.height;
     // TODO: In anti-aliasing, stringWidth is said not to be reliable.
     // Dimensions set when constructed.
-    this.width = fontMetrics.stringWidth(renderedWord);
+    this.width = run.getWordWidth(index);
   }
 
-  private static String transformText(final String word, final int textTransform) {
-    String string;
-    switch (textTransform) {
-    case RenderState.TEXTTRANSFORM_CAPITALIZE:
-      string = Character.toTitleCase(word.charAt(0)) + word.substring(1).toLowerCase();
-      break;
-    case RenderState.TEXTTRANSFORM_LOWERCASE:
-      string = word.toLowerCase();
-      break;
-    case RenderState.TEXTTRANSFORM_UPPERCASE:
-      string = word.toUpperCase();
-      break;
-    default:
-      string = word;
-    }
-    return string;
+  int getDescent() {
+    return this.run.descent;
+  }
+
+  int getAscentPlusLeading() {
+    return this.run.ascentPlusLeading;
   }
 
   @Override
@@ -88,9 +75,9 @@ final class RWord extends BaseBoundableRenderable {
       return;
     }
 
-    final String word = this.shownWord;
+    final TextRun run = this.run;
     final int width = this.width;
-    final int ascentPlusLeading = this.ascentPlusLeading;
+    final int ascentPlusLeading = run.ascentPlusLeading;
     final int height = this.height;
     final int textDecoration = rs.getTextDecorationMask();
     final Color bkg = rs.getTextBackgroundColor();
@@ -103,7 +90,7 @@ final class RWord extends BaseBoundableRenderable {
         g.setColor(oldColor);
       }
     }
-    g.drawString(word, 0, ascentPlusLeading);
+    g.drawChars(run.chars, this.offset, this.length, 0, ascentPlusLeading);
     final int td = textDecoration;
     if (td != 0) {
       if ((td & RenderState.MASK_TEXTDECORATION_UNDERLINE) != 0) {
@@ -111,12 +98,12 @@ final class RWord extends BaseBoundableRenderable {
         g.drawLine(0, lineOffset, width, lineOffset);
       }
       if ((td & RenderState.MASK_TEXTDECORATION_LINE_THROUGH) != 0) {
-        final FontMetrics fm = this.fontMetrics;
+        final FontMetrics fm = run.fontMetrics;
         final int lineOffset = fm.getLeading() + ((fm.getAscent() + fm.getDescent()) / 2);
         g.drawLine(0, lineOffset, width, lineOffset);
       }
       if ((td & RenderState.MASK_TEXTDECORATION_OVERLINE) != 0) {
-        final FontMetrics fm = this.fontMetrics;
+        final FontMetrics fm = run.fontMetrics;
         final int lineOffset = fm.getLeading();
         g.drawLine(0, lineOffset, width, lineOffset);
       }
@@ -163,12 +150,14 @@ final class RWord extends BaseBoundableRenderable {
     }
     int width1 = -1;
     int width2 = -1;
-    final char[] wordChars = this.shownWord.toCharArray();
+    final char[] chars = this.run.chars;
+    final int offset = this.offset;
+    final int length = this.length;
     if (startX != -1) {
       width1 = 0;
-      final FontMetrics fm = this.fontMetrics;
-      for (int len = 0; len < wordChars.length; len++) {
-        final int w = fm.charsWidth(wordChars, 0, len);
+      final TextMetrics tm = this.run.textMetrics;
+      for (int len = 0; len < length; len++) {
+        final int w = tm.charsWidth(chars, offset, len);
         if (w > startX) {
           break;
         }
@@ -177,9 +166,9 @@ final class RWord extends BaseBoundableRenderable {
     }
     if (endX != -1) {
       width2 = 0;
-      final FontMetrics fm = this.fontMetrics;
-      for (int len = 0; len < wordChars.length; len++) {
-        final int w = fm.charsWidth(wordChars, 0, len);
+      final TextMetrics tm = this.run.textMetrics;
+      for (int len = 0; len < length; len++) {
+        final int w = tm.charsWidth(chars, offset, len);
         if (w > endX) {
           break;
         }
@@ -233,12 +222,14 @@ final class RWord extends BaseBoundableRenderable {
     }
     int index1 = -1;
     int index2 = -1;
-    final char[] wordChars = this.shownWord.toCharArray();
+    final char[] chars = this.run.chars;
+    final int offset = this.offset;
+    final int length = this.length;
     if (startX != -1) {
       index1 = 0;
-      final FontMetrics fm = this.fontMetrics;
-      for (int len = 0; len < wordChars.length; len++) {
-        final int w = fm.charsWidth(wordChars, 0, len);
+      final TextMetrics tm = this.run.textMetrics;
+      for (int len = 0; len < length; len++) {
+        final int w = tm.charsWidth(chars, offset, len);
         if (w > startX) {
           break;
         }
@@ -247,9 +238,9 @@ final class RWord extends BaseBoundableRenderable {
     }
     if (endX != -1) {
       index2 = 0;
-      final FontMetrics fm = this.fontMetrics;
-      for (int len = 0; len < wordChars.length; len++) {
-        final int w = fm.charsWidth(wordChars, 0, len);
+      final TextMetrics tm = this.run.textMetrics;
+      for (int len = 0; len < length; len++) {
+        final int w = tm.charsWidth(chars, offset, len);
         if (w > endX) {
           break;
         }
@@ -258,11 +249,11 @@ final class RWord extends BaseBoundableRenderable {
     }
     if ((index1 != -1) || (index2 != -1)) {
       final int startIndex = index1 == -1 ? 0 : index1;
-      final int endIndex = index2 == -1 ? wordChars.length : index2;
-      buffer.append(wordChars, startIndex, endIndex - startIndex);
+      final int endIndex = index2 == -1 ? length : index2;
+      buffer.append(chars, offset + startIndex, endIndex - startIndex);
     } else {
       if (inSelection) {
-        buffer.append(wordChars);
+        buffer.append(chars, offset, length);
         return true;
       }
     }
@@ -337,6 +328,6 @@ final class RWord extends BaseBoundableRenderable {
 
   @Override
   public String toString() {
-    return "RWord[word=" + this.shownWord + "]";
+    return "RWord[word=" + new String(this.run.chars, this.offset, this.length) + "]";
   }
 }
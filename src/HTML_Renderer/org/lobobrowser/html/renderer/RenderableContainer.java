@@ -39,6 +39,15 @@ public interface RenderableContainer {
 
   public void repaint(int x, int y, int width, int height);
 
+  /**
+   * Repaints an area whose content has moved by the given offset, as when it
+   * is scrolled. Containers that keep what they painted can move it instead of
+   * painting it again.
+   */
+  default public void scroll(final int x, final int y, final int width, final int height, final int dx, final int dy) {
+    this.repaint(x, y, width, height);
+  }
+
   public void relayout();
 
   public void updateAllWidgetBounds();
@@ -72,6 +72,11 @@ class TableMatrix {
    */
   private int hasOldStyleBorder;
 
+  // Cells are laid out in order. Those after the render limit are not, and
+  // the minimum heights of their rows are taken as their heights.
+  private int renderLimit = -1;
+  private int numRenderedCells;
+
   /**
    * @param element
    */
@@ -129,6 +134,7 @@ class TableMatrix {
     ROWS.clear();
     ALL_CELLS.clear();
     ROW_ELEMENTS.clear();
+    this.numRenderedCells = 0;
     // TODO: Does it need this old-style border?
     final String borderText = this.tableElement.getAttribute("border");
     int border = 0;
@@ -184,12 +190,36 @@ class TableMatrix {
     this.hasOldStyleBorder = border > 0 ? 1 : 0;
   }
 
-  public void build(final int availWidth, final int availHeight, final boolean sizeOnly) {
+  /**
+   * @param renderLimit
+   *          If other than -1, cells in rows that start below this
+   *          y-coordinate, relative to the top of the table content, are not
+   *          laid out. Column widths still take every cell into account. See
+   *          {@link #isPartial()}.
+   */
+  public void build(final int availWidth, final int availHeight, final boolean sizeOnly, final int renderLimit) {
     final int hasBorder = this.hasOldStyleBorder;
+    this.renderLimit = sizeOnly ? -1 : renderLimit;
     this.determineColumnSizes(hasBorder, this.cellSpacingX, this.cellSpacingY, availWidth);
     this.determineRowSizes(hasBorder, this.cellSpacingY, availHeight, sizeOnly);
   }
 
+  /**
+   * Lays out more cells of a partially built table, up to a new render limit.
+   * The table must not have changed since it was built.
+   */
+  public void extend(final int renderLimit) {
+    this.renderLimit = renderLimit;
+    this.finalRender(this.hasOldStyleBorder, this.cellSpacingY, false);
+  }
+
+  /**
+   * Checks whether some cells were not laid out because of the render limit.
+   */
+  public boolean isPartial() {
+    return this.numRenderedCells < this.ALL_CELLS.size();
+  }
+
   private final static HTMLTableRowElementImpl getParentRow(final HTMLTableCellElementImpl cellNode) {
     org.w3c.dom.Node parentNode = cellNode.getParentNode();
     for (;;) {
@@ -1213,8 +1243,23 @@ class TableMatrix {
     final SizeInfo[] colSizes = this.columnSizes;
     final SizeInfo[] rowSizes = this.rowSizes;
     final int numCells = allCells.size();
-    for (int i = 0; i < numCells; i++) {
+    final int renderLimit = sizeOnly ? -1 : this.renderLimit;
+    // Top of the row at limitRow, as far as rows have been rendered.
+    int limitRow = 0;
+    int limitRowY = cellSpacing + hasBorder;
+    int i = this.numRenderedCells;
+    for (; i < numCells; i++) {
       final RTableCell cell = (RTableCell) allCells.get(i);
+      if (renderLimit != -1) {
+        final int cellRow = cell.getVirtualRow();
+        while (limitRow < cellRow) {
+          limitRowY += rowSizes[limitRow].actualSize + cellSpacing + (2 * hasBorder);
+          limitRow++;
+        }
+        if (limitRowY > renderLimit) {
+          break;
+        }
+      }
       final int col = cell.getVirtualColumn();
       final int colSpan = cell.getColSpan();
       int totalCellWidth;
@@ -1253,6 +1298,7 @@ class TableMatrix {
         }
       }
     }
+    this.numRenderedCells = i;
   }
 
   // public final void adjust() {
@@ -1353,7 +1399,7 @@ class TableMatrix {
     // Set offsets of each cell
 
     final ArrayList<Renderable> allCells = this.ALL_CELLS;
-    final int numCells = allCells.size();
+    final int numCells = this.numRenderedCells;
     for (int i = 0; i < numCells; i++) {
       final RTableCell cell = (RTableCell) allCells.get(i);
       cell.setCellBounds(colSizes, rowSizes, hasBorder, cellSpacingX, cellSpacingY);
@@ -1362,7 +1408,7 @@ class TableMatrix {
 
   public final void paint(final Graphics g, final Dimension size) {
     final ArrayList<Renderable> allCells = this.ALL_CELLS;
-    final int numCells = allCells.size();
+    final int numCells = this.numRenderedCells;
     for (int i = 0; i < numCells; i++) {
       final RTableCell cell = (RTableCell) allCells.get(i);
       // Should clip table cells, just in case.
@@ -1449,7 +1495,7 @@ class TableMatrix {
    */
   public RenderableSpot getLowestRenderableSpot(final int x, final int y) {
     final ArrayList<Renderable> allCells = this.ALL_CELLS;
-    final int numCells = allCells.size();
+    final int numCells = this.numRenderedCells;
     for (int i = 0; i < numCells; i++) {
       final RTableCell cell = (RTableCell) allCells.get(i);
       final Rectangle bounds = cell.getBounds();
@@ -1472,7 +1518,7 @@ class TableMatrix {
    */
   public boolean onMouseClick(final MouseEvent event, final int x, final int y) {
     final ArrayList<Renderable> allCells = this.ALL_CELLS;
-    final int numCells = allCells.size();
+    final int numCells = this.numRenderedCells;
     for (int i = 0; i < numCells; i++) {
       final RTableCell cell = (RTableCell) allCells.get(i);
       final Rectangle bounds = cell.getBounds();
@@ -1488,7 +1534,7 @@ class TableMatrix {
 
   public boolean onDoubleClick(final MouseEvent event, final int x, final int y) {
     final ArrayList<Renderable> allCells = this.ALL_CELLS;
-    final int numCells = allCells.size();
+    final int numCells = this.numRenderedCells;
     for (int i = 0; i < numCells; i++) {
       final RTableCell cell = (RTableCell) allCells.get(i);
       final Rectangle bounds = cell.getBounds();
@@ -1530,7 +1576,7 @@ class TableMatrix {
    */
   public boolean onMousePressed(final MouseEvent event, final int x, final int y) {
     final ArrayList<Renderable> allCells = this.ALL_CELLS;
-    final int numCells = allCells.size();
+    final int numCells = this.numRenderedCells;
     for (int i = 0; i < numCells; i++) {
       final RTableCell cell = (RTableCell) allCells.get(i);
       final Rectangle bounds = cell.getBounds();
@@ -1554,7 +1600,7 @@ class TableMatrix {
    */
   public boolean onMouseReleased(final MouseEvent event, final int x, final int y) {
     final ArrayList<Renderable> allCells = this.ALL_CELLS;
-    final int numCells = allCells.size();
+    final int numCells = this.numRenderedCells;
     boolean found = false;
     for (int i = 0; i < numCells; i++) {
       final RTableCell cell = (RTableCell) allCells.get(i);
@@ -1583,7 +1629,7 @@ class TableMatrix {
   }
 
   public Iterator<Renderable> getRenderables() {
-    return this.ALL_CELLS.iterator();
+    return this.ALL_CELLS.subList(0, this.numRenderedCells).iterator();
   }
 
   private static class RowsFilter implements NodeFilter {
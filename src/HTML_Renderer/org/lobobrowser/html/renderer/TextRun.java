@@ -0,0 +1,199 @@
+package org.lobobrowser.html.renderer;
+
+import java.awt.FontMetrics;
+
+import org.lobobrowser.html.style.RenderState;
+import org.lobobrowser.html.style.TextMetrics;
+
+/**
+ * The words of a text node, split and measured once. The shown characters
+ * (after any text transform) are kept in a single array, and words are stored
+ * as offsets, lengths and widths in primitive arrays. The {@link RWord} and
+ * {@link RBlank} renderables of the node only keep a reference to the run and
+ * the index of their word, so laying out a text node allocates no strings,
+ * and laying it out again, for example after a resize, does not measure
+ * anything.
+ *
+ * <p>
+ * In preformatted text, words are whole lines, and can be empty.
+ * </p>
+ */
+final class TextRun {
+  /** The word is preceded by white space. */
+  private static final byte BLANK_BEFORE = 1;
+
+  /** The word (a line of preformatted text) is followed by a line break. */
+  private static final byte BREAK_AFTER = 2;
+
+  private final String text;
+  private final boolean preformatted;
+  private final int textTransform;
+
+  final TextMetrics textMetrics;
+  final FontMetrics fontMetrics;
+  final int descent;
+  final int ascentPlusLeading;
+  final int height;
+  final int blankWidth;
+
+  /** The shown characters. Words refer to ranges of it. */
+  final char[] chars;
+  private final int wordCount;
+  private final int[] wordOffsets;
+  private final int[] wordLengths;
+  private final int[] wordWidths;
+  private final byte[] wordFlags;
+  private final boolean trailingBlank;
+
+  TextRun(final String text, final TextMetrics textMetrics, final int blankWidth, final boolean preformatted, final int textTransform) {
+    this.text = text;
+    this.preformatted = preformatted;
+    this.textTransform = textTransform;
+    this.textMetrics = textMetrics;
+    final FontMetrics fm = textMetrics.getFontMetrics();
+    this.fontMetrics = fm;
+    this.descent = fm.getDescent();
+    this.ascentPlusLeading = fm.getAscent() + fm.getLeading();
+    this.height = fm.getHeight();
+    this.blankWidth = blankWidth;
+
+    final int length = text.length();
+    // There are at most this many words.
+    final int maxWords = preformatted ? countLines(text) : (length + 1) / 2;
+    final int[] offsets = new int[maxWords];
+    final int[] lengths = new int[maxWords];
+    final byte[] flags = new byte[maxWords];
+    int count = 0;
+    boolean trailingBlank = false;
+    if (preformatted) {
+      int start = 0;
+      for (int i = 0; i <= length; i++) {
+        if ((i == length) || (text.charAt(i) == '\n')) {
+          int end = i;
+          // A carriage return before a line feed is dropped.
+          if ((end > start) && (text.charAt(end - 1) == '\r')) {
+            end--;
+          }
+          offsets[count] = start;
+          lengths[count] = end - start;
+          flags[count] = i == length ? 0 : BREAK_AFTER;
+          count++;
+          start = i + 1;
+        }
+      }
+    } else {
+      boolean blank = false;
+      int i = 0;
+      while (i < length) {
+        if (Character.isWhitespace(text.charAt(i))) {
+          blank = true;
+          i++;
+        } else {
+          final int start = i;
+          while ((i < length) && !Character.isWhitespace(text.charAt(i))) {
+            i++;
+          }
+          offsets[count] = start;
+          lengths[count] = i - start;
+          flags[count] = blank ? BLANK_BEFORE : 0;
+          count++;
+          blank = false;
+        }
+      }
+      trailingBlank = blank;
+    }
+    this.wordCount = count;
+    this.wordOffsets = offsets;
+    this.wordLengths = lengths;
+    this.wordFlags = flags;
+    this.trailingBlank = trailingBlank;
+    this.chars = textTransform == RenderState.TEXTTRANSFORM_NONE ? text.toCharArray() : this.transform(text);
+
+    final int[] widths = new int[count];
+    final char[] chars = this.chars;
+    for (int w = 0; w < count; w++) {
+      widths[w] = textMetrics.charsWidth(chars, offsets[w], lengths[w]);
+    }
+    this.wordWidths = widths;
+  }
+
+  private static int countLines(final String text) {
+    int lines = 1;
+    for (int i = text.indexOf('\n'); i != -1; i = text.indexOf('\n', i + 1)) {
+      lines++;
+    }
+    return lines;
+  }
+
+  /**
+   * Builds the shown characters of transformed text, and moves word offsets
+   * accordingly, since transforms can change the length of a word.
+   */
+  private char[] transform(final String text) {
+    final StringBuilder shown = new StringBuilder(text.length());
+    for (int w = 0; w < this.wordCount; w++) {
+      final int offset = this.wordOffsets[w];
+      final String word = transformText(text.substring(offset, offset + this.wordLengths[w]), this.textTransform);
+      this.wordOffsets[w] = shown.length();
+      this.wordLengths[w] = word.length();
+      shown.append(word);
+    }
+    final char[] chars = new char[shown.length()];
+    shown.getChars(0, chars.length, chars, 0);
+    return chars;
+  }
+
+  private static String transformText(final String word, final int textTransform) {
+    if (word.isEmpty()) {
+      return word;
+    }
+    switch (textTransform) {
+    case RenderState.TEXTTRANSFORM_CAPITALIZE:
+      return Character.toTitleCase(word.charAt(0)) + word.substring(1).toLowerCase();
+    case RenderState.TEXTTRANSFORM_LOWERCASE:
+      return word.toLowerCase();
+    case RenderState.TEXTTRANSFORM_UPPERCASE:
+      return word.toUpperCase();
+    default:
+      return word;
+    }
+  }
+
+  /**
+   * Checks whether the run can be laid out again for the given text and
+   * style.
+   */
+  boolean isValidFor(final String text, final TextMetrics textMetrics, final int blankWidth, final boolean preformatted,
+      final int textTransform) {
+    return (this.textMetrics == textMetrics) && (this.blankWidth == blankWidth) && (this.preformatted == preformatted)
+        && (this.textTransform == textTransform) && this.text.equals(text);
+  }
+
+  int getWordCount() {
+    return this.wordCount;
+  }
+
+  int getWordOffset(final int index) {
+    return this.wordOffsets[index];
+  }
+
+  int getWordLength(final int index) {
+    return this.wordLengths[index];
+  }
+
+  int getWordWidth(final int index) {
+    return this.wordWidths[index];
+  }
+
+  boolean hasBlankBefore(final int index) {
+    return (this.wordFlags[index] & BLANK_BEFORE) != 0;
+  }
+
+  boolean hasBreakAfter(final int index) {
+    return (this.wordFlags[index] & BREAK_AFTER) != 0;
+  }
+
+  boolean hasTrailingBlank() {
+    return this.trailingBlank;
+  }
+}
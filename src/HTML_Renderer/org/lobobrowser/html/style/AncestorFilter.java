@@ -0,0 +1,80 @@
+package org.lobobrowser.html.style;
+
+import java.util.Collection;
+
+/**
+ * An immutable Bloom filter over the tag names, ids and class names of the
+ * ancestors of an element. It is used to reject selectors with descendant or
+ * child combinators without walking up the tree. A negative answer is
+ * definite; a positive answer has to be confirmed by real matching.
+ */
+public final class AncestorFilter {
+  private static final int WORDS = 8;
+  private static final int BIT_MASK = (WORDS * 64) - 1;
+
+  public static final AncestorFilter EMPTY = new AncestorFilter(new long[WORDS]);
+
+  private final long[] bits;
+
+  private AncestorFilter(final long[] bits) {
+    this.bits = bits;
+  }
+
+  /**
+   * Gets the filter of a child of an element, given the filter of that element
+   * and the element's own (lowercase) tag name, id and class names.
+   *
+   * @param idTL
+   *          May be <code>null</code>.
+   */
+  public AncestorFilter extend(final String tagTL, final String idTL, final Collection<String> classesTL) {
+    final long[] newBits = this.bits.clone();
+    add(newBits, tagHash(tagTL));
+    if (idTL != null) {
+      add(newBits, idHash(idTL));
+    }
+    for (final String c : classesTL) {
+      add(newBits, classHash(c));
+    }
+    return new AncestorFilter(newBits);
+  }
+
+  /**
+   * Returns <code>false</code> if at least one of the given hashes is
+   * definitely not present in the filter.
+   */
+  public boolean mightContainAll(final int[] hashes) {
+    final long[] b = this.bits;
+    for (final int h : hashes) {
+      final int h1 = h & BIT_MASK;
+      final int h2 = (h >>> 16) & BIT_MASK;
+      if (((b[h1 >>> 6] & (1L << h1)) == 0) || ((b[h2 >>> 6] & (1L << h2)) == 0)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static void add(final long[] b, final int h) {
+    final int h1 = h & BIT_MASK;
+    final int h2 = (h >>> 16) & BIT_MASK;
+    b[h1 >>> 6] |= 1L << h1;
+    b[h2 >>> 6] |= 1L << h2;
+  }
+
+  private static int mix(final int h) {
+    return h * 0x9E3779B9;
+  }
+
+  static int tagHash(final String tagTL) {
+    return mix(tagTL.hashCode());
+  }
+
+  static int idHash(final String idTL) {
+    return mix((idTL.hashCode() * 31) + 1);
+  }
+
+  static int classHash(final String classTL) {
+    return mix((classTL.hashCode() * 31) + 2);
+  }
+}
@@ -26,6 +26,9 @@ import java.io.IOException;
 import java.io.StringReader;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.StringTokenizer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -36,16 +39,22 @@ import org.lobobrowser.ua.NetworkRequest;
 import org.lobobrowser.ua.UserAgentContext;
 import org.lobobrowser.ua.UserAgentContext.Request;
 import org.lobobrowser.ua.UserAgentContext.RequestKind;
+import org.lobobrowser.util.LRUCache;
 import org.lobobrowser.util.SecurityUtil;
 import org.lobobrowser.util.Strings;
 import org.lobobrowser.util.Urls;
 import org.w3c.css.sac.InputSource;
+import org.w3c.dom.Element;
 import org.w3c.dom.stylesheets.MediaList;
 
 import cz.vutbr.web.css.CSSException;
 import cz.vutbr.web.css.CSSFactory;
+import cz.vutbr.web.css.CombinedSelector;
+import cz.vutbr.web.css.Declaration;
 import cz.vutbr.web.css.MediaSpecNone;
 import cz.vutbr.web.css.RuleFactory;
+import cz.vutbr.web.css.RuleSet;
+import cz.vutbr.web.css.Selector;
 import cz.vutbr.web.css.StyleSheet;
 import cz.vutbr.web.csskit.RuleFactoryImpl;
 import cz.vutbr.web.csskit.antlr.CSSParserFactory;
@@ -54,6 +63,9 @@ import cz.vutbr.web.csskit.antlr.CSSParserFactory.SourceType;
 public class CSSUtilities {
   private static final Logger logger = Logger.getLogger(CSSUtilities.class.getName());
   private static final RuleFactory rf = RuleFactoryImpl.getInstance();
+  private static final int INLINE_CACHE_MAX_WEIGHT = 2 * 1024 * 1024;
+  private static final int INLINE_BYTES_PER_CHAR = 12;
+  private static final LRUCache inlineDeclarationsCache = new LRUCache(INLINE_CACHE_MAX_WEIGHT);
 
   private CSSUtilities() {
   }
@@ -106,20 +118,24 @@ public class CSSUtilities {
   public static StyleSheet jParse(final org.w3c.dom.Node ownerNode, final String href, final HTMLDocumentImpl doc, final String baseUri,
       final boolean considerDoubleSlashComments) throws MalformedURLException {
     final UserAgentContext bcontext = doc.getUserAgentContext();
-    final NetworkRequest request = bcontext.createHttpRequest();
     final URL baseURL = new URL(baseUri);
     final URL cssURL = Urls.createURL(baseURL, href);
     final String cssURI = cssURL == null ? href : cssURL.toExternalForm();
-    // Perform a synchronous request
-    SecurityUtil.doPrivileged(() -> {
-      try {
-        request.open("GET", cssURI, false);
-        request.send(null, new Request(cssURL, RequestKind.CSS));
-      } catch (final java.io.IOException thrown) {
-        logger.log(Level.WARNING, "parse()", thrown);
-      }
-      return getEmptyStyleSheet();
-    });
+    NetworkRequest request = cssURL == null ? null : doc.takePreloadedRequest(cssURL);
+    if (request == null) {
+      // Perform a synchronous request
+      final NetworkRequest newRequest = bcontext.createHttpRequest();
+      SecurityUtil.doPrivileged(() -> {
+        try {
+          newRequest.open("GET", cssURI, false);
+          newRequest.send(null, new Request(cssURL, RequestKind.CSS));
+        } catch (final java.io.IOException thrown) {
+          logger.log(Level.WARNING, "parse()", thrown);
+        }
+        return getEmptyStyleSheet();
+      });
+      request = newRequest;
+    }
     final int status = request.getStatus();
     if ((status != 200) && (status != 0)) {
       logger.warning("Unable to parse CSS. URI=[" + cssURI + "]. Response status was " + status + ".");
@@ -142,10 +158,16 @@ public class CSSUtilities {
   }
 
   private static StyleSheet jParseCSS2(final org.w3c.dom.Node ownerNode, final String cssURI, final String processedText) {
+    final String media = ownerNode instanceof Element ? ((Element) ownerNode).getAttribute("media") : null;
+    final StyleSheet cached = ParsedStyleSheetCache.get(cssURI, media, processedText);
+    if (cached != null) {
+      return cached;
+    }
     CSSFactory.setAutoImportMedia(new MediaSpecNone());
     try {
       final URL base = new URL(cssURI);
-      return CSSParserFactory.parse(processedText, null, SourceType.EMBEDDED, base);
+      final StyleSheet parsed = CSSParserFactory.parse(processedText, null, SourceType.EMBEDDED, base);
+      return ParsedStyleSheetCache.put(cssURI, media, processedText, parsed);
     } catch (IOException | CSSException e) {
       logger.log(Level.SEVERE, "Unable to parse CSS. URI=[" + cssURI + "].", e);
       return getEmptyStyleSheet();
@@ -154,14 +176,87 @@ public class CSSUtilities {
 
   public static StyleSheet jParseInlineStyle(final String style, final String encoding,
       final HTMLElementImpl element, final boolean inlinePriority) {
+    // Inline declarations are very repetitive (table cells, generated
+    // mark-up), so their parsed form is shared through a cache. Only the
+    // selector, which refers to the element itself, is created afresh.
+    final String key = encoding == null ? inlineStyleKey(style, element, inlinePriority) : null;
+    if (key != null) {
+      final InlineDeclarations cached;
+      synchronized (inlineDeclarationsCache) {
+        cached = (InlineDeclarations) inlineDeclarationsCache.get(key);
+      }
+      if (cached != null) {
+        return cached.createStyleSheet(element, inlinePriority);
+      }
+    }
     try {
-      return CSSParserFactory.parse(style, encoding, SourceType.INLINE, element, inlinePriority, element.getDocumentURL());
+      final StyleSheet sheet = CSSParserFactory.parse(style, encoding, SourceType.INLINE, element, inlinePriority, element.getDocumentURL());
+      if (key != null) {
+        final InlineDeclarations declarations = InlineDeclarations.from(sheet);
+        if (declarations != null) {
+          synchronized (inlineDeclarationsCache) {
+            inlineDeclarationsCache.put(key, declarations, style.length() * INLINE_BYTES_PER_CHAR);
+          }
+        }
+      }
+      return sheet;
     } catch (IOException | CSSException e) {
       logger.log(Level.SEVERE, "Unable to parse CSS. CSS=[" + style + "].", e);
       return getEmptyStyleSheet();
     }
   }
 
+  private static String inlineStyleKey(final String style, final HTMLElementImpl element, final boolean inlinePriority) {
+    // The base URL is part of the key because url() values are resolved
+    // against it while parsing.
+    final URL baseURL = element.getDocumentURL();
+    final String base = baseURL == null ? "" : baseURL.toExternalForm();
+    return (inlinePriority ? "!" : "-") + base + '\u0000' + style;
+  }
+
+  /**
+   * The declarations of a parsed inline style, which can be shared by all the
+   * elements that use the same declaration string.
+   */
+  private static final class InlineDeclarations {
+    private final List<Declaration> declarations;
+    private final StyleSheet.Origin origin;
+
+    private InlineDeclarations(final List<Declaration> declarations, final StyleSheet.Origin origin) {
+      this.declarations = declarations;
+      this.origin = origin;
+    }
+
+    /**
+     * Returns <code>null</code> unless the sheet has the shape produced by
+     * the inline parser: a single rule set selecting the element only.
+     */
+    static InlineDeclarations from(final StyleSheet sheet) {
+      if ((sheet.size() == 1) && (sheet.get(0) instanceof RuleSet)) {
+        final RuleSet ruleSet = (RuleSet) sheet.get(0);
+        final List<CombinedSelector> selectors = ruleSet.getSelectors();
+        if ((selectors.size() == 1) && (selectors.get(0).size() == 1) && (selectors.get(0).get(0).size() == 1)) {
+          return new InlineDeclarations(new ArrayList<>(ruleSet), sheet.getOrigin());
+        }
+      }
+      return null;
+    }
+
+    StyleSheet createStyleSheet(final HTMLElementImpl element, final boolean inlinePriority) {
+      final Selector selector = (Selector) rf.createSelector().unlock();
+      selector.add(rf.createElementDOM(element, inlinePriority));
+      final CombinedSelector combinedSelector = (CombinedSelector) rf.createCombinedSelector().unlock();
+      combinedSelector.add(selector);
+      final RuleSet ruleSet = rf.createSet();
+      ruleSet.replaceAll(this.declarations);
+      ruleSet.setSelectors(Arrays.asList(combinedSelector));
+      final StyleSheet sheet = rf.createStyleSheet(this.origin);
+      sheet.unlock();
+      sheet.add(ruleSet);
+      return sheet;
+    }
+  }
+
   public static boolean matchesMedia(final String mediaValues, final UserAgentContext rcontext) {
     if ((mediaValues == null) || (mediaValues.length() == 0)) {
       return true;
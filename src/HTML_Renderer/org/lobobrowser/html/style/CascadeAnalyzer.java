@@ -0,0 +1,161 @@
+package org.lobobrowser.html.style;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.lobobrowser.html.style.RuleIndex.IndexedSelector;
+import org.w3c.dom.Element;
+
+import cz.vutbr.web.css.CSSFactory;
+import cz.vutbr.web.css.Declaration;
+import cz.vutbr.web.css.MatchCondition;
+import cz.vutbr.web.css.MediaSpec;
+import cz.vutbr.web.css.NodeData;
+import cz.vutbr.web.css.Selector;
+import cz.vutbr.web.css.StyleSheet;
+import cz.vutbr.web.csskit.ElementUtil;
+import cz.vutbr.web.domassign.AssignedDeclaration;
+import cz.vutbr.web.domassign.DirectAnalyzer;
+
+/**
+ * A {@link DirectAnalyzer} whose rules are indexed (into id, class, tag and
+ * universal buckets) once, at construction time. Instances are immutable after
+ * construction and can be shared by all the elements of a document until the
+ * set of style sheets changes.
+ */
+public final class CascadeAnalyzer extends DirectAnalyzer {
+  private static final MediaSpec SCREEN_MEDIA = new MediaSpec("screen");
+
+  private final RuleIndex index;
+
+  public CascadeAnalyzer(final List<StyleSheet> sheets, final MatchCondition matchCondition) {
+    super(sheets);
+    this.registerMatchCondition(matchCondition);
+    this.index = new RuleIndex(sheets, SCREEN_MEDIA);
+  }
+
+  /**
+   * Gets the declarations that apply to the element, sorted in cascade order.
+   *
+   * @param ancestorFilter
+   *          A filter of the element's ancestors, used to reject selectors
+   *          early. May be <code>null</code>.
+   */
+  public List<Declaration> getDeclarations(final Element element, final Selector.PseudoDeclaration pseudoElement,
+      final AncestorFilter ancestorFilter) {
+    final List<IndexedSelector> candidates = new ArrayList<>();
+    this.index.collectCandidates(elementIdTL(element), elementClassesTL(element), elementNameTL(element), candidates);
+    if (candidates.isEmpty()) {
+      return Collections.emptyList();
+    }
+    // Source order is the tie breaker of the cascade, and the sort
+    // below is stable.
+    Collections.sort(candidates, (a, b) -> Integer.compare(a.order, b.order));
+    final List<Declaration> declarations = new ArrayList<>();
+    for (final IndexedSelector is : candidates) {
+      if (is.selector.getPseudoElement() != pseudoElement) {
+        continue;
+      }
+      if ((ancestorFilter != null) && !ancestorFilter.mightContainAll(is.ancestorHashes)) {
+        continue;
+      }
+      if (!this.matchSelector(is.selector, element)) {
+        continue;
+      }
+      for (final Declaration d : is.ruleSet) {
+        declarations.add(new AssignedDeclaration(d, is.specificity, is.origin));
+      }
+    }
+    Collections.sort(declarations);
+    return declarations;
+  }
+
+  /**
+   * Checks whether the style sheets of this analyzer can position elements
+   * absolutely. If not, only inline styles can.
+   */
+  public boolean declaresAbsolutePosition() {
+    return this.index.declaresAbsolutePosition();
+  }
+
+  /**
+   * Checks whether the style of an element can depend on its preceding
+   * siblings. If not, changing an element never affects its siblings.
+   */
+  public boolean usesSiblingCombinators() {
+    return this.index.usesSiblingCombinators();
+  }
+
+  /**
+   * Checks whether any selector of this analyzer has an attribute selector for
+   * the attribute with the given (lowercase) name.
+   */
+  public boolean referencesAttribute(final String nameTL) {
+    return this.index.referencesAttribute(nameTL);
+  }
+
+  /**
+   * Builds the node data for an element from the declarations of a shared
+   * analyzer and an optional analyzer for the element's own (attribute and
+   * inline) style sheets.
+   *
+   * @param localAnalyzer
+   *          May be <code>null</code>.
+   * @param ancestorFilter
+   *          May be <code>null</code>.
+   */
+  public static NodeData cascade(final Element element, final Selector.PseudoDeclaration pseudoElement,
+      final CascadeAnalyzer sharedAnalyzer, final CascadeAnalyzer localAnalyzer, final AncestorFilter ancestorFilter) {
+    List<Declaration> declarations = sharedAnalyzer.getDeclarations(element, pseudoElement, ancestorFilter);
+    if (localAnalyzer != null) {
+      final List<Declaration> localDeclarations = localAnalyzer.getDeclarations(element, pseudoElement, ancestorFilter);
+      if (localDeclarations.size() > 0) {
+        final List<Declaration> merged = new ArrayList<>(declarations.size() + localDeclarations.size());
+        merged.addAll(declarations);
+        merged.addAll(localDeclarations);
+        Collections.sort(merged);
+        declarations = merged;
+      }
+    }
+    final NodeData nodeData = CSSFactory.createNodeData();
+    for (final Declaration d : declarations) {
+      nodeData.push(d);
+    }
+    return nodeData;
+  }
+
+  /**
+   * Gets the filter that children of the element should use, given the filter
+   * of the element itself.
+   */
+  public static AncestorFilter extendFilter(final AncestorFilter ancestorFilter, final Element element) {
+    final String tagTL = elementNameTL(element);
+    return ancestorFilter.extend(tagTL == null ? "" : tagTL, elementIdTL(element), elementClassesTL(element));
+  }
+
+  private static String elementIdTL(final Element element) {
+    final String id = ElementUtil.elementID(element);
+    return (id == null) || (id.length() == 0) ? null : id.toLowerCase();
+  }
+
+  private static String elementNameTL(final Element element) {
+    final String name = ElementUtil.elementName(element);
+    return name == null ? null : name.toLowerCase();
+  }
+
+  private static Collection<String> elementClassesTL(final Element element) {
+    final Collection<String> classes = ElementUtil.elementClasses(element);
+    if (classes.isEmpty()) {
+      return Collections.emptySet();
+    }
+    final Set<String> classesTL = new LinkedHashSet<>(classes.size());
+    for (final String c : classes) {
+      classesTL.add(c.toLowerCase());
+    }
+    return classesTL;
+  }
+}
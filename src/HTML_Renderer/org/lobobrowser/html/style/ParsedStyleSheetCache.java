@@ -0,0 +1,161 @@
+package org.lobobrowser.html.style;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import org.lobobrowser.util.LRUCache;
+
+import cz.vutbr.web.css.Declaration;
+import cz.vutbr.web.css.RuleBlock;
+import cz.vutbr.web.css.RuleFactory;
+import cz.vutbr.web.css.RuleMedia;
+import cz.vutbr.web.css.RuleSet;
+import cz.vutbr.web.css.StyleSheet;
+import cz.vutbr.web.css.Term;
+import cz.vutbr.web.csskit.RuleFactoryImpl;
+
+/**
+ * Process-wide cache of parsed style sheets, keyed by URI, media and the style
+ * sheet text. Cached sheets are never handed out directly, since CSSOM
+ * methods like <code>insertRule</code> and <code>setProperty</code> modify a
+ * sheet, its rule sets and their declarations in place. Callers get a copy of
+ * them instead, which only shares the selectors, media queries and terms, none
+ * of which CSSOM changes in place.
+ */
+final class ParsedStyleSheetCache {
+  private static final int MAX_WEIGHT = 16 * 1024 * 1024;
+
+  /**
+   * Rough size of a parsed style sheet in memory, plus its text kept in the
+   * key, per character of its text.
+   */
+  private static final int BYTES_PER_CHAR = 14;
+
+  private static final RuleFactory rf = RuleFactoryImpl.getInstance();
+  private static final LRUCache cache = new LRUCache(MAX_WEIGHT);
+
+  private ParsedStyleSheetCache() {
+  }
+
+  /**
+   * Gets a private copy of a previously parsed style sheet, or
+   * <code>null</code> if there is none.
+   */
+  static StyleSheet get(final String uri, final String media, final String text) {
+    final Key key = new Key(uri, media, text);
+    StyleSheet master;
+    synchronized (cache) {
+      master = (StyleSheet) cache.get(key);
+    }
+    return master == null ? null : copyOf(master);
+  }
+
+  /**
+   * Stores a freshly parsed style sheet, and returns a private copy of it for
+   * the caller to use.
+   */
+  static StyleSheet put(final String uri, final String media, final String text, final StyleSheet parsed) {
+    final Key key = new Key(uri, media, text);
+    final long weight = (long) text.length() * BYTES_PER_CHAR;
+    if (weight <= MAX_WEIGHT) {
+      synchronized (cache) {
+        cache.put(key, parsed, (int) weight);
+      }
+    }
+    return copyOf(parsed);
+  }
+
+  private static StyleSheet copyOf(final StyleSheet master) {
+    final StyleSheet copy = rf.createStyleSheet(master.getOrigin());
+    final List<RuleBlock<?>> blocks = new ArrayList<>(master.size());
+    for (final RuleBlock<?> block : master) {
+      if (block instanceof RuleSet) {
+        blocks.add(copyOf((RuleSet) block, copy));
+      } else if (block instanceof RuleMedia) {
+        blocks.add(copyOf((RuleMedia) block, copy));
+      } else {
+        // Other rules have no CSSOM setters. replaceAll() below keeps them
+        // pointing to the master sheet, whereas add() would re-parent them.
+        blocks.add(block);
+      }
+    }
+    copy.replaceAll(blocks);
+    return copy;
+  }
+
+  private static RuleMedia copyOf(final RuleMedia master, final StyleSheet sheet) {
+    final RuleMedia copy = rf.createMedia();
+    copy.setMediaQueries(master.getMediaQueries());
+    final List<RuleSet> ruleSets = new ArrayList<>(master.size());
+    for (final RuleSet ruleSet : master) {
+      ruleSets.add(copyOf(ruleSet, sheet));
+    }
+    copy.replaceAll(ruleSets);
+    copy.setStyleSheet(sheet);
+    return copy;
+  }
+
+  private static RuleSet copyOf(final RuleSet master, final StyleSheet sheet) {
+    final RuleSet copy = rf.createSet();
+    // setSelectorText() clears the selector list in place.
+    copy.setSelectors(new ArrayList<>(master.getSelectors()));
+    final List<Declaration> declarations = new ArrayList<>(master.size());
+    for (final Declaration declaration : master) {
+      declarations.add(copyOf(declaration));
+    }
+    copy.replaceAll(declarations);
+    copy.setStyleSheet(sheet);
+    return copy;
+  }
+
+  private static Declaration copyOf(final Declaration master) {
+    final Declaration copy = rf.createDeclaration();
+    copy.setProperty(master.getProperty());
+    copy.setImportant(master.isImportant());
+    copy.setSource(master.getSource());
+    copy.replaceAll(new ArrayList<Term<?>>(master));
+    return copy;
+  }
+
+  private static final class Key {
+    private final String uri;
+    private final String media;
+    private final String text;
+    private final long textHash;
+
+    Key(final String uri, final String media, final String text) {
+      this.uri = uri;
+      this.media = media;
+      this.text = text;
+      this.textHash = hash64(text);
+    }
+
+    /** FNV-1a over the characters of the text. */
+    private static long hash64(final String text) {
+      long h = 0xcbf29ce484222325L;
+      final int length = text.length();
+      for (int i = 0; i < length; i++) {
+        h ^= text.charAt(i);
+        h *= 0x100000001b3L;
+      }
+      return h;
+    }
+
+    @Override
+    public int hashCode() {
+      return (int) (this.textHash ^ (this.textHash >>> 32)) ^ (this.uri == null ? 0 : this.uri.hashCode());
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+      if (!(other instanceof Key)) {
+        return false;
+      }
+      final Key o = (Key) other;
+      // The hash rules out most mismatches before the texts are compared.
+      return (this.textHash == o.textHash) && Objects.equals(this.uri, o.uri) && Objects.equals(this.media, o.media)
+          && this.text.equals(o.text);
+    }
+  }
+}
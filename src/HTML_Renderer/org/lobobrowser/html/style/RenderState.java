@@ -89,8 +89,6 @@ public interface RenderState {
 
   public int getFontBase();
 
-  public WordInfo getWordInfo(String word);
-
   public Color getColor();
 
   public Color getBackgroundColor();
@@ -107,6 +105,8 @@ public interface RenderState {
 
   public FontMetrics getFontMetrics();
 
+  public TextMetrics getTextMetrics();
+
   public int getBlankWidth();
 
   public boolean isHighlight();
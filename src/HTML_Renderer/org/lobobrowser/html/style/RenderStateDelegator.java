@@ -62,6 +62,10 @@ public abstract class RenderStateDelegator implements RenderState {
     return delegate.getFontMetrics();
   }
 
+  public TextMetrics getTextMetrics() {
+    return delegate.getTextMetrics();
+  }
+
   public Color getOverlayColor() {
     return delegate.getOverlayColor();
   }
@@ -78,10 +82,6 @@ public abstract class RenderStateDelegator implements RenderState {
     return delegate.getTextTransform();
   }
 
-  public WordInfo getWordInfo(final String word) {
-    return delegate.getWordInfo(word);
-  }
-
   public void invalidate() {
     delegate.invalidate();
   }
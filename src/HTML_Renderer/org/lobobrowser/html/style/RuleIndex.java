@@ -0,0 +1,246 @@
+package org.lobobrowser.html.style;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import cz.vutbr.web.css.CombinedSelector;
+import cz.vutbr.web.css.Declaration;
+import cz.vutbr.web.css.MediaSpec;
+import cz.vutbr.web.css.RuleBlock;
+import cz.vutbr.web.css.RuleMedia;
+import cz.vutbr.web.css.RuleSet;
+import cz.vutbr.web.css.Selector;
+import cz.vutbr.web.css.StyleSheet;
+import cz.vutbr.web.css.Term;
+import cz.vutbr.web.css.TermIdent;
+
+/**
+ * Index of the selectors of a list of style sheets. Every selector is put in
+ * exactly one bucket, chosen from its rightmost compound selector: the id if
+ * it has one, else its first class, else its tag name, else the universal
+ * bucket. Matching an element then only needs to look at the buckets of its
+ * id, classes and tag name plus the universal bucket.
+ */
+final class RuleIndex {
+  private final Map<String, List<IndexedSelector>> idSelectors = new HashMap<>();
+  private final Map<String, List<IndexedSelector>> classSelectors = new HashMap<>();
+  private final Map<String, List<IndexedSelector>> tagSelectors = new HashMap<>();
+  private final List<IndexedSelector> universalSelectors = new ArrayList<>();
+  private int count = 0;
+  private boolean absolutePosition = false;
+  private boolean siblingCombinators = false;
+  private final Set<String> attributeNames = new HashSet<>();
+
+  RuleIndex(final List<StyleSheet> sheets, final MediaSpec media) {
+    for (final StyleSheet sheet : sheets) {
+      final StyleSheet.Origin origin = sheet.getOrigin();
+      for (final RuleBlock<?> block : sheet) {
+        if (block instanceof RuleSet) {
+          this.addRuleSet((RuleSet) block, origin);
+        } else if (block instanceof RuleMedia) {
+          final RuleMedia ruleMedia = (RuleMedia) block;
+          final boolean matches = ruleMedia.getMediaQueries() == null || ruleMedia.getMediaQueries().isEmpty() ? media.matchesEmpty()
+              : media.matchesOneOf(ruleMedia.getMediaQueries());
+          if (matches) {
+            for (final RuleSet ruleSet : ruleMedia) {
+              this.addRuleSet(ruleSet, origin);
+            }
+          }
+        }
+      }
+    }
+  }
+
+  private void addRuleSet(final RuleSet ruleSet, final StyleSheet.Origin origin) {
+    if (!this.absolutePosition) {
+      this.absolutePosition = declaresAbsolutePosition(ruleSet);
+    }
+    for (final CombinedSelector selector : ruleSet.getSelectors()) {
+      if (!this.siblingCombinators) {
+        this.siblingCombinators = hasSiblingCombinator(selector);
+      }
+      this.addAttributeNames(selector);
+      final IndexedSelector is = new IndexedSelector(ruleSet, selector, origin, this.count++);
+      final Selector last = selector.getLastSelector();
+      final String id = last.getIDName();
+      final String className;
+      final String elementName;
+      if (id != null) {
+        add(this.idSelectors, id.toLowerCase(), is);
+      } else if ((className = last.getClassName()) != null) {
+        add(this.classSelectors, className.toLowerCase(), is);
+      } else if (((elementName = last.getElementName()) != null) && !Selector.ElementName.WILDCARD.equals(elementName)) {
+        add(this.tagSelectors, elementName.toLowerCase(), is);
+      } else {
+        this.universalSelectors.add(is);
+      }
+    }
+  }
+
+  private static boolean declaresAbsolutePosition(final RuleSet ruleSet) {
+    for (final Declaration d : ruleSet) {
+      if ("position".equalsIgnoreCase(d.getProperty())) {
+        for (final Term<?> term : d) {
+          if ((term instanceof TermIdent) && "absolute".equalsIgnoreCase(((TermIdent) term).getValue())) {
+            return true;
+          }
+        }
+      }
+    }
+    return false;
+  }
+
+  private static boolean hasSiblingCombinator(final CombinedSelector selector) {
+    for (int i = 1; i < selector.size(); i++) {
+      final Selector.Combinator combinator = selector.get(i).getCombinator();
+      if ((combinator == Selector.Combinator.ADJACENT) || (combinator == Selector.Combinator.PRECEDING)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void addAttributeNames(final CombinedSelector selector) {
+    for (final Selector compound : selector) {
+      for (final Selector.SelectorPart part : compound) {
+        if (part instanceof Selector.ElementAttribute) {
+          this.attributeNames.add(((Selector.ElementAttribute) part).getAttribute().toLowerCase());
+        }
+      }
+    }
+  }
+
+  private static void add(final Map<String, List<IndexedSelector>> map, final String key, final IndexedSelector is) {
+    List<IndexedSelector> list = map.get(key);
+    if (list == null) {
+      list = new ArrayList<>(2);
+      map.put(key, list);
+    }
+    list.add(is);
+  }
+
+  /**
+   * Adds the selectors that could possibly match an element with the given
+   * (lowercase) id, class names and tag name. The result is in no particular
+   * order.
+   *
+   * @param idTL
+   *          May be <code>null</code>.
+   * @param classesTL
+   *          Must not contain duplicates.
+   */
+  void collectCandidates(final String idTL, final Collection<String> classesTL, final String tagTL, final List<IndexedSelector> out) {
+    if (idTL != null) {
+      addAll(this.idSelectors.get(idTL), out);
+    }
+    for (final String c : classesTL) {
+      addAll(this.classSelectors.get(c), out);
+    }
+    if (tagTL != null) {
+      addAll(this.tagSelectors.get(tagTL), out);
+    }
+    out.addAll(this.universalSelectors);
+  }
+
+  private static void addAll(final List<IndexedSelector> list, final List<IndexedSelector> out) {
+    if (list != null) {
+      out.addAll(list);
+    }
+  }
+
+  /**
+   * Checks whether any of the indexed rule sets sets <code>position</code> to
+   * <code>absolute</code>.
+   */
+  boolean declaresAbsolutePosition() {
+    return this.absolutePosition;
+  }
+
+  /**
+   * Checks whether any of the indexed selectors has a sibling combinator
+   * (<code>+</code> or <code>~</code>), through which an element's style can
+   * depend on its preceding siblings.
+   */
+  boolean usesSiblingCombinators() {
+    return this.siblingCombinators;
+  }
+
+  /**
+   * Checks whether any of the indexed selectors has an attribute selector for
+   * the attribute with the given (lowercase) name.
+   */
+  boolean referencesAttribute(final String nameTL) {
+    return this.attributeNames.contains(nameTL);
+  }
+
+  int size() {
+    return this.count;
+  }
+
+  /**
+   * A selector of a rule set, with the data needed for matching it
+   * precomputed.
+   */
+  static final class IndexedSelector {
+    final RuleSet ruleSet;
+    final CombinedSelector selector;
+    final CombinedSelector.Specificity specificity;
+    final StyleSheet.Origin origin;
+    /** Position of the selector in the style sheets, used to keep source order. */
+    final int order;
+    /** Bloom filter hashes of the names that must be present on ancestors. */
+    final int[] ancestorHashes;
+
+    IndexedSelector(final RuleSet ruleSet, final CombinedSelector selector, final StyleSheet.Origin origin, final int order) {
+      this.ruleSet = ruleSet;
+      this.selector = selector;
+      this.specificity = selector.computeSpecificity();
+      this.origin = origin == null ? StyleSheet.Origin.AGENT : origin;
+      this.order = order;
+      this.ancestorHashes = computeAncestorHashes(selector);
+    }
+
+    private static int[] computeAncestorHashes(final CombinedSelector selector) {
+      final List<Integer> hashes = new ArrayList<>();
+      boolean ancestor = false;
+      // The combinator of a selector relates it to the selector on its left.
+      // A selector reached from the subject through descendant and child
+      // combinators only has to match an ancestor. One reached through a
+      // sibling combinator matches a sibling of the subject or of one of its
+      // ancestors, which is not itself an ancestor, until a descendant or
+      // child combinator is crossed again.
+      for (int i = selector.size() - 1; i > 0; i--) {
+        final Selector.Combinator combinator = selector.get(i).getCombinator();
+        if ((combinator == Selector.Combinator.DESCENDANT) || (combinator == Selector.Combinator.CHILD)) {
+          ancestor = true;
+        } else if ((combinator == Selector.Combinator.ADJACENT) || (combinator == Selector.Combinator.PRECEDING)) {
+          ancestor = false;
+        }
+        if (ancestor) {
+          for (final Selector.SelectorPart part : selector.get(i - 1)) {
+            if (part instanceof Selector.ElementID) {
+              hashes.add(AncestorFilter.idHash(((Selector.ElementID) part).getID().toLowerCase()));
+            } else if (part instanceof Selector.ElementClass) {
+              hashes.add(AncestorFilter.classHash(((Selector.ElementClass) part).getClassName().toLowerCase()));
+            } else if (part instanceof Selector.ElementName) {
+              final String name = ((Selector.ElementName) part).getName();
+              if ((name != null) && !Selector.ElementName.WILDCARD.equals(name)) {
+                hashes.add(AncestorFilter.tagHash(name.toLowerCase()));
+              }
+            }
+          }
+        }
+      }
+      final int[] result = new int[hashes.size()];
+      for (int i = 0; i < result.length; i++) {
+        result[i] = hashes.get(i);
+      }
+      return result;
+    }
+  }
+}
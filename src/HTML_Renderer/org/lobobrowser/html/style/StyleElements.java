@@ -156,12 +156,17 @@ public class StyleElements {
    */
   public static void normalizeHTMLTree(final Document doc) {
     //normalize tables
-    final NodeList tables = doc.getElementsByTagName("table");
-    for (int i = 0; i < tables.getLength(); i++) {
+    // The list is live, and moving nodes may reorder it, so take a copy first.
+    final NodeList tableList = doc.getElementsByTagName("table");
+    final Node[] tables = new Node[tableList.getLength()];
+    for (int i = 0; i < tables.length; i++) {
+      tables[i] = tableList.item(i);
+    }
+    for (final Node table : tables) {
       final Vector<Node> nodes = new Vector<Node>();
-      recursiveFindBadNodesInTable(tables.item(i), null, nodes);
+      recursiveFindBadNodesInTable(table, null, nodes);
       for (final Node n : nodes) {
-        moveSubtreeBefore(n, tables.item(i));
+        moveSubtreeBefore(n, table);
       }
     }
   }
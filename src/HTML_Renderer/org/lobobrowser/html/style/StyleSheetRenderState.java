@@ -65,6 +65,7 @@ public class StyleSheetRenderState implements RenderState {
 
   private Font iFont;
   private FontMetrics iFontMetrics;
+  private TextMetrics iTextMetrics;
   private Color iColor;
   private Color iBackgroundColor = INVALID_COLOR;
   private Color iTextBackgroundColor = INVALID_COLOR;
@@ -150,12 +151,9 @@ public class StyleSheetRenderState implements RenderState {
   }
 
   public void invalidate() {
-    final Map<String, WordInfo> map = this.iWordInfoMap;
-    if (map != null) {
-      map.clear();
-    }
     this.iFont = null;
     this.iFontMetrics = null;
+    this.iTextMetrics = null;
     this.iColor = null;
     this.iTextDecoration = -1;
     this.iBlankWidth = -1;
@@ -381,7 +379,7 @@ public class StyleSheetRenderState implements RenderState {
   public int getBlankWidth() {
     int bw = this.iBlankWidth;
     if (bw == -1) {
-      bw = this.getFontMetrics().charWidth(' ');
+      bw = this.getTextMetrics().charWidth(' ');
       this.iBlankWidth = bw;
     }
     return bw;
@@ -402,29 +400,13 @@ public class StyleSheetRenderState implements RenderState {
     this.iHighlight = highlight;
   }
 
-  Map<String, WordInfo> iWordInfoMap = null;
-
-  public final WordInfo getWordInfo(final String word) {
-    // Expected to be called only in the GUI (rendering) thread.
-    // No synchronization necessary.
-    Map<String, WordInfo> map = this.iWordInfoMap;
-    if (map == null) {
-      map = new HashMap<>(1);
-      this.iWordInfoMap = map;
-    }
-    WordInfo wi = map.get(word);
-    if (wi != null) {
-      return wi;
-    }
-    wi = new WordInfo();
-    final FontMetrics fm = this.getFontMetrics();
-    wi.fontMetrics = fm;
-    wi.ascentPlusLeading = fm.getAscent() + fm.getLeading();
-    wi.descent = fm.getDescent();
-    wi.height = fm.getHeight();
-    wi.width = fm.stringWidth(word);
-    map.put(word, wi);
-    return wi;
+  public final TextMetrics getTextMetrics() {
+    TextMetrics tm = this.iTextMetrics;
+    if (tm == null) {
+      tm = TextMetrics.get(this.getFontMetrics());
+      this.iTextMetrics = tm;
+    }
+    return tm;
   }
 
   private int alignXPercent = -1;
@@ -0,0 +1,232 @@
+package org.lobobrowser.html.style;
+
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.font.FontRenderContext;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.lobobrowser.util.ConcurrentLRUCache;
+
+/**
+ * Process-wide text measurement, keyed by font. Widths of simple text are
+ * summed from a table of character advances, filled one block of 256
+ * characters at a time, so that measuring a word is a few array lookups instead
+ * of a call into AWT. Text that may need shaping (combining marks, right to
+ * left and complex scripts, surrogates) and fonts with layout attributes such
+ * as kerning are measured with <code>FontMetrics.stringWidth</code>, and the
+ * result is kept in a bounded word cache shared by all documents.
+ *
+ * <p>
+ * Widths are rounded the same way <code>FontMetrics.stringWidth</code> rounds
+ * them, so both give the same results. Instances are thread safe.
+ * </p>
+ */
+public final class TextMetrics {
+  private static final int MAX_FONTS = 256;
+  private static final int MAX_WORD_CACHE_WEIGHT = 256 * 1024;
+
+  private static final ConcurrentLRUCache byFont = new ConcurrentLRUCache(MAX_FONTS);
+  private static final ConcurrentLRUCache wordWidths = new ConcurrentLRUCache(MAX_WORD_CACHE_WEIGHT);
+
+  private final FontMetrics fontMetrics;
+  private final Font font;
+  private final FontRenderContext frc;
+  private final boolean simpleFont;
+
+  /** Advances of the characters of the basic multilingual plane, by block. */
+  private final AtomicReferenceArray<float[]> advanceBlocks = new AtomicReferenceArray<>(256);
+
+  private TextMetrics(final FontMetrics fontMetrics) {
+    this.fontMetrics = fontMetrics;
+    this.font = fontMetrics.getFont();
+    this.frc = fontMetrics.getFontRenderContext();
+    this.simpleFont = !this.font.hasLayoutAttributes();
+  }
+
+  /**
+   * Gets the text metrics of the font of the given font metrics.
+   */
+  public static TextMetrics get(final FontMetrics fontMetrics) {
+    final FontKey key = new FontKey(fontMetrics.getFont(), fontMetrics.getFontRenderContext());
+    TextMetrics metrics = (TextMetrics) byFont.get(key);
+    if (metrics == null) {
+      metrics = new TextMetrics(fontMetrics);
+      byFont.put(key, metrics, 1);
+    }
+    return metrics;
+  }
+
+  public FontMetrics getFontMetrics() {
+    return this.fontMetrics;
+  }
+
+  public int charWidth(final char ch) {
+    if (this.simpleFont && isSimple(ch)) {
+      return (int) (0.5f + this.getAdvance(ch));
+    }
+    return this.fontMetrics.charWidth(ch);
+  }
+
+  public int stringWidth(final String text) {
+    if (this.simpleFont) {
+      final int length = text.length();
+      float width = 0;
+      int i = 0;
+      for (; i < length; i++) {
+        final char ch = text.charAt(i);
+        if (!isSimple(ch)) {
+          break;
+        }
+        width += this.getAdvance(ch);
+      }
+      if (i == length) {
+        return (int) (0.5f + width);
+      }
+    }
+    return this.getComplexWidth(text);
+  }
+
+  public int charsWidth(final char[] chars, final int offset, final int length) {
+    if (this.simpleFont) {
+      final int limit = offset + length;
+      float width = 0;
+      int i = offset;
+      for (; i < limit; i++) {
+        final char ch = chars[i];
+        if (!isSimple(ch)) {
+          break;
+        }
+        width += this.getAdvance(ch);
+      }
+      if (i == limit) {
+        return (int) (0.5f + width);
+      }
+    }
+    return this.getComplexWidth(new String(chars, offset, length));
+  }
+
+  private int getComplexWidth(final String text) {
+    final WordKey key = new WordKey(this, text);
+    final Integer cached = (Integer) wordWidths.get(key);
+    if (cached != null) {
+      return cached;
+    }
+    final int width = this.fontMetrics.stringWidth(text);
+    wordWidths.put(key, width, text.length() + 1);
+    return width;
+  }
+
+  private float getAdvance(final char ch) {
+    final int blockIndex = ch >> 8;
+    float[] block = this.advanceBlocks.get(blockIndex);
+    if (block == null) {
+      // A race only means a block gets computed twice.
+      block = this.computeBlock(blockIndex);
+      this.advanceBlocks.set(blockIndex, block);
+    }
+    return block[ch & 0xFF];
+  }
+
+  private float[] computeBlock(final int blockIndex) {
+    final float[] block = new float[256];
+    final char[] chars = new char[1];
+    final int base = blockIndex << 8;
+    for (int i = 0; i < 256; i++) {
+      chars[0] = (char) (base + i);
+      if (isSimple(chars[0])) {
+        block[i] = (float) this.font.getStringBounds(chars, 0, 1, this.frc).getWidth();
+      }
+    }
+    return block;
+  }
+
+  /**
+   * Checks whether the advance of a character does not depend on the
+   * characters around it.
+   */
+  private static boolean isSimple(final char ch) {
+    if (ch < 0x0300) {
+      // Latin and spacing modifiers
+      return true;
+    } else if (ch < 0x0370) {
+      // Combining diacritical marks
+      return false;
+    } else if (ch < 0x0590) {
+      // Greek, Cyrillic (but not its combining marks) and Armenian
+      return (ch < 0x0483) || (ch > 0x0489);
+    } else if (ch < 0x1E00) {
+      // Hebrew, Arabic, Indic and other scripts that need shaping
+      return false;
+    } else if (ch < 0x2000) {
+      // Latin and Greek extended
+      return true;
+    } else if (ch < 0x2100) {
+      // Punctuation, except bidi and zero width controls, and currency. The
+      // block ends with combining marks for symbols.
+      return ((ch >= 0x2010) && (ch < 0x2028)) || ((ch >= 0x2030) && (ch < 0x205F)) || ((ch >= 0x20A0) && (ch < 0x20D0));
+    } else if (ch < 0x2E00) {
+      // Symbols, arrows, box drawing, dingbats
+      return true;
+    } else if ((ch >= 0x3040) && (ch < 0x3100)) {
+      // Kana, except the combining voiced sound marks
+      return (ch != 0x3099) && (ch != 0x309A);
+    } else if ((ch >= 0x4E00) && (ch < 0xA000)) {
+      // CJK ideographs
+      return true;
+    } else if ((ch >= 0xAC00) && (ch < 0xD7A4)) {
+      // Hangul syllables
+      return true;
+    } else {
+      // Half and full width forms
+      return (ch >= 0xFF01) && (ch < 0xFFEF);
+    }
+  }
+
+  private static final class FontKey {
+    private final Font font;
+    private final FontRenderContext frc;
+
+    FontKey(final Font font, final FontRenderContext frc) {
+      this.font = font;
+      this.frc = frc;
+    }
+
+    @Override
+    public int hashCode() {
+      return (this.font.hashCode() * 31) + this.frc.hashCode();
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+      if (!(other instanceof FontKey)) {
+        return false;
+      }
+      final FontKey o = (FontKey) other;
+      return this.font.equals(o.font) && this.frc.equals(o.frc);
+    }
+  }
+
+  private static final class WordKey {
+    private final TextMetrics metrics;
+    private final String word;
+
+    WordKey(final TextMetrics metrics, final String word) {
+      this.metrics = metrics;
+      this.word = word;
+    }
+
+    @Override
+    public int hashCode() {
+      return (System.identityHashCode(this.metrics) * 31) + this.word.hashCode();
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+      if (!(other instanceof WordKey)) {
+        return false;
+      }
+      final WordKey o = (WordKey) other;
+      return (this.metrics == o.metrics) && this.word.equals(o.word);
+    }
+  }
+}
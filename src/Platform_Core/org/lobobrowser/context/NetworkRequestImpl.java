@@ -58,6 +58,7 @@ import org.lobobrowser.ua.ProgressType;
 import org.lobobrowser.ua.RequestType;
 import org.lobobrowser.ua.UserAgentContext;
 import org.lobobrowser.ua.UserAgentContext.Request;
+import org.lobobrowser.ua.UserAgentContext.RequestKind;
 import org.lobobrowser.util.EventDispatch;
 import org.lobobrowser.util.GenericEventListener;
 import org.lobobrowser.util.Urls;
@@ -69,6 +70,7 @@ public class NetworkRequestImpl implements NetworkRequest {
   private final EventDispatch READY_STATE_CHANGE = new EventDispatch();
   private volatile int readyState = NetworkRequest.STATE_UNINITIALIZED;
   private volatile LocalResponse localResponse;
+  private volatile boolean completeOnFailure = false;
   final private UserAgentContext uaContext;
 
   public NetworkRequestImpl(final UserAgentContext uaContext) {
@@ -187,7 +189,7 @@ public class NetworkRequestImpl implements NetworkRequest {
       try {
         final Map<String, String> requestedHeadersCopy = new HashMap<>(requestedHeaders);
         final RequestHandler rhandler = new LocalRequestHandler(this.requestURL, this.requestMethod, content, uaContext,
-            requestedHeadersCopy);
+            requestedHeadersCopy, requestType.kind);
         this.currentRequestHandler = rhandler;
         try {
           // TODO: Username and password support
@@ -294,12 +296,14 @@ public class NetworkRequestImpl implements NetworkRequest {
   private class LocalRequestHandler extends SimpleRequestHandler {
     private final String method;
     private final Map<String, String> requestedHeadersCopy;
+    private final RequestKind requestKind;
 
     public LocalRequestHandler(final URL url, final String method, final String altPostData, final UserAgentContext uaContext,
-        final Map<String, String> requestedHeaders) {
+        final Map<String, String> requestedHeaders, final RequestKind requestKind) {
       super(url, method, altPostData, RequestType.ELEMENT, uaContext);
       this.method = method;
       this.requestedHeadersCopy = requestedHeaders;
+      this.requestKind = requestKind;
     }
 
     @Override
@@ -318,6 +322,11 @@ public class NetworkRequestImpl implements NetworkRequest {
     public boolean handleException(final ClientletResponse response, final Throwable exception, final RequestType requestType)
         throws ClientletException {
       logger.log(Level.WARNING, "handleException(): url=" + this.getLatestRequestURL() + ",response=[" + response + "]", exception);
+      if (NetworkRequestImpl.this.completeOnFailure && (NetworkRequestImpl.this.readyState != NetworkRequest.STATE_COMPLETE)) {
+        // Let those waiting for the request know it is over.
+        NetworkRequestImpl.this.localResponse = null;
+        NetworkRequestImpl.this.changeReadyState(NetworkRequest.STATE_COMPLETE);
+      }
       return true;
     }
 
@@ -346,6 +355,11 @@ public class NetworkRequestImpl implements NetworkRequest {
       return Optional.of(requestedHeadersCopy);
     }
 
+    @Override
+    public Optional<RequestKind> getRequestKind() {
+      return Optional.ofNullable(this.requestKind);
+    }
+
   }
 
   private static class CacheableResponse {
@@ -581,4 +595,8 @@ public class NetworkRequestImpl implements NetworkRequest {
     }
   }
 
+  public void setCompleteOnFailure(final boolean completeOnFailure) {
+    this.completeOnFailure = completeOnFailure;
+  }
+
 }
@@ -55,6 +55,7 @@ import org.lobobrowser.gui.FramePanel;
 import org.lobobrowser.request.AuthenticatorImpl;
 import org.lobobrowser.request.DomainValidation;
 import org.lobobrowser.request.NOPCookieHandlerImpl;
+import org.lobobrowser.request.OkHttpTransport;
 import org.lobobrowser.security.LocalSecurityManager;
 import org.lobobrowser.security.LocalSecurityPolicy;
 import org.lobobrowser.store.StorageManager;
@@ -63,9 +64,6 @@ import org.lobobrowser.util.SimpleThreadPool;
 import org.lobobrowser.util.SimpleThreadPoolTask;
 import org.lobobrowser.util.Urls;
 
-import com.squareup.okhttp.OkHttpClient;
-import com.squareup.okhttp.OkUrlFactory;
-
 ;
 /**
  * A singleton class that is used to initialize a browser session in the current
@@ -112,11 +110,8 @@ public class PlatformInit {
     // Configure URL protocol handlers
     final PlatformStreamHandlerFactory factory = PlatformStreamHandlerFactory.getInstance();
     URL.setURLStreamHandlerFactory(factory);
-    final OkHttpClient okHttpClient = new OkHttpClient();
     // HttpsURLConnection.setDefaultSSLSocketFactory(sslSocketFactory);
-    okHttpClient.setSslSocketFactory(sslSocketFactory);
-    okHttpClient.setFollowRedirects(false);
-    factory.addFactory(new OkUrlFactory(okHttpClient));
+    factory.addFactory(OkHttpTransport.getInstance().createURLStreamHandlerFactory(sslSocketFactory));
     factory.addFactory(new LocalStreamHandlerFactory());
   }
 
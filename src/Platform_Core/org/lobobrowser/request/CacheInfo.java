@@ -24,16 +24,21 @@
 package org.lobobrowser.request;
 
 import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
+import java.io.UncheckedIOException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.lobobrowser.store.CacheManager;
 import org.lobobrowser.store.ClassLoaderObjectInputStream;
+import org.lobobrowser.util.NameValuePair;
+import org.lobobrowser.util.SecurityUtil;
 import org.lobobrowser.util.Urls;
 
 public class CacheInfo {
@@ -42,16 +47,18 @@ public class CacheInfo {
   private final URL url;
 
   private final MemoryCacheEntry memoryEntry;
-  private final byte[] persistentContent;
+  private final byte[] persistentHeaders;
 
   private URLConnection connection;
 
   /**
-   *
+   * @param persHeaders
+   *          The headers of the persistent cache entry. Its body is only
+   *          loaded if it's needed.
    */
-  public CacheInfo(final MemoryCacheEntry memEntry, final byte[] persContent, final URL url) {
+  public CacheInfo(final MemoryCacheEntry memEntry, final byte[] persHeaders, final URL url) {
     super();
-    this.persistentContent = persContent;
+    this.persistentHeaders = persHeaders;
     this.url = url;
     this.memoryEntry = memEntry;
   }
@@ -66,11 +73,11 @@ public class CacheInfo {
       if (memEntry != null) {
         this.connection = new MemoryURLConnection(this.url, memEntry);
       } else {
-        final byte[] content = this.persistentContent;
-        if (content == null) {
+        final byte[] headers = this.persistentHeaders;
+        if (headers == null) {
           throw new IllegalStateException("Memory entry and persistent content unavailable.");
         }
-        this.connection = new FileWithHeadersURLConnection(this.url, content);
+        this.connection = new FileWithHeadersURLConnection(this.url, headers, this::openPersistentBody);
       }
     }
     return this.connection;
@@ -95,6 +102,31 @@ public class CacheInfo {
     return this.getURLConnection().getHeaderField("date");
   }
 
+  /**
+   * Gets the <code>ETag</code> of the persistent cache entry, or
+   * <code>null</code> if there is none.
+   */
+  public final String getETag() {
+    return this.getValidator(() -> CacheManager.getPersistentETag(this.url));
+  }
+
+  /**
+   * Gets the <code>Last-Modified</code> header of the persistent cache entry,
+   * or <code>null</code> if there is none.
+   */
+  public final String getLastModifiedAsText() {
+    return this.getValidator(() -> CacheManager.getPersistentLastModified(this.url));
+  }
+
+  private String getValidator(final CacheAction<String> action) {
+    try {
+      return doPrivileged(action);
+    } catch (final IOException ioe) {
+      logger.log(Level.WARNING, "getValidator(): Unable to read cache index entry of " + this.url + ".", ioe);
+      return null;
+    }
+  }
+
   /**
    * Adds the request time of the cached document to the given offset.
    */
@@ -195,8 +227,66 @@ public class CacheInfo {
     }
   }
 
-  public byte[] getPersistentContent() {
-    return persistentContent;
+  /**
+   * Opens a stream over the body of the persistent cache entry. The body is
+   * not loaded into memory.
+   *
+   * @throws FileNotFoundException
+   *           If the entry has been removed from the cache.
+   */
+  private InputStream openPersistentBody() throws IOException {
+    final InputStream in = doPrivileged(() -> CacheManager.openPersistentBody(this.url));
+    if (in == null) {
+      throw new FileNotFoundException("Cached content of " + this.url + " is no longer available.");
+    }
+    return in;
+  }
+
+  private byte[] loadPersistentBody() throws IOException {
+    final byte[] body = doPrivileged(() -> CacheManager.getPersistentBody(this.url));
+    if (body == null) {
+      throw new FileNotFoundException("Cached content of " + this.url + " is no longer available.");
+    }
+    return body;
+  }
+
+  private static <T> T doPrivileged(final CacheAction<T> action) throws IOException {
+    // Reason: The caller may not have privileges to access cache files.
+    try {
+      return SecurityUtil.doPrivileged(() -> {
+        try {
+          return action.run();
+        } catch (final IOException ioe) {
+          throw new UncheckedIOException(ioe);
+        }
+      });
+    } catch (final UncheckedIOException uioe) {
+      throw uioe.getCause();
+    }
+  }
+
+  private static interface CacheAction<T> {
+    T run() throws IOException;
+  }
+
+  /**
+   * Creates a memory cache entry from the persistent cache entry.
+   *
+   * @return The entry, or <code>null</code> if the persistent entry is larger
+   *         than the memory cache. Its body is not loaded in that case.
+   */
+  public MemoryCacheEntry createMemoryEntry(final Object altObject, final int altObjectSize) throws IOException {
+    final URLConnection connection = this.getURLConnection();
+    if (!(connection instanceof FileWithHeadersURLConnection)) {
+      throw new IllegalStateException("No persistent cache entry.");
+    }
+    final long size = doPrivileged(() -> CacheManager.getPersistentSize(this.url));
+    final int maxSize = doPrivileged(() -> CacheManager.getInstance().getMaxTransientCacheSize());
+    if (size > maxSize) {
+      return null;
+    }
+    final List<NameValuePair> headers = ((FileWithHeadersURLConnection) connection).getHeadersList();
+    return new MemoryCacheEntry(this.loadPersistentBody(), headers, this.getExpires(), this.getRequestTime(), altObject, altObjectSize);
   }
 
   @Override
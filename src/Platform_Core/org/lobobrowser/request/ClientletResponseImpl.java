@@ -283,6 +283,20 @@ public class ClientletResponseImpl implements ClientletResponse {
     return null;
   }
 
+  /**
+   * Closes the response stream, if it was opened.
+   */
+  void close() {
+    final InputStream in = this.inputStream;
+    if (in != null) {
+      try {
+        in.close();
+      } catch (final IOException ioe) {
+        // ignore
+      }
+    }
+  }
+
   private String getDefaultCharset() {
     final URL url = this.getResponseURL();
     if (Urls.isLocalFile(url)) {
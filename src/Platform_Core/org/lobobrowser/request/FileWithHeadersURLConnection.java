@@ -40,7 +40,8 @@ import org.lobobrowser.util.io.IORoutines;
  * @author J. H. S.
  */
 public class FileWithHeadersURLConnection extends HttpURLConnection {
-  private final byte[] content;
+  private final byte[] headers;
+  private final BodySource bodySource;
   private boolean connected = false;
   private InputStream inputStream;
   private final Map<String, List<String>> headersMap = new HashMap<>();
@@ -48,22 +49,26 @@ public class FileWithHeadersURLConnection extends HttpURLConnection {
 
   /**
    * @param url
+   * @param headers
+   *          The header lines of the cached response.
+   * @param bodySource
+   *          Opens the body of the cached response. It is only called if the
+   *          body is actually read.
    */
-  public FileWithHeadersURLConnection(final URL url, final byte[] content) {
+  public FileWithHeadersURLConnection(final URL url, final byte[] headers, final BodySource bodySource) {
     super(url);
-    this.content = content;
+    this.headers = headers;
+    this.bodySource = bodySource;
   }
 
   @Override
   public void disconnect() {
-    if (this.connected) {
-      final InputStream in = this.inputStream;
-      if (in != null) {
-        try {
-          in.close();
-        } catch (final IOException ioe) {
-          // ignore
-        }
+    final InputStream in = this.inputStream;
+    if (in != null) {
+      try {
+        in.close();
+      } catch (final IOException ioe) {
+        // ignore
       }
     }
   }
@@ -76,12 +81,9 @@ public class FileWithHeadersURLConnection extends HttpURLConnection {
   @Override
   public void connect() throws IOException {
     if (!this.connected) {
-      final InputStream in = new ByteArrayInputStream(this.content);
       try {
-        this.inputStream = in;
-        readHeaders(in);
+        readHeaders(new ByteArrayInputStream(this.headers));
       } finally {
-        // Do not close inputStream. Needed later.
         this.connected = true;
       }
     }
@@ -116,7 +118,17 @@ public class FileWithHeadersURLConnection extends HttpURLConnection {
   @Override
   public InputStream getInputStream() throws IOException {
     this.connect();
-    return this.inputStream;
+    InputStream in = this.inputStream;
+    if (in == null) {
+      in = this.bodySource.openBody();
+      this.inputStream = in;
+    }
+    return in;
+  }
+
+  List<NameValuePair> getHeadersList() throws IOException {
+    this.connect();
+    return this.headersList;
   }
 
   /*
@@ -193,4 +205,8 @@ public class FileWithHeadersURLConnection extends HttpURLConnection {
   public boolean usingProxy() {
     return false;
   }
+
+  public static interface BodySource {
+    public InputStream openBody() throws IOException;
+  }
 }
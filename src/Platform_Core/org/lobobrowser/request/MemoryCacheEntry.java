@@ -20,13 +20,9 @@
  */
 package org.lobobrowser.request;
 
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
-import java.util.LinkedList;
 import java.util.List;
 
 import org.lobobrowser.util.NameValuePair;
-import org.lobobrowser.util.io.IORoutines;
 
 public class MemoryCacheEntry {
   public final byte[] content;
@@ -57,32 +53,18 @@ public class MemoryCacheEntry {
 
   /**
    *
-   * @param rawContent
-   *          The content of the document, including headers.
+   * @param content
+   *          The content of the document without headers.
+   * @param headers
+   * @param expires
+   * @param requestTime
    * @param altObject
    * @param altObjectSize
    */
-  public MemoryCacheEntry(final byte[] rawContent, final Long expires, final long requestTime, final Object altObject,
-      final int altObjectSize) throws IOException {
-    final ByteArrayInputStream in = new ByteArrayInputStream(rawContent);
-    String line;
-    final List<NameValuePair> headersList = new LinkedList<>();
-    while ((line = IORoutines.readLine(in)) != null) {
-      if ("".equals(line)) {
-        break;
-      }
-      final int colonIdx = line.indexOf(':');
-      final String name = colonIdx == -1 ? "" : line.substring(0, colonIdx).trim().toLowerCase();
-      final String value = colonIdx == -1 ? line.trim() : line.substring(colonIdx + 1).trim();
-      headersList.add(new NameValuePair(name, value));
-    }
-    // Note: This works with a ByteArrayInputStream.
-    final int remainingLength = in.available();
-    final int offset = rawContent.length - remainingLength;
-    final byte[] remainingContent = new byte[remainingLength];
-    System.arraycopy(rawContent, offset, remainingContent, 0, remainingLength);
-    this.content = remainingContent;
-    this.headers = headersList;
+  public MemoryCacheEntry(final byte[] content, final List<NameValuePair> headers, final Long expires, final long requestTime,
+      final Object altObject, final int altObjectSize) {
+    this.content = content;
+    this.headers = headers;
     this.expiration = expires;
     this.requestTime = requestTime;
     this.altObject = altObject;
@@ -0,0 +1,164 @@
+package org.lobobrowser.request;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URLConnection;
+import java.net.URLStreamHandlerFactory;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.SocketFactory;
+import javax.net.ssl.SSLSocketFactory;
+
+import org.lobobrowser.settings.ConnectionSettings;
+
+import com.squareup.okhttp.ConnectionPool;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.OkUrlFactory;
+import com.squareup.okhttp.Protocol;
+
+/**
+ * The HTTP transport used by the {@link RequestEngine}. All http and https
+ * URLs are opened through a single OkHttp client, so every request shares
+ * one connection pool. Keep-alive connections are reused across requests,
+ * and SPDY or HTTP/2 is used where the server negotiates it.
+ *
+ * <p>
+ * The transport also keeps counts of requests and of new connections, so
+ * that connection reuse can be checked.
+ * </p>
+ */
+public final class OkHttpTransport {
+  /** Header added by OkHttp to responses, naming the protocol used. */
+  private static final String SELECTED_PROTOCOL_HEADER = "OkHttp-Selected-Protocol";
+
+  private static final OkHttpTransport instance = new OkHttpTransport();
+
+  private final OkHttpClient client;
+  private final ConnectionPool connectionPool;
+  private final AtomicLong requestCount = new AtomicLong();
+  private final AtomicLong multiplexedRequestCount = new AtomicLong();
+  private final AtomicLong newConnectionCount = new AtomicLong();
+
+  private OkHttpTransport() {
+    final ConnectionSettings settings = ConnectionSettings.getInstance();
+    this.connectionPool = new ConnectionPool(settings.getMaxConnections(), settings.getKeepAliveSeconds() * 1000L);
+    final OkHttpClient client = new OkHttpClient();
+    client.setConnectionPool(this.connectionPool);
+    client.setProtocols(Arrays.asList(Protocol.HTTP_2, Protocol.SPDY_3, Protocol.HTTP_1_1));
+    client.setSocketFactory(new CountingSocketFactory(SocketFactory.getDefault()));
+    client.setFollowRedirects(false);
+    this.client = client;
+  }
+
+  public static OkHttpTransport getInstance() {
+    return instance;
+  }
+
+  /**
+   * Gets a factory of http and https URL stream handlers that use the shared
+   * client.
+   */
+  public URLStreamHandlerFactory createURLStreamHandlerFactory(final SSLSocketFactory sslSocketFactory) {
+    this.client.setSslSocketFactory(sslSocketFactory);
+    return new OkUrlFactory(this.client);
+  }
+
+  /**
+   * Records a response received from the network.
+   */
+  void responseReceived(final URLConnection connection) {
+    this.requestCount.incrementAndGet();
+    final String protocol = connection.getHeaderField(SELECTED_PROTOCOL_HEADER);
+    if ((protocol != null) && !protocol.startsWith("http/1")) {
+      this.multiplexedRequestCount.incrementAndGet();
+    }
+  }
+
+  /**
+   * Gets the number of responses received from the network.
+   */
+  public long getRequestCount() {
+    return this.requestCount.get();
+  }
+
+  /**
+   * Gets the number of responses that were received over a SPDY or HTTP/2
+   * connection.
+   */
+  public long getMultiplexedRequestCount() {
+    return this.multiplexedRequestCount.get();
+  }
+
+  /**
+   * Gets the number of sockets opened. Connections through a SOCKS proxy are
+   * not counted.
+   */
+  public long getNewConnectionCount() {
+    return this.newConnectionCount.get();
+  }
+
+  /**
+   * Gets the number of requests that were sent over a connection that was
+   * already open.
+   */
+  public long getReusedConnectionCount() {
+    return Math.max(0, this.requestCount.get() - this.newConnectionCount.get());
+  }
+
+  /**
+   * Gets the number of connections kept alive in the pool.
+   */
+  public int getPooledConnectionCount() {
+    return this.connectionPool.getConnectionCount();
+  }
+
+  @Override
+  public String toString() {
+    return "OkHttpTransport[requests=" + this.getRequestCount() + ",newConnections=" + this.getNewConnectionCount() + ",reused="
+        + this.getReusedConnectionCount() + ",multiplexed=" + this.getMultiplexedRequestCount() + ",pooled="
+        + this.getPooledConnectionCount() + "]";
+  }
+
+  private class CountingSocketFactory extends SocketFactory {
+    private final SocketFactory delegate;
+
+    private CountingSocketFactory(final SocketFactory delegate) {
+      this.delegate = delegate;
+    }
+
+    private Socket count(final Socket socket) {
+      newConnectionCount.incrementAndGet();
+      return socket;
+    }
+
+    @Override
+    public Socket createSocket() throws IOException {
+      return this.count(this.delegate.createSocket());
+    }
+
+    @Override
+    public Socket createSocket(final String host, final int port) throws IOException, UnknownHostException {
+      return this.count(this.delegate.createSocket(host, port));
+    }
+
+    @Override
+    public Socket createSocket(final String host, final int port, final InetAddress localHost, final int localPort) throws IOException,
+        UnknownHostException {
+      return this.count(this.delegate.createSocket(host, port, localHost, localPort));
+    }
+
+    @Override
+    public Socket createSocket(final InetAddress host, final int port) throws IOException {
+      return this.count(this.delegate.createSocket(host, port));
+    }
+
+    @Override
+    public Socket createSocket(final InetAddress address, final int port, final InetAddress localAddress, final int localPort)
+        throws IOException {
+      return this.count(this.delegate.createSocket(address, port, localAddress, localPort));
+    }
+  }
+}
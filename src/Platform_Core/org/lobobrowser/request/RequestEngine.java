@@ -49,7 +49,11 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -63,6 +67,7 @@ import org.lobobrowser.clientlet.ClientletResponse;
 import org.lobobrowser.clientlet.Header;
 import org.lobobrowser.main.ExtensionManager;
 import org.lobobrowser.main.PlatformInit;
+import org.lobobrowser.request.RequestScheduler.Priority;
 import org.lobobrowser.settings.BooleanSettings;
 import org.lobobrowser.settings.CacheSettings;
 import org.lobobrowser.settings.ConnectionSettings;
@@ -78,7 +83,6 @@ import org.lobobrowser.ua.UserAgentContext.RequestKind;
 import org.lobobrowser.util.BoxedObject;
 import org.lobobrowser.util.ID;
 import org.lobobrowser.util.NameValuePair;
-import org.lobobrowser.util.SimpleThreadPool;
 import org.lobobrowser.util.SimpleThreadPoolTask;
 import org.lobobrowser.util.Strings;
 import org.lobobrowser.util.Urls;
@@ -90,7 +94,9 @@ public final class RequestEngine {
   private static final Logger logger = Logger.getLogger(RequestEngine.class.getName());
   private static final boolean loggerInfo = logger.isLoggable(Level.INFO);
 
-  private final SimpleThreadPool threadPool;
+  private final RequestScheduler scheduler;
+  private final ForkJoinPool frameLoader;
+  private final Set<RequestHandlerTask> frameTasks = ConcurrentHashMap.newKeySet();
   private final Collection<RequestInfo> processingRequests = new HashSet<>();
   private final CookieStore cookieStore = CookieStore.getInstance();
   private final CacheSettings cacheSettings;
@@ -98,15 +104,21 @@ public final class RequestEngine {
   private final ConnectionSettings connectionSettings;
 
   private RequestEngine() {
-    // Use few threads to avoid excessive parallelism. Note that
-    // downloads are not handled by this thread pool.
-    this.threadPool = new SimpleThreadPool("RequestEngineThreadPool", 3, 5, 60 * 1000);
-
     // Security: Private fields that require privileged access to get
     // initialized.
     this.cacheSettings = CacheSettings.getInstance();
     this.connectionSettings = ConnectionSettings.getInstance();
     this.booleanSettings = BooleanSettings.getInstance();
+
+    // Note that downloads are not handled by the scheduler.
+    this.scheduler = new RequestScheduler("RequestEngineThreadPool", this.connectionSettings.getMaxConnections(),
+        this.connectionSettings.getMaxConnectionsPerHost(), 60 * 1000);
+    final int frameParallelism = Math.max(this.connectionSettings.getMaxConnections(), Runtime.getRuntime().availableProcessors());
+    this.frameLoader = new ForkJoinPool(frameParallelism, pool -> {
+      final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+      thread.setName("FrameLoader" + thread.getPoolIndex());
+      return thread;
+    }, null, true);
   }
 
   private static final RequestEngine instance = new RequestEngine();
@@ -137,11 +149,14 @@ public final class RequestEngine {
   }
 
   public void cancelAllRequests() {
-    this.threadPool.cancelAll();
+    this.scheduler.cancelAll();
+    for (final RequestHandlerTask task : this.frameTasks) {
+      task.cancel();
+    }
   }
 
   public void cancelRequest(final RequestHandler rhToDelete) {
-    this.threadPool.cancel(new RequestHandlerTask(rhToDelete));
+    this.scheduler.cancel(new RequestHandlerTask(rhToDelete));
     this.cancelRequestIfRunning(rhToDelete);
   }
 
@@ -169,7 +184,39 @@ public final class RequestEngine {
     // a security manager.
     final SecurityManager sm = System.getSecurityManager();
     final AccessControlContext context = sm == null ? null : AccessController.getContext();
-    this.threadPool.schedule(new RequestHandlerTask(handler, context));
+    final RequestHandlerTask task = new RequestHandlerTask(handler, context);
+    if (handler.getRequestType() == RequestType.FRAME) {
+      this.scheduleFrameRequest(task);
+    } else {
+      final Priority priority = Priority.forRequest(handler.getRequestType(), handler.getRequestKind());
+      this.scheduler.schedule(task, priority, handler.getLatestRequestURL().getHost());
+    }
+  }
+
+  /**
+   * Loads the document of a frame or iframe in the frame loader pool. Each
+   * frame's document is fetched and parsed in a thread of its own, so frames
+   * don't take up the scheduler's threads while they are parsed. They still
+   * count against the per-host limit of the scheduler.
+   */
+  private void scheduleFrameRequest(final RequestHandlerTask task) {
+    this.frameTasks.add(task);
+    this.frameLoader.execute(() -> {
+      try {
+        if (!task.handler.isCancelled()) {
+          this.scheduler.runWithHostSlot(() -> {
+            // The frame may have been cancelled while waiting for the slot.
+            if (!task.handler.isCancelled()) {
+              task.run();
+            }
+          }, task.handler.getLatestRequestURL().getHost());
+        }
+      } catch (final Throwable thrown) {
+        logger.log(Level.SEVERE, "scheduleFrameRequest(): Error in task: " + task + ".", thrown);
+      } finally {
+        this.frameTasks.remove(task);
+      }
+    });
   }
 
   private static final String NORMAL_FORM_ENCODING = "application/x-www-form-urlencoded";
@@ -330,7 +377,12 @@ public final class RequestEngine {
       }
     }
     if (cacheInfo != null) {
-      final String date = cacheInfo.getDateAsText();
+      final String etag = cacheInfo.getETag();
+      if (etag != null) {
+        connection.addRequestProperty("If-None-Match", etag);
+      }
+      final String lastModified = cacheInfo.getLastModifiedAsText();
+      final String date = lastModified != null ? lastModified : cacheInfo.getDateAsText();
       if (date != null) {
         connection.addRequestProperty("If-Modified-Since", date);
       }
@@ -361,22 +413,22 @@ public final class RequestEngine {
         // the local file system, yet it's necessary to be able to load
         // a cache file.
         public CacheInfo run() {
-          byte[] persistentContent = null;
+          byte[] persistentHeaders = null;
           final CacheManager cm = CacheManager.getInstance();
           final MemoryCacheEntry entry = (MemoryCacheEntry) cm.getTransient(url);
           if (entry == null) {
             if (!"file".equalsIgnoreCase(url.getProtocol()) || !Strings.isBlank(url.getHost())) {
               try {
-                persistentContent = CacheManager.getPersistent(url, false);
+                persistentHeaders = CacheManager.getPersistentHeaders(url);
               } catch (final java.io.IOException ioe) {
                 logger.log(Level.WARNING, "getCacheInfo(): Unable to load cache file.", ioe);
               }
             }
           }
-          if ((persistentContent == null) && (entry == null)) {
+          if ((persistentHeaders == null) && (entry == null)) {
             return null;
           }
-          final CacheInfo cinfo = new CacheInfo(entry, persistentContent, url);
+          final CacheInfo cinfo = new CacheInfo(entry, persistentHeaders, url);
           return cinfo;
         }
       });
@@ -385,8 +437,13 @@ public final class RequestEngine {
     }
   }
 
+  /**
+   * @param isRevalidated
+   *          Whether the content came from the cache and was just revalidated,
+   *          in which case only the cached headers need to be updated.
+   */
   private static void cache(final RequestHandler rhandler, final java.net.URL url, final URLConnection connection, final byte[] content,
-      final java.io.Serializable altPersistentObject, final Object altObject, final int approxAltObjectSize) {
+      final java.io.Serializable altPersistentObject, final Object altObject, final int approxAltObjectSize, final boolean isRevalidated) {
     AccessController.doPrivileged(new PrivilegedAction<Object>() {
       // Reason: Caller might not have permission to access the
       // file system. Yet, caching should be allowed.
@@ -396,7 +453,8 @@ public final class RequestEngine {
           logInfo("cache(): url=" + url + ",content.length=" + content.length + ",currentTime=" + currentTime);
           final Long expiration = Urls.getExpiration(connection, currentTime);
           if ((expiration != null) && (expiration > 0)) {
-            storeCacheEntry(url, connection, content, altPersistentObject, altObject, approxAltObjectSize, currentTime, expiration);
+            storeCacheEntry(url, connection, content, altPersistentObject, altObject, approxAltObjectSize, currentTime, expiration,
+                isRevalidated);
           }
         } catch (final Exception err) {
           logger.log(Level.WARNING, "cache()", err);
@@ -409,7 +467,7 @@ public final class RequestEngine {
 
   private static void storeCacheEntry(final java.net.URL url, final URLConnection connection, final byte[] content,
       final java.io.Serializable altPersistentObject, final Object altObject, final int approxAltObjectSize, final long currentTime,
-      final Long expiration) throws UnsupportedEncodingException, IOException {
+      final Long expiration, final boolean isRevalidated) throws UnsupportedEncodingException, IOException {
     int actualApproxObjectSize = 0;
     if (altObject != null) {
       if (approxAltObjectSize < content.length) {
@@ -467,12 +525,16 @@ public final class RequestEngine {
       final byte[] rtHeaderBytes = (CacheInfo.HEADER_REQUEST_TIME + ": " + currentTime + "\r\n").getBytes("ISO-8859-1");
       out.write(rtHeaderBytes);
       out.write(IORoutines.LINE_BREAK_BYTES);
-      out.write(content);
     } finally {
       out.close();
     }
     try {
-      CacheManager.putPersistent(url, out.toByteArray(), false);
+      final byte[] headerBytes = out.toByteArray();
+      final String etag = connection.getHeaderField("ETag");
+      final String lastModified = connection.getHeaderField("Last-Modified");
+      if (!isRevalidated || !CacheManager.updatePersistentHeaders(url, headerBytes, expiration, etag, lastModified)) {
+        CacheManager.putPersistentResponse(url, headerBytes, content, expiration, etag, lastModified);
+      }
     } catch (final Exception err) {
       logger.log(Level.WARNING, "cache(): Unable to cache response content.", err);
     }
@@ -767,6 +829,7 @@ public final class RequestEngine {
             final HttpURLConnection hconnection = (HttpURLConnection) connection;
             hconnection.setInstanceFollowRedirects(false);
             final int responseCode = hconnection.getResponseCode();
+            OkHttpTransport.getInstance().responseReceived(hconnection);
             logInfo("run(): ResponseCode=" + responseCode + " for url=" + connectionUrl);
             dumpResponseInfo(connection);
             handleCookies(connectionUrl, hconnection, rhandler);
@@ -834,26 +897,14 @@ public final class RequestEngine {
               rhandler.getRequestType());
           rhandler.processResponse(response);
           updateCache(rhandler, response, connectionUrl, cacheInfo, connection, isCacheable);
+          // Release the body, so that the connection can go back to the pool.
+          response.close();
         } finally {
           if (trackRequestInfo) {
             synchronized (this.processingRequests) {
               this.processingRequests.remove(rinfo);
             }
           }
-          /*
-          if (responseIn != null) {
-            try {
-              responseIn.close();
-            } catch (final java.io.IOException ioe) {
-              // ignore
-            }
-          }*/
-
-          // TODO: Possible optimization. By not disconnecting, we might be able to get a faster response for next request
-          /*
-          if (connection instanceof HttpURLConnection) {
-            ((HttpURLConnection) connection).disconnect();
-          }*/
         }
       } finally {
         if (cacheInfo != null) {
@@ -945,17 +996,21 @@ public final class RequestEngine {
         final Serializable persObject = response.getNewPersistentCachedObject();
         final Object altObject = response.getNewTransientCachedObject();
         final int altObjectSize = response.getNewTransientObjectSize();
-        cache(rhandler, connectionUrl, connection, content, persObject, altObject, altObjectSize);
+        final boolean isRevalidated = (cacheInfo != null) && cacheInfo.isCacheConnection(connection);
+        cache(rhandler, connectionUrl, connection, content, persObject, altObject, altObjectSize, isRevalidated);
       } else {
         logger.warning("processHandler(): Cacheable response not available: " + connectionUrl);
       }
-    } else if ((cacheInfo != null) && !cacheInfo.hasTransientEntry()) {
+    } else if ((cacheInfo != null) && !cacheInfo.hasTransientEntry() && cacheInfo.isCacheConnection(connection)) {
       // Content that came from cache cannot be cached again, but a RAM entry was missing.
-      final byte[] persContent = cacheInfo.getPersistentContent();
       final Object altObject = response.getNewTransientCachedObject();
       final int altObjectSize = response.getNewTransientObjectSize();
-      final MemoryCacheEntry newMemEntry = new MemoryCacheEntry(persContent, cacheInfo.getExpires(), cacheInfo.getRequestTime(), altObject,
-          altObjectSize);
+      final MemoryCacheEntry newMemEntry = cacheInfo.createMemoryEntry(altObject, altObjectSize);
+      if (newMemEntry == null) {
+        // Too large for the RAM cache.
+        return;
+      }
+      final byte[] persContent = newMemEntry.content;
       final int actualApproxObjectSize = altObject == null ? 0 : Math.max(altObjectSize, persContent.length);
       // Reason: Privileges needed to access CacheManager.
       AccessController.doPrivileged((PrivilegedAction<Object>) () -> {
@@ -33,6 +33,7 @@ import org.lobobrowser.clientlet.ClientletResponse;
 import org.lobobrowser.ua.ProgressType;
 import org.lobobrowser.ua.RequestType;
 import org.lobobrowser.ua.UserAgentContext;
+import org.lobobrowser.ua.UserAgentContext.RequestKind;
 
 public interface RequestHandler {
   public ClientletRequest getRequest();
@@ -74,4 +75,12 @@ public interface RequestHandler {
   default public Optional<Map<String, String>> getRequestedHeaders() {
     return Optional.empty();
   }
+
+  /**
+   * Gets the kind of resource being requested, if known. It's used to
+   * prioritize scheduled requests.
+   */
+  default public Optional<RequestKind> getRequestKind() {
+    return Optional.empty();
+  }
 }
@@ -0,0 +1,345 @@
+package org.lobobrowser.request;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.lobobrowser.ua.RequestType;
+import org.lobobrowser.ua.UserAgentContext.RequestKind;
+import org.lobobrowser.util.SimpleThreadPoolTask;
+
+/**
+ * Runs request tasks on a bounded set of threads. Queued tasks are taken by
+ * priority class, and in FIFO order within a class, but a task is skipped
+ * while its host already has the maximum number of requests in progress. This
+ * way a page's documents, style sheets and scripts are not stuck behind its
+ * images, and a single slow host can't take up every thread.
+ */
+final class RequestScheduler {
+  private static final Logger logger = Logger.getLogger(RequestScheduler.class.getName());
+
+  /** Priority classes, from highest to lowest. */
+  enum Priority {
+    DOCUMENT, STYLE_SCRIPT, XHR, IMAGE;
+
+    static Priority forRequest(final RequestType requestType, final Optional<RequestKind> requestKind) {
+      if (requestKind.isPresent()) {
+        switch (requestKind.get()) {
+        case Frame:
+          return DOCUMENT;
+        case CSS:
+        case JavaScript:
+          return STYLE_SCRIPT;
+        case Image:
+          return IMAGE;
+        default:
+          return XHR;
+        }
+      }
+      return requestType == RequestType.ELEMENT ? XHR : DOCUMENT;
+    }
+  }
+
+  private static final Priority[] PRIORITIES = Priority.values();
+
+  private final String name;
+  private final int idleAliveMillis;
+  private final Object monitor = new Object();
+
+  /** Heads and tails of the queues of each priority class. */
+  private final QueuedTask[] heads = new QueuedTask[PRIORITIES.length];
+  private final QueuedTask[] tails = new QueuedTask[PRIORITIES.length];
+  private final Map<SimpleThreadPoolTask, QueuedTask> queuedTasks = new HashMap<>();
+  private final Set<SimpleThreadPoolTask> runningSet = new HashSet<>();
+  private final Map<String, Integer> activeByHost = new HashMap<>();
+
+  private final int maxThreads;
+  private final int maxPerHost;
+  private int numThreads = 0;
+  private int numIdleThreads = 0;
+  private int numSlotWaiters = 0;
+  private int threadNumber = 0;
+
+  RequestScheduler(final String name, final int maxThreads, final int maxPerHost, final int idleAliveMillis) {
+    this.name = name;
+    this.maxThreads = maxThreads;
+    this.maxPerHost = maxPerHost;
+    this.idleAliveMillis = idleAliveMillis;
+  }
+
+  /**
+   * @param host
+   *          The host the task connects to. May be <code>null</code> or blank
+   *          for requests that don't use the network.
+   */
+  void schedule(final SimpleThreadPoolTask task, final Priority priority, final String host) {
+    if (task == null) {
+      throw new IllegalArgumentException("null task");
+    }
+    synchronized (this.monitor) {
+      if (this.queuedTasks.containsKey(task)) {
+        return;
+      }
+      final QueuedTask qt = new QueuedTask(task, priority.ordinal(), host == null ? "" : host.toLowerCase());
+      this.append(qt);
+      this.queuedTasks.put(task, qt);
+      if (this.numIdleThreads == 0) {
+        this.addThreadImpl();
+      }
+      this.wakeUpIdleThread();
+    }
+  }
+
+  /**
+   * Wakes up an idle thread to take a queued task. Must be called holding the
+   * monitor.
+   */
+  private void wakeUpIdleThread() {
+    if (this.numSlotWaiters == 0) {
+      this.monitor.notify();
+    } else {
+      // A plain notify() could wake up a caller of runWithHostSlot() instead.
+      this.monitor.notifyAll();
+    }
+  }
+
+  /**
+   * Runs a task in the calling thread, once its host is below the per-host
+   * limit. The task counts against the limit of its host while it runs, as if
+   * it had been run by a thread of the scheduler. If the calling thread is a
+   * worker of a {@link ForkJoinPool}, the pool may add a worker while this one
+   * waits.
+   *
+   * @param host
+   *          The host the task connects to. May be <code>null</code> or blank
+   *          for requests that don't use the network.
+   */
+  void runWithHostSlot(final Runnable task, final String host) throws InterruptedException {
+    final HostSlot slot = new HostSlot(host == null ? "" : host.toLowerCase());
+    ForkJoinPool.managedBlock(slot);
+    try {
+      task.run();
+    } finally {
+      synchronized (this.monitor) {
+        this.addActive(slot.host, -1);
+        // Both queued tasks and other callers may be waiting for the slot.
+        this.monitor.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Removes the task if it's queued, and cancels it.
+   */
+  void cancel(final SimpleThreadPoolTask task) {
+    synchronized (this.monitor) {
+      final QueuedTask qt = this.queuedTasks.remove(task);
+      if (qt != null) {
+        this.unlink(qt);
+      }
+    }
+    task.cancel();
+  }
+
+  /**
+   * Cancels all waiting tasks and any currently running task.
+   */
+  void cancelAll() {
+    synchronized (this.monitor) {
+      for (int i = 0; i < PRIORITIES.length; i++) {
+        this.heads[i] = null;
+        this.tails[i] = null;
+      }
+      this.queuedTasks.clear();
+      for (final SimpleThreadPoolTask task : this.runningSet) {
+        task.cancel();
+      }
+    }
+  }
+
+  private void append(final QueuedTask qt) {
+    final int p = qt.priority;
+    final QueuedTask tail = this.tails[p];
+    qt.prev = tail;
+    if (tail == null) {
+      this.heads[p] = qt;
+    } else {
+      tail.next = qt;
+    }
+    this.tails[p] = qt;
+  }
+
+  private void unlink(final QueuedTask qt) {
+    final int p = qt.priority;
+    if (qt.prev == null) {
+      this.heads[p] = qt.next;
+    } else {
+      qt.prev.next = qt.next;
+    }
+    if (qt.next == null) {
+      this.tails[p] = qt.prev;
+    } else {
+      qt.next.prev = qt.prev;
+    }
+    qt.prev = null;
+    qt.next = null;
+  }
+
+  /**
+   * Gets the first task, in priority order, whose host is below its limit.
+   * Must be called holding the monitor.
+   */
+  private QueuedTask takeNext() {
+    final int maxPerHost = this.maxPerHost;
+    for (int p = 0; p < PRIORITIES.length; p++) {
+      for (QueuedTask qt = this.heads[p]; qt != null; qt = qt.next) {
+        if (qt.host.isEmpty() || (this.getActive(qt.host) < maxPerHost)) {
+          this.unlink(qt);
+          this.queuedTasks.remove(qt.task);
+          return qt;
+        }
+      }
+    }
+    return null;
+  }
+
+  private int getActive(final String host) {
+    final Integer count = this.activeByHost.get(host);
+    return count == null ? 0 : count;
+  }
+
+  private void addActive(final String host, final int delta) {
+    if (!host.isEmpty()) {
+      final int count = this.getActive(host) + delta;
+      if (count == 0) {
+        this.activeByHost.remove(host);
+      } else {
+        this.activeByHost.put(host, count);
+      }
+    }
+  }
+
+  private void addThreadImpl() {
+    if (this.numThreads < this.maxThreads) {
+      final Thread t = new Thread(new ThreadRunnable(), this.name + this.threadNumber++);
+      t.setDaemon(true);
+      t.start();
+      this.numThreads++;
+    }
+  }
+
+  /**
+   * A slot of a host, taken by {@link #runWithHostSlot(Runnable, String)}.
+   */
+  private final class HostSlot implements ForkJoinPool.ManagedBlocker {
+    private final String host;
+    private boolean taken = false;
+
+    private HostSlot(final String host) {
+      this.host = host;
+    }
+
+    public boolean isReleasable() {
+      synchronized (monitor) {
+        if (!this.taken && (this.host.isEmpty() || (getActive(this.host) < maxPerHost))) {
+          addActive(this.host, +1);
+          this.taken = true;
+        }
+        return this.taken;
+      }
+    }
+
+    public boolean block() throws InterruptedException {
+      synchronized (monitor) {
+        numSlotWaiters++;
+        try {
+          while (!this.isReleasable()) {
+            monitor.wait();
+          }
+        } finally {
+          numSlotWaiters--;
+        }
+      }
+      return true;
+    }
+  }
+
+  private static final class QueuedTask {
+    private final SimpleThreadPoolTask task;
+    private final int priority;
+    private final String host;
+    private QueuedTask prev;
+    private QueuedTask next;
+
+    private QueuedTask(final SimpleThreadPoolTask task, final int priority, final String host) {
+      this.task = task;
+      this.priority = priority;
+      this.host = host;
+    }
+  }
+
+  private class ThreadRunnable implements Runnable {
+    public void run() {
+      final Object monitor = RequestScheduler.this.monitor;
+      QueuedTask qt = null;
+      for (;;) {
+        try {
+          synchronized (monitor) {
+            if (qt != null) {
+              runningSet.remove(qt.task);
+              addActive(qt.host, -1);
+              if (numSlotWaiters > 0) {
+                monitor.notifyAll();
+              }
+              qt = null;
+            }
+            numIdleThreads++;
+            try {
+              long waitBase = System.currentTimeMillis();
+              while ((numThreads > maxThreads) || ((qt = takeNext()) == null)) {
+                final long maxWait = idleAliveMillis - (System.currentTimeMillis() - waitBase);
+                if ((maxWait <= 0) || (numThreads > maxThreads)) {
+                  // Should be only way to exit thread.
+                  numThreads--;
+                  return;
+                }
+                monitor.wait(maxWait);
+              }
+            } finally {
+              numIdleThreads--;
+            }
+            runningSet.add(qt.task);
+            addActive(qt.host, +1);
+            if ((numIdleThreads > 0) && !queuedTasks.isEmpty()) {
+              // Others may be able to take the remaining tasks.
+              wakeUpIdleThread();
+            }
+          }
+          final Thread currentThread = Thread.currentThread();
+          final String baseName = currentThread.getName();
+          try {
+            try {
+              currentThread.setName(baseName + ":" + qt.task.toString());
+            } catch (final Throwable thrown) {
+              logger.log(Level.WARNING, "run(): Unable to set task name.", thrown);
+            }
+            try {
+              qt.task.run();
+            } catch (final Throwable thrown) {
+              logger.log(Level.SEVERE, "run(): Error in task: " + qt.task + ".", thrown);
+            }
+          } finally {
+            currentThread.setName(baseName);
+          }
+        } catch (final Throwable thrown) {
+          logger.log(Level.SEVERE, "run(): Error in scheduler: " + RequestScheduler.this.name + ".", thrown);
+        }
+      }
+    }
+  }
+}
@@ -41,6 +41,9 @@ public class ConnectionSettings implements java.io.Serializable {
   private static final Logger logger = Logger.getLogger(ConnectionSettings.class.getName());
   private static final ConnectionSettings instance;
   private static final long serialVersionUID = 22574500000000301L;
+  private static final int DEFAULT_MAX_CONNECTIONS = 8;
+  private static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 4;
+  private static final int DEFAULT_KEEP_ALIVE_SECONDS = 5 * 60;
 
   private Proxy.Type proxyType = Proxy.Type.DIRECT;
   private InetSocketAddress socketAddress = null;
@@ -48,6 +51,9 @@ public class ConnectionSettings implements java.io.Serializable {
   private String password;
   private boolean authenticated;
   private boolean disableProxyForLocalAddresses;
+  private int maxConnections;
+  private int maxConnectionsPerHost;
+  private int keepAliveSeconds;
 
   private transient Proxy proxy;
 
@@ -76,6 +82,9 @@ public class ConnectionSettings implements java.io.Serializable {
     this.authenticated = false;
     this.socketAddress = null;
     this.disableProxyForLocalAddresses = true;
+    this.maxConnections = DEFAULT_MAX_CONNECTIONS;
+    this.maxConnectionsPerHost = DEFAULT_MAX_CONNECTIONS_PER_HOST;
+    this.keepAliveSeconds = DEFAULT_KEEP_ALIVE_SECONDS;
     synchronized (this) {
       this.proxy = null;
     }
@@ -225,6 +234,43 @@ public class ConnectionSettings implements java.io.Serializable {
     }
   }
 
+  /**
+   * Gets the maximum number of requests that are processed at the same time.
+   * Changes take effect the next time the browser starts.
+   */
+  public int getMaxConnections() {
+    // Settings saved by older versions don't have this field.
+    return this.maxConnections > 0 ? this.maxConnections : DEFAULT_MAX_CONNECTIONS;
+  }
+
+  public void setMaxConnections(final int maxConnections) {
+    this.maxConnections = maxConnections;
+  }
+
+  /**
+   * Gets the maximum number of requests to a single host that are processed at
+   * the same time.
+   */
+  public int getMaxConnectionsPerHost() {
+    return this.maxConnectionsPerHost > 0 ? this.maxConnectionsPerHost : DEFAULT_MAX_CONNECTIONS_PER_HOST;
+  }
+
+  public void setMaxConnectionsPerHost(final int maxConnectionsPerHost) {
+    this.maxConnectionsPerHost = maxConnectionsPerHost;
+  }
+
+  /**
+   * Gets how long idle connections are kept open for reuse. Changes take
+   * effect the next time the browser starts.
+   */
+  public int getKeepAliveSeconds() {
+    return this.keepAliveSeconds > 0 ? this.keepAliveSeconds : DEFAULT_KEEP_ALIVE_SECONDS;
+  }
+
+  public void setKeepAliveSeconds(final int keepAliveSeconds) {
+    this.keepAliveSeconds = keepAliveSeconds;
+  }
+
   public void save() {
     try {
       StorageManager.getInstance().saveSettings(this.getClass().getSimpleName(), this);
@@ -26,15 +26,22 @@ package org.lobobrowser.store;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
-import java.util.Arrays;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
 import java.util.jar.JarFile;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.lobobrowser.security.GenericLocalPermission;
-import org.lobobrowser.util.LRUCache;
+import org.lobobrowser.util.ConcurrentLRUCache;
 import org.lobobrowser.util.Strings;
 import org.lobobrowser.util.Urls;
 import org.lobobrowser.util.io.IORoutines;
@@ -48,8 +55,10 @@ public final class CacheManager implements Runnable {
   private static final int INITIAL_SLEEP = 30 * 1000;
   private static final int DELETE_TOLERANCE = 60 * 1000;
   private static final long MAX_CACHE_SIZE = 100000000;
+  private static final String HEADER_FILE_SUFFIX = ".hdr";
+  private static final String TEMP_FILE_SUFFIX = ".tmp";
 
-  private final LRUCache transientCache = new LRUCache(1000000);
+  private final ConcurrentLRUCache transientCache = new ConcurrentLRUCache(1000000);
 
   /**
    *
@@ -62,7 +71,7 @@ public final class CacheManager implements Runnable {
     t.start();
   }
 
-  private static CacheManager instance;
+  private static volatile CacheManager instance;
 
   public static CacheManager getInstance() {
     final SecurityManager sm = System.getSecurityManager();
@@ -81,61 +90,182 @@ public final class CacheManager implements Runnable {
 
   public void putTransient(final URL url, final Object value, final int approxSize) {
     final String key = Urls.getNoRefForm(url);
-    synchronized (this.transientCache) {
-      this.transientCache.put(key, value, approxSize);
-    }
+    this.transientCache.put(key, value, approxSize);
   }
 
   public Object getTransient(final URL url) {
     final String key = Urls.getNoRefForm(url);
-    synchronized (this.transientCache) {
-      return this.transientCache.get(key);
-    }
+    return this.transientCache.get(key);
   }
 
   public void removeTransient(final URL url) {
     final String key = Urls.getNoRefForm(url);
-    synchronized (this.transientCache) {
-      this.transientCache.remove(key);
-    }
+    this.transientCache.remove(key);
   }
 
   public void setMaxTransientCacheSize(final int approxMaxSize) {
-    synchronized (this.transientCache) {
-      this.transientCache.setApproxMaxSize(approxMaxSize);
-    }
+    this.transientCache.setApproxMaxSize(approxMaxSize);
   }
 
   public int getMaxTransientCacheSize() {
-    synchronized (this.transientCache) {
-      return this.transientCache.getApproxMaxSize();
-    }
+    return this.transientCache.getApproxMaxSize();
   }
 
   public CacheInfo getTransientCacheInfo() {
-    long approxSize;
-    int numEntries;
-    List<?> entryInfo;
-    synchronized (this.transientCache) {
-      approxSize = this.transientCache.getApproxSize();
-      numEntries = this.transientCache.getNumEntries();
-      entryInfo = this.transientCache.getEntryInfoList();
-    }
+    final long approxSize = this.transientCache.getApproxSize();
+    final int numEntries = this.transientCache.getNumEntries();
+    final List<?> entryInfo = this.transientCache.getEntryInfoList();
     return new CacheInfo(approxSize, numEntries, entryInfo);
   }
 
+  /**
+   * Stores a single file in the persistent cache, e.g. a serialized
+   * decoration object.
+   */
   public static void putPersistent(final URL url, final byte[] rawContent, final boolean isDecoration) throws IOException {
     final File cacheFile = getCacheFile(url, isDecoration);
     synchronized (getLock(cacheFile)) {
-      final File parent = cacheFile.getParentFile();
-      if ((parent != null) && !parent.exists()) {
-        parent.mkdirs();
+      writeFile(cacheFile, rawContent);
+      getIndex().put(getIndexKey(cacheFile), rawContent.length, 0, null, null);
+    }
+    checkCacheSize();
+  }
+
+  /**
+   * Stores a response in the persistent cache. The headers are kept in a
+   * separate file, so that they can be read and updated without touching the
+   * body.
+   *
+   * @param expires
+   *          The expiration time of the response, or zero if unknown.
+   * @param etag
+   *          The <code>ETag</code> header of the response, or
+   *          <code>null</code>.
+   * @param lastModified
+   *          The <code>Last-Modified</code> header of the response, or
+   *          <code>null</code>.
+   */
+  public static void putPersistentResponse(final URL url, final byte[] headers, final byte[] body, final long expires,
+      final String etag, final String lastModified) throws IOException {
+    final File cacheFile = getCacheFile(url, false);
+    synchronized (getLock(cacheFile)) {
+      writeFile(cacheFile, body);
+      writeFile(getHeaderFile(cacheFile), headers);
+      getIndex().put(getIndexKey(cacheFile), headers.length + body.length, expires, etag, lastModified);
+    }
+    checkCacheSize();
+  }
+
+  /**
+   * Replaces the headers of a cached response, e.g. after it has been
+   * revalidated. Returns <code>false</code> if there is no cached body to go
+   * with the headers.
+   */
+  public static boolean updatePersistentHeaders(final URL url, final byte[] headers, final long expires, final String etag,
+      final String lastModified) throws IOException {
+    final File cacheFile = getCacheFile(url, false);
+    synchronized (getLock(cacheFile)) {
+      final DiskCacheIndex index = getIndex();
+      final String key = getIndexKey(cacheFile);
+      if (!index.contains(key) || !cacheFile.exists()) {
+        return false;
+      }
+      writeFile(getHeaderFile(cacheFile), headers);
+      index.put(key, headers.length + cacheFile.length(), expires, etag, lastModified);
+      return true;
+    }
+  }
+
+  /**
+   * Gets the headers of a cached response, or <code>null</code> if the
+   * response is not cached.
+   */
+  public static byte[] getPersistentHeaders(final URL url) throws IOException {
+    final File cacheFile = getCacheFile(url, false);
+    synchronized (getLock(cacheFile)) {
+      final DiskCacheIndex index = getIndex();
+      final String key = getIndexKey(cacheFile);
+      if (!index.touch(key)) {
+        return null;
+      }
+      try {
+        return IORoutines.load(getHeaderFile(cacheFile));
+      } catch (final java.io.FileNotFoundException fnf) {
+        index.remove(key);
+        return null;
+      }
+    }
+  }
+
+  /**
+   * Gets the body of a cached response, or <code>null</code> if the response
+   * is not cached.
+   */
+  public static byte[] getPersistentBody(final URL url) throws IOException {
+    final File cacheFile = getCacheFile(url, false);
+    synchronized (getLock(cacheFile)) {
+      final DiskCacheIndex index = getIndex();
+      final String key = getIndexKey(cacheFile);
+      if (!index.contains(key)) {
+        return null;
+      }
+      try {
+        return IORoutines.load(cacheFile);
+      } catch (final java.io.FileNotFoundException fnf) {
+        index.remove(key);
+        return null;
+      }
+    }
+  }
+
+  /**
+   * Gets the size of a cached response, headers included, as recorded in the
+   * cache index, or -1 if the response is not cached. No file is read.
+   */
+  public static long getPersistentSize(final URL url) throws IOException {
+    final File cacheFile = getCacheFile(url, false);
+    return getIndex().getSize(getIndexKey(cacheFile));
+  }
+
+  /**
+   * Gets the <code>ETag</code> of a cached response, as recorded in the cache
+   * index, or <code>null</code> if the response is not cached or has none.
+   */
+  public static String getPersistentETag(final URL url) throws IOException {
+    final File cacheFile = getCacheFile(url, false);
+    return getIndex().getETag(getIndexKey(cacheFile));
+  }
+
+  /**
+   * Gets the <code>Last-Modified</code> header of a cached response, as
+   * recorded in the cache index, or <code>null</code> if the response is not
+   * cached or has none.
+   */
+  public static String getPersistentLastModified(final URL url) throws IOException {
+    final File cacheFile = getCacheFile(url, false);
+    return getIndex().getLastModified(getIndexKey(cacheFile));
+  }
+
+  /**
+   * Opens a stream over the body of a cached response, or returns
+   * <code>null</code> if the response is not cached. The body is read straight
+   * from the file. Cache files are replaced by renaming, never rewritten in
+   * place, so the stream keeps reading the same content even if the entry is
+   * updated meanwhile.
+   */
+  public static InputStream openPersistentBody(final URL url) throws IOException {
+    final File cacheFile = getCacheFile(url, false);
+    synchronized (getLock(cacheFile)) {
+      final DiskCacheIndex index = getIndex();
+      final String key = getIndexKey(cacheFile);
+      if (!index.contains(key)) {
+        return null;
       }
-      final FileOutputStream fout = new FileOutputStream(cacheFile);
       try {
-        fout.write(rawContent);
-      } finally {
-        fout.close();
+        return Channels.newInputStream(FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ));
+      } catch (final NoSuchFileException nsf) {
+        index.remove(key);
+        return null;
       }
     }
   }
@@ -145,10 +275,15 @@ public final class CacheManager implements Runnable {
     // would be needed to prevent concurrent writes into the file.
     final File cacheFile = getCacheFile(url, isDecoration);
     synchronized (getLock(cacheFile)) {
-      cacheFile.setLastModified(System.currentTimeMillis());
+      final DiskCacheIndex index = getIndex();
+      final String key = getIndexKey(cacheFile);
+      if (!index.touch(key)) {
+        return null;
+      }
       try {
         return IORoutines.load(cacheFile);
       } catch (final java.io.FileNotFoundException fnf) {
+        index.remove(key);
         return null;
       }
     }
@@ -157,20 +292,20 @@ public final class CacheManager implements Runnable {
   public static boolean removePersistent(final URL url, final boolean isDecoration) throws IOException {
     final File cacheFile = getCacheFile(url, isDecoration);
     synchronized (getLock(cacheFile)) {
-      return cacheFile.delete();
+      getIndex().remove(getIndexKey(cacheFile));
+      return deleteFiles(cacheFile);
     }
   }
 
   public static JarFile getJarFile(final URL url) throws java.io.IOException {
     final File cacheFile = getCacheFile(url, false);
     synchronized (getLock(cacheFile)) {
-      if (!cacheFile.exists()) {
+      if (!getIndex().touch(getIndexKey(cacheFile)) || !cacheFile.exists()) {
         if (Urls.isLocalFile(url)) {
           return new JarFile(url.getFile());
         }
         throw new java.io.FileNotFoundException("JAR file cannot be obtained for a URL that is not cached locally: " + url + ".");
       }
-      cacheFile.setLastModified(System.currentTimeMillis());
       return new JarFile(cacheFile);
     }
   }
@@ -194,10 +329,75 @@ public final class CacheManager implements Runnable {
     return StorageManager.getInstance().getContentCacheFile(url.getHost(), fileName);
   }
 
+  private static File getHeaderFile(final File cacheFile) {
+    return new File(cacheFile.getPath() + HEADER_FILE_SUFFIX);
+  }
+
+  private static String getIndexKey(final File cacheFile) {
+    final String rootPath = getIndex().getRoot().getPath();
+    final String path = cacheFile.getPath();
+    if (path.startsWith(rootPath) && (path.length() > rootPath.length())) {
+      return path.substring(rootPath.length() + 1).replace(File.separatorChar, '/');
+    }
+    return path;
+  }
+
+  /**
+   * Writes a cache file by writing a temporary file and renaming it, so that
+   * streams open on the old file are unaffected.
+   */
+  private static void writeFile(final File file, final byte[] content) throws IOException {
+    final File parent = file.getParentFile();
+    if ((parent != null) && !parent.exists()) {
+      parent.mkdirs();
+    }
+    final File tempFile = new File(file.getPath() + TEMP_FILE_SUFFIX);
+    try (final FileOutputStream fout = new FileOutputStream(tempFile)) {
+      fout.write(content);
+    }
+    try {
+      Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (final AtomicMoveNotSupportedException amns) {
+      Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  /**
+   * Deletes a cache file and its header file, if any.
+   */
+  private static boolean deleteFiles(final File cacheFile) {
+    final File headerFile = getHeaderFile(cacheFile);
+    final boolean deleted = cacheFile.delete();
+    return headerFile.delete() || deleted;
+  }
+
   private static Object getLock(final File file) throws IOException {
     return ("cm:" + file.getCanonicalPath()).intern();
   }
 
+  private static DiskCacheIndex getIndex() {
+    return IndexHolder.INDEX;
+  }
+
+  private static class IndexHolder {
+    private static final DiskCacheIndex INDEX = new DiskCacheIndex(StorageManager.getInstance().getCacheRoot());
+  }
+
+  /**
+   * Wakes up the sweeper if the persistent cache has grown beyond its
+   * maximum size.
+   */
+  private static void checkCacheSize() {
+    if (getIndex().getTotalSize() > getMaxCacheSize()) {
+      final CacheManager cm = instance;
+      if (cm != null) {
+        synchronized (cm) {
+          cm.notify();
+        }
+      }
+    }
+  }
+
   /**
    * Touches the cache file corresponding to the given URL and returns
    * <code>true</code> if the file exists.
@@ -205,11 +405,7 @@ public final class CacheManager implements Runnable {
   public static boolean checkCacheFile(final URL url, final boolean isDecoration) throws IOException {
     final File file = getCacheFile(url, isDecoration);
     synchronized (getLock(file)) {
-      if (file.exists()) {
-        file.setLastModified(System.currentTimeMillis());
-        return true;
-      }
-      return false;
+      return getIndex().touch(getIndexKey(file)) && file.exists();
     }
   }
 
@@ -222,7 +418,9 @@ public final class CacheManager implements Runnable {
     for (;;) {
       try {
         this.sweepCache();
-        Thread.sleep(AFTER_SWEEP_SLEEP);
+        synchronized (this) {
+          this.wait(AFTER_SWEEP_SLEEP);
+        }
       } catch (final Throwable err) {
         logger.log(Level.SEVERE, "run()", err);
         try {
@@ -239,65 +437,61 @@ public final class CacheManager implements Runnable {
   }
 
   private void sweepCache() throws Exception {
-    final CacheStoreInfo sinfo = this.getCacheStoreInfo();
+    final DiskCacheIndex index = getIndex();
+    if (index.takeOrphanScanRequest()) {
+      this.removeOrphans(index, index.getRoot(), System.currentTimeMillis() - DELETE_TOLERANCE);
+    }
     if (logger.isLoggable(Level.INFO)) {
-      logger.info("sweepCache(): Cache size is " + sinfo.getLength() + " with a max of " + getMaxCacheSize()
-          + ". The number of cache files is " + sinfo.getFileInfos().length + ".");
+      logger.info("sweepCache(): Cache size is " + index.getTotalSize() + " with a max of " + getMaxCacheSize()
+          + ". The number of cache entries is " + index.getNumEntries() + ".");
     }
-    long oversize = sinfo.getLength() - getMaxCacheSize();
-    if (oversize > 0) {
-      final CacheFileInfo[] finfos = sinfo.getFileInfos();
-      // Sort in ascending order of modification
-      Arrays.sort(finfos);
-      final long okToDeleteBeforeThis = System.currentTimeMillis() - DELETE_TOLERANCE;
-      for (final CacheFileInfo finfo : finfos) {
-        try {
-          Thread.yield();
-          synchronized (getLock(finfo.getFile())) {
-            final long lastModified = finfo.getLastModified();
-            if (lastModified < okToDeleteBeforeThis) {
-              Thread.sleep(1);
-              final long time1 = System.currentTimeMillis();
-              finfo.delete();
-              final long time2 = System.currentTimeMillis();
-              if (logger.isLoggable(Level.INFO)) {
-                logger.info("sweepCache(): Removed " + finfo + " in " + (time2 - time1) + " ms.");
-              }
-              oversize -= finfo.getInitialLength();
-              if (oversize <= 0) {
-                break;
-              }
+    final long okToDeleteBeforeThis = System.currentTimeMillis() - DELETE_TOLERANCE;
+    final File root = index.getRoot();
+    for (final String key : index.getEvictionCandidates(getMaxCacheSize(), okToDeleteBeforeThis)) {
+      try {
+        final File cacheFile = new File(root, key.replace('/', File.separatorChar));
+        synchronized (getLock(cacheFile)) {
+          if (index.removeIfNotAccessedSince(key, okToDeleteBeforeThis)) {
+            deleteFiles(cacheFile);
+            if (logger.isLoggable(Level.INFO)) {
+              logger.info("sweepCache(): Removed " + key + ".");
             }
           }
-        } catch (final Throwable thrown) {
-          logger.log(Level.WARNING, "sweepCache()", thrown);
         }
+      } catch (final Throwable thrown) {
+        logger.log(Level.WARNING, "sweepCache()", thrown);
       }
     }
+    index.checkpoint();
   }
 
-  private CacheStoreInfo getCacheStoreInfo() throws IOException {
-    final CacheStoreInfo csinfo = new CacheStoreInfo();
-    final File cacheRoot = StorageManager.getInstance().getCacheRoot();
-    populateCacheStoreInfo(csinfo, cacheRoot);
-    return csinfo;
-  }
-
-  private void populateCacheStoreInfo(final CacheStoreInfo csinfo, final File directory) {
+  /**
+   * Deletes files that are not in the index, such as files written before
+   * the index existed, or files whose journal record was lost in a crash.
+   * This is only done when the index indicates it's needed.
+   */
+  private void removeOrphans(final DiskCacheIndex index, final File directory, final long okToDeleteBefore) throws IOException {
     final File[] files = directory.listFiles();
     if (files == null) {
-      logger.severe("populateCacheStoreInfo(): Unexpected: '" + directory + "' is not a directory.");
+      logger.severe("removeOrphans(): Unexpected: '" + directory + "' is not a directory.");
       return;
     }
-    if (files.length == 0) {
+    if ((files.length == 0) && !directory.equals(index.getRoot())) {
       directory.delete();
     }
     for (final File file : files) {
       Thread.yield();
       if (file.isDirectory()) {
-        this.populateCacheStoreInfo(csinfo, file);
-      } else {
-        csinfo.addCacheFile(file);
+        this.removeOrphans(index, file, okToDeleteBefore);
+      } else if (!DiskCacheIndex.isIndexFile(file.getName()) && (file.lastModified() < okToDeleteBefore)) {
+        final String path = file.getPath();
+        final File cacheFile = path.endsWith(HEADER_FILE_SUFFIX) ? new File(path.substring(0, path.length()
+            - HEADER_FILE_SUFFIX.length())) : file;
+        synchronized (getLock(cacheFile)) {
+          if (!index.contains(getIndexKey(cacheFile))) {
+            file.delete();
+          }
+        }
       }
     }
   }
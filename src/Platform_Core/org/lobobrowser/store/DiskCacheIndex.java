@@ -0,0 +1,429 @@
+package org.lobobrowser.store;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Index of the files of the persistent cache, so that size accounting and
+ * eviction don't need to walk the cache directory.
+ *
+ * <p>
+ * The index is kept in memory in least-recently-used order. On disk it is a
+ * snapshot file plus an append-only journal of the changes made since the
+ * snapshot was written. The journal is replayed on startup, and folded into a
+ * new snapshot once it grows large.
+ * </p>
+ *
+ * <p>
+ * Keys are paths of cache files relative to the cache root. Each key may
+ * stand for a pair of files: the body and its header file. Entries of
+ * responses also hold the validators of the response, so that a conditional
+ * request can be made without reading the header file.
+ * </p>
+ */
+final class DiskCacheIndex {
+  private static final Logger logger = Logger.getLogger(DiskCacheIndex.class.getName());
+  private static final String INDEX_FILE = "$INDEX$";
+  private static final String JOURNAL_FILE = "$JOURNAL$";
+  private static final int MAGIC = 0x4C434958;
+  private static final int VERSION = 2;
+  private static final byte OP_PUT = 'P';
+  private static final byte OP_TOUCH = 'T';
+  private static final byte OP_REMOVE = 'R';
+  private static final int MIN_COMPACTION_RECORDS = 2000;
+
+  private final File root;
+  private final Map<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+  private long totalSize = 0;
+  private DataOutputStream journal;
+  private int journalRecords = 0;
+  private boolean snapshotStale = false;
+  private boolean needsOrphanScan = false;
+
+  DiskCacheIndex(final File root) {
+    this.root = root;
+    this.load();
+  }
+
+  File getRoot() {
+    return this.root;
+  }
+
+  private void load() {
+    final File indexFile = new File(this.root, INDEX_FILE);
+    final File journalFile = new File(this.root, JOURNAL_FILE);
+    boolean recovered = true;
+    if (indexFile.exists()) {
+      try (final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+        if ((in.readInt() != MAGIC) || (in.readInt() != VERSION)) {
+          throw new IOException("Unknown cache index format.");
+        }
+        final int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+          final String key = in.readUTF();
+          final long size = in.readLong();
+          final long expires = in.readLong();
+          final long lastAccess = in.readLong();
+          final String etag = readOptionalUTF(in);
+          final String lastModified = readOptionalUTF(in);
+          this.putEntry(key, size, expires, lastAccess, etag, lastModified);
+        }
+      } catch (final IOException ioe) {
+        // Also the case for an index of an older format. The journal goes
+        // along with the snapshot, so it's discarded too.
+        logger.log(Level.WARNING, "load(): Discarding unreadable cache index.", ioe);
+        this.clearEntries();
+        this.needsOrphanScan = true;
+        this.snapshotStale = true;
+        recovered = false;
+      }
+    } else {
+      // Either a new cache, or one written before there was an index.
+      this.needsOrphanScan = true;
+      this.snapshotStale = true;
+    }
+    if (journalFile.exists()) {
+      if (recovered) {
+        this.replayJournal(journalFile);
+      }
+      this.snapshotStale = true;
+    }
+    // Start from a fresh snapshot if anything had to be recovered.
+    this.openJournal(!this.snapshotStale);
+  }
+
+  private void replayJournal(final File journalFile) {
+    try (final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)))) {
+      for (;;) {
+        final byte op;
+        try {
+          op = in.readByte();
+        } catch (final EOFException eof) {
+          break;
+        }
+        final String key = in.readUTF();
+        if (op == OP_PUT) {
+          final long size = in.readLong();
+          final long expires = in.readLong();
+          final long lastAccess = in.readLong();
+          final String etag = readOptionalUTF(in);
+          final String lastModified = readOptionalUTF(in);
+          this.putEntry(key, size, expires, lastAccess, etag, lastModified);
+        } else if (op == OP_TOUCH) {
+          final long lastAccess = in.readLong();
+          final Entry entry = this.entries.get(key);
+          if (entry != null) {
+            entry.lastAccess = lastAccess;
+          }
+        } else if (op == OP_REMOVE) {
+          this.removeEntry(key);
+        } else {
+          throw new IOException("Unknown journal record: " + op);
+        }
+      }
+    } catch (final IOException ioe) {
+      // A truncated last record is expected after a crash. Files written
+      // since then are not in the index, so look for them.
+      logger.log(Level.INFO, "replayJournal(): Journal ends with an incomplete record.", ioe);
+      this.needsOrphanScan = true;
+    }
+  }
+
+  /**
+   * Opens the journal for appending, or starts a new, empty one.
+   */
+  private void openJournal(final boolean append) {
+    try {
+      this.root.mkdirs();
+      if (!append) {
+        // The snapshot must be in place before the journal is truncated.
+        this.writeSnapshot();
+        this.journalRecords = 0;
+      }
+      this.journal = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(this.root, JOURNAL_FILE), append)));
+    } catch (final IOException ioe) {
+      logger.log(Level.WARNING, "openJournal(): Persistent cache index will not be saved.", ioe);
+      this.journal = null;
+    }
+  }
+
+  private void writeSnapshot() throws IOException {
+    final File tempFile = new File(this.root, INDEX_FILE + ".tmp");
+    try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(this.entries.size());
+      for (final Entry entry : this.entries.values()) {
+        out.writeUTF(entry.key);
+        out.writeLong(entry.size);
+        out.writeLong(entry.expires);
+        out.writeLong(entry.lastAccess);
+        writeOptionalUTF(out, entry.etag);
+        writeOptionalUTF(out, entry.lastModified);
+      }
+    }
+    final File indexFile = new File(this.root, INDEX_FILE);
+    if (!tempFile.renameTo(indexFile)) {
+      indexFile.delete();
+      if (!tempFile.renameTo(indexFile)) {
+        throw new IOException("Unable to replace " + indexFile + ".");
+      }
+    }
+    this.snapshotStale = false;
+  }
+
+  private static String readOptionalUTF(final DataInputStream in) throws IOException {
+    final String value = in.readUTF();
+    return value.length() == 0 ? null : value;
+  }
+
+  private static void writeOptionalUTF(final DataOutputStream out, final String value) throws IOException {
+    out.writeUTF(value == null ? "" : value);
+  }
+
+  private void putEntry(final String key, final long size, final long expires, final long lastAccess, final String etag,
+      final String lastModified) {
+    final Entry entry = new Entry(key, size, expires, lastAccess, etag, lastModified);
+    final Entry oldEntry = this.entries.put(key, entry);
+    this.totalSize += oldEntry == null ? size : size - oldEntry.size;
+  }
+
+  private Entry removeEntry(final String key) {
+    final Entry entry = this.entries.remove(key);
+    if (entry != null) {
+      this.totalSize -= entry.size;
+    }
+    return entry;
+  }
+
+  private void clearEntries() {
+    this.entries.clear();
+    this.totalSize = 0;
+  }
+
+  private void journal(final byte op, final Entry entry, final boolean flush) {
+    final DataOutputStream journal = this.journal;
+    if (journal == null) {
+      return;
+    }
+    try {
+      journal.writeByte(op);
+      journal.writeUTF(entry.key);
+      if (op == OP_PUT) {
+        journal.writeLong(entry.size);
+        journal.writeLong(entry.expires);
+        journal.writeLong(entry.lastAccess);
+        writeOptionalUTF(journal, entry.etag);
+        writeOptionalUTF(journal, entry.lastModified);
+      } else if (op == OP_TOUCH) {
+        journal.writeLong(entry.lastAccess);
+      }
+      if (flush) {
+        journal.flush();
+      }
+      this.journalRecords++;
+    } catch (final IOException ioe) {
+      logger.log(Level.WARNING, "journal(): Unable to write to cache journal.", ioe);
+      this.closeJournal();
+      this.snapshotStale = true;
+    }
+  }
+
+  private void closeJournal() {
+    final DataOutputStream journal = this.journal;
+    if (journal != null) {
+      this.journal = null;
+      try {
+        journal.close();
+      } catch (final IOException ioe) {
+        // ignore
+      }
+    }
+  }
+
+  /**
+   * Adds or replaces an entry.
+   *
+   * @param etag
+   *          The <code>ETag</code> header of the response, or
+   *          <code>null</code>.
+   * @param lastModified
+   *          The <code>Last-Modified</code> header of the response, or
+   *          <code>null</code>.
+   */
+  synchronized void put(final String key, final long size, final long expires, final String etag, final String lastModified) {
+    this.putEntry(key, size, expires, System.currentTimeMillis(), etag, lastModified);
+    this.journal(OP_PUT, this.entries.get(key), true);
+  }
+
+  /**
+   * Records an access to the entry and returns <code>true</code> if it exists.
+   * Accesses are only flushed to disk along with other changes, since losing a
+   * few of them merely makes eviction order less precise.
+   */
+  synchronized boolean touch(final String key) {
+    final Entry entry = this.entries.get(key);
+    if (entry == null) {
+      return false;
+    }
+    entry.lastAccess = System.currentTimeMillis();
+    this.journal(OP_TOUCH, entry, false);
+    return true;
+  }
+
+  /**
+   * Gets the size of the entry, or -1 if there is no such entry.
+   */
+  synchronized long getSize(final String key) {
+    final Entry entry = this.entries.get(key);
+    return entry == null ? -1 : entry.size;
+  }
+
+  /**
+   * Gets the <code>ETag</code> of the entry, or <code>null</code> if there is
+   * no such entry or it has no <code>ETag</code>.
+   */
+  synchronized String getETag(final String key) {
+    final Entry entry = this.entries.get(key);
+    return entry == null ? null : entry.etag;
+  }
+
+  /**
+   * Gets the <code>Last-Modified</code> header of the entry, or
+   * <code>null</code> if there is no such entry or it has no such header.
+   */
+  synchronized String getLastModified(final String key) {
+    final Entry entry = this.entries.get(key);
+    return entry == null ? null : entry.lastModified;
+  }
+
+  synchronized boolean contains(final String key) {
+    // Note: containsKey() doesn't change the access order.
+    return this.entries.containsKey(key);
+  }
+
+  synchronized void remove(final String key) {
+    final Entry entry = this.removeEntry(key);
+    if (entry != null) {
+      this.journal(OP_REMOVE, entry, true);
+    }
+  }
+
+  /**
+   * Removes the entry unless it has been accessed or replaced since the given
+   * time. Returns <code>true</code> if the entry was removed.
+   */
+  synchronized boolean removeIfNotAccessedSince(final String key, final long time) {
+    final Entry entry = this.entries.get(key);
+    if ((entry == null) || (entry.lastAccess >= time)) {
+      return false;
+    }
+    this.remove(key);
+    return true;
+  }
+
+  synchronized long getTotalSize() {
+    return this.totalSize;
+  }
+
+  synchronized int getNumEntries() {
+    return this.entries.size();
+  }
+
+  /**
+   * Gets the keys of the entries to evict to bring the cache down to the
+   * given size: expired entries first, then the least recently used ones.
+   * Entries accessed after <code>okToDeleteBefore</code> are skipped.
+   */
+  synchronized List<String> getEvictionCandidates(final long maxSize, final long okToDeleteBefore) {
+    final List<String> keys = new ArrayList<>();
+    long excess = this.totalSize - maxSize;
+    if (excess <= 0) {
+      return keys;
+    }
+    final long now = System.currentTimeMillis();
+    final Set<String> chosen = new HashSet<>();
+    for (int pass = 0; (pass < 2) && (excess > 0); pass++) {
+      final Iterator<Entry> i = this.entries.values().iterator();
+      while (i.hasNext() && (excess > 0)) {
+        final Entry entry = i.next();
+        final boolean expired = (entry.expires > 0) && (entry.expires < now);
+        if (((pass == 0) && !expired) || (entry.lastAccess >= okToDeleteBefore) || chosen.contains(entry.key)) {
+          continue;
+        }
+        chosen.add(entry.key);
+        keys.add(entry.key);
+        excess -= entry.size;
+      }
+    }
+    return keys;
+  }
+
+  /**
+   * Returns <code>true</code>, only once, if there may be files in the cache
+   * directory that are not in the index.
+   */
+  synchronized boolean takeOrphanScanRequest() {
+    final boolean result = this.needsOrphanScan;
+    this.needsOrphanScan = false;
+    return result;
+  }
+
+  /**
+   * Writes pending journal records, and replaces the journal with a new
+   * snapshot if it has grown large.
+   */
+  synchronized void checkpoint() {
+    if (this.snapshotStale || (this.journalRecords > Math.max(MIN_COMPACTION_RECORDS, this.entries.size() * 2))) {
+      this.closeJournal();
+      this.openJournal(false);
+    } else if (this.journal != null) {
+      try {
+        this.journal.flush();
+      } catch (final IOException ioe) {
+        logger.log(Level.WARNING, "checkpoint(): Unable to flush cache journal.", ioe);
+        this.closeJournal();
+        this.snapshotStale = true;
+      }
+    }
+  }
+
+  static boolean isIndexFile(final String name) {
+    return INDEX_FILE.equals(name) || JOURNAL_FILE.equals(name) || (INDEX_FILE + ".tmp").equals(name);
+  }
+
+  private static final class Entry {
+    private final String key;
+    private final long size;
+    private final long expires;
+    private long lastAccess;
+    private final String etag;
+    private final String lastModified;
+
+    private Entry(final String key, final long size, final long expires, final long lastAccess, final String etag,
+        final String lastModified) {
+      this.key = key;
+      this.size = size;
+      this.expires = expires;
+      this.lastAccess = lastAccess;
+      this.etag = etag;
+      this.lastModified = lastModified;
+    }
+  }
+}
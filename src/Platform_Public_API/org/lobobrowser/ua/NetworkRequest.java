@@ -223,4 +223,13 @@ public interface NetworkRequest {
   Optional<URL> getURL();
 
   public void addRequestedHeader(String header, String value);
+
+  /**
+   * Makes the request go to {@link #STATE_COMPLETE}, with no response, if it
+   * fails, so that those waiting for it are released. Otherwise a failed
+   * request stays in the state it was in. Should be called before the request
+   * is sent.
+   */
+  default public void setCompleteOnFailure(final boolean completeOnFailure) {
+  }
 }
@@ -289,10 +289,8 @@ public final class HtmlClientlet implements Clientlet {
   }
 
   private static class LocalDocumentNotificationListener implements DocumentNotificationListener {
-    private static final int MAX_WAIT = 7000;
     private final HTMLDocumentImpl document;
     private final HtmlPanel htmlPanel;
-    private final long startTimestamp;
     private final HtmlRendererContext rcontext;
     private final ClientletContext ccontext;
     private final HtmlContent content;
@@ -305,7 +303,6 @@ public final class HtmlClientlet implements Clientlet {
         final ClientletContext cc,
         final HtmlContent content, final boolean detectHttpEquiv) {
       this.document = doc;
-      this.startTimestamp = System.currentTimeMillis();
       this.htmlPanel = panel;
       this.rcontext = rcontext;
       this.ccontext = cc;
@@ -367,7 +364,13 @@ public final class HtmlClientlet implements Clientlet {
           this.hasVisibleElements = true;
         }
       }
-      if (this.hasVisibleElements && ((System.currentTimeMillis() - this.startTimestamp) > MAX_WAIT)) {
+    }
+
+    public void loadCheckpoint() {
+      // We can expect this to occur only in the parser thread.
+      // Content is shown from the first checkpoint that has something
+      // visible, and the panel takes further checkpoints from there.
+      if (this.hasVisibleElements) {
         this.ensureSwitchedToRendering();
       }
     }